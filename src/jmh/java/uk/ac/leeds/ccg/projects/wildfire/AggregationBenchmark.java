@@ -0,0 +1,170 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.leeds.ccg.generic.util.Generic_Collections;
+import uk.ac.leeds.ccg.projects.wildfire.io.FieldDictionary;
+import uk.ac.leeds.ccg.projects.wildfire.stats.CountCube;
+import uk.ac.leeds.ccg.projects.wildfire.time.IRSTime;
+
+/**
+ * Benchmarks of the Part 2 aggregation of property type counts and counts
+ * of outdoor fires by year and month, week and day: with maps and
+ * {@link Generic_Collections#addToCount} as Run2 originally did, and with a
+ * {@link FieldDictionary} over field bytes and {@link CountCube}s. Scores
+ * are records per second.
+ *
+ * @author Andy Turner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregationBenchmark {
+
+    /**
+     * The number of records.
+     */
+    static final int N = 65536;
+
+    static final Charset CS = StandardCharsets.UTF_8;
+
+    static final String OUTDOOR
+            = "Property/Outdoor/Grassland, woodland and crops/";
+
+    String[] types;
+    ByteBuffer buf;
+    int[] starts;
+    int[] ends;
+    int[] years;
+    int[] months;
+    int[] weeks;
+    int[] days;
+
+    /**
+     * Generate the values.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticIRS s = new SyntheticIRS(1L);
+        types = s.nextPropertyTypes(N);
+        String[] times = s.nextTimes(N);
+        byte[][] bytes = new byte[N][];
+        int len = 0;
+        for (int i = 0; i < N; i++) {
+            bytes[i] = types[i].getBytes(CS);
+            len += bytes[i].length;
+        }
+        buf = ByteBuffer.allocateDirect(len);
+        starts = new int[N];
+        ends = new int[N];
+        years = new int[N];
+        months = new int[N];
+        weeks = new int[N];
+        days = new int[N];
+        for (int i = 0; i < N; i++) {
+            starts[i] = buf.position();
+            buf.put(bytes[i]);
+            ends[i] = buf.position();
+            long t = IRSTime.parse(times[i]);
+            years[i] = IRSTime.getYear(t);
+            months[i] = IRSTime.getMonth(t);
+            days[i] = IRSTime.getDayOfYear(t);
+            weeks[i] = (days[i] + 7) / 7;
+        }
+    }
+
+    /**
+     * Count with maps.
+     *
+     * @param bh The blackhole.
+     */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void addToCount(Blackhole bh) {
+        HashMap<String, Integer> counts = new HashMap<>();
+        TreeMap<Integer, TreeMap<Integer, Integer>> byMonth = new TreeMap<>();
+        TreeMap<Integer, TreeMap<Integer, Integer>> byWeek = new TreeMap<>();
+        TreeMap<Integer, TreeMap<Integer, Integer>> byDay = new TreeMap<>();
+        for (int i = 0; i < N; i++) {
+            String v = types[i];
+            Generic_Collections.addToCount(counts, v, 1);
+            if (v.replace("\"", "").startsWith(OUTDOOR)) {
+                Generic_Collections.addToCount(byMonth.computeIfAbsent(
+                        months[i], k -> new TreeMap<>()), years[i], 1);
+                Generic_Collections.addToCount(byWeek.computeIfAbsent(
+                        weeks[i], k -> new TreeMap<>()), years[i], 1);
+                Generic_Collections.addToCount(byDay.computeIfAbsent(
+                        days[i], k -> new TreeMap<>()), years[i], 1);
+            }
+        }
+        bh.consume(counts);
+        bh.consume(byMonth);
+        bh.consume(byWeek);
+        bh.consume(byDay);
+    }
+
+    /**
+     * Count with a dictionary over field bytes and count cubes.
+     *
+     * @param bh The blackhole.
+     */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void countCube(Blackhole bh) {
+        FieldDictionary d = new FieldDictionary(CS);
+        FieldDictionary.Test isOutdoor = d.newTest(
+                v -> v.replace("\"", "").startsWith(OUTDOOR));
+        long[] counts = new long[16];
+        CountCube byMonth = new CountCube(1, 12);
+        CountCube byWeek = new CountCube(1, 53);
+        CountCube byDay = new CountCube(1, 366);
+        for (int i = 0; i < N; i++) {
+            int c = d.code(buf, starts[i], ends[i]);
+            counts[c]++;
+            if (isOutdoor.test(c)) {
+                byMonth.add(years[i], months[i]);
+                byWeek.add(years[i], weeks[i]);
+                byDay.add(years[i], days[i]);
+            }
+        }
+        bh.consume(counts);
+        bh.consume(byMonth);
+        bh.consume(byWeek);
+        bh.consume(byDay);
+    }
+}
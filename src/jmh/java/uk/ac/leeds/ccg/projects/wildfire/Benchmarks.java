@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Utilities for benchmarks. The benchmarks are run with:
+ * <pre>
+ * mvn -P benchmark verify
+ * </pre>
+ * which runs all of them with the GC profiler and writes the results to
+ * target/jmh-result.json. Options for JMH can be given with -Djmh.args, for
+ * example {@code -Djmh.args="ParseBenchmark -f 2"}.
+ *
+ * @author Andy Turner
+ */
+public class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Delete a directory and its contents.
+     *
+     * @param dir The directory.
+     * @throws IOException If encountered.
+     */
+    public static void delete(Path dir) throws IOException {
+        if (dir != null && Files.exists(dir)) {
+            try (Stream<Path> s = Files.walk(dir)) {
+                for (Path p : s.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace {@link System#out} with a stream that discards output so that
+     * printing by the code benchmarked is not measured.
+     *
+     * @return The replaced stream.
+     */
+    public static PrintStream quiet() {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return out;
+    }
+}
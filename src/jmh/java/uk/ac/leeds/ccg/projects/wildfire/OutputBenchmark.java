@@ -0,0 +1,117 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.leeds.ccg.projects.wildfire.pipeline.Pipeline;
+
+/**
+ * Benchmark of {@link Run2#outputPart1(Path)} writing the records selected
+ * from a synthetic IRS CSV file. The rows counter is records written per
+ * second.
+ *
+ * @author Andy Turner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutputBenchmark {
+
+    /**
+     * The number of records in the input.
+     */
+    static final int ROWS = 100_000;
+
+    Path dir;
+    Path output;
+    Run2 run;
+    PrintStream out;
+
+    /**
+     * Counts the records written.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Rows {
+
+        /**
+         * The number of records written.
+         */
+        public long rows;
+    }
+
+    /**
+     * Write the input and select records from it.
+     *
+     * @throws IOException If encountered.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        out = Benchmarks.quiet();
+        dir = Files.createTempDirectory("OutputBenchmark");
+        Path input = dir.resolve("irs.csv");
+        output = dir.resolve("abc.csv");
+        SyntheticIRS.write(input, ROWS, 1L);
+        run = new Run2();
+        run.initialise();
+        Pipeline p = new Pipeline(1, run.charset, null);
+        p.add(run.new Part1());
+        p.run(List.of(input));
+    }
+
+    /**
+     * Delete the input and output and restore {@link System#out}.
+     *
+     * @throws IOException If encountered.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(out);
+        Benchmarks.delete(dir);
+    }
+
+    /**
+     * Write the selected records.
+     *
+     * @param rows Counts the records written.
+     */
+    @Benchmark
+    public void outputPart1(Rows rows) {
+        run.outputPart1(output);
+        rows.rows += run.records.size();
+    }
+}
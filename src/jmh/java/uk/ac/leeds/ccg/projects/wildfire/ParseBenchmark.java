@@ -0,0 +1,179 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.leeds.ccg.data.core.Data_Environment;
+import uk.ac.leeds.ccg.data.format.Data_ReadCSV;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Utilities;
+import uk.ac.leeds.ccg.projects.wildfire.io.CSVScanner;
+import uk.ac.leeds.ccg.projects.wildfire.io.ColumnTable;
+
+/**
+ * Benchmarks of reading and tokenising the records of a synthetic IRS CSV
+ * file with {@link Data_ReadCSV} as {@link Run2} originally did, with
+ * {@link CSVScanner}, and from a {@link ColumnTable} cache. Scores are
+ * records per second.
+ *
+ * @author Andy Turner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    /**
+     * The number of records.
+     */
+    static final int ROWS = 100_000;
+
+    /**
+     * The charset.
+     */
+    static final Charset CS = StandardCharsets.UTF_8;
+
+    Path dir;
+    Path input;
+    Data_Environment de;
+    ColumnTable table;
+
+    /**
+     * Write the input and build its cache.
+     *
+     * @throws Exception If encountered.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("ParseBenchmark");
+        input = dir.resolve("irs.csv");
+        SyntheticIRS.write(input, ROWS, 1L);
+        table = ColumnTable.get(input, dir, CS);
+        de = new Data_Environment(new Generic_Environment(
+                new Generic_Defaults(dir)));
+    }
+
+    /**
+     * Delete the input and cache.
+     *
+     * @throws IOException If encountered.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Benchmarks.delete(dir);
+    }
+
+    /**
+     * Read each record as a String and parse it into a list of Strings.
+     *
+     * @param bh The blackhole.
+     * @throws IOException If encountered.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void dataReadCSV(Blackhole bh) throws IOException {
+        try (BufferedReader br = IO_Utilities.getBufferedReader(input)) {
+            Data_ReadCSV r = new Data_ReadCSV(de);
+            r.setStreamTokenizer(br, 9);
+            String line = r.readLine();
+            int hf = r.countFields(line);
+            line = r.readRow(hf);
+            while (line != null) {
+                bh.consume(r.parseLine(line));
+                line = r.readRow(hf);
+            }
+        }
+    }
+
+    /**
+     * Tokenise each record without creating Strings.
+     *
+     * @param bh The blackhole.
+     * @throws IOException If encountered.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void csvScanner(Blackhole bh) throws IOException {
+        try (CSVScanner s = new CSVScanner(input, CS)) {
+            s.next();
+            while (s.next()) {
+                bh.consume(s.getFieldCount());
+                bh.consume(s.isBlankRecord());
+            }
+        }
+    }
+
+    /**
+     * Tokenise each record and create a String for each field.
+     *
+     * @param bh The blackhole.
+     * @throws IOException If encountered.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void csvScannerStrings(Blackhole bh) throws IOException {
+        try (CSVScanner s = new CSVScanner(input, CS)) {
+            s.next();
+            while (s.next()) {
+                for (int i = 0; i < s.getFieldCount(); i++) {
+                    bh.consume(s.getString(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Move through the rows of the cache and read a time and a dictionary
+     * encoded field.
+     *
+     * @param bh The blackhole.
+     * @throws IOException If encountered.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void columnTable(Blackhole bh) throws IOException {
+        try (ColumnTable.Cursor c = table.cursor(0, table.getRowCount())) {
+            while (c.next()) {
+                bh.consume(c.isBlank(1) ? 0L : c.parseTime(1));
+                bh.consume(c.getColumnCode(4));
+            }
+        }
+    }
+}
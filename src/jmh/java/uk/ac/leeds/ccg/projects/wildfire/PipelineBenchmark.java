@@ -0,0 +1,116 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.leeds.ccg.projects.wildfire.pipeline.Pipeline;
+
+/**
+ * Benchmark of Part 1 selection and Part 2 counts run together over a
+ * synthetic IRS CSV file by a {@link Pipeline}, with a number of threads and
+ * with or without a columnar cache. Scores are records per second.
+ *
+ * @author Andy Turner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+    /**
+     * The number of records.
+     */
+    static final int ROWS = 100_000;
+
+    /**
+     * The number of threads.
+     */
+    @Param({"1", "4"})
+    public int threads;
+
+    /**
+     * Whether to use a columnar cache.
+     */
+    @Param({"false", "true"})
+    public boolean cache;
+
+    Path dir;
+    Path input;
+    PrintStream out;
+
+    /**
+     * Write the input.
+     *
+     * @throws IOException If encountered.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        out = Benchmarks.quiet();
+        dir = Files.createTempDirectory("PipelineBenchmark");
+        input = dir.resolve("irs.csv");
+        SyntheticIRS.write(input, ROWS, 1L);
+    }
+
+    /**
+     * Delete the input and cache and restore {@link System#out}.
+     *
+     * @throws IOException If encountered.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(out);
+        Benchmarks.delete(dir);
+    }
+
+    /**
+     * Run Part 1 and Part 2 over the input.
+     *
+     * @return The row count.
+     * @throws IOException If encountered.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int part1AndPart2() throws IOException {
+        Run2 r = new Run2(threads);
+        r.initialise();
+        Pipeline p = new Pipeline(threads, r.charset, cache ? dir : null);
+        p.add(r.new Part1());
+        p.add(r.new Part2());
+        return p.run(List.of(input));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+/**
+ * For generating synthetic data shaped like the IRS CSV exports for
+ * benchmarks. The fields are those used by {@link Run2} with the same value
+ * forms: quoted property types and areas, times with and without seconds,
+ * notes with commas, escaped quotes and line breaks, and about 1% blank
+ * records. The same seed gives the same data.
+ *
+ * @author Andy Turner
+ */
+public class SyntheticIRS {
+
+    /**
+     * The header fields.
+     */
+    public static final String[] HEADER = {"0 Incident number",
+        "2.1 Time of call", "2.5 Time of stop", "2.6 Time of close",
+        "3.2 Property Type", "3.7 Resources", "5.16 Area", "5.16a Area ha",
+        "6.1 Other", "8.24 Area", "8.25 Area", "8.35 Area", "8.35a Area",
+        "9.1 Notes", "9.2 Station"};
+
+    static final String[] TYPES = {
+        "\"Property/Outdoor/Grassland, woodland and crops/Heathland\"",
+        "\"Property/Outdoor/Grassland, woodland and crops/Scrub\"",
+        "\"Property/Dwelling/House\"", "\"Property/Road Vehicle/Car\"",
+        "\"Property/Outdoor/Refuse\""};
+
+    /**
+     * Area values, the first being the area selected by {@link Run2}.
+     */
+    static final String[] AREAS = {"\"Over 10,000\"", "\"None\"",
+        "\"Up to 5\"", "\"5 - 20\"", ""};
+
+    static final String[] NOTES = {"plain", "\"with, comma\"",
+        "\"multi\nline, note\"", "\"quoted \"\"x\"\" y\"", ""};
+
+    static final int[] DURATIONS = {5, 30, 90, 400, 1000};
+
+    /**
+     * The random number generator.
+     */
+    final Random random;
+
+    /**
+     * Create a new instance.
+     *
+     * @param seed The seed.
+     */
+    public SyntheticIRS(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Write a synthetic IRS CSV file.
+     *
+     * @param p The file path.
+     * @param rows The number of records after the header.
+     * @param seed The seed.
+     * @throws IOException If encountered.
+     */
+    public static void write(Path p, int rows, long seed) throws IOException {
+        SyntheticIRS s = new SyntheticIRS(seed);
+        try (BufferedWriter w = Files.newBufferedWriter(p,
+                StandardCharsets.UTF_8)) {
+            w.write(String.join(",", HEADER));
+            w.write("\r\n");
+            for (int i = 0; i < rows; i++) {
+                w.write(s.nextRecord(2000000000L + i));
+                w.write("\r\n");
+            }
+        }
+    }
+
+    /**
+     * @param id The incident number.
+     * @return A record without a line terminator.
+     */
+    public String nextRecord(long id) {
+        if (random.nextInt(100) == 0) {
+            return ",".repeat(HEADER.length - 1);
+        }
+        LocalDateTime call = nextLocalDateTime();
+        int duration = pick(DURATIONS);
+        StringBuilder sb = new StringBuilder(200);
+        sb.append(id).append(',');
+        sb.append(format(call, random.nextBoolean())).append(',');
+        sb.append(format(call.plusMinutes(duration), false)).append(',');
+        sb.append(format(call.plusMinutes(duration + 60), false)).append(',');
+        sb.append(pick(TYPES)).append(',');
+        sb.append(random.nextInt(7)).append(',');
+        sb.append(pick(AREAS)).append(',');
+        sb.append(pick(new String[]{"", "0", "1", "3"})).append(',');
+        sb.append(pick(new String[]{"", "0", "2"})).append(',');
+        sb.append(pick(AREAS)).append(',');
+        sb.append(pick(AREAS)).append(',');
+        sb.append(pick(AREAS)).append(',');
+        sb.append(pick(new String[]{"", "50", "150"})).append(',');
+        sb.append(pick(NOTES)).append(',');
+        sb.append(pick(new String[]{"A", "B", "C"}));
+        return sb.toString();
+    }
+
+    /**
+     * @return A time of call from 2009 to 2024.
+     */
+    public LocalDateTime nextLocalDateTime() {
+        return LocalDateTime.of(2009 + random.nextInt(16),
+                1 + random.nextInt(12), 1 + random.nextInt(28),
+                random.nextInt(24), random.nextInt(60),
+                random.nextInt(60));
+    }
+
+    /**
+     * @param n The number of times.
+     * @return Times in the IRS form, half with seconds.
+     */
+    public String[] nextTimes(int n) {
+        String[] r = new String[n];
+        for (int i = 0; i < n; i++) {
+            r[i] = format(nextLocalDateTime(), random.nextBoolean());
+        }
+        return r;
+    }
+
+    /**
+     * @param n The number of values.
+     * @return Property types.
+     */
+    public String[] nextPropertyTypes(int n) {
+        String[] r = new String[n];
+        for (int i = 0; i < n; i++) {
+            r[i] = pick(TYPES);
+        }
+        return r;
+    }
+
+    String pick(String[] a) {
+        return a[random.nextInt(a.length)];
+    }
+
+    int pick(int[] a) {
+        return a[random.nextInt(a.length)];
+    }
+
+    /**
+     * @param t The time.
+     * @param seconds Whether to include seconds.
+     * @return t in the form dd/MM/yyyy HH:mm[:ss].
+     */
+    static String format(LocalDateTime t, boolean seconds) {
+        String s = String.format("%02d/%02d/%04d %02d:%02d",
+                t.getDayOfMonth(), t.getMonthValue(), t.getYear(),
+                t.getHour(), t.getMinute());
+        return seconds ? s + String.format(":%02d", t.getSecond()) : s;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.leeds.ccg.projects.wildfire.time.IRSTime;
+
+/**
+ * Benchmarks of converting IRS times of call to a year, month and day of
+ * year as Part 2 does for each record. Scores are values per second.
+ *
+ * @author Andy Turner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimeBenchmark {
+
+    /**
+     * The number of values.
+     */
+    static final int N = 4096;
+
+    String[] times;
+
+    /**
+     * Generate the values.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        times = new SyntheticIRS(1L).nextTimes(N);
+    }
+
+    /**
+     * Split and parse as the original {@link Run2#getZonedDateTime(String)}
+     * did.
+     *
+     * @param bh The blackhole.
+     */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void splitZonedDateTime(Blackhole bh) {
+        for (String s : times) {
+            ZonedDateTime t = splitZonedDateTime(s);
+            bh.consume(t.getYear());
+            bh.consume(t.getMonth());
+            bh.consume(t.getDayOfYear());
+        }
+    }
+
+    /**
+     * Use {@link Run2#getZonedDateTime(String)}.
+     *
+     * @param bh The blackhole.
+     */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void getZonedDateTime(Blackhole bh) {
+        for (String s : times) {
+            ZonedDateTime t = Run2.getZonedDateTime(s);
+            bh.consume(t.getYear());
+            bh.consume(t.getMonth());
+            bh.consume(t.getDayOfYear());
+        }
+    }
+
+    /**
+     * Use {@link IRSTime} epoch seconds without creating objects.
+     *
+     * @param bh The blackhole.
+     */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void irsTime(Blackhole bh) {
+        for (String s : times) {
+            long t = IRSTime.parse(s);
+            bh.consume(IRSTime.getYear(t));
+            bh.consume(IRSTime.getMonth(t));
+            bh.consume(IRSTime.getDayOfYear(t));
+        }
+    }
+
+    /**
+     * The original Run2 time parsing for comparison.
+     *
+     * @param s A time in the form dd/MM/yyyy HH:mm[:ss].
+     * @return The time in Europe/London.
+     */
+    static ZonedDateTime splitZonedDateTime(String s) {
+        String[] split = s.split(" ");
+        String[] ddmmyyyy = split[0].split("/");
+        int day = Integer.parseInt(ddmmyyyy[0]);
+        int month = Integer.parseInt(ddmmyyyy[1]);
+        int year = Integer.parseInt(ddmmyyyy[2]);
+        String[] timeSplit = split[1].split(":");
+        int hour = Integer.parseInt(timeSplit[0]);
+        int minute = Integer.parseInt(timeSplit[1]);
+        int second = timeSplit.length == 3 ? Integer.parseInt(timeSplit[2]) : 0;
+        return ZonedDateTime.of(year, month, day, hour, minute, second, 0,
+                ZoneId.of("Europe/London"));
+    }
+}
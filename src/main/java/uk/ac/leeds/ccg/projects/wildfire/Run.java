@@ -18,14 +18,23 @@ package uk.ac.leeds.ccg.projects.wildfire;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.DayOfWeek;
+import java.time.Month;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.poi.ss.usermodel.Cell;
@@ -34,6 +43,14 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import uk.ac.leeds.ccg.generic.util.Generic_Time;
+import uk.ac.leeds.ccg.projects.wildfire.io.CSVWriter;
+import uk.ac.leeds.ccg.projects.wildfire.io.GzipInput;
+import uk.ac.leeds.ccg.projects.wildfire.io.XLSXRow;
+import uk.ac.leeds.ccg.projects.wildfire.io.XLSXStreamReader;
+import uk.ac.leeds.ccg.projects.wildfire.io.XLSXStreamWriter;
+import uk.ac.leeds.ccg.projects.wildfire.metrics.Metrics;
+import uk.ac.leeds.ccg.projects.wildfire.metrics.RunEvent;
+import uk.ac.leeds.ccg.projects.wildfire.time.IRSTime;
 
 /**
  * The main file to run for the initial analysis Stuart wanted which explored 
@@ -41,15 +58,119 @@ import uk.ac.leeds.ccg.generic.util.Generic_Time;
  * Apache POI. Essentially, this processed input data and created 3 additional 
  * output columns
  *
+ * In batch mode every sheet of a list of workbooks, or of all the workbooks
+ * in a directory, is processed a row at a time with the sheets processed
+ * concurrently. Each sheet is processed to the end of its data and written
+ * to its own output workbook with a summary of its derived values.
+ *
  * @author Andy Turner
  */
 public class Run {
 
+    /**
+     * Whether to read the input a row at a time using {@link XLSXStreamReader}
+     * rather than loading the whole workbook into memory.
+     */
+    boolean streaming;
+
+    /**
+     * Rows with an index greater than or equal to this are not processed.
+     */
+    int rowLimit = 11298;
+
+    /**
+     * The number of rows kept in memory when writing in streaming mode.
+     */
+    int rowWindow = XLSXStreamWriter.DEFAULT_WINDOW;
+
+    /**
+     * Whether to compress the temporary files written in streaming mode.
+     */
+    boolean compressTempFiles = true;
+
+    /**
+     * The number of sheets processed at once in batch mode.
+     */
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The metrics of the last run, written next to the output as JSON.
+     */
+    Metrics metrics = new Metrics();
+
+    /**
+     * Column headers for the derived columns.
+     */
+    static final String[] DERIVED_HEADERS = new String[]{
+        "Day of week fire start",
+        "Month of year fire start",
+        "Year fire start",
+        "Seconds from call to stop",
+        "Seconds from stop to close"};
+
     public Run() {
+        this(false);
+    }
+
+    /**
+     * @param streaming Whether to read the input using the streaming event API
+     * and write the output using a streaming writer.
+     */
+    public Run(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * @param streaming Whether to read the input using the streaming event API
+     * and write the output using a streaming writer.
+     * @param rowWindow The number of rows kept in memory when writing.
+     * @param compressTempFiles Whether to compress temporary files written.
+     */
+    public Run(boolean streaming, int rowWindow, boolean compressTempFiles) {
+        this.streaming = streaming;
+        this.rowWindow = rowWindow;
+        this.compressTempFiles = compressTempFiles;
     }
 
+    /**
+     * Main method.
+     *
+     * @param args Options: "-stream" to read the input using the streaming
+     * event API; "-batch" followed by the path of a workbook or of a
+     * directory of workbooks, which can be repeated, to process every sheet
+     * of them in batch mode; "-out" followed by the output directory for
+     * batch mode; and "-threads" followed by the number of sheets to process
+     * at once in batch mode.
+     */
     public static void main(String[] args) {
-        new Run().run();
+        boolean streaming = false;
+        List<Path> batch = new ArrayList<>();
+        Path pOut = Paths.get("output");
+        int threads = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-stream")) {
+                streaming = true;
+            } else if (args[i].equalsIgnoreCase("-batch") && i + 1 < args.length) {
+                batch.add(Paths.get(args[++i]));
+            } else if (args[i].equalsIgnoreCase("-out") && i + 1 < args.length) {
+                pOut = Paths.get(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            }
+        }
+        Run r = new Run(streaming);
+        if (threads > 0) {
+            r.threads = threads;
+        }
+        if (batch.isEmpty()) {
+            r.run();
+        } else {
+            try {
+                r.runBatch(batch, pOut);
+            } catch (IOException ex) {
+                Logger.getLogger(Run.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
     }
     
     public void run() {
@@ -62,24 +183,68 @@ public class Run {
         } catch (IOException ex) {
             Logger.getLogger(Run.class.getName()).log(Level.SEVERE, null, ex);
         }
+        RunEvent event = new RunEvent();
+        event.begin();
+        metrics = new Metrics();
+        Path pSrc = pIn;
+        try {
+            // A gzip compressed workbook is inflated to a temporary file.
+            pIn = GzipInput.resolve(pSrc, null, 1);
+        } catch (IOException ex) {
+            Logger.getLogger(Run.class.getName()).log(Level.SEVERE, null, ex);
+            return;
+        }
+        if (streaming) {
+            try {
+                runStreaming(pIn, pOut);
+                System.out.println("xlsx written successfully on disk.");
+            } catch (IOException e) {
+                e.printStackTrace(System.err);
+            }
+        } else {
+            runWorkbook(pIn, pOut);
+        }
+        try {
+            metrics.add(Metrics.BYTES, Files.size(pSrc));
+            metrics.writeJson(Paths.get(pOut.toString() + ".metrics.json"));
+        } catch (IOException ex) {
+            Logger.getLogger(Run.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        event.program = "Run";
+        event.rows = metrics.get(Metrics.ROWS);
+        event.commit();
+    }
+
+    /**
+     * Process the first sheet of pIn with the whole workbook in memory and
+     * write it with the derived columns appended to pOut.
+     *
+     * @param pIn The input XLSX file path.
+     * @param pOut The output XLSX file path.
+     */
+    public void runWorkbook(Path pIn, Path pOut) {
 
         //DataFormatter df = new DataFormatter();
 
         try {
             //Generic_Environment ge = new Generic_Environment(new Generic_Defaults(pData));
             XSSFWorkbook workbook;
+            long t = System.nanoTime();
             try (FileInputStream file = new FileInputStream(pIn.toFile())) {
                 // Create Workbook instance holding reference to .xlsx file.
                 workbook = new XSSFWorkbook(file);
+                metrics.set("stage.read.nanos", System.nanoTime() - t);
+                t = System.nanoTime();
                 //FormulaEvaluator fe = new XSSFFormulaEvaluator(workbook);
                 // Get first/desired sheet from the workbook.
                 XSSFSheet sheet = workbook.getSheetAt(0);
 
                 // Iterate through each rows one by one.
                 int rn = 0;
+                Derived d = new Derived();
                 for (Row row : sheet) {
                     //System.out.println(rn + " out of " + sheet.getLastRowNum());
-                    if (rn < 11298) {
+                    if (rn < rowLimit) {
                         // Add three columns
                         int dowc = row.getLastCellNum(); // Day of week
                         row.createCell(dowc);
@@ -95,11 +260,11 @@ public class Run {
                         Iterator<Cell> cellIterator = row.cellIterator();
                         // Print everything to stdout.
                         if (rn == 0) {
-                            row.getCell(dowc).setCellValue("Day of week fire start");
-                            row.getCell(moyc).setCellValue("Month of year fire start");
-                            row.getCell(yc).setCellValue("Year fire start");
-                            row.getCell(d1c).setCellValue("Seconds from call to stop");
-                            row.getCell(d2c).setCellValue("Seconds from stop to close");
+                            row.getCell(dowc).setCellValue(DERIVED_HEADERS[0]);
+                            row.getCell(moyc).setCellValue(DERIVED_HEADERS[1]);
+                            row.getCell(yc).setCellValue(DERIVED_HEADERS[2]);
+                            row.getCell(d1c).setCellValue(DERIVED_HEADERS[3]);
+                            row.getCell(d2c).setCellValue(DERIVED_HEADERS[4]);
                             while (cellIterator.hasNext()) {
                                 Cell cell = cellIterator.next();
                                 CellType ct = cell.getCellType();
@@ -111,44 +276,15 @@ public class Run {
                             }
                             System.out.println("");
                         } else {
-                            long diff1 = 0;
-                            long diff2 = 0;
-                            String dow = "";
-                            String moy = "";
-                            int year = 0;
-                            Cell c8 = row.getCell(8);
-                            if (c8 != null) {
-                                Date d0 = c8.getDateCellValue();
-                                ZonedDateTime zdt0 = getZonedDateTime(d0);
-                                dow = zdt0.getDayOfWeek().toString();
-                                moy = zdt0.getMonth().toString();
-                                year = zdt0.getYear();
-                                Cell c14 = row.getCell(14);
-                                if (c14 != null) {
-                                    Date d1 = c14.getDateCellValue();
-                                    ZonedDateTime zdt1 = getZonedDateTime(d1);
-                                    diff1 = ChronoUnit.SECONDS.between(zdt0, zdt1);
-                                    //System.out.println(zdt0.toString() + " " + zdt1.toString() + " " + diff1);
-                                    Cell c15 = row.getCell(15);
-                                    if (c15 != null) {
-                                        Date d2 = c15.getDateCellValue();
-                                        ZonedDateTime zdt2 = getZonedDateTime(d2);
-                                        diff2 = ChronoUnit.SECONDS.between(zdt1, zdt2);
-                                        //System.out.println(zdt2.toString() + " " + diff2);
-                                    } else {
-                                        diff2 = -1;
-                                    }
-                                } else {
-                                    diff1 = -1;
-                                }
-                            } else {
-                                System.out.println("No fire start date!");
-                            }
-                            row.getCell(dowc).setCellValue(dow);
-                            row.getCell(moyc).setCellValue(moy);
-                            row.getCell(yc).setCellValue(year);
-                            row.getCell(d1c).setCellValue(diff1);
-                            row.getCell(d2c).setCellValue(diff2);
+                            double d0 = getSerial(row.getCell(8));
+                            double d1 = Double.isNaN(d0) ? Double.NaN : getSerial(row.getCell(14));
+                            double d2 = Double.isNaN(d1) ? Double.NaN : getSerial(row.getCell(15));
+                            derive(d0, d1, d2, d);
+                            row.getCell(dowc).setCellValue(d.dow);
+                            row.getCell(moyc).setCellValue(d.moy);
+                            row.getCell(yc).setCellValue(d.year);
+                            row.getCell(d1c).setCellValue(d.diff1);
+                            row.getCell(d2c).setCellValue(d.diff2);
 //                        String cellValueStr = df.formatCellValue();
 //
 //                        //CellValue c8e = fe.evaluate(c8); // This will evaluate the cell, And any type of cell will return string value
@@ -174,11 +310,15 @@ public class Run {
                     }
                     rn++;
                 }
+                metrics.add(Metrics.ROWS, Math.min(rn, rowLimit));
+                metrics.set("stage.process.nanos", System.nanoTime() - t);
             }
+            t = System.nanoTime();
             try ( //Write the workbook in file system
                     FileOutputStream out = new FileOutputStream(pOut.toFile())) {
                 workbook.write(out);
             }
+            metrics.set("stage.write.nanos", System.nanoTime() - t);
             System.out.println("xlsx written successfully on disk.");
         } catch (IOException e) {
             e.printStackTrace(System.err);
@@ -186,6 +326,518 @@ public class Run {
 
     }
 
+    /**
+     * Process the first sheet of pIn a row at a time using
+     * {@link XLSXStreamReader} and write each row with the derived columns
+     * appended to pOut using {@link XLSXStreamWriter}. Rows from
+     * {@link #rowLimit} on are written without the derived columns. Only the
+     * current row and the writer's window of rows are held in memory. The
+     * workbook is written to a temporary file that is moved to pOut once it
+     * is complete.
+     *
+     * @param pIn The input XLSX file path.
+     * @param pOut The output XLSX file path.
+     * @throws IOException If encountered.
+     */
+    public void runStreaming(Path pIn, Path pOut) throws IOException {
+        Derived d = new Derived();
+        long t = System.nanoTime();
+        XLSXStreamReader reader = new XLSXStreamReader();
+        Path tmp = getTempPath(pOut);
+        try (XLSXStreamWriter w = new XLSXStreamWriter(tmp,
+                reader.getSheetNames(pIn).get(0), rowWindow,
+                compressTempFiles)) {
+            // Rows are counted as they are read as by runWorkbook rather
+            // than by row number, as rows can be missing.
+            int[] rows = new int[1];
+            LongAdder processed = metrics.counter(Metrics.ROWS);
+            reader.read(pIn, 0, (XLSXRow row) -> {
+                int rn = rows[0]++;
+                if (rn >= rowLimit) {
+                    // Written as it is as by runWorkbook.
+                    w.writeRow(row);
+                    return;
+                }
+                processed.increment();
+                writeRow(w, row, rn == 0, d);
+            });
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+        Files.move(tmp, pOut, StandardCopyOption.REPLACE_EXISTING);
+        metrics.set("stage.stream.nanos", System.nanoTime() - t);
+    }
+
+    /**
+     * @param pOut An output file path.
+     * @return The path of the temporary file next to pOut that it is written
+     * to before being moved to pOut.
+     */
+    static Path getTempPath(Path pOut) {
+        return pOut.resolveSibling(pOut.getFileName().toString() + ".tmp");
+    }
+
+    /**
+     * Process every sheet of the workbooks in batch mode. The sheets are
+     * processed concurrently by {@link #threads} threads, each a row at a
+     * time, so memory use is bounded by the number of threads rather than
+     * the size of the workbooks. Each sheet is written with the derived
+     * columns appended to its own workbook in pOutDir named after the input
+     * workbook and the sheet, together with a summary CSV file. The
+     * summaries of all the sheets are also written to "batch.csv" in
+     * pOutDir in input order.
+     *
+     * @param inputs The paths of workbooks or of directories of workbooks.
+     * Gzip compressed workbooks are inflated to temporary files.
+     * @param pOutDir The output directory.
+     * @return The summaries of the sheets in input order.
+     * @throws IOException If encountered finding or opening the workbooks.
+     * A sheet that cannot be processed is logged and its summary has the
+     * error.
+     */
+    public List<SheetSummary> runBatch(List<Path> inputs, Path pOutDir)
+            throws IOException {
+        RunEvent event = new RunEvent();
+        event.begin();
+        metrics = new Metrics();
+        Files.createDirectories(pOutDir);
+        List<SheetSummary> r = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            XLSXStreamReader reader = new XLSXStreamReader();
+            List<ForkJoinTask<SheetSummary>> tasks = new ArrayList<>();
+            for (Path pSrc : getWorkbooks(inputs)) {
+                Path pIn = GzipInput.resolve(pSrc, null, 1);
+                metrics.add(Metrics.BYTES, Files.size(pSrc));
+                List<String> names = reader.getSheetNames(pIn);
+                for (int i = 0; i < names.size(); i++) {
+                    SheetSummary s = new SheetSummary(pSrc, i, names.get(i));
+                    Path pOut = Paths.get(pOutDir.toString(),
+                            s.getBaseName() + ".xlsx");
+                    tasks.add(pool.submit(() -> runSheet(pIn, s, pOut)));
+                }
+            }
+            metrics.set("batch.sheets", tasks.size());
+            for (var task : tasks) {
+                r.add(task.join());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        try (CSVWriter w = new CSVWriter(Paths.get(pOutDir.toString(),
+                "batch.csv"), StandardCharsets.UTF_8)) {
+            SheetSummary.writeHeader(w);
+            for (SheetSummary s : r) {
+                s.write(w);
+            }
+        }
+        metrics.writeJson(Paths.get(pOutDir.toString(), "batch.metrics.json"));
+        event.program = "Run";
+        event.rows = metrics.get(Metrics.ROWS);
+        event.commit();
+        return r;
+    }
+
+    /**
+     * @param inputs The paths of workbooks or of directories of workbooks.
+     * @return The workbooks, with those in each directory in name order.
+     * Files in a directory are workbooks if their name ends ".xlsx" or
+     * ".xlsx.gz" and does not start with "~$", which Excel uses for lock
+     * files.
+     * @throws IOException If encountered.
+     */
+    static List<Path> getWorkbooks(List<Path> inputs) throws IOException {
+        List<Path> r = new ArrayList<>();
+        for (Path p : inputs) {
+            if (Files.isDirectory(p)) {
+                try (Stream<Path> s = Files.list(p)) {
+                    s.filter(f -> {
+                        String n = f.getFileName().toString();
+                        return !n.startsWith("~$") && (n.endsWith(".xlsx")
+                                || n.endsWith(".xlsx.gz"));
+                    }).sorted().forEach(r::add);
+                }
+            } else {
+                r.add(p);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Process a sheet a row at a time to the end of its data, which is the
+     * last row that is not empty, and write it with the derived columns
+     * appended. The first row that is not empty is the header. The summary
+     * is also written to a CSV file next to pOut. The workbook is written to
+     * a temporary file that is moved to pOut once it and the summary are
+     * complete, so a sheet that fails partway leaves no output.
+     *
+     * @param pIn The input XLSX file path.
+     * @param s The summary to add to.
+     * @param pOut The output XLSX file path.
+     * @return s.
+     */
+    SheetSummary runSheet(Path pIn, SheetSummary s, Path pOut) {
+        long t = System.nanoTime();
+        Derived d = new Derived();
+        Path tmp = getTempPath(pOut);
+        try (XLSXStreamWriter w = new XLSXStreamWriter(tmp, s.sheet,
+                rowWindow, compressTempFiles)) {
+            new XLSXStreamReader().read(pIn, s.index, (XLSXRow row) -> {
+                if (row.isEmpty()) {
+                    return;
+                }
+                boolean header = s.rows++ == 0;
+                writeRow(w, row, header, d);
+                if (!header) {
+                    s.add(d);
+                }
+            });
+        } catch (IOException | RuntimeException ex) {
+            Logger.getLogger(Run.class.getName()).log(Level.SEVERE,
+                    s.workbook + " sheet " + s.sheet, ex);
+            s.error = String.valueOf(ex.getMessage());
+        }
+        s.nanos = System.nanoTime() - t;
+        String name = pOut.getFileName().toString();
+        Path pSummary = pOut.resolveSibling(
+                name.substring(0, name.length() - 5) + ".summary.csv");
+        if (s.error == null) {
+            try (CSVWriter w = new CSVWriter(pSummary,
+                    StandardCharsets.UTF_8)) {
+                SheetSummary.writeHeader(w);
+                s.write(w);
+            } catch (IOException ex) {
+                Logger.getLogger(Run.class.getName()).log(Level.SEVERE,
+                        s.workbook + " sheet " + s.sheet, ex);
+                s.error = String.valueOf(ex.getMessage());
+            }
+        }
+        try {
+            if (s.error == null) {
+                Files.move(tmp, pOut, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                // Outputs of an earlier run are removed so they are not
+                // taken for this one.
+                Files.deleteIfExists(tmp);
+                Files.deleteIfExists(pOut);
+                Files.deleteIfExists(pSummary);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(Run.class.getName()).log(Level.SEVERE,
+                    s.workbook + " sheet " + s.sheet, ex);
+            s.error = String.valueOf(ex.getMessage());
+        }
+        metrics.add(Metrics.ROWS, s.rows);
+        return s;
+    }
+
+    /**
+     * Write a row with the derived columns appended, or for the header the
+     * headers of the derived columns.
+     *
+     * @param w The writer.
+     * @param row The row.
+     * @param header Whether row is the header.
+     * @param d For the derived values, which are set if row is not the
+     * header.
+     */
+    static void writeRow(XLSXStreamWriter w, XLSXRow row, boolean header,
+            Derived d) {
+        Row out = w.writeRow(row);
+        int c = row.getLastCellNum();
+        if (header) {
+            for (String h : DERIVED_HEADERS) {
+                out.createCell(c++).setCellValue(h);
+            }
+        } else {
+            double d0 = getSerial(row, 8);
+            double d1 = Double.isNaN(d0) ? Double.NaN : getSerial(row, 14);
+            double d2 = Double.isNaN(d1) ? Double.NaN : getSerial(row, 15);
+            derive(d0, d1, d2, d);
+            out.createCell(c++).setCellValue(d.dow);
+            out.createCell(c++).setCellValue(d.moy);
+            out.createCell(c++).setCellValue(d.year);
+            out.createCell(c++).setCellValue(d.diff1);
+            out.createCell(c).setCellValue(d.diff2);
+        }
+    }
+
+    /**
+     * @param c The cell.
+     * @return The Excel serial date value of c or {@link Double#NaN} if c is
+     * {@code null} or blank.
+     */
+    static double getSerial(Cell c) {
+        if (c == null || c.getCellType() == CellType.BLANK) {
+            return Double.NaN;
+        }
+        return c.getNumericCellValue();
+    }
+
+    /**
+     * @param row The row.
+     * @param i The cell index.
+     * @return The Excel serial date value of cell i or {@link Double#NaN} if
+     * cell i is not numeric.
+     */
+    static double getSerial(XLSXRow row, int i) {
+        if (!row.isNumeric(i)) {
+            return Double.NaN;
+        }
+        return row.getNumber(i);
+    }
+
+    /**
+     * For holding the values derived for a row.
+     */
+    public static class Derived {
+
+        /**
+         * Day of week fire start.
+         */
+        public String dow;
+
+        /**
+         * Month of year fire start.
+         */
+        public String moy;
+
+        /**
+         * Year fire start.
+         */
+        public int year;
+
+        /**
+         * Seconds from call to stop, or -1 if there is no stop.
+         */
+        public long diff1;
+
+        /**
+         * Seconds from stop to close, or -1 if there is no close.
+         */
+        public long diff2;
+    }
+
+    /**
+     * A summary of the derived values of the rows of a sheet processed in
+     * batch mode.
+     */
+    public static class SheetSummary {
+
+        /**
+         * The workbook path.
+         */
+        public final Path workbook;
+
+        /**
+         * The zero based index of the sheet in the workbook.
+         */
+        public final int index;
+
+        /**
+         * The sheet name.
+         */
+        public final String sheet;
+
+        /**
+         * The number of rows that are not empty including the header.
+         */
+        public long rows;
+
+        /**
+         * The number of rows with no fire start.
+         */
+        public long noStart;
+
+        /**
+         * The number of rows with a fire start and no stop.
+         */
+        public long noStop;
+
+        /**
+         * The number of rows with a stop and no close.
+         */
+        public long noClose;
+
+        /**
+         * The number of rows with a fire start and a stop.
+         */
+        public long stops;
+
+        /**
+         * The total seconds from call to stop.
+         */
+        public long toStop;
+
+        /**
+         * The number of rows with a stop and a close.
+         */
+        public long closes;
+
+        /**
+         * The total seconds from stop to close.
+         */
+        public long toClose;
+
+        /**
+         * The first year of a fire start.
+         */
+        public int minYear = Integer.MAX_VALUE;
+
+        /**
+         * The last year of a fire start.
+         */
+        public int maxYear = Integer.MIN_VALUE;
+
+        /**
+         * The time taken in nanoseconds.
+         */
+        public long nanos;
+
+        /**
+         * The error if the sheet could not be processed, otherwise null.
+         */
+        public String error;
+
+        /**
+         * @param workbook The workbook path.
+         * @param index The zero based index of the sheet.
+         * @param sheet The sheet name.
+         */
+        public SheetSummary(Path workbook, int index, String sheet) {
+            this.workbook = workbook;
+            this.index = index;
+            this.sheet = sheet;
+        }
+
+        /**
+         * Add the values derived for a row.
+         *
+         * @param d The derived values.
+         */
+        void add(Derived d) {
+            if (d.year == 0) {
+                noStart++;
+                return;
+            }
+            minYear = Math.min(minYear, d.year);
+            maxYear = Math.max(maxYear, d.year);
+            if (d.diff1 < 0) {
+                noStop++;
+                return;
+            }
+            stops++;
+            toStop += d.diff1;
+            if (d.diff2 < 0) {
+                noClose++;
+                return;
+            }
+            closes++;
+            toClose += d.diff2;
+        }
+
+        /**
+         * @return A name for the outputs of the sheet from the workbook file
+         * name without its extensions and the sheet name, with characters
+         * other than letters, digits, spaces, dots, hyphens and underscores
+         * replaced with underscores.
+         */
+        public String getBaseName() {
+            String n = workbook.getFileName().toString();
+            n = n.replaceFirst("(?i)\\.xlsx(\\.gz)?$", "");
+            return (n + "_" + sheet).replaceAll("[^\\w .-]", "_");
+        }
+
+        /**
+         * Write the header for {@link #write(CSVWriter)}.
+         *
+         * @param w The writer.
+         * @throws IOException If encountered.
+         */
+        static void writeHeader(CSVWriter w) throws IOException {
+            w.field("Workbook");
+            w.field("Sheet");
+            w.field("Records");
+            w.field("No start");
+            w.field("No stop");
+            w.field("No close");
+            w.field("Mean seconds call to stop");
+            w.field("Mean seconds stop to close");
+            w.field("First year");
+            w.field("Last year");
+            w.field("ms");
+            w.field("Error");
+            w.endRow();
+        }
+
+        /**
+         * Write this as a row.
+         *
+         * @param w The writer.
+         * @throws IOException If encountered.
+         */
+        void write(CSVWriter w) throws IOException {
+            w.field(workbook.toString());
+            w.field(sheet);
+            w.field(Math.max(0, rows - 1));
+            w.field(noStart);
+            w.field(noStop);
+            w.field(noClose);
+            w.field(stops == 0 ? 0 : toStop / stops);
+            w.field(closes == 0 ? 0 : toClose / closes);
+            if (minYear > maxYear) {
+                w.field();
+                w.field();
+            } else {
+                w.field(minYear);
+                w.field(maxYear);
+            }
+            w.field(nanos / 1000000);
+            w.field(error == null ? "" : error);
+            w.endRow();
+        }
+    }
+
+    /**
+     * Derive the day of week, month of year and year of the fire start and
+     * the durations from call to stop and from stop to close. This works
+     * directly on Excel serial date values using {@link IRSTime} so no dates
+     * or strings are formatted or parsed.
+     *
+     * @param d0 The fire start (call) Excel serial date, or NaN.
+     * @param d1 The stop Excel serial date, or NaN.
+     * @param d2 The close Excel serial date, or NaN.
+     * @param r The instance to set the derived values in.
+     */
+    public static void derive(double d0, double d1, double d2, Derived r) {
+        r.dow = "";
+        r.moy = "";
+        r.year = 0;
+        r.diff1 = 0;
+        r.diff2 = 0;
+        if (!Double.isNaN(d0)) {
+            long t0 = IRSTime.fromExcelSerial(d0);
+            r.dow = DayOfWeek.of(IRSTime.getDayOfWeek(t0)).name();
+            r.moy = Month.of(IRSTime.getMonth(t0)).name();
+            r.year = IRSTime.getYear(t0);
+            if (!Double.isNaN(d1)) {
+                long t1 = IRSTime.fromExcelSerial(d1);
+                r.diff1 = t1 - t0;
+                if (!Double.isNaN(d2)) {
+                    r.diff2 = IRSTime.fromExcelSerial(d2) - t1;
+                } else {
+                    r.diff2 = -1;
+                }
+            } else {
+                r.diff1 = -1;
+            }
+        } else {
+            System.out.println("No fire start date!");
+        }
+    }
+
     /**
      * Compile Date as a ZonedDateTime.
      * 
@@ -15,29 +15,47 @@
  */
 package uk.ac.leeds.ccg.projects.wildfire;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.time.Month;
-import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.TreeMap;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import uk.ac.leeds.ccg.data.core.Data_Environment;
-import uk.ac.leeds.ccg.data.format.Data_ReadCSV;
-import uk.ac.leeds.ccg.generic.core.Generic_Environment;
-import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
-import uk.ac.leeds.ccg.generic.io.Generic_IO;
-import uk.ac.leeds.ccg.generic.util.Generic_Collections;
-import uk.ac.leeds.ccg.io.IO_Utilities;
+import java.util.stream.Stream;
+import uk.ac.leeds.ccg.projects.wildfire.io.CSVWriter;
+import uk.ac.leeds.ccg.projects.wildfire.io.ColumnTable;
+import uk.ac.leeds.ccg.projects.wildfire.io.FieldDictionary;
+import uk.ac.leeds.ccg.projects.wildfire.io.RecordCursor;
+import uk.ac.leeds.ccg.projects.wildfire.metrics.Metrics;
+import uk.ac.leeds.ccg.projects.wildfire.metrics.RunEvent;
+import uk.ac.leeds.ccg.projects.wildfire.metrics.StageEvent;
+import uk.ac.leeds.ccg.projects.wildfire.pipeline.Analysis;
+import uk.ac.leeds.ccg.projects.wildfire.pipeline.Pipeline;
+import uk.ac.leeds.ccg.projects.wildfire.pipeline.Profiler;
+import uk.ac.leeds.ccg.projects.wildfire.rules.RuleEvaluator;
+import uk.ac.leeds.ccg.projects.wildfire.rules.SelectionRules;
+import uk.ac.leeds.ccg.projects.wildfire.stats.Aggregators;
+import uk.ac.leeds.ccg.projects.wildfire.stats.CodeCounts;
+import uk.ac.leeds.ccg.projects.wildfire.stats.CountCube;
+import uk.ac.leeds.ccg.projects.wildfire.stats.Counter;
+import uk.ac.leeds.ccg.projects.wildfire.stats.QuantileSketch;
+import uk.ac.leeds.ccg.projects.wildfire.stats.QuantileSketches;
+import uk.ac.leeds.ccg.projects.wildfire.time.IRSTime;
+import uk.ac.leeds.ccg.projects.wildfire.time.TimeIndex;
 
 /**
  * The main file to run for the second set of provided data. These are two files
@@ -50,83 +68,170 @@ public class Run2 {
     // Lookup from a short code to the full field name.
     HashMap<String, String> fieldLookup;
 
-    HashMap<String, HashSet<String>> fieldValues;
+    // Lookup from a short code to the field index in the current input.
+    HashMap<String, Integer> fieldIndexes;
 
-    // For storing records against recordIDs.
-    HashMap<Integer, String> records;
+    // Dictionaries of the values of fields by field.
+    HashMap<String, FieldDictionary> fieldValues;
+
+    // For storing the selected records.
+    SelectedRecords records;
+
+    // The index in records of the input file being processed.
+    int fileIndex;
 
     // For storing the input file header.
     String header;
 
+    // The number of threads to process each input file with.
+    int threads = 1;
+
+    // The charset of the input files.
+    Charset charset = Charset.defaultCharset();
+
+    // Whether to use columnar caches of the input files.
+    boolean cache;
+
+    // The directory for columnar caches of the input files, or null to
+    // parse the input files every time.
+    Path cacheDir;
+
+    // Selection rules evaluated in Part 1 as well as a, b and c, or null.
+    SelectionRules rules;
+
+    // The compiled selection rules and their counts and selections.
+    RuleEvaluator ruleEvaluator;
+
+    // The checkpoint file for processing only new records, or null.
+    Path checkpoint;
+
+    // The directory to inflate compressed input files to, which is the cache
+    // directory or else next to the checkpoint, or null for a temporary
+    // directory.
+    Path inflateDir;
+
+    // Whether to drop records with an incident number already read so an
+    // incident in both exports is only counted once.
+    boolean deduplicate = true;
+
+    // Whether to profile every field of the input files.
+    boolean profile;
+
+    // The directory of input files to process concurrently, or null to
+    // process the two exports in the data directory in turn.
+    Path inputDir;
+
+    // The output directory, or null for the output directory next to the
+    // input directory.
+    Path outputDir;
+
+    // The memory budget in bytes for the input files processed at once when
+    // processing a directory.
+    long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+
+    // Field indexes set from the header.
+    int i_5_16;
+    int i_5_16a;
+    int i_8_24;
+    int i_8_25;
+    int i_8_35;
+    int i_8_35a;
+    int i_3_7;
+    int i_6_1;
+    int i_2_1;
+    int i_2_5;
+    int i_2_6;
+    int i_3_2;
+
     // General variables for Part 1
     // ----------------------------
     // Selected fields
     ArrayList<String> sFields;
 
+    // The Part 1 field dictionaries and counts, merged from workers in
+    // input order.
+    Aggregators part1Stats;
+
     // a
-    // Identifies those records that meet a criteria.
-    HashSet<Integer> a;
     // A class of area for which selections are made.
     String area = "\"Over 10,000";
     int areaHa = 1;
 
     // 5_16
-    HashSet<String> vs_5_16;
-    int count_5_16 = 0;
+    FieldDictionary vs_5_16;
+    FieldDictionary.Test isArea_5_16;
+    Counter count_5_16;
     String s_5_16 = "5.16 ";
     // 5_16a
-    HashSet<String> vs_5_16a;
-    int count_5_16a = 0;
+    FieldDictionary vs_5_16a;
+    Counter count_5_16a;
     String s_5_16a = "5.16a ";
     // 8_24
-    HashSet<String> vs_8_24;
-    int count_8_24 = 0;
+    FieldDictionary vs_8_24;
+    FieldDictionary.Test isArea_8_24;
+    Counter count_8_24;
     String s_8_24 = "8.24 ";
     // 8_25
-    HashSet<String> vs_8_25;
-    int count_8_25 = 0;
+    FieldDictionary vs_8_25;
+    FieldDictionary.Test isArea_8_25;
+    Counter count_8_25;
     String s_8_25 = "8.25 ";
     // 8_35
-    HashSet<String> vs_8_35;
-    int count_8_35 = 0;
+    FieldDictionary vs_8_35;
+    FieldDictionary.Test isArea_8_35;
+    Counter count_8_35;
     String s_8_35 = "8.35 ";
     // 8_35a
-    HashSet<String> vs_8_35a;
-    int count_8_35a = 0;
+    FieldDictionary vs_8_35a;
+    Counter count_8_35a;
     String s_8_35a = "8.35a ";
 
     // b
     // Identifies those records that meet b criteria.
     int resources = 4;
-    HashSet<Integer> b;
-    HashSet<String> vs_3_7;
+    FieldDictionary vs_3_7;
     String s_3_7 = "3.7 ";
-    HashSet<String> vs_6_1;
+    FieldDictionary vs_6_1;
     String s_6_1 = "6.1 ";
-    int count_resourceCommittedGE_resources = 0;
+    Counter count_resourceCommittedGE_resources;
 
     // c
     // Identifies those records that meet c criteria.
     int minutes = 360;
     int hours = minutes / 60;
-    HashSet<Integer> c;
     String s_2_1 = "2.1 ";
     String s_2_5 = "2.5 ";
     String s_2_6 = "2.6 ";
-    HashMap<Integer, Long> callsToStops;
-    HashMap<Integer, Long> stopsToCloses;
-    HashMap<Integer, Long> callsToCloses;
-    HashMap<Integer, String> dates;
-    HashMap<Integer, String> times;
-    int count_durationGE_hours = 0;
+    Counter count_durationGE_hours;
+
+    // Durations
+    // Sketches of the durations in minutes of all records with a call time,
+    // overall and by year, month and property type, for each of DURATIONS.
+    static final String[] DURATIONS = {"Call to stop", "Stop to close",
+        "Call to close"};
+    QuantileSketch[] durations;
+    QuantileSketches[] durationsByYear;
+    QuantileSketches[] durationsByMonth;
+    QuantileSketches[] durationsByType;
+    // Property types (with any quotes) for durationsByType.
+    FieldDictionary vs_3_2_durations;
 
     // General variables for Part 2
     // ----------------------------
-    HashSet<String> vs_3_2_Property_Type;
-    TreeMap<String, Integer> counts_3_2_Property_Type;
-    TreeMap<Month, TreeMap<Integer, Integer>> countsOutDoorFireByYearAndMonth;
-    TreeMap<Integer, TreeMap<Integer, Integer>> countsOutDoorFireByYearAndWeek;
-    TreeMap<Integer, TreeMap<Integer, Integer>> countsOutDoorFireByYearAndDay;
+    // The Part 2 counts, merged from workers in input order.
+    Aggregators part2Stats;
+    // Property types (with any quotes) and counts by dictionary code.
+    FieldDictionary vs_3_2_Property_Type;
+    FieldDictionary.Test isOutdoor_3_2;
+    CodeCounts counts_3_2_Property_Type;
+    String outdoorType = "Property/Outdoor/Grassland, woodland and crops/";
+    CountCube countsOutDoorFireByYearAndMonth;
+    CountCube countsOutDoorFireByYearAndWeek;
+    CountCube countsOutDoorFireByYearAndDay;
+    // Start times, row ids and property type codes for the time index.
+    TimeIndex.Builder timeIndex;
+    // The time index built when Part 2 finishes.
+    TimeIndex index;
     String s_3_2_Property_Type = "3.2 Property Type";
 
     /**
@@ -135,19 +240,93 @@ public class Run2 {
     public Run2() {
     }
 
+    /**
+     * Create a new instance.
+     *
+     * @param threads The number of threads to process each input file with.
+     * If this is greater than 1 input files are split into record aligned
+     * byte ranges which are processed in parallel.
+     */
+    public Run2(int threads) {
+        this.threads = threads;
+    }
+
     /**
      * Main method.
      *
-     * @param args Ignored.
+     * @param args "-threads" followed by the number of threads to process
+     * each input file with, and "-cache" to use columnar caches of the input
+     * files that are built on first use and rebuilt if the input changes,
+     * "-rules" followed by the path of a {@link SelectionRules} file of
+     * rule sets to evaluate in Part 1, and "-checkpoint" followed by the path
+     * of a checkpoint file from which to continue processing only records
+     * added since and which is then updated, and "-duplicates" to keep
+     * records with an incident number already read rather than dropping
+     * them, and "-profile" to also write a profile of every field.
+     * "-input" followed by a directory processes every CSV file in it
+     * (including gzip compressed ones) concurrently instead of the two
+     * exports, with outputs written to "-output" followed by a directory or
+     * else to "output" next to the input directory, and with "-memory"
+     * followed by a number of megabytes to limit the input in flight.
      */
     public static void main(String[] args) {
-        new Run2().run();
+        int threads = 1;
+        boolean cache = false;
+        Path rulesPath = null;
+        Path checkpoint = null;
+        boolean deduplicate = true;
+        boolean profile = false;
+        Path inputDir = null;
+        Path outputDir = null;
+        long memory = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-cache")) {
+                cache = true;
+            } else if (args[i].equalsIgnoreCase("-rules") && i + 1 < args.length) {
+                rulesPath = Paths.get(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-checkpoint") && i + 1 < args.length) {
+                checkpoint = Paths.get(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-duplicates")) {
+                deduplicate = false;
+            } else if (args[i].equalsIgnoreCase("-profile")) {
+                profile = true;
+            } else if (args[i].equalsIgnoreCase("-input") && i + 1 < args.length) {
+                inputDir = Paths.get(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-output") && i + 1 < args.length) {
+                outputDir = Paths.get(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-memory") && i + 1 < args.length) {
+                memory = Long.parseLong(args[++i]) << 20;
+            }
+        }
+        Run2 r = new Run2(threads);
+        r.cache = cache;
+        r.checkpoint = checkpoint;
+        r.deduplicate = deduplicate;
+        r.profile = profile;
+        r.inputDir = inputDir;
+        r.outputDir = outputDir;
+        if (memory > 0) {
+            r.memoryBudget = memory;
+        }
+        if (rulesPath != null) {
+            try {
+                r.rules = SelectionRules.load(rulesPath);
+            } catch (IOException ex) {
+                Logger.getLogger(Run2.class.getName()).log(Level.SEVERE, null, ex);
+                return;
+            }
+        }
+        r.run();
     }
 
     /**
      * Main method run.
      */
     public void run() {
+        RunEvent event = new RunEvent();
+        event.begin();
         try {
             Path pData = Paths.get("C:", "Users", "geoagdt", "work", "research",
                     "Wildfire", "data");
@@ -155,122 +334,232 @@ public class Run2 {
             Path pOutput = Paths.get(pData.toString(), "output");
             Path pIn = Paths.get(pInput.toString(), "Richard Hawley 2.csv");
             Path pIn2 = Paths.get(pInput.toString(), "Richard Hawley 3.csv");
+            if (inputDir != null) {
+                pData = inputDir.toAbsolutePath().getParent();
+                pOutput = outputDir != null ? outputDir
+                        : Paths.get(pData.toString(), "output");
+                Files.createDirectories(pOutput);
+            }
+            if (cache) {
+                cacheDir = Paths.get(pData.toString(), "cache");
+            }
 
             //DataFormatter df = new DataFormatter();
-            Generic_Environment ge = new Generic_Environment(new Generic_Defaults(pData));
-            Data_Environment de = new Data_Environment(ge);
+
+            inflateDir = cacheDir;
+            if (inflateDir == null && checkpoint != null) {
+                inflateDir = checkpoint.resolveSibling(
+                        checkpoint.getFileName().toString() + ".inflated");
+            }
 
             // General initialisation.
             initialise();
+            records.setInflateDir(inflateDir);
 
-            // Part 1
-            //part1(de, pIn, pIn2, pOutput);
-            // Part 2
-            part2(de, pIn, pIn2, pOutput);
+            // Part 1 and Part 2 reading each input file once.
+            Pipeline pipeline = new Pipeline(threads, charset, cacheDir);
+            pipeline.setInflateDir(inflateDir);
+            pipeline.add(new Part1());
+            pipeline.add(new Part2());
+            if (profile) {
+                pipeline.add(new Profiler(charset));
+            }
+            pipeline.setDeduplicate(deduplicate);
+            if (checkpoint != null && pipeline.loadCheckpoint(checkpoint)) {
+                System.out.println("Continuing from checkpoint " + checkpoint);
+            }
+            if (inputDir != null) {
+                List<Path> inputs = getInputs(inputDir);
+                System.out.println("Processing " + inputs.size()
+                        + " files in \"" + inputDir + "\"");
+                event.rows = pipeline.runBatch(inputs, memoryBudget);
+            } else {
+                event.rows = pipeline.run(List.of(pIn, pIn2));
+            }
+            if (checkpoint != null) {
+                pipeline.saveCheckpoint(checkpoint);
+            }
+            pipeline.finish(pOutput);
+            pipeline.printReport();
+            pipeline.writeMetrics(Paths.get(pOutput.toString(),
+                    "metrics.json"));
 
         } catch (Exception ex) {
             Logger.getLogger(Run2.class.getName()).log(Level.SEVERE, null, ex);
         }
+        event.program = "Run2";
+        event.commit();
+    }
+
+    /**
+     * @param dir A directory.
+     * @return The CSV files in dir, including gzip compressed ones, in name
+     * order.
+     * @throws IOException If encountered.
+     */
+    public static List<Path> getInputs(Path dir) throws IOException {
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.filter(p -> {
+                String n = p.getFileName().toString().toLowerCase();
+                return n.endsWith(".csv") || n.endsWith(".csv.gz");
+            }).sorted().toList();
+        }
     }
 
     // Part 2
-    protected void part2(Data_Environment de, Path pIn, Path pIn2, Path pOutput) {
-        initialisePart2();
-        processPart2(de, pIn);
-        processPart2(de, pIn2);
+    /**
+     * For generating Part 2 outputs.
+     */
+    public void outputPart2() {
+        outputPart2(null);
+    }
 
-        //outputPart2(pOutput);
+    /**
+     * For generating Part 2 outputs.
+     *
+     * @param pOutput The directory to also write the tables of counts of
+     * outdoor fires to as CSV files, or null.
+     */
+    public void outputPart2(Path pOutput) {
         System.out.println(s_3_2_Property_Type);
         System.out.println("Value, Count");
-        for (var v : counts_3_2_Property_Type.keySet()) {
-            System.out.println(v + ", " + counts_3_2_Property_Type.get(v));
-        }
-
-        // Monthly counts
-        System.out.println("Count of outdoor fires by month:");
-        String outputheader = "Month";
-        boolean first = true;
-        TreeMap<Integer, Integer> totalPerYear = new TreeMap<>();
-        String row;
-        for (Month month : countsOutDoorFireByYearAndMonth.keySet()) {
-            TreeMap<Integer, Integer> countsOutDoorFireByMonth = countsOutDoorFireByYearAndMonth.get(month);
-            row = month.name();
-            for (Integer year : countsOutDoorFireByMonth.keySet()) {
-                if (first) {
-                    outputheader += "," + year;
-                }
-                int count = countsOutDoorFireByMonth.get(year);
-                Generic_Collections.addToCount(totalPerYear, year, count);
-                row += "," + count;
-            }
-            if (first) {
-                System.out.println(outputheader);
-                first = false;
-            }
-            System.out.println(row);
-        }
-        row = "Any";
-        for (Integer year : totalPerYear.keySet()) {
-            row += "," + totalPerYear.get(year);
-        }
-        System.out.println(row);
-        
-        // Week of year
-        System.out.println("Count of outdoor fires by week of year:");
-        outputheader = "WeekOfYear";
-        first = true;
-        totalPerYear = new TreeMap<>();
-        for (Integer week : countsOutDoorFireByYearAndWeek.keySet()) {
-            TreeMap<Integer, Integer> countsOutDoorFireByWeek = countsOutDoorFireByYearAndWeek.get(week);
-            row = week.toString();
-            for (Integer year : countsOutDoorFireByWeek.keySet()) {
-                if (first) {
-                    outputheader += "," + year;
-                }
-                int count = countsOutDoorFireByWeek.get(year);
-                Generic_Collections.addToCount(totalPerYear, year, count);
-                row += "," + count;
-            }
-            if (first) {
-                System.out.println(outputheader);
-                first = false;
-            }
-            System.out.println(row);
-        }
-        row = "Any";
-        for (Integer year : totalPerYear.keySet()) {
-            row += "," + totalPerYear.get(year);
-        }
-        System.out.println(row);
-        
-        // Day of Year
-        System.out.println("Count of outdoor fires by day of year:");
-        outputheader = "DayOfYear";
-        first = true;
-        totalPerYear = new TreeMap<>();
-        for (Integer day : countsOutDoorFireByYearAndDay.keySet()) {
-            TreeMap<Integer, Integer> countsOutDoorFireByDay = countsOutDoorFireByYearAndDay.get(day);
-            row = day.toString();
-            for (Integer year : countsOutDoorFireByDay.keySet()) {
-                if (first) {
-                    outputheader += "," + year;
+        TreeMap<String, Long> counts = getPropertyTypeCounts();
+        for (var v : counts.keySet()) {
+            System.out.println(v + ", " + counts.get(v));
+        }
+
+        try {
+            // Monthly counts
+            System.out.println("Count of outdoor fires by month:");
+            outputPart2Table(pOutput, "Month", countsOutDoorFireByYearAndMonth,
+                    month -> Month.of(month).name());
+            // Week of year
+            System.out.println("Count of outdoor fires by week of year:");
+            outputPart2Table(pOutput, "WeekOfYear",
+                    countsOutDoorFireByYearAndWeek, Integer::toString);
+            // Day of Year
+            System.out.println("Count of outdoor fires by day of year:");
+            outputPart2Table(pOutput, "DayOfYear",
+                    countsOutDoorFireByYearAndDay, Integer::toString);
+        } catch (IOException ex) {
+            Logger.getLogger(Run2.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Print a table of counts and write it to a CSV file named
+     * "outdoorFiresBy" + name + ".csv".
+     *
+     * @param pOutput The directory to write to, or null to only print.
+     * @param name The name of the bin column.
+     * @param cube The counts.
+     * @param label For labelling bins.
+     * @throws IOException If encountered.
+     */
+    protected void outputPart2Table(Path pOutput, String name, CountCube cube,
+            IntFunction<String> label) throws IOException {
+        System.out.flush();
+        try (CSVWriter w = new CSVWriter(System.out, charset)) {
+            writePart2Table(w, name, cube, label);
+        }
+        if (pOutput != null) {
+            Files.createDirectories(pOutput);
+            try (CSVWriter w = new CSVWriter(Paths.get(pOutput.toString(),
+                    "outdoorFiresBy" + name + ".csv"), charset)) {
+                writePart2Table(w, name, cube, label);
+            }
+        }
+    }
+
+    /**
+     * @return Counts of property types with all double quotes removed.
+     */
+    protected TreeMap<String, Long> getPropertyTypeCounts() {
+        TreeMap<String, Long> r = new TreeMap<>();
+        for (int c = 0; c < vs_3_2_Property_Type.size(); c++) {
+            String v = vs_3_2_Property_Type.get(c).replace("\"", "");
+            r.merge(v, counts_3_2_Property_Type.get(c), Long::sum);
+        }
+        return r;
+    }
+
+    /**
+     * Write a table of counts with a row for each bin and a column for each
+     * year, followed by a row of totals for each year.
+     *
+     * @param w The writer.
+     * @param name The name of the bin column.
+     * @param cube The counts.
+     * @param label For labelling bins.
+     * @throws IOException If encountered.
+     */
+    protected void writePart2Table(CSVWriter w, String name, CountCube cube,
+            IntFunction<String> label) throws IOException {
+        w.field(name);
+        if (!cube.isEmpty()) {
+            for (int year = cube.getMinYear(); year <= cube.getMaxYear(); year++) {
+                w.field(year);
+            }
+            w.endRow();
+            for (int bin = cube.getMinBin(); bin <= cube.getMaxBin(); bin++) {
+                w.field(label.apply(bin));
+                for (int year = cube.getMinYear(); year <= cube.getMaxYear(); year++) {
+                    w.field(cube.get(year, bin));
                 }
-                int count = countsOutDoorFireByDay.get(year);
-                Generic_Collections.addToCount(totalPerYear, year, count);
-                row += "," + count;
+                w.endRow();
             }
-            if (first) {
-                System.out.println(outputheader);
-                first = false;
+        }
+        w.field("Any");
+        if (!cube.isEmpty()) {
+            for (int year = cube.getMinYear(); year <= cube.getMaxYear(); year++) {
+                w.field(cube.getTotal(year));
             }
-            System.out.println(row);
         }
-        row = "Any";
-        for (Integer year : totalPerYear.keySet()) {
-            row += "," + totalPerYear.get(year);
+        w.endRow();
+    }
+
+    /**
+     * Build the time index and write it to "incidents.tidx" and the counts
+     * of outdoor fires in rolling windows of 7 and 28 days ending on each
+     * day to "outdoorFiresRolling.csv".
+     *
+     * @param pOutput The output directory.
+     * @throws IOException If encountered.
+     */
+    protected void outputTimeIndex(Path pOutput) throws IOException {
+        index = timeIndex.build(vs_3_2_Property_Type.getValues());
+        Files.createDirectories(pOutput);
+        index.write(Paths.get(pOutput.toString(), "incidents.tidx"));
+        if (index.size() == 0) {
+            return;
+        }
+        IntPredicate outdoor = index.getCodes(
+                v -> v.replace("\"", "").startsWith(outdoorType));
+        long fromDay = IRSTime.getLocalEpochDay(index.getMinute(0) * 60);
+        long toDay = IRSTime.getLocalEpochDay(
+                index.getMinute(index.size() - 1) * 60);
+        int[] week = index.rolling(fromDay, toDay, 7, outdoor);
+        int[] month = index.rolling(fromDay, toDay, 28, outdoor);
+        try (CSVWriter w = new CSVWriter(Paths.get(pOutput.toString(),
+                "outdoorFiresRolling.csv"), charset)) {
+            w.field("Date");
+            w.field("7 days");
+            w.field("28 days");
+            w.endRow();
+            for (int i = 0; i < week.length; i++) {
+                w.field(LocalDate.ofEpochDay(fromDay + i).toString());
+                w.field(week[i]);
+                w.field(month[i]);
+                w.endRow();
+            }
         }
-        System.out.println(row);
-        
+    }
+
+    /**
+     * @return The time index built when Part 2 finished, or null.
+     */
+    public TimeIndex getTimeIndex() {
+        return index;
     }
 
     /**
@@ -278,137 +567,232 @@ public class Run2 {
      */
     protected void initialisePart2() {
         // 3_2
-        vs_3_2_Property_Type = new HashSet<>();
-        counts_3_2_Property_Type = new TreeMap<>();
-        countsOutDoorFireByYearAndMonth = new TreeMap<>();
-        countsOutDoorFireByYearAndWeek = new TreeMap<>();
-        for (int week = 1; week <= 53; week ++) {
-            TreeMap<Integer, Integer> countsOutDoorFireByWeek = new TreeMap<>();
-            countsOutDoorFireByYearAndWeek.put(week, countsOutDoorFireByWeek);
-            for (int year = 2010; year < 2024; year ++) {
-                countsOutDoorFireByWeek.put(year, 0);
+        part2Stats = new Aggregators();
+        vs_3_2_Property_Type = new FieldDictionary(charset);
+        isOutdoor_3_2 = vs_3_2_Property_Type.newTest(
+                v -> v.replace("\"", "").startsWith(outdoorType));
+        counts_3_2_Property_Type = part2Stats.add(s_3_2_Property_Type,
+                new CodeCounts(vs_3_2_Property_Type));
+        countsOutDoorFireByYearAndMonth = part2Stats.add("Month",
+                new CountCube(1, 12));
+        countsOutDoorFireByYearAndWeek = part2Stats.add("WeekOfYear",
+                new CountCube(1, 53));
+        countsOutDoorFireByYearAndDay = part2Stats.add("DayOfYear",
+                new CountCube(1, 366));
+        timeIndex = new TimeIndex.Builder();
+    }
+
+    /**
+     * Process a Part 2 row.
+     *
+     * @param r The cursor positioned at the row.
+     * @param id The row id to add the row to the time index with, or -1 to
+     * not add it.
+     */
+    protected void processPart2Row(RecordCursor r, int id) {
+        // 2.1
+        if (!r.isBlank(i_2_1)) {
+            long start = r.parseTime(i_2_1);
+            int year = IRSTime.getYear(start);
+            int month = IRSTime.getMonth(start);
+            int day = IRSTime.getDayOfYear(start);
+            int week = (day + 7) / 7;
+
+            // 3.2
+            int c_3_2 = r.getCode(i_3_2, vs_3_2_Property_Type);
+            counts_3_2_Property_Type.add(c_3_2);
+            if (id >= 0) {
+                timeIndex.add(start, id, c_3_2);
             }
-        }
-        countsOutDoorFireByYearAndDay = new TreeMap<>();
-        for (int day = 1; day < 367; day ++) {
-            TreeMap<Integer, Integer> countsOutDoorFireByDay = new TreeMap<>();
-            countsOutDoorFireByYearAndDay.put(day, countsOutDoorFireByDay);
-            for (int year = 2010; year < 2024; year ++) {
-                countsOutDoorFireByDay.put(year, 0);
+            if (isOutdoor_3_2.test(c_3_2)) {
+                countsOutDoorFireByYearAndMonth.add(year, month);
+                countsOutDoorFireByYearAndWeek.add(year, week);
+                countsOutDoorFireByYearAndDay.add(year, day);
             }
         }
     }
 
     /**
-     * Process Part 2.
+     * Merge the Part 2 state of a worker into this.
      *
-     * @param de The data environment.
-     * @param pIn The input file path.
+     * @param w The worker.
      */
-    protected void processPart2(Data_Environment de, Path pIn) {
-        try {
-            String outdoorType = "Property/Outdoor/Grassland, woodland and crops/";
-            BufferedReader br = IO_Utilities.getBufferedReader(pIn);
-            Data_ReadCSV r = new Data_ReadCSV(de);
-            r.setStreamTokenizer(br, 9);
-            String line = r.readLine();
-            header = line;
-            int hf = r.countFields(line);
-            System.out.println("Number of fields " + hf);
-            ArrayList<String> fields = r.parseLine(header);
-            // Initialise field indexes.
-            int i_2_1 = 0;
-            int i_3_2 = 0;
-            int i = 0;
-            for (var field : fields) {
-                //System.out.println(field);
-                //System.out.println(field + " " + (fieldLookup.size() - 1));
-                if (field.contains(" ")) {
-                    fieldLookup.put(field.split(" ")[0], field);
-                } else {
-                    fieldLookup.put(field, field);
-                }
-                if (field.startsWith(s_2_1)) {
-                    i_2_1 = i;
-                }
-                // a
-                if (field.equals(s_3_2_Property_Type)) {
-                    i_3_2 = i;
-                }
-                i++;
-            }
-            line = r.readRow(hf);
-            while (line != null) {
-                ArrayList<String> row = r.parseLine(line);
-                // 2.1
-                String v_2_1 = row.get(i_2_1);
-                if (!v_2_1.isBlank()) {
-                    ZonedDateTime start = getZonedDateTime(v_2_1);
-                    TreeMap<Integer, Integer> countsOutDoorFireByMonth;
-                    Integer year = start.getYear();
-                    Month month = start.getMonth();
-                    if (countsOutDoorFireByYearAndMonth.containsKey(month)) {
-                        countsOutDoorFireByMonth = countsOutDoorFireByYearAndMonth.get(month);
-                    } else {
-                        countsOutDoorFireByMonth = new TreeMap<>();
-                        countsOutDoorFireByYearAndMonth.put(month, countsOutDoorFireByMonth);
-                    }
-                    TreeMap<Integer, Integer> countsOutDoorFireByWeek;
-                    Integer day = start.getDayOfYear();
-                    Integer week = (day + 7) / 7;
-                    if (countsOutDoorFireByYearAndWeek.containsKey(week)) {
-                        countsOutDoorFireByWeek = countsOutDoorFireByYearAndWeek.get(week);
-                    } else {
-                        countsOutDoorFireByWeek = new TreeMap<>();
-                        countsOutDoorFireByYearAndWeek.put(week, countsOutDoorFireByWeek);
-                    }
-                    TreeMap<Integer, Integer> countsOutDoorFireByDay;
-                    if (countsOutDoorFireByYearAndDay.containsKey(day)) {
-                        countsOutDoorFireByDay = countsOutDoorFireByYearAndDay.get(day);
-                    } else {
-                        countsOutDoorFireByDay = new TreeMap<>();
-                        countsOutDoorFireByYearAndDay.put(day, countsOutDoorFireByDay);
-                    }
-                    
-                    // 3.2
-                    String v_3_2 = row.get(i_3_2);
-                    v_3_2 = v_3_2.replaceAll("\"", "");
-                    vs_3_2_Property_Type.add(v_3_2);
-                    Generic_Collections.addToCount(counts_3_2_Property_Type, v_3_2, 1);
-                    if (v_3_2.startsWith(outdoorType)) {
-                        Generic_Collections.addToCount(countsOutDoorFireByMonth, year, 1);
-                        Generic_Collections.addToCount(countsOutDoorFireByWeek, year, 1);
-                        Generic_Collections.addToCount(countsOutDoorFireByDay, year, 1);
-                    }
-                }
-                line = r.readRow(hf);
-            }
-        } catch (IOException ex) {
-            Logger.getLogger(Run2.class.getName()).log(Level.SEVERE, null, ex);
-        }
+    protected void mergePart2(Run2 w) {
+        part2Stats.merge(w.part2Stats);
     }
 
     /**
-     * Part 1.
+     * Merge the Part 2 state of a worker into this including its time index
+     * entries.
      *
-     * @param de The data environment.
-     * @param pIn The first input file path.
-     * @param pIn2 The second input file path.
-     * @param pOutput The output file path.
+     * @param w The worker.
+     * @param offset The row id in this of the worker's row id 0.
      */
-    protected void part1(Data_Environment de, Path pIn, Path pIn2, Path pOutput) {
-        Path pOut = Paths.get(pOutput.toString(), "abc.csv");
-        initialisePart1();
-        int id = 0;
-        int id1 = processPart1(de, pIn, id);
-        System.out.println("");
-        System.out.println("" + id1 + " records in \"" + pIn.getFileName().toString() + "\"");
+    protected void mergePart2(Run2 w, int offset) {
+        mergePart2(w);
+        timeIndex.merge(w.timeIndex, offset,
+                vs_3_2_Property_Type.addAll(w.vs_3_2_Property_Type));
+    }
 
-        int id2 = processPart1(de, pIn2, id1);
-        System.out.println("");
-        System.out.println("" + (id2 - id1) + " records in \"" + pIn2.getFileName().toString() + "\"");
+    /**
+     * Write the Part 2 state.
+     *
+     * @param out The output.
+     * @throws IOException If encountered.
+     */
+    protected void writePart2(DataOutput out) throws IOException {
+        out.writeUTF(outdoorType);
+        part2Stats.write(out);
+        vs_3_2_Property_Type.write(out);
+        timeIndex.write(out);
+    }
+
+    /**
+     * Add the Part 2 state written by {@link #writePart2(DataOutput)}.
+     *
+     * @param in The input.
+     * @throws IOException If encountered or if the state was written with a
+     * different outdoor type.
+     */
+    protected void readPart2(DataInput in) throws IOException {
+        String type = in.readUTF();
+        if (!type.equals(outdoorType)) {
+            throw new IOException("Part 2 outdoor type " + type + " not "
+                    + outdoorType);
+        }
+        part2Stats.read(in);
+        timeIndex.read(in, vs_3_2_Property_Type.readAll(in));
+    }
+
+    /**
+     * @return A new instance for processing part of the input with the same
+     * selection criteria and field indexes as this and its own state.
+     */
+    protected Run2 newWorker() {
+        Run2 w = new Run2();
+        w.area = area;
+        w.areaHa = areaHa;
+        w.resources = resources;
+        w.minutes = minutes;
+        w.hours = hours;
+        w.outdoorType = outdoorType;
+        w.rules = rules;
+        w.header = header;
+        w.charset = charset;
+        w.i_5_16 = i_5_16;
+        w.i_5_16a = i_5_16a;
+        w.i_8_24 = i_8_24;
+        w.i_8_25 = i_8_25;
+        w.i_8_35 = i_8_35;
+        w.i_8_35a = i_8_35a;
+        w.i_3_7 = i_3_7;
+        w.i_6_1 = i_6_1;
+        w.i_2_1 = i_2_1;
+        w.i_2_5 = i_2_5;
+        w.i_2_6 = i_2_6;
+        w.i_3_2 = i_3_2;
+        w.initialise();
+        w.fieldIndexes.putAll(fieldIndexes);
+        return w;
+    }
+
+    /**
+     * @param codes Field codes such as "2.1".
+     * @return The indexes of the fields of the current header with the
+     * codes, resolved through {@link #fieldIndexes}. Codes not in the header
+     * are left out.
+     */
+    protected int[] getFieldIndexes(String... codes) {
+        int[] r = new int[codes.length];
+        int n = 0;
+        for (String code : codes) {
+            Integer i = fieldIndexes.get(code);
+            if (i != null) {
+                r[n++] = i;
+            }
+        }
+        return Arrays.copyOf(r, n);
+    }
 
-        outputPart1(pOut);
+    /**
+     * Set the header, add the fields to {@link #fieldLookup} and initialise
+     * the field indexes.
+     *
+     * @param line The header line.
+     * @param fields The header field names.
+     */
+    protected void setHeader(String line, List<String> fields) {
+        header = line;
+        // Initialise field indexes.
+        i_5_16 = 0;
+        i_5_16a = 0;
+        i_8_24 = 0;
+        i_8_25 = 0;
+        i_8_35 = 0;
+        i_8_35a = 0;
+        i_3_7 = 0;
+        i_6_1 = 0;
+        i_2_1 = 0;
+        i_2_5 = 0;
+        i_2_6 = 0;
+        i_3_2 = 0;
+        int i = 0;
+        for (var field : fields) {
+            //System.out.println(field);
+            //System.out.println(field + " " + (fieldLookup.size() - 1));
+            String code = field.contains(" ") ? field.split(" ")[0] : field;
+            fieldLookup.put(code, field);
+            fieldIndexes.put(code, i);
+            // a
+            if (field.startsWith(s_5_16)) {
+                i_5_16 = i;
+                //System.out.println(field + " " + i_5_16);
+            }
+            if (field.startsWith(s_5_16a)) {
+                i_5_16a = i;
+                //System.out.println(field + " " + i_5_16a);
+            }
+            if (field.startsWith(s_8_24)) {
+                i_8_24 = i;
+                //System.out.println(field + " " + i_8_24);
+            }
+            if (field.startsWith(s_8_25)) {
+                i_8_25 = i;
+                //System.out.println(field + " " + i_8_25);
+            }
+            if (field.startsWith(s_8_35)) {
+                i_8_35 = i;
+                //System.out.println(field + " " + i_8_35);
+            }
+            if (field.startsWith(s_8_35a)) {
+                i_8_35a = i;
+                //System.out.println(field + " " + i_8_35a);
+            }
+            // b
+            if (field.startsWith(s_3_7)) {
+                i_3_7 = i;
+                //System.out.println(field + " " + i_3_7);
+            }
+            if (field.startsWith(s_6_1)) {
+                i_6_1 = i;
+                //System.out.println(field + " " + i_6_1);
+            }
+            // c
+            if (field.startsWith(s_2_1)) {
+                i_2_1 = i;
+            }
+            if (field.startsWith(s_2_5)) {
+                i_2_5 = i;
+            }
+            if (field.startsWith(s_2_6)) {
+                i_2_6 = i;
+            }
+            // Part 2
+            if (field.equals(s_3_2_Property_Type)) {
+                i_3_2 = i;
+            }
+            i++;
+        }
     }
 
     /**
@@ -416,8 +800,9 @@ public class Run2 {
      */
     protected void initialise() {
         fieldLookup = new HashMap<>();
+        fieldIndexes = new HashMap<>();
         fieldValues = new HashMap<>();
-        records = new HashMap<>();
+        records = new SelectedRecords();
     }
 
     /**
@@ -425,271 +810,359 @@ public class Run2 {
      */
     protected void initialisePart1() {
         sFields = new ArrayList<>();
+        part1Stats = new Aggregators();
 
         // a
-        a = new HashSet<>();
         // 5_16
         sFields.add(s_5_16);
-        vs_5_16 = new HashSet<>();
+        vs_5_16 = part1Stats.add(s_5_16, new FieldDictionary(charset));
         fieldValues.put(s_5_16, vs_5_16);
+        // Areas are compared without quotes as a value with a comma is
+        // quoted in the input.
+        String areaUnquoted = area.replace("\"", "");
+        isArea_5_16 = vs_5_16.newTest(v -> isArea(v, areaUnquoted));
         // 5_16a
         sFields.add(s_5_16a);
-        vs_5_16a = new HashSet<>();
+        vs_5_16a = part1Stats.add(s_5_16a, new FieldDictionary(charset));
         fieldValues.put(s_5_16a, vs_5_16a);
         // 8_24
         sFields.add(s_8_24);
-        vs_8_24 = new HashSet<>();
+        vs_8_24 = part1Stats.add(s_8_24, new FieldDictionary(charset));
         fieldValues.put(s_8_24, vs_8_24);
+        isArea_8_24 = vs_8_24.newTest(v -> isArea(v, areaUnquoted));
         // 8_25
         sFields.add(s_8_25);
-        vs_8_25 = new HashSet<>();
+        vs_8_25 = part1Stats.add(s_8_25, new FieldDictionary(charset));
         fieldValues.put(s_8_25, vs_8_25);
+        isArea_8_25 = vs_8_25.newTest(v -> isArea(v, areaUnquoted));
         // 8_35
         sFields.add(s_8_35);
-        vs_8_35 = new HashSet<>();
+        vs_8_35 = part1Stats.add(s_8_35, new FieldDictionary(charset));
         fieldValues.put(s_8_35, vs_8_35);
+        isArea_8_35 = vs_8_35.newTest(v -> isArea(v, areaUnquoted));
         // 8_35a
         sFields.add(s_8_35a);
-        vs_8_35a = new HashSet<>();
+        vs_8_35a = part1Stats.add(s_8_35a, new FieldDictionary(charset));
         fieldValues.put(s_8_35a, vs_8_35a);
 
         // b
-        b = new HashSet<>();
         // 3_7
         sFields.add(s_3_7);
-        vs_3_7 = new HashSet<>();
+        vs_3_7 = part1Stats.add(s_3_7, new FieldDictionary(charset));
         fieldValues.put(s_3_7, vs_3_7);
         // 6_1
         sFields.add(s_6_1);
-        vs_6_1 = new HashSet<>();
+        vs_6_1 = part1Stats.add(s_6_1, new FieldDictionary(charset));
         fieldValues.put(s_6_1, vs_6_1);
 
+        // Counts
+        count_5_16 = part1Stats.add("count_5_16", new Counter());
+        count_5_16a = part1Stats.add("count_5_16a", new Counter());
+        count_8_24 = part1Stats.add("count_8_24", new Counter());
+        count_8_25 = part1Stats.add("count_8_25", new Counter());
+        count_8_35 = part1Stats.add("count_8_35", new Counter());
+        count_8_35a = part1Stats.add("count_8_35a", new Counter());
+        count_resourceCommittedGE_resources = part1Stats.add(
+                "count_resourceCommittedGE_resources", new Counter());
+        count_durationGE_hours = part1Stats.add("count_durationGE_hours",
+                new Counter());
+
+        // Durations
+        vs_3_2_durations = new FieldDictionary(charset);
+        durations = new QuantileSketch[DURATIONS.length];
+        durationsByYear = new QuantileSketches[DURATIONS.length];
+        durationsByMonth = new QuantileSketches[DURATIONS.length];
+        durationsByType = new QuantileSketches[DURATIONS.length];
+        for (int k = 0; k < DURATIONS.length; k++) {
+            String name = DURATIONS[k];
+            durations[k] = part1Stats.add(name, new QuantileSketch());
+            durationsByYear[k] = part1Stats.add(name + " by year",
+                    new QuantileSketches());
+            durationsByMonth[k] = part1Stats.add(name + " by month",
+                    new QuantileSketches());
+            durationsByType[k] = part1Stats.add(name + " by property type",
+                    new QuantileSketches(vs_3_2_durations));
+        }
+
+        // Selection rules
+        if (rules != null) {
+            ruleEvaluator = new RuleEvaluator(rules, charset);
+        }
+    }
+
+    /**
+     * Merge the Part 1 state of a worker into this.
+     *
+     * @param w The worker.
+     * @param offset The row id in this of the worker's row id 0.
+     */
+    protected void mergePart1(Run2 w, int offset) {
+        part1Stats.merge(w.part1Stats);
+        // Worker records are in row id order as for sequential processing.
+        records.add(w.records, offset);
+        if (ruleEvaluator != null) {
+            ruleEvaluator.add(w.ruleEvaluator, offset);
+        }
+    }
+
+    /**
+     * @param v A field value.
+     * @param area The area without quotes.
+     * @return {@code true} if v without quotes is area ignoring case.
+     */
+    static boolean isArea(String v, String area) {
+        return v.replace("\"", "").equalsIgnoreCase(area);
+    }
+
+    /**
+     * @return The Part 1 selection criteria.
+     */
+    String getPart1Settings() {
+        return area + "," + areaHa + "," + resources + "," + minutes;
+    }
+
+    /**
+     * Write the Part 1 state.
+     *
+     * @param out The output.
+     * @throws IOException If encountered.
+     */
+    protected void writePart1(DataOutput out) throws IOException {
+        out.writeUTF(getPart1Settings());
+        part1Stats.write(out);
+        records.write(out);
+        out.writeBoolean(ruleEvaluator != null);
+        if (ruleEvaluator != null) {
+            ruleEvaluator.write(out);
+        }
+    }
+
+    /**
+     * Add the Part 1 state written by {@link #writePart1(DataOutput)}.
+     *
+     * @param in The input.
+     * @throws IOException If encountered or if the state was written with
+     * different selection criteria or rules.
+     */
+    protected void readPart1(DataInput in) throws IOException {
+        String settings = in.readUTF();
+        if (!settings.equals(getPart1Settings())) {
+            throw new IOException("Part 1 settings " + settings + " not "
+                    + getPart1Settings());
+        }
+        part1Stats.read(in);
+        records.read(in);
+        if (in.readBoolean() != (ruleEvaluator != null)) {
+            throw new IOException("Part 1 rules differ");
+        }
+        if (ruleEvaluator != null) {
+            ruleEvaluator.read(in);
+        }
+    }
+
+    /**
+     * Process a Part 1 row. Every value the row needs is parsed before any
+     * state is changed, so a row that cannot be parsed is not counted.
+     *
+     * @param r The cursor positioned at a row that is not blank.
+     * @param id The row id.
+     * @throws IllegalArgumentException If a number cannot be parsed.
+     * @throws java.time.DateTimeException If a time cannot be parsed.
+     */
+    protected void processPart1Row(RecordCursor r, int id) {
+        boolean inA = false;
+        boolean inB = false;
+        boolean inC = false;
+        long callToStop = 0;
+        long stopToClose = 0;
+        long callToClose = 0;
+
+//        if (Long.parseLong(row.get(0)) == 2047020822L) {
+//            int debug = 1;
+//        }
+        // Parse
+        boolean has_5_16a = !r.isBlank(i_5_16a);
+        int v_5_16a = has_5_16a ? r.parseInt(i_5_16a) : 0;
+        boolean has_8_35a = !r.isBlank(i_8_35a);
+        int v_8_35a = has_8_35a ? r.parseInt(i_8_35a) : 0;
+        boolean has_6_1 = !r.isBlank(i_6_1);
+        int v_6_1 = has_6_1 ? r.parseInt(i_6_1) : 0;
+        boolean has_3_7 = !r.isBlank(i_3_7);
+        int v_3_7 = has_3_7 ? r.parseInt(i_3_7) : 0;
+        boolean has_2_1 = !r.isBlank(i_2_1);
+        long start = 0;
+        long stop = 0;
+        long close = 0;
+        if (has_2_1) {
+            start = r.parseTime(i_2_1);
+            stop = r.parseTime(i_2_5);
+            close = r.parseTime(i_2_6);
+        }
+        // Selection rules
+        if (ruleEvaluator != null) {
+            ruleEvaluator.evaluate(r, id);
+        }
+        // a
+        // 5.16
+        if (isArea_5_16.test(r.getCode(i_5_16, vs_5_16))) {
+            //System.out.println(area);
+            count_5_16.add();
+            inA = true;
+        }
+        // 5.16a
+        r.getCode(i_5_16a, vs_5_16a);
+        if (has_5_16a) {
+            if (v_5_16a >= 1) {
+                count_5_16a.add();
+                inA = true;
+            }
+        }
+        // 8.24
+        if (isArea_8_24.test(r.getCode(i_8_24, vs_8_24))) {
+            count_8_24.add();
+            inA = true;
+        }
+        // 8.25
+        if (isArea_8_25.test(r.getCode(i_8_25, vs_8_25))) {
+            count_8_25.add();
+            inA = true;
+        }
+        // 8.35
+        if (isArea_8_35.test(r.getCode(i_8_35, vs_8_35))) {
+            count_8_35.add();
+            inA = true;
+        }
+        // 8.35a
+        r.getCode(i_8_35a, vs_8_35a);
+        if (has_8_35a) {
+            if (v_8_35a >= 100) {
+                count_8_35a.add();
+                inA = true;
+            }
+        }
+        // b
+        int resourceCommitted = 0;
+        r.getCode(i_6_1, vs_6_1);
+        if (has_6_1) {
+            if (v_6_1 > 0) {
+                resourceCommitted++;
+            }
+        }
+        r.getCode(i_3_7, vs_3_7);
+        if (has_3_7) {
+            resourceCommitted += v_3_7;
+            if (resourceCommitted >= resources) {
+                count_resourceCommittedGE_resources.add();
+                inB = true;
+            }
+        }
         // c
-        c = new HashSet<>();
-        callsToStops = new HashMap<>();
-        stopsToCloses = new HashMap<>();
-        callsToCloses = new HashMap<>();
-        dates = new HashMap<>();
-        times = new HashMap<>();
+        if (has_2_1) {
+            callToStop = IRSTime.minutesBetween(start, stop);
+            stopToClose = IRSTime.minutesBetween(stop, close);
+            callToClose = IRSTime.minutesBetween(start, close);
+            if (callToStop >= minutes) {
+                count_durationGE_hours.add();
+                inC = true;
+            }
+            // Durations
+            int year = IRSTime.getYear(start);
+            int month = IRSTime.getMonth(start);
+            int type = r.getCode(i_3_2, vs_3_2_durations);
+            addDuration(0, callToStop, year, month, type);
+            addDuration(1, stopToClose, year, month, type);
+            addDuration(2, callToClose, year, month, type);
+        }
+        if (inA || inB || inC) {
+            int i = records.add(fileIndex, id, r.getRecordPosition(),
+                    r.getRecordLength(), inA, inB, inC);
+            if (has_2_1) {
+                records.setTimes(i, callToStop, stopToClose,
+                        callToClose);
+            }
+        }
     }
 
     /**
-     * Process Part 2.
+     * Add a duration to its sketches.
      *
-     * @param de The data environment.
-     * @param pIn The input file path.
-     * @param id The row id for the first record read and processed.
-     * @return The row id for the next record to be processed.
+     * @param k The index of the duration in {@link #DURATIONS}.
+     * @param v The duration in minutes.
+     * @param year The year of the call.
+     * @param month The month of the call.
+     * @param type The property type code.
      */
-    public int processPart1(Data_Environment de, Path pIn, int id) {
-        try {
-            BufferedReader br = IO_Utilities.getBufferedReader(pIn);
-            Data_ReadCSV r = new Data_ReadCSV(de);
-            r.setStreamTokenizer(br, 9);
-            String line = r.readLine();
-            header = line;
-            int hf = r.countFields(line);
-            System.out.println("Number of fields " + hf);
-            ArrayList<String> fields = r.parseLine(header);
-            // Initialise field indexes.
-            int i_5_16 = 0;
-            int i_5_16a = 0;
-            int i_8_24 = 0;
-            int i_8_25 = 0;
-            int i_8_35 = 0;
-            int i_8_35a = 0;
-            int i_3_7 = 0;
-            int i_6_1 = 0;
-            int i_2_1 = 0;
-            int i_2_5 = 0;
-            int i_2_6 = 0;
-            int i = 0;
-            for (var field : fields) {
-                //System.out.println(field);
-                //System.out.println(field + " " + (fieldLookup.size() - 1));
-                if (field.contains(" ")) {
-                    fieldLookup.put(field.split(" ")[0], field);
-                } else {
-                    fieldLookup.put(field, field);
-                }
-                // a
-                if (field.startsWith(s_5_16)) {
-                    i_5_16 = i;
-                    //System.out.println(field + " " + i_5_16);
-                }
-                if (field.startsWith(s_5_16a)) {
-                    i_5_16a = i;
-                    //System.out.println(field + " " + i_5_16a);
-                }
-                if (field.startsWith(s_8_24)) {
-                    i_8_24 = i;
-                    //System.out.println(field + " " + i_8_24);
-                }
-                if (field.startsWith(s_8_25)) {
-                    i_8_25 = i;
-                    //System.out.println(field + " " + i_8_25);
-                }
-                if (field.startsWith(s_8_35)) {
-                    i_8_35 = i;
-                    //System.out.println(field + " " + i_8_35);
-                }
-                if (field.startsWith(s_8_35a)) {
-                    i_8_35a = i;
-                    //System.out.println(field + " " + i_8_35a);
-                }
-                // b
-                if (field.startsWith(s_3_7)) {
-                    i_3_7 = i;
-                    //System.out.println(field + " " + i_3_7);
-                }
-                if (field.startsWith(s_6_1)) {
-                    i_6_1 = i;
-                    //System.out.println(field + " " + i_6_1);
-                }
-                // c
-                if (field.startsWith(s_2_1)) {
-                    i_2_1 = i;
+    protected void addDuration(int k, long v, int year, int month, int type) {
+        durations[k].add(v);
+        durationsByYear[k].add(year, v);
+        durationsByMonth[k].add(month, v);
+        durationsByType[k].add(type, v);
+    }
+
+    /**
+     * Write the count, minimum, median, 90th and 99th percentiles, maximum
+     * and mean of each duration overall and by year, month and property
+     * type.
+     *
+     * @param pOut The path of the file to write to.
+     * @throws IOException If encountered.
+     */
+    public void outputDurations(Path pOut) throws IOException {
+        try (CSVWriter w = new CSVWriter(pOut, charset)) {
+            for (String h : new String[]{"Duration", "Group", "Key", "Count",
+                "Min", "p50", "p90", "p99", "Max", "Mean"}) {
+                w.field(h);
+            }
+            w.endRow();
+            for (int k = 0; k < DURATIONS.length; k++) {
+                writeDuration(w, DURATIONS[k], "All", "", durations[k]);
+                QuantileSketches s = durationsByYear[k];
+                for (int y = s.getMinKey(); y <= s.getMaxKey(); y++) {
+                    writeDuration(w, DURATIONS[k], "Year", Integer.toString(y),
+                            s.get(y));
                 }
-                if (field.startsWith(s_2_5)) {
-                    i_2_5 = i;
+                s = durationsByMonth[k];
+                for (int m = s.getMinKey(); m <= s.getMaxKey(); m++) {
+                    writeDuration(w, DURATIONS[k], "Month",
+                            Month.of(m).name(), s.get(m));
                 }
-                if (field.startsWith(s_2_6)) {
-                    i_2_6 = i;
+                s = durationsByType[k];
+                for (int c = s.getMinKey(); c <= s.getMaxKey(); c++) {
+                    writeDuration(w, DURATIONS[k], "Property type",
+                            vs_3_2_durations.get(c).replace("\"", ""),
+                            s.get(c));
                 }
-                i++;
-            }
-            line = r.readRow(hf);
-            while (line != null) {
-                if (!line.replaceAll(",", "").trim().isBlank()) {
-                    boolean selected = false;
-                    ArrayList<String> row = r.parseLine(line);
-
-//                    if (Long.parseLong(row.get(0)) == 2047020822L) {
-//                        int debug = 1;
-//                    }
-                    // a
-                    // 5.16
-                    String v_5_16 = row.get(i_5_16);
-                    vs_5_16.add(v_5_16);
-                    if (v_5_16.equalsIgnoreCase(area)) {
-                        //System.out.println(area);
-                        count_5_16++;
-                        //records.put(id, row);
-                        records.put(id, line);
-                        a.add(id);
-                        selected = true;
-                    }
-                    // 5.16a
-                    String v_5_16a = row.get(i_5_16a);
-                    vs_5_16a.add(v_5_16a);
-                    if (!v_5_16a.isBlank()) {
-                        if (Integer.parseInt(v_5_16a) >= 1) {
-                            //System.out.println(v_5_16a);
-                            count_5_16a++;
-                            //records.put(rowid, row);
-                            records.put(id, line);
-                            a.add(id);
-                            selected = true;
-                        }
-                    }
-                    // 8.24
-                    String v_8_24 = row.get(i_8_24);
-                    vs_8_24.add(v_8_24);
-                    if (v_8_24.equalsIgnoreCase(area)) {
-                        //System.out.println(area);
-                        count_8_24++;
-                        //records.put(rowid, row);
-                        records.put(id, line);
-                        a.add(id);
-                        selected = true;
-                    }
-                    // 8.25
-                    String v_8_25 = row.get(i_8_25);
-                    vs_8_25.add(v_8_25);
-                    if (v_8_25.equalsIgnoreCase(area)) {
-                        //System.out.println(area);
-                        count_8_25++;
-                        //records.put(rowid, row);
-                        records.put(id, line);
-                        a.add(id);
-                        selected = true;
-                    }
-                    // 8.35
-                    String v_8_35 = row.get(i_8_35);
-                    vs_8_35.add(v_8_35);
-                    if (v_8_35.equalsIgnoreCase(area)) {
-                        //System.out.println(area);
-                        count_8_35++;
-                        //records.put(rowid, row);
-                        records.put(id, line);
-                        a.add(id);
-                        selected = true;
-                    }
-                    // 8.35a
-                    String v_8_35a = row.get(i_8_35a);
-                    vs_8_35a.add(v_8_35a);
-                    if (!v_8_35a.isBlank()) {
-                        if (Integer.parseInt(v_8_35a) >= 100) {
-                            //System.out.println(area);
-                            count_8_35a++;
-                            //records.put(rowid, row);
-                            records.put(id, line);
-                            a.add(id);
-                            selected = true;
-                        }
-                    }
-                    // b
-                    int resourceCommitted = 0;
-                    String v_6_1 = row.get(i_6_1);
-                    vs_6_1.add(v_6_1);
-                    if (!v_6_1.isBlank()) {
-                        if (Integer.parseInt(v_6_1) > 0) {
-                            resourceCommitted++;
-                        }
-                    }
-                    String v_3_7 = row.get(i_3_7);
-                    vs_3_7.add(v_3_7);
-                    if (!v_3_7.isBlank()) {
-                        resourceCommitted += Integer.parseInt(v_3_7);
-                        if (resourceCommitted >= resources) {
-                            count_resourceCommittedGE_resources++;
-                            records.put(id, line);
-                            b.add(id);
-                            selected = true;
-                        }
-                    }
-                    // c
-                    String v_2_1 = row.get(i_2_1);
-                    if (!v_2_1.isBlank()) {
-                        String v_2_5 = row.get(i_2_5);
-                        String v_2_6 = row.get(i_2_6);
-                        ZonedDateTime start = getZonedDateTime(v_2_1);
-                        ZonedDateTime stop = getZonedDateTime(v_2_5);
-                        ZonedDateTime close = getZonedDateTime(v_2_6);
-                        long duration = ChronoUnit.MINUTES.between(start, stop);
-                        if (duration >= minutes) {
-                            count_durationGE_hours++;
-                            records.put(id, line);
-                            c.add(id);
-                            selected = true;
-                        }
-                        if (selected) {
-                            String[] dateTime = v_2_1.split(" ");
-                            callsToStops.put(id, duration);
-                            stopsToCloses.put(id, ChronoUnit.MINUTES.between(stop, close));
-                            callsToCloses.put(id, ChronoUnit.MINUTES.between(start, close));
-                            dates.put(id, dateTime[0]);
-                            times.put(id, dateTime[1]);
-                        }
-                    }
-                    id++;
-                }
-                line = r.readRow(hf);
             }
-        } catch (IOException ex) {
-            Logger.getLogger(Run2.class.getName()).log(Level.SEVERE, null, ex);
         }
-        return id;
+    }
+
+    /**
+     * Write a row of {@link #outputDurations(Path)}.
+     *
+     * @param w The writer.
+     * @param duration The duration name.
+     * @param group The group name.
+     * @param key The key in the group.
+     * @param s The sketch, or null to write nothing.
+     * @throws IOException If encountered.
+     */
+    protected void writeDuration(CSVWriter w, String duration, String group,
+            String key, QuantileSketch s) throws IOException {
+        if (s == null) {
+            return;
+        }
+        w.field(duration);
+        w.field(group);
+        w.field(key);
+        w.field(s.getCount());
+        w.field(s.getMin());
+        w.field(s.getQuantile(0.5));
+        w.field(s.getQuantile(0.9));
+        w.field(s.getQuantile(0.99));
+        w.field(s.getMax());
+        w.field(s.getCount() == 0 ? ""
+                : Double.toString(Math.round(s.getMean() * 10) / 10.0));
+        w.endRow();
     }
 
     /**
@@ -702,101 +1175,321 @@ public class Run2 {
         for (var field : fieldValues.keySet()) {
             System.out.println("");
             System.out.println("Field " + field);
-            HashSet<String> values = fieldValues.get(field);
-            for (var v : values) {
+            FieldDictionary values = fieldValues.get(field);
+            for (var v : values.getValues()) {
                 System.out.println(v);
             }
         }
 
         // Record selection summary
-        System.out.println("" + count_5_16 + " records with \"" + fieldLookup.get(s_5_16.trim()) + "\" = " + area + "\"");
-        System.out.println("" + count_5_16a + " records with \"" + fieldLookup.get(s_5_16a.trim()) + "\" >= " + areaHa);
-        System.out.println("" + count_8_24 + " records with \"" + fieldLookup.get(s_8_24.trim()) + "\" = " + area + "\"");
-        System.out.println("" + count_8_25 + " records with \"" + fieldLookup.get(s_8_25.trim()) + "\" = " + area + "\"");
-        System.out.println("" + count_8_35 + " records with \"" + fieldLookup.get(s_8_35.trim()) + "\" = " + area + "\"");
-        System.out.println("" + count_8_35a + " records with \"" + fieldLookup.get(s_8_35a.trim()) + "\" >= " + areaHa);
-        System.out.println("" + count_resourceCommittedGE_resources + " records with resources committed >= " + resources);
-        System.out.println("" + count_durationGE_hours + " records with duration >= " + hours + " hours");
+        System.out.println("" + count_5_16.get() + " records with \"" + fieldLookup.get(s_5_16.trim()) + "\" = " + area + "\"");
+        System.out.println("" + count_5_16a.get() + " records with \"" + fieldLookup.get(s_5_16a.trim()) + "\" >= " + areaHa);
+        System.out.println("" + count_8_24.get() + " records with \"" + fieldLookup.get(s_8_24.trim()) + "\" = " + area + "\"");
+        System.out.println("" + count_8_25.get() + " records with \"" + fieldLookup.get(s_8_25.trim()) + "\" = " + area + "\"");
+        System.out.println("" + count_8_35.get() + " records with \"" + fieldLookup.get(s_8_35.trim()) + "\" = " + area + "\"");
+        System.out.println("" + count_8_35a.get() + " records with \"" + fieldLookup.get(s_8_35a.trim()) + "\" >= " + areaHa);
+        System.out.println("" + count_resourceCommittedGE_resources.get() + " records with resources committed >= " + resources);
+        System.out.println("" + count_durationGE_hours.get() + " records with duration >= " + hours + " hours");
 
         System.out.println("In total there are " + records.size() + " records.");
 
         // Output records
+        long t = System.nanoTime();
         try {
             Path outdir = pOut.getParent();
             if (!Files.exists(outdir)) {
                 Files.createDirectories(outdir);
             }
-            try (BufferedWriter bw = Generic_IO.getBufferedWriter(pOut, false)) {
-                Files.createDirectories(pOut.getParent());
-                bw.write(header
-                        + ",Time from call to stop (in minutes)"
-                        + ",Time from stop to close (in minutes)"
-                        + ",Time from call to close (in minutes)"
-                        + ",date,time"
-                        + ",a,b,c,a+b+c");
-                bw.write("\n");
-
-                for (var id : records.keySet()) {
-                    //System.out.println(records.get(id));                    
-                    bw.write(records.get(id));
+            try (SelectedRecords.Reader rr = records.reader();
+                    CSVWriter w = new CSVWriter(pOut, charset)) {
+                byte[] hb = header.getBytes(charset);
+                w.write(hb, 0, hb.length);
+                w.field("Time from call to stop (in minutes)");
+                w.field("Time from stop to close (in minutes)");
+                w.field("Time from call to close (in minutes)");
+                w.field("date");
+                w.field("time");
+                w.field("a");
+                w.field("b");
+                w.field("c");
+                w.field("a+b+c");
+                w.endRow();
+
+                // Records are re-read from the input files in row id order.
+                for (int i = 0; i < records.size(); i++) {
+                    int len = rr.read(i);
+                    byte[] line = rr.getBuffer();
+                    w.write(line, 0, len);
                     // Times
-                    bw.write("," + Long.toString(callsToStops.get(id)));
-                    bw.write("," + Long.toString(stopsToCloses.get(id)));
-                    bw.write("," + Long.toString(callsToCloses.get(id)));
-                    bw.write(",\"" + dates.get(id) + "\"");
-                    bw.write(",\"" + times.get(id) + "\"");
-                    int abc = 0;
-                    // a, b, c
-                    if (a.contains(id)) {
-                        bw.write(",1");
-                        abc++;
-                    } else {
-                        bw.write(",0");
-                    }
-                    if (b.contains(id)) {
-                        bw.write(",1");
-                        abc++;
-                    } else {
-                        bw.write(",0");
-                    }
-                    if (c.contains(id)) {
-                        bw.write(",1");
-                        abc++;
+                    if (records.hasTimes(i)) {
+                        w.field(records.getCallToStop(i));
+                        w.field(records.getStopToClose(i));
+                        w.field(records.getCallToClose(i));
+                        // Split the call time into date and time at spaces.
+                        int ds = rr.getFieldStart(records.getCallField(i));
+                        int te = rr.getFieldEnd(ds);
+                        int de = ds;
+                        while (de < te && line[de] != ' ') {
+                            de++;
+                        }
+                        int ts = Math.min(de + 1, te);
+                        int tn = ts;
+                        while (tn < te && line[tn] != ' ') {
+                            tn++;
+                        }
+                        w.quoted(line, ds, de - ds);
+                        w.quoted(line, ts, tn - ts);
                     } else {
-                        bw.write(",0");
+                        for (int k = 0; k < 5; k++) {
+                            w.field();
+                        }
                     }
-                    bw.write("," + Integer.toString(abc));
-                    bw.write("\n");
+                    // a, b, c
+                    int a = records.isA(i) ? 1 : 0;
+                    int b = records.isB(i) ? 1 : 0;
+                    int c = records.isC(i) ? 1 : 0;
+                    w.field(a);
+                    w.field(b);
+                    w.field(c);
+                    w.field(a + b + c);
+                    w.endRow();
                 }
             }
         } catch (IOException ex) {
             Logger.getLogger(Run2.class.getName()).log(Level.SEVERE, null, ex);
         }
+        StageEvent.commit(pOut.toString(), "Part 1", "output",
+                System.nanoTime() - t, records.size());
+    }
+
+    /**
+     * Set the counts of records selected in the metrics of a run.
+     *
+     * @param m The metrics.
+     */
+    protected void addPart1Metrics(Metrics m) {
+        int a = 0;
+        int b = 0;
+        int c = 0;
+        for (int i = 0; i < records.size(); i++) {
+            if (records.isA(i)) {
+                a++;
+            }
+            if (records.isB(i)) {
+                b++;
+            }
+            if (records.isC(i)) {
+                c++;
+            }
+        }
+        m.set("selected", records.size());
+        m.set("selected.a", a);
+        m.set("selected.b", b);
+        m.set("selected.c", c);
+        m.set("selected.durationGE_hours", count_durationGE_hours.get());
+        m.set("selected.resourceCommittedGE_resources",
+                count_resourceCommittedGE_resources.get());
+        for (int k = 0; k < DURATIONS.length; k++) {
+            m.set("duration." + DURATIONS[k] + ".p50",
+                    durations[k].getQuantile(0.5));
+            m.set("duration." + DURATIONS[k] + ".p90",
+                    durations[k].getQuantile(0.9));
+            m.set("duration." + DURATIONS[k] + ".p99",
+                    durations[k].getQuantile(0.99));
+        }
+    }
+
+    /**
+     * Set the count of outdoor fires in the metrics of a run.
+     *
+     * @param m The metrics.
+     */
+    protected void addPart2Metrics(Metrics m) {
+        long n = 0;
+        CountCube cube = countsOutDoorFireByYearAndMonth;
+        if (!cube.isEmpty()) {
+            for (int y = cube.getMinYear(); y <= cube.getMaxYear(); y++) {
+                n += cube.getTotal(y);
+            }
+        }
+        m.set("outdoorFires", n);
+    }
+
+    /**
+     * Write the counts of records meeting each selection rule set, rule and
+     * condition.
+     *
+     * @param pOut The path of the file to write to.
+     */
+    public void outputRules(Path pOut) {
+        try (BufferedWriter bw = Files.newBufferedWriter(pOut, charset)) {
+            ruleEvaluator.write(bw);
+        } catch (IOException ex) {
+            Logger.getLogger(Run2.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Part 1 as an {@link Analysis} with the state of this.
+     */
+    public class Part1 implements Analysis {
+
+        /**
+         * Create a new instance and initialise the Part 1 state.
+         */
+        public Part1() {
+            initialisePart1();
+        }
+
+        @Override
+        public String getName() {
+            return "Part 1";
+        }
+
+        @Override
+        public void start(Path pIn, String line, List<String> fields)
+                throws IOException {
+            setHeader(line, fields);
+            fileIndex = records.addFile(pIn, i_2_1);
+            records.check(fileIndex);
+            if (ruleEvaluator != null) {
+                ruleEvaluator.bind(fieldIndexes);
+            }
+        }
+
+        @Override
+        public int[] getFields() {
+            int[] fs = getFieldIndexes("5.16", "5.16a", "8.24", "8.25",
+                    "8.35", "8.35a", "6.1", "3.7", "2.1", "2.5", "2.6", "3.2");
+            if (ruleEvaluator == null) {
+                return fs;
+            }
+            int[] rs = ruleEvaluator.getColumns();
+            int[] r = Arrays.copyOf(fs, fs.length + rs.length);
+            System.arraycopy(rs, 0, r, fs.length, rs.length);
+            return r;
+        }
+
+        @Override
+        public void process(RecordCursor r, int id) {
+            processPart1Row(r, id);
+        }
+
+        @Override
+        public Analysis newWorker() {
+            return Run2.this.newWorker().new Part1();
+        }
+
+        @Override
+        public void merge(Analysis w, int offset) {
+            mergePart1(((Part1) w).getRun2(), offset);
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            writePart1(out);
+        }
+
+        @Override
+        public void read(DataInput in) throws IOException {
+            readPart1(in);
+        }
+
+        @Override
+        public void addMetrics(Metrics m) {
+            addPart1Metrics(m);
+        }
+
+        @Override
+        public void finish(Path pOutput) throws IOException {
+            outputPart1(Paths.get(pOutput.toString(), "abc.csv"));
+            outputDurations(Paths.get(pOutput.toString(), "durations.csv"));
+            if (ruleEvaluator != null) {
+                outputRules(Paths.get(pOutput.toString(), "rules.csv"));
+            }
+        }
+
+        Run2 getRun2() {
+            return Run2.this;
+        }
+    }
+
+    /**
+     * Part 2 as an {@link Analysis} with the state of this.
+     */
+    public class Part2 implements Analysis {
+
+        /**
+         * Create a new instance and initialise the Part 2 state.
+         */
+        public Part2() {
+            initialisePart2();
+        }
+
+        @Override
+        public String getName() {
+            return "Part 2";
+        }
+
+        @Override
+        public void start(Path pIn, String line, List<String> fields) {
+            setHeader(line, fields);
+        }
+
+        @Override
+        public int[] getFields() {
+            return getFieldIndexes("2.1", "3.2");
+        }
+
+        @Override
+        public void process(RecordCursor r, int id) {
+            processPart2Row(r, id);
+        }
+
+        @Override
+        public Analysis newWorker() {
+            return Run2.this.newWorker().new Part2();
+        }
+
+        @Override
+        public void merge(Analysis w, int offset) {
+            mergePart2(((Part2) w).getRun2(), offset);
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            writePart2(out);
+        }
+
+        @Override
+        public void read(DataInput in) throws IOException {
+            readPart2(in);
+        }
+
+        @Override
+        public void addMetrics(Metrics m) {
+            addPart2Metrics(m);
+        }
+
+        @Override
+        public void finish(Path pOutput) throws IOException {
+            outputPart2(pOutput);
+            outputTimeIndex(pOutput);
+        }
+
+        Run2 getRun2() {
+            return Run2.this;
+        }
     }
 
     /**
-     * Compile Date as a ZonedDateTime.
+     * Compile Date as a ZonedDateTime. For bulk processing use
+     * {@link IRSTime#parse(CharSequence)} which does not create objects.
      *
      * @param s The date as a String to be turned into a ZonedDateTime
      * @return ZonedDateTime
      */
     public static ZonedDateTime getZonedDateTime(String s) {
-        //System.out.print(s);
-        String[] split = s.split(" ");
-        String[] DDMMYYYY = split[0].split("/");
-        int day = Integer.parseInt(DDMMYYYY[0]);
-        int month = Integer.parseInt(DDMMYYYY[1]);
-        int year = Integer.parseInt(DDMMYYYY[2]);
-        String[] timeSplit = split[1].split(":");
-        int hour = Integer.parseInt(timeSplit[0]);
-        int minute = Integer.parseInt(timeSplit[1]);
-        int second;
-        if (timeSplit.length == 3) {
-            second = Integer.parseInt(timeSplit[2]);
-        } else {
-            second = 0;
-        }
-        ZonedDateTime zdt = ZonedDateTime.of(year, month, day, hour, minute, second, 0, ZoneId.of("Europe/London"));
-        return zdt;
+        return IRSTime.toZonedDateTime(IRSTime.parse(s));
     }
 }
@@ -0,0 +1,540 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import uk.ac.leeds.ccg.projects.wildfire.io.GzipInput;
+import uk.ac.leeds.ccg.projects.wildfire.pipeline.Checkpoint;
+
+/**
+ * A compact store of the records selected in Part 1. Rather than the text of
+ * each record only the source file index, byte offset and length are kept,
+ * along with the a, b and c criteria flags in {@link BitSet}s and the
+ * durations in parallel primitive arrays. The call date and time are not
+ * stored as they can be found in the record. Record text is re-read from the
+ * source files using a {@link Reader} when it is output. Source files are
+ * kept as input file paths, and a compressed one is read inflated as by
+ * {@link GzipInput#resolve(Path, Path, int)}, so offsets stay valid for a
+ * later run continuing from a checkpoint. The records of each source file
+ * are written with a hash of its bytes as by
+ * {@link Checkpoint#hash(Path, long)}, so a file that has been rewritten
+ * since is detected by {@link #check(int)} rather than read at the wrong
+ * offsets.
+ *
+ * Records are held in the order they are added, which is row id order.
+ *
+ * @author Andy Turner
+ */
+public class SelectedRecords {
+
+    /**
+     * The source files, which are input file paths.
+     */
+    final List<Path> files = new ArrayList<>();
+
+    /**
+     * For each source file, the index of its 2.1 time of call field, as files
+     * may differ in column layout.
+     */
+    final List<Integer> callFields = new ArrayList<>();
+
+    /**
+     * The directory compressed source files are inflated to for reading, or
+     * null for a temporary directory.
+     */
+    Path inflateDir;
+
+    /**
+     * For each source file of the records added by {@link #read(DataInput)}
+     * that is yet to be checked, by file index, the end of its last record
+     * and the hash of its bytes before that written by
+     * {@link #write(DataOutput)}.
+     */
+    final HashMap<Integer, long[]> unchecked = new HashMap<>();
+
+    /**
+     * The number of records.
+     */
+    int size;
+
+    /**
+     * Row ids.
+     */
+    int[] ids = new int[1024];
+
+    /**
+     * Indexes of source files in {@link #files}.
+     */
+    int[] fileIndexes = new int[1024];
+
+    /**
+     * Source file byte offsets of records.
+     */
+    long[] offsets = new long[1024];
+
+    /**
+     * Record lengths in bytes excluding line terminators.
+     */
+    int[] lengths = new int[1024];
+
+    /**
+     * Minutes from call to stop.
+     */
+    long[] callsToStops = new long[1024];
+
+    /**
+     * Minutes from stop to close.
+     */
+    long[] stopsToCloses = new long[1024];
+
+    /**
+     * Minutes from call to close.
+     */
+    long[] callsToCloses = new long[1024];
+
+    /**
+     * Records with times.
+     */
+    final BitSet times = new BitSet();
+
+    /**
+     * Records that meet the a criteria.
+     */
+    final BitSet a = new BitSet();
+
+    /**
+     * Records that meet the b criteria.
+     */
+    final BitSet b = new BitSet();
+
+    /**
+     * Records that meet the c criteria.
+     */
+    final BitSet c = new BitSet();
+
+    /**
+     * Create a new instance.
+     */
+    public SelectedRecords() {
+    }
+
+    /**
+     * @param dir The directory compressed source files are inflated to for
+     * reading, or null for a temporary directory.
+     */
+    public void setInflateDir(Path dir) {
+        inflateDir = dir;
+    }
+
+    /**
+     * @param p The path of a source file.
+     * @param callField The index of the 2.1 time of call field in p.
+     * @return The index of p for use in
+     * {@link #add(int, int, long, int, boolean, boolean, boolean)}.
+     */
+    public int addFile(Path p, int callField) {
+        int i = files.indexOf(p);
+        if (i < 0) {
+            files.add(p);
+            callFields.add(callField);
+            i = files.size() - 1;
+        } else {
+            callFields.set(i, callField);
+        }
+        return i;
+    }
+
+    /**
+     * @param i The index of a record.
+     * @return The index of the 2.1 time of call field in the source file of
+     * record i.
+     */
+    public int getCallField(int i) {
+        return callFields.get(fileIndexes[i]);
+    }
+
+    /**
+     * Add a record.
+     *
+     * @param file The index of the source file.
+     * @param id The row id.
+     * @param offset The source file byte offset of the record.
+     * @param length The record length in bytes excluding the line terminator.
+     * @param inA Whether the record meets the a criteria.
+     * @param inB Whether the record meets the b criteria.
+     * @param inC Whether the record meets the c criteria.
+     * @return The index of the record.
+     */
+    public int add(int file, int id, long offset, int length, boolean inA,
+            boolean inB, boolean inC) {
+        if (size == ids.length) {
+            int n = size * 2;
+            ids = Arrays.copyOf(ids, n);
+            fileIndexes = Arrays.copyOf(fileIndexes, n);
+            offsets = Arrays.copyOf(offsets, n);
+            lengths = Arrays.copyOf(lengths, n);
+            callsToStops = Arrays.copyOf(callsToStops, n);
+            stopsToCloses = Arrays.copyOf(stopsToCloses, n);
+            callsToCloses = Arrays.copyOf(callsToCloses, n);
+        }
+        int i = size++;
+        ids[i] = id;
+        fileIndexes[i] = file;
+        offsets[i] = offset;
+        lengths[i] = length;
+        times.clear(i);
+        a.set(i, inA);
+        b.set(i, inB);
+        c.set(i, inC);
+        return i;
+    }
+
+    /**
+     * Set the times for a record.
+     *
+     * @param i The index of the record.
+     * @param callToStop Minutes from call to stop.
+     * @param stopToClose Minutes from stop to close.
+     * @param callToClose Minutes from call to close.
+     */
+    public void setTimes(int i, long callToStop, long stopToClose,
+            long callToClose) {
+        times.set(i);
+        callsToStops[i] = callToStop;
+        stopsToCloses[i] = stopToClose;
+        callsToCloses[i] = callToClose;
+    }
+
+    /**
+     * Add all the records of another store to this with row ids offset.
+     *
+     * @param o The other store.
+     * @param idOffset The amount to add to the row ids of o.
+     */
+    public void add(SelectedRecords o, int idOffset) {
+        int[] fileMap = new int[o.files.size()];
+        for (int f = 0; f < fileMap.length; f++) {
+            fileMap[f] = addFile(o.files.get(f), o.callFields.get(f));
+        }
+        for (int j = 0; j < o.size; j++) {
+            int i = add(fileMap[o.fileIndexes[j]], o.ids[j] + idOffset,
+                    o.offsets[j], o.lengths[j], o.a.get(j), o.b.get(j),
+                    o.c.get(j));
+            if (o.times.get(j)) {
+                setTimes(i, o.callsToStops[j], o.stopsToCloses[j],
+                        o.callsToCloses[j]);
+            }
+        }
+    }
+
+    /**
+     * @param f The index of a source file.
+     * @return The path to read source file f from, which is the file
+     * inflated if it is compressed.
+     * @throws IOException If encountered.
+     */
+    Path getSource(int f) throws IOException {
+        return GzipInput.resolve(files.get(f), inflateDir, 1);
+    }
+
+    /**
+     * Check that a source file of records added by {@link #read(DataInput)}
+     * has the same bytes up to the end of its last record as when they were
+     * written.
+     *
+     * @param f The index of the source file.
+     * @throws IOException If encountered or if the file has changed, in which
+     * case its records cannot be read and it needs processing again without
+     * the checkpoint.
+     */
+    public void check(int f) throws IOException {
+        long[] c = unchecked.get(f);
+        if (c == null) {
+            return;
+        }
+        Path src = getSource(f);
+        if (Files.size(src) < c[0] || Checkpoint.hash(src, c[0]) != c[1]) {
+            throw new IOException("\"" + files.get(f) + "\" has changed "
+                    + "since records were selected from it, so process it "
+                    + "again without the checkpoint");
+        }
+        unchecked.remove(f);
+    }
+
+    /**
+     * Write the files and records.
+     *
+     * @param out The output.
+     * @throws IOException If encountered.
+     */
+    public void write(DataOutput out) throws IOException {
+        long[] ends = new long[files.size()];
+        for (int i = 0; i < size; i++) {
+            int f = fileIndexes[i];
+            ends[f] = Math.max(ends[f], offsets[i] + lengths[i]);
+        }
+        out.writeInt(files.size());
+        for (int f = 0; f < ends.length; f++) {
+            out.writeUTF(files.get(f).toString());
+            out.writeInt(callFields.get(f));
+            out.writeLong(ends[f]);
+            out.writeInt(Checkpoint.hash(getSource(f), ends[f]));
+        }
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(ids[i]);
+            out.writeInt(fileIndexes[i]);
+            out.writeLong(offsets[i]);
+            out.writeInt(lengths[i]);
+            out.writeByte((times.get(i) ? 1 : 0) | (a.get(i) ? 2 : 0)
+                    | (b.get(i) ? 4 : 0) | (c.get(i) ? 8 : 0));
+            if (times.get(i)) {
+                out.writeLong(callsToStops[i]);
+                out.writeLong(stopsToCloses[i]);
+                out.writeLong(callsToCloses[i]);
+            }
+        }
+    }
+
+    /**
+     * Add the files and records written by {@link #write(DataOutput)}.
+     *
+     * @param in The input.
+     * @throws IOException If encountered.
+     */
+    public void read(DataInput in) throws IOException {
+        int[] fileMap = new int[in.readInt()];
+        for (int f = 0; f < fileMap.length; f++) {
+            fileMap[f] = addFile(Paths.get(in.readUTF()), in.readInt());
+            unchecked.put(fileMap[f], new long[]{in.readLong(),
+                in.readInt()});
+        }
+        int n = in.readInt();
+        for (int j = 0; j < n; j++) {
+            int id = in.readInt();
+            int file = fileMap[in.readInt()];
+            long offset = in.readLong();
+            int length = in.readInt();
+            int flags = in.readByte();
+            int i = add(file, id, offset, length, (flags & 2) != 0,
+                    (flags & 4) != 0, (flags & 8) != 0);
+            if ((flags & 1) != 0) {
+                setTimes(i, in.readLong(), in.readLong(), in.readLong());
+            }
+        }
+    }
+
+    /**
+     * @return The number of records.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i The index of the record.
+     * @return The row id.
+     */
+    public int getId(int i) {
+        return ids[i];
+    }
+
+    /**
+     * @param i The index of the record.
+     * @return {@code true} if there are times for the record.
+     */
+    public boolean hasTimes(int i) {
+        return times.get(i);
+    }
+
+    /**
+     * @param i The index of the record.
+     * @return Minutes from call to stop.
+     */
+    public long getCallToStop(int i) {
+        return callsToStops[i];
+    }
+
+    /**
+     * @param i The index of the record.
+     * @return Minutes from stop to close.
+     */
+    public long getStopToClose(int i) {
+        return stopsToCloses[i];
+    }
+
+    /**
+     * @param i The index of the record.
+     * @return Minutes from call to close.
+     */
+    public long getCallToClose(int i) {
+        return callsToCloses[i];
+    }
+
+    /**
+     * @param i The index of the record.
+     * @return {@code true} if the record meets the a criteria.
+     */
+    public boolean isA(int i) {
+        return a.get(i);
+    }
+
+    /**
+     * @param i The index of the record.
+     * @return {@code true} if the record meets the b criteria.
+     */
+    public boolean isB(int i) {
+        return b.get(i);
+    }
+
+    /**
+     * @param i The index of the record.
+     * @return {@code true} if the record meets the c criteria.
+     */
+    public boolean isC(int i) {
+        return c.get(i);
+    }
+
+    /**
+     * @return A reader for re-reading record bytes from the source files.
+     */
+    public Reader reader() {
+        return new Reader();
+    }
+
+    /**
+     * For re-reading record bytes from the source files into a reusable
+     * buffer.
+     */
+    public class Reader implements Closeable {
+
+        /**
+         * Channels for the source files, opened when first needed.
+         */
+        final FileChannel[] channels = new FileChannel[files.size()];
+
+        /**
+         * The bytes of the last record read.
+         */
+        byte[] buf = new byte[4096];
+
+        /**
+         * The length of the last record read.
+         */
+        int len;
+
+        Reader() {
+        }
+
+        /**
+         * Read record i into {@link #getBuffer()}.
+         *
+         * @param i The index of the record.
+         * @return The record length.
+         * @throws IOException If encountered.
+         */
+        public int read(int i) throws IOException {
+            int f = fileIndexes[i];
+            if (channels[f] == null) {
+                check(f);
+                channels[f] = FileChannel.open(GzipInput.resolve(
+                        files.get(f), inflateDir, 1), StandardOpenOption.READ);
+            }
+            len = lengths[i];
+            if (buf.length < len) {
+                buf = new byte[Math.max(len, buf.length * 2)];
+            }
+            ByteBuffer bb = ByteBuffer.wrap(buf, 0, len);
+            long pos = offsets[i];
+            while (bb.hasRemaining()) {
+                int n = channels[f].read(bb, pos);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of "
+                            + files.get(f));
+                }
+                pos += n;
+            }
+            return len;
+        }
+
+        /**
+         * @return The buffer holding the bytes of the last record read.
+         */
+        public byte[] getBuffer() {
+            return buf;
+        }
+
+        /**
+         * @param f A field index.
+         * @return The offset in the buffer of field f of the last record
+         * read, or its length if there is no field f.
+         */
+        public int getFieldStart(int f) {
+            boolean quoted = false;
+            for (int j = 0; j < len; j++) {
+                if (f == 0) {
+                    return j;
+                }
+                if (buf[j] == '"') {
+                    quoted = !quoted;
+                } else if (buf[j] == ',' && !quoted) {
+                    f--;
+                }
+            }
+            return len;
+        }
+
+        /**
+         * @param start The offset in the buffer of a field of the last record
+         * read.
+         * @return The offset of the end of the field (exclusive).
+         */
+        public int getFieldEnd(int start) {
+            boolean quoted = false;
+            for (int j = start; j < len; j++) {
+                if (buf[j] == '"') {
+                    quoted = !quoted;
+                } else if (buf[j] == ',' && !quoted) {
+                    return j;
+                }
+            }
+            return len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (FileChannel fc : channels) {
+                if (fc != null) {
+                    fc.close();
+                }
+            }
+        }
+    }
+}
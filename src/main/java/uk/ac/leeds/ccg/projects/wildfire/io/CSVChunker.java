@@ -0,0 +1,229 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * For splitting a CSV file into byte ranges that start and end on record
+ * boundaries so that the ranges can be parsed in parallel. A record boundary
+ * is the byte after a line feed that is not inside a double quoted field, so
+ * quoted fields containing commas and newlines are kept whole.
+ *
+ * The split is done in two parallel passes over equal sized blocks: the first
+ * counts the quotes in each block and notes the first line feed at each quote
+ * parity; a prefix of the quote counts then gives the parity at the start of
+ * each block and so which of its line feeds is the first outside quotes.
+ *
+ * @author Andy Turner
+ */
+public class CSVChunker {
+
+    /**
+     * Size of the buffer used to scan each block.
+     */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Create a new instance.
+     */
+    public CSVChunker() {
+    }
+
+    /**
+     * The result of scanning a block.
+     */
+    static class Block {
+
+        /**
+         * The number of double quote bytes in the block.
+         */
+        long quotes;
+
+        /**
+         * Position of the first line feed preceded by an even number of
+         * quotes from the block start, or -1.
+         */
+        long lfEven = -1;
+
+        /**
+         * Position of the first line feed preceded by an odd number of quotes
+         * from the block start, or -1.
+         */
+        long lfOdd = -1;
+    }
+
+    /**
+     * Split the part of a file from {@code start} into at most {@code n}
+     * record aligned ranges.
+     *
+     * @param p The file path.
+     * @param start A record boundary to start from, for example the end of
+     * the header.
+     * @param n The maximum number of ranges.
+     * @param pool The pool to scan blocks in.
+     * @return Boundaries such that range {@code i} is from {@code r[i]}
+     * (inclusive) to {@code r[i + 1]} (exclusive). Empty ranges are removed.
+     * @throws IOException If encountered.
+     */
+    public static long[] split(Path p, long start, int n, ForkJoinPool pool)
+            throws IOException {
+        long size;
+        try (FileChannel fc = FileChannel.open(p, StandardOpenOption.READ)) {
+            size = fc.size();
+        }
+        long len = size - start;
+        if (len <= 0) {
+            return new long[]{start};
+        }
+        n = (int) Math.max(1, Math.min(n, len / BUFFER_SIZE + 1));
+        long blockSize = (len + n - 1) / n;
+        long[] b = new long[n + 1];
+        for (int i = 0; i < n; i++) {
+            b[i] = start + i * blockSize;
+        }
+        b[n] = size;
+        List<ForkJoinTask<Block>> tasks = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            long s = b[i];
+            long e = b[i + 1];
+            tasks.add(pool.submit(() -> scan(p, s, e)));
+        }
+        Block[] blocks = new Block[n];
+        for (int i = 0; i < n; i++) {
+            try {
+                blocks[i] = tasks.get(i).join();
+            } catch (RuntimeException ex) {
+                if (ex.getCause() instanceof IOException ioe) {
+                    throw ioe;
+                }
+                throw ex;
+            }
+        }
+        // Quote parity at the start of each block.
+        boolean[] odd = new boolean[n];
+        for (int i = 1; i < n; i++) {
+            odd[i] = odd[i - 1] ^ ((blocks[i - 1].quotes & 1) == 1);
+        }
+        // Work back so blocks with no boundary take the next one.
+        long[] r = new long[n + 1];
+        r[n] = size;
+        for (int i = n - 1; i > 0; i--) {
+            long lf = odd[i] ? blocks[i].lfOdd : blocks[i].lfEven;
+            r[i] = lf < 0 ? r[i + 1] : lf + 1;
+        }
+        r[0] = start;
+        return distinct(r);
+    }
+
+    /**
+     * @param r Non decreasing values.
+     * @return r with repeated values removed.
+     */
+    static long[] distinct(long[] r) {
+        int m = 1;
+        for (int i = 1; i < r.length; i++) {
+            if (r[i] != r[m - 1]) {
+                r[m++] = r[i];
+            }
+        }
+        long[] d = new long[m];
+        System.arraycopy(r, 0, d, 0, m);
+        return d;
+    }
+
+    /**
+     * Scan a block counting quotes and noting the first line feed at each
+     * quote parity.
+     *
+     * @param p The file path.
+     * @param s The start of the block.
+     * @param e The end of the block.
+     * @return The block scan result.
+     * @throws IOException If encountered.
+     */
+    static Block scan(Path p, long s, long e) throws IOException {
+        Block r = new Block();
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] a = buf.array();
+        try (FileChannel fc = FileChannel.open(p, StandardOpenOption.READ)) {
+            long pos = s;
+            while (pos < e) {
+                buf.clear();
+                buf.limit((int) Math.min(BUFFER_SIZE, e - pos));
+                int read = fc.read(buf, pos);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    byte c = a[i];
+                    if (c == '"') {
+                        r.quotes++;
+                    } else if (c == '\n') {
+                        if ((r.quotes & 1) == 0) {
+                            if (r.lfEven < 0) {
+                                r.lfEven = pos + i;
+                            }
+                        } else if (r.lfOdd < 0) {
+                            r.lfOdd = pos + i;
+                        }
+                    }
+                }
+                pos += read;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Find the end of the first record from {@code start}, for example to
+     * find the end of a header.
+     *
+     * @param p The file path.
+     * @param start A record boundary.
+     * @return The position after the first line feed outside quotes, or the
+     * file size if there is none.
+     * @throws IOException If encountered.
+     */
+    public static long nextBoundary(Path p, long start) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        byte[] a = buf.array();
+        boolean quoted = false;
+        try (FileChannel fc = FileChannel.open(p, StandardOpenOption.READ)) {
+            long pos = start;
+            int read;
+            while ((read = fc.read(buf.clear(), pos)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    if (a[i] == '"') {
+                        quoted = !quoted;
+                    } else if (a[i] == '\n' && !quoted) {
+                        return pos + i + 1;
+                    }
+                }
+                pos += read;
+            }
+            return pos;
+        }
+    }
+}
@@ -0,0 +1,609 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.io;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import uk.ac.leeds.ccg.projects.wildfire.time.IRSTime;
+
+/**
+ * For scanning the records of a CSV file, or a record aligned byte range of
+ * one, over a {@link MappedByteBuffer}. Each field of the current record is
+ * exposed as an offset and length into the buffer. Fields can be compared,
+ * parsed as numbers and timestamps, and unquoted without creating Strings;
+ * a String is only created when {@link #getString(int)},
+ * {@link #getUnquoted(int)} or {@link #getLine()} is called.
+ *
+ * Fields are separated by commas outside double quotes and records by line
+ * feeds outside double quotes (a preceding carriage return is dropped). The
+ * value of a field is its raw text, so any quotes are retained in the same
+ * way as {@link uk.ac.leeds.ccg.data.format.Data_ReadCSV#parseLine(String)}.
+ * With a field limit set, the rest of a record after the fields to read is
+ * only scanned for its end.
+ *
+ * Files larger than {@link #WINDOW} are mapped a window at a time, moving
+ * the window on at the start of a record that would cross its end.
+ *
+ * @author Andy Turner
+ */
+public class CSVScanner implements RecordCursor {
+
+    /**
+     * The maximum number of bytes mapped at once.
+     */
+    static final int WINDOW = 1 << 28;
+
+    /**
+     * The channel.
+     */
+    final FileChannel fc;
+
+    /**
+     * The charset for creating Strings.
+     */
+    final Charset cs;
+
+    /**
+     * The end of the range to scan (exclusive).
+     */
+    final long end;
+
+    /**
+     * The mapped window.
+     */
+    MappedByteBuffer buf;
+
+    /**
+     * The file position of the start of {@link #buf}.
+     */
+    long bufStart;
+
+    /**
+     * The number of bytes in {@link #buf}.
+     */
+    int bufLen;
+
+    /**
+     * The file position of the next record.
+     */
+    long pos;
+
+    /**
+     * The buffer offset of the start of the current record.
+     */
+    int recordStart;
+
+    /**
+     * The buffer offset of the end of the current record excluding the line
+     * terminator.
+     */
+    int recordEnd;
+
+    /**
+     * The buffer offset of the end of the current record including the line
+     * terminator.
+     */
+    int recordNext;
+
+    /**
+     * The number of fields in the current record.
+     */
+    int n;
+
+    /**
+     * The number of fields to read from each record.
+     */
+    int limit = Integer.MAX_VALUE;
+
+    /**
+     * Field start buffer offsets.
+     */
+    int[] starts = new int[64];
+
+    /**
+     * Field end buffer offsets (exclusive).
+     */
+    int[] ends = new int[64];
+
+    /**
+     * For viewing a field as a CharSequence without copying.
+     */
+    final Slice slice = new Slice();
+
+    /**
+     * For copying bytes to create Strings.
+     */
+    byte[] bytes = new byte[256];
+
+    /**
+     * Create a new instance to scan the whole of a file.
+     *
+     * @param p The file path.
+     * @param cs The charset for creating Strings.
+     * @throws IOException If encountered.
+     */
+    public CSVScanner(Path p, Charset cs) throws IOException {
+        this(p, 0, -1, cs);
+    }
+
+    /**
+     * Create a new instance to scan a record aligned range of a file.
+     *
+     * @param p The file path.
+     * @param start The start of the range (inclusive).
+     * @param end The end of the range (exclusive), or -1 for the end of the
+     * file.
+     * @param cs The charset for creating Strings.
+     * @throws IOException If encountered.
+     */
+    public CSVScanner(Path p, long start, long end, Charset cs)
+            throws IOException {
+        fc = FileChannel.open(p, StandardOpenOption.READ);
+        this.cs = cs;
+        this.end = end < 0 ? fc.size() : Math.min(end, fc.size());
+        pos = start;
+        map(start);
+    }
+
+    /**
+     * Map a window starting at {@code start}.
+     *
+     * @param start The file position.
+     * @throws IOException If encountered.
+     */
+    final void map(long start) throws IOException {
+        bufStart = start;
+        bufLen = (int) Math.min(WINDOW, end - start);
+        buf = fc.map(FileChannel.MapMode.READ_ONLY, start, Math.max(0, bufLen));
+    }
+
+    /**
+     * Advance to the next record.
+     *
+     * @return {@code true} if there is a next record.
+     * @throws IOException If encountered or if a record is longer than
+     * {@link #WINDOW}.
+     */
+    @Override
+    public boolean next() throws IOException {
+        if (pos >= end) {
+            return false;
+        }
+        if (!scan()) {
+            map(pos);
+            if (!scan()) {
+                throw new IOException("Record at " + pos + " longer than "
+                        + WINDOW + " bytes");
+            }
+        }
+        pos = bufStart + recordNext;
+        return true;
+    }
+
+    /**
+     * Scan the record starting at {@link #pos} in the current window.
+     *
+     * @return {@code false} if the record does not end within the window.
+     */
+    boolean scan() {
+        int i = (int) (pos - bufStart);
+        boolean last = bufStart + bufLen >= end;
+        recordStart = i;
+        n = 0;
+        int fs = i;
+        boolean quoted = false;
+        for (; i < bufLen; i++) {
+            byte c = buf.get(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted) {
+                if (c == ',') {
+                    addField(fs, i);
+                    fs = i + 1;
+                    if (n == limit) {
+                        return skip(fs, last);
+                    }
+                } else if (c == '\n') {
+                    int fe = i > fs && buf.get(i - 1) == '\r' ? i - 1 : i;
+                    addField(fs, fe);
+                    recordEnd = fe;
+                    recordNext = i + 1;
+                    return true;
+                }
+            }
+        }
+        if (!last) {
+            return false;
+        }
+        int fe = i > fs && buf.get(i - 1) == '\r' ? i - 1 : i;
+        addField(fs, fe);
+        recordEnd = fe;
+        recordNext = i;
+        return true;
+    }
+
+    /**
+     * Find the end of the current record without adding fields.
+     *
+     * @param i The buffer offset of the start of a field.
+     * @param last Whether the window ends at the end of the range.
+     * @return {@code false} if the record does not end within the window.
+     */
+    boolean skip(int i, boolean last) {
+        boolean quoted = false;
+        for (; i < bufLen; i++) {
+            byte c = buf.get(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '\n' && !quoted) {
+                recordEnd = buf.get(i - 1) == '\r' ? i - 1 : i;
+                recordNext = i + 1;
+                return true;
+            }
+        }
+        if (!last) {
+            return false;
+        }
+        recordEnd = buf.get(i - 1) == '\r' ? i - 1 : i;
+        recordNext = i;
+        return true;
+    }
+
+    @Override
+    public void setFieldLimit(int limit) {
+        this.limit = Math.max(1, limit);
+    }
+
+    /**
+     * Add a field to the current record.
+     *
+     * @param s The field start.
+     * @param e The field end.
+     */
+    void addField(int s, int e) {
+        if (n == starts.length) {
+            starts = Arrays.copyOf(starts, n * 2);
+            ends = Arrays.copyOf(ends, n * 2);
+        }
+        starts[n] = s;
+        ends[n] = e;
+        n++;
+    }
+
+    /**
+     * @return The number of fields in the current record.
+     */
+    public int getFieldCount() {
+        return n;
+    }
+
+    /**
+     * @return The file position of the start of the current record.
+     */
+    @Override
+    public long getRecordPosition() {
+        return bufStart + recordStart;
+    }
+
+    /**
+     * @return The length in bytes of the current record excluding the line
+     * terminator.
+     */
+    @Override
+    public int getRecordLength() {
+        return recordEnd - recordStart;
+    }
+
+    /**
+     * @param i The field index.
+     * @return The length in bytes of field i, or 0 if there is no field i.
+     */
+    public int length(int i) {
+        return i < n ? ends[i] - starts[i] : 0;
+    }
+
+    /**
+     * @param i The field index.
+     * @return {@code true} if field i is missing or only whitespace.
+     */
+    @Override
+    public boolean isBlank(int i) {
+        if (i >= n) {
+            return true;
+        }
+        for (int j = starts[i]; j < ends[i]; j++) {
+            if ((buf.get(j) & 0xFF) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true} if the current record has nothing but commas and
+     * whitespace.
+     */
+    @Override
+    public boolean isBlankRecord() {
+        for (int j = recordStart; j < recordEnd; j++) {
+            int c = buf.get(j) & 0xFF;
+            if (c != ',' && c > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compare field i with an ASCII string ignoring case.
+     *
+     * @param i The field index.
+     * @param s The string.
+     * @return {@code true} if field i equals s ignoring case.
+     */
+    @Override
+    public boolean equalsIgnoreCase(int i, String s) {
+        if (length(i) != s.length()) {
+            return false;
+        }
+        int o = starts[i];
+        for (int j = 0; j < s.length(); j++) {
+            char a = (char) (buf.get(o + j) & 0xFF);
+            char b = s.charAt(j);
+            if (a != b && Character.toUpperCase(a) != Character.toUpperCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Test whether field i with all double quotes removed starts with an
+     * ASCII prefix.
+     *
+     * @param i The field index.
+     * @param prefix The prefix.
+     * @return {@code true} if the unquoted value of field i starts with
+     * prefix.
+     */
+    @Override
+    public boolean unquotedStartsWith(int i, String prefix) {
+        if (i >= n) {
+            return prefix.isEmpty();
+        }
+        int k = 0;
+        for (int j = starts[i]; j < ends[i] && k < prefix.length(); j++) {
+            byte c = buf.get(j);
+            if (c == '"') {
+                continue;
+            }
+            if ((c & 0xFF) != prefix.charAt(k)) {
+                return false;
+            }
+            k++;
+        }
+        return k == prefix.length();
+    }
+
+    /**
+     * Parse field i as an int in the same way as
+     * {@link Integer#parseInt(String)}.
+     *
+     * @param i The field index.
+     * @return The value.
+     * @throws NumberFormatException If field i is not an int.
+     */
+    @Override
+    public int parseInt(int i) {
+        int len = length(i);
+        if (len == 0) {
+            throw new NumberFormatException("For input string: \"\"");
+        }
+        int o = starts[i];
+        int j = 0;
+        boolean negative = false;
+        byte c = buf.get(o);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            j++;
+            if (len == 1) {
+                throw new NumberFormatException(getString(i));
+            }
+        }
+        long v = 0;
+        for (; j < len; j++) {
+            c = buf.get(o + j);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("For input string: \""
+                        + getString(i) + "\"");
+            }
+            v = v * 10 + (c - '0');
+            if (v > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException(getString(i));
+            }
+        }
+        v = negative ? -v : v;
+        if (v > Integer.MAX_VALUE) {
+            throw new NumberFormatException(getString(i));
+        }
+        return (int) v;
+    }
+
+    /**
+     * Values of up to 18 digits are parsed without creating a String.
+     */
+    @Override
+    public long parseLong(int i) {
+        int len = length(i);
+        if (len == 0 || len > 18) {
+            return Long.parseLong(getString(i));
+        }
+        int o = starts[i];
+        boolean negative = len > 1 && buf.get(o) == '-';
+        int j = negative || (len > 1 && buf.get(o) == '+') ? 1 : 0;
+        long v = 0;
+        for (; j < len; j++) {
+            byte c = buf.get(o + j);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("For input string: \""
+                        + getString(i) + "\"");
+            }
+            v = v * 10 + (c - '0');
+        }
+        return negative ? -v : v;
+    }
+
+    /**
+     * ASCII values are hashed without creating a String.
+     */
+    @Override
+    public long hash(int i) {
+        if (i >= n) {
+            return RecordCursor.hash("");
+        }
+        long h = 0xcbf29ce484222325L;
+        for (int j = starts[i]; j < ends[i]; j++) {
+            byte c = buf.get(j);
+            if (c < 0) {
+                return RecordCursor.hash(getString(i));
+            }
+            h = (h ^ c) * 0x100000001b3L;
+        }
+        return RecordCursor.mix(h);
+    }
+
+    @Override
+    public boolean isLong(int i) {
+        return i < n && RecordCursor.isLong(getCharSequence(i));
+    }
+
+    @Override
+    public int getCode(int i, FieldDictionary d) {
+        if (i >= n) {
+            return d.code("");
+        }
+        return d.code(buf, starts[i], ends[i]);
+    }
+
+    @Override
+    public long parseTime(int i) {
+        return IRSTime.parse(getCharSequence(i));
+    }
+
+    /**
+     * @param i The field index.
+     * @return Field i as a CharSequence view which is only valid until the
+     * next call to this method or {@link #next()}.
+     */
+    public CharSequence getCharSequence(int i) {
+        slice.offset = starts[i];
+        slice.len = length(i);
+        return slice;
+    }
+
+    /**
+     * @param i The field index.
+     * @return Field i as a String, or the empty String if there is no field i.
+     */
+    @Override
+    public String getString(int i) {
+        if (i >= n) {
+            return "";
+        }
+        return newString(starts[i], ends[i], false);
+    }
+
+    /**
+     * @param i The field index.
+     * @return Field i as a String with all double quotes removed.
+     */
+    @Override
+    public String getUnquoted(int i) {
+        if (i >= n) {
+            return "";
+        }
+        return newString(starts[i], ends[i], true);
+    }
+
+    /**
+     * @return The current record as a String excluding the line terminator.
+     */
+    public String getLine() {
+        return newString(recordStart, recordEnd, false);
+    }
+
+    /**
+     * @param s The start buffer offset.
+     * @param e The end buffer offset.
+     * @param unquote If {@code true} double quotes are skipped.
+     * @return A String of the bytes from s to e.
+     */
+    String newString(int s, int e, boolean unquote) {
+        int len = e - s;
+        if (bytes.length < len) {
+            bytes = new byte[Math.max(len, bytes.length * 2)];
+        }
+        int k = 0;
+        for (int j = s; j < e; j++) {
+            byte c = buf.get(j);
+            if (!unquote || c != '"') {
+                bytes[k++] = c;
+            }
+        }
+        return new String(bytes, 0, k, cs);
+    }
+
+    @Override
+    public void close() throws IOException {
+        buf = null;
+        fc.close();
+    }
+
+    /**
+     * A CharSequence view of bytes in the buffer. Bytes are treated as
+     * ISO-8859-1 characters which is fine for the ASCII fields it is for.
+     */
+    class Slice implements CharSequence {
+
+        int offset;
+        int len;
+
+        @Override
+        public int length() {
+            return len;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buf.get(offset + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return newString(offset + start, offset + end, false);
+        }
+
+        @Override
+        public String toString() {
+            return newString(offset, offset + len, false);
+        }
+    }
+}
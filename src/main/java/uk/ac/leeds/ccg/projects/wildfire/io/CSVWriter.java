@@ -0,0 +1,351 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes CSV rows straight into a reusable byte buffer that is flushed to a
+ * channel when full, so writing numbers and ASCII text creates no objects.
+ * A comma is written before each field except the first of a row. Bytes
+ * from an input file such as a selected record can be copied into a row as
+ * they are and then have fields appended.
+ *
+ * @author Andy Turner
+ */
+public class CSVWriter implements Closeable, Flushable {
+
+    /**
+     * The default buffer size.
+     */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The channel written to.
+     */
+    final WritableByteChannel ch;
+
+    /**
+     * Whether to close {@link #ch} on {@link #close()}.
+     */
+    final boolean closeChannel;
+
+    /**
+     * The charset for text that is not ASCII.
+     */
+    final Charset cs;
+
+    /**
+     * The buffer.
+     */
+    final byte[] buf;
+
+    /**
+     * {@link #buf} wrapped for writing to {@link #ch}.
+     */
+    final ByteBuffer bb;
+
+    /**
+     * The number of bytes in {@link #buf}.
+     */
+    int pos;
+
+    /**
+     * Whether nothing has been written to the current row.
+     */
+    boolean rowStart = true;
+
+    /**
+     * Create a new instance writing to a new file or replacing an existing
+     * one.
+     *
+     * @param p The file path.
+     * @param cs The charset for text.
+     * @throws IOException If encountered.
+     */
+    public CSVWriter(Path p, Charset cs) throws IOException {
+        this(FileChannel.open(p, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE), true, cs);
+    }
+
+    /**
+     * Create a new instance writing to a stream such as {@link System#out}
+     * which is flushed but not closed on {@link #close()}.
+     *
+     * @param os The stream.
+     * @param cs The charset for text.
+     */
+    public CSVWriter(OutputStream os, Charset cs) {
+        this(Channels.newChannel(os), false, cs);
+    }
+
+    CSVWriter(WritableByteChannel ch, boolean closeChannel, Charset cs) {
+        this.ch = ch;
+        this.closeChannel = closeChannel;
+        this.cs = cs;
+        buf = new byte[BUFFER_SIZE];
+        bb = ByteBuffer.wrap(buf);
+    }
+
+    /**
+     * Make room for n bytes in the buffer.
+     *
+     * @param n The number of bytes.
+     * @throws IOException If encountered.
+     */
+    void ensure(int n) throws IOException {
+        if (pos + n > buf.length) {
+            drain();
+        }
+    }
+
+    /**
+     * Write the buffer to the channel.
+     *
+     * @throws IOException If encountered.
+     */
+    void drain() throws IOException {
+        bb.clear().limit(pos);
+        while (bb.hasRemaining()) {
+            ch.write(bb);
+        }
+        pos = 0;
+    }
+
+    /**
+     * Start a field, writing a comma if it is not the first of the row.
+     *
+     * @throws IOException If encountered.
+     */
+    void separate() throws IOException {
+        if (rowStart) {
+            rowStart = false;
+        } else {
+            ensure(1);
+            buf[pos++] = ',';
+        }
+    }
+
+    /**
+     * Write bytes as they are to the current row, for example a record read
+     * from an input file.
+     *
+     * @param b The bytes.
+     * @param off The offset of the first byte.
+     * @param len The number of bytes.
+     * @throws IOException If encountered.
+     */
+    public void write(byte[] b, int off, int len) throws IOException {
+        rowStart = false;
+        if (len > buf.length - pos) {
+            drain();
+            if (len > buf.length) {
+                ByteBuffer w = ByteBuffer.wrap(b, off, len);
+                while (w.hasRemaining()) {
+                    ch.write(w);
+                }
+                return;
+            }
+        }
+        System.arraycopy(b, off, buf, pos, len);
+        pos += len;
+    }
+
+    /**
+     * Write an empty field.
+     *
+     * @throws IOException If encountered.
+     */
+    public void field() throws IOException {
+        separate();
+    }
+
+    /**
+     * Write a number field.
+     *
+     * @param v The value.
+     * @throws IOException If encountered.
+     */
+    public void field(long v) throws IOException {
+        separate();
+        ensure(20);
+        if (v == Long.MIN_VALUE) {
+            String s = Long.toString(v);
+            ascii(s, 0, s.length());
+            return;
+        }
+        if (v < 0) {
+            buf[pos++] = '-';
+            v = -v;
+        }
+        int end = pos + digits(v);
+        int i = end;
+        do {
+            buf[--i] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        pos = end;
+    }
+
+    /**
+     * @param v A non-negative value.
+     * @return The number of decimal digits in v.
+     */
+    static int digits(long v) {
+        int n = 1;
+        while (v >= 10) {
+            v /= 10;
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Write a text field, in double quotes if it contains a comma, double
+     * quote or line break.
+     *
+     * @param s The text.
+     * @throws IOException If encountered.
+     */
+    public void field(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                quoted(s);
+                return;
+            }
+        }
+        separate();
+        text(s, 0, s.length());
+    }
+
+    /**
+     * Write a text field in double quotes, doubling any double quotes.
+     *
+     * @param s The text.
+     * @throws IOException If encountered.
+     */
+    public void quoted(String s) throws IOException {
+        separate();
+        ensure(1);
+        buf[pos++] = '"';
+        int from = 0;
+        int q;
+        while ((q = s.indexOf('"', from)) >= 0) {
+            text(s, from, q + 1);
+            ensure(1);
+            buf[pos++] = '"';
+            from = q + 1;
+        }
+        text(s, from, s.length());
+        ensure(1);
+        buf[pos++] = '"';
+    }
+
+    /**
+     * Write bytes as a field in double quotes. The bytes should not contain
+     * double quotes.
+     *
+     * @param b The bytes.
+     * @param off The offset of the first byte.
+     * @param len The number of bytes.
+     * @throws IOException If encountered.
+     */
+    public void quoted(byte[] b, int off, int len) throws IOException {
+        separate();
+        ensure(1);
+        buf[pos++] = '"';
+        write(b, off, len);
+        ensure(1);
+        buf[pos++] = '"';
+    }
+
+    /**
+     * End the current row.
+     *
+     * @throws IOException If encountered.
+     */
+    public void endRow() throws IOException {
+        ensure(1);
+        buf[pos++] = '\n';
+        rowStart = true;
+    }
+
+    /**
+     * Write text without separating or quoting it.
+     *
+     * @param s The text.
+     * @param from The index of the first char.
+     * @param to The index after the last char.
+     * @throws IOException If encountered.
+     */
+    void text(String s, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) >= 0x80) {
+                byte[] b = s.substring(from, to).getBytes(cs);
+                write(b, 0, b.length);
+                return;
+            }
+        }
+        ascii(s, from, to);
+    }
+
+    /**
+     * Write ASCII text.
+     *
+     * @param s The text.
+     * @param from The index of the first char.
+     * @param to The index after the last char.
+     * @throws IOException If encountered.
+     */
+    void ascii(String s, int from, int to) throws IOException {
+        int i = from;
+        while (i < to) {
+            ensure(1);
+            int m = Math.min(to - i, buf.length - pos);
+            for (int j = 0; j < m; j++) {
+                buf[pos++] = (byte) s.charAt(i++);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            if (closeChannel) {
+                ch.close();
+            }
+        }
+    }
+}
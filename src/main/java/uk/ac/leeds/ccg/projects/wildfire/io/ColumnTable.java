@@ -0,0 +1,1111 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+import uk.ac.leeds.ccg.projects.wildfire.time.IRSTime;
+
+/**
+ * A columnar binary cache of an IRS CSV export that is memory mapped when
+ * read. There is a column for each field of the header. Columns where every
+ * value is blank or an int are stored as ints; columns where every value is
+ * blank or an IRS timestamp are stored as local epoch seconds shifted left
+ * one bit, the low bit recording whether seconds are shown, so that times in
+ * a daylight saving gap format back as written; other columns are
+ * dictionary encoded with a code per row of 1, 2 or 4 bytes depending on the
+ * number of distinct values. Int and timestamp columns are only used if
+ * every value formats back to the same text, so {@link Cursor} gives exactly
+ * the field values of {@link CSVScanner} for the non-blank records, which
+ * are the ones stored. The source position and length of each record is
+ * also stored so records can be re-read from the source.
+ *
+ * The cache is keyed on the source file size, last modified time and a
+ * CRC32C of its content. {@link #get(Path, Path, Charset)} opens the cache
+ * if the size and time match, checks the CRC if only the time differs, and
+ * otherwise rebuilds it.
+ *
+ * The file layout (little endian) is: magic, version, header length, source
+ * size, source last modified millis, source CRC, row count, column count,
+ * charset name, then for each column its name, type, code width and data
+ * offset and length; then the record positions, record lengths and column
+ * data, that of int and timestamp columns first. The data of a dictionary
+ * encoded column is the dictionary size, the UTF-8 values each preceded by
+ * their length, then the codes.
+ *
+ * @author Andy Turner
+ */
+public class ColumnTable {
+
+    /**
+     * "IRSCOLS1" as a long.
+     */
+    static final long MAGIC = 0x49525343_4F4C5331L;
+
+    /**
+     * The format version.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The length of the fixed part of the header.
+     */
+    static final int FIXED_HEADER = 44;
+
+    /**
+     * The size of the buffers for writing the record positions and lengths
+     * and the dictionaries.
+     */
+    static final int BUFFER = 1 << 16;
+
+    /**
+     * The size of the buffer for writing each column as rows are read, which
+     * is smaller as there is one for every column.
+     */
+    static final int COLUMN_BUFFER = 1 << 13;
+
+    /**
+     * Type for int columns.
+     */
+    public static final byte INT = 0;
+
+    /**
+     * Type for timestamp columns.
+     */
+    public static final byte TIME = 1;
+
+    /**
+     * Type for dictionary encoded columns.
+     */
+    public static final byte STRING = 2;
+
+    /**
+     * The int stored for a blank value in an int column.
+     */
+    static final int BLANK_INT = Integer.MIN_VALUE;
+
+    /**
+     * The value stored for a blank value in a timestamp column.
+     */
+    static final long BLANK_TIME = Long.MIN_VALUE;
+
+    /**
+     * The cache file.
+     */
+    final Path path;
+
+    /**
+     * The size of the source file.
+     */
+    final long sourceSize;
+
+    /**
+     * The last modified time of the source file in milliseconds.
+     */
+    long sourceModified;
+
+    /**
+     * The CRC32C of the source file.
+     */
+    final int sourceHash;
+
+    /**
+     * The name of the charset the source file was read with.
+     */
+    final String charset;
+
+    /**
+     * The number of rows.
+     */
+    final int rows;
+
+    /**
+     * Column names.
+     */
+    final String[] names;
+
+    /**
+     * Column types.
+     */
+    final byte[] types;
+
+    /**
+     * Code widths in bytes of dictionary encoded columns.
+     */
+    final byte[] widths;
+
+    /**
+     * Record positions.
+     */
+    final ByteBuffer positions;
+
+    /**
+     * Record lengths.
+     */
+    final ByteBuffer lengths;
+
+    /**
+     * Column data. For dictionary encoded columns this is the codes.
+     */
+    final ByteBuffer[] data;
+
+    /**
+     * Dictionaries of dictionary encoded columns.
+     */
+    final String[][] dictionaries;
+
+    /**
+     * Dictionary values with all double quotes removed.
+     */
+    final String[][] unquoted;
+
+    /**
+     * Whether dictionary values are blank.
+     */
+    final boolean[][] blanks;
+
+    /**
+     * Open a cache file.
+     *
+     * @param p The cache file.
+     * @throws IOException If encountered or if p is not a cache file.
+     */
+    ColumnTable(Path p) throws IOException {
+        path = p;
+        try (FileChannel fc = FileChannel.open(p, StandardOpenOption.READ)) {
+            ByteBuffer h = read(fc, 0, FIXED_HEADER);
+            if (h.getLong() != MAGIC || h.getInt() != VERSION) {
+                throw new IOException(p + " is not a cache file");
+            }
+            int headerLength = h.getInt();
+            sourceSize = h.getLong();
+            sourceModified = h.getLong();
+            sourceHash = h.getInt();
+            rows = h.getInt();
+            int columns = h.getInt();
+            h = read(fc, FIXED_HEADER, headerLength - FIXED_HEADER);
+            charset = getUTF8(h);
+            names = new String[columns];
+            types = new byte[columns];
+            widths = new byte[columns];
+            data = new ByteBuffer[columns];
+            dictionaries = new String[columns][];
+            unquoted = new String[columns][];
+            blanks = new boolean[columns][];
+            long[] offsets = new long[columns];
+            long[] lens = new long[columns];
+            for (int c = 0; c < columns; c++) {
+                names[c] = getUTF8(h);
+                types[c] = h.get();
+                widths[c] = h.get();
+                offsets[c] = h.getLong();
+                lens[c] = h.getLong();
+            }
+            positions = map(fc, headerLength, (long) rows * Long.BYTES);
+            lengths = map(fc, headerLength + (long) rows * Long.BYTES,
+                    (long) rows * Integer.BYTES);
+            for (int c = 0; c < columns; c++) {
+                ByteBuffer b = map(fc, offsets[c], lens[c]);
+                if (types[c] == STRING) {
+                    int n = b.getInt();
+                    dictionaries[c] = new String[n];
+                    unquoted[c] = new String[n];
+                    blanks[c] = new boolean[n];
+                    for (int k = 0; k < n; k++) {
+                        String v = getUTF8(b);
+                        dictionaries[c][k] = v;
+                        unquoted[c][k] = v.replace("\"", "");
+                        blanks[c][k] = isBlank(v);
+                    }
+                    b = b.slice().order(ByteOrder.LITTLE_ENDIAN);
+                }
+                data[c] = b;
+            }
+        }
+    }
+
+    /**
+     * Get a cache of source, building it if there is none or if source has
+     * changed since it was built.
+     *
+     * @param source The source CSV file.
+     * @param cacheDir The directory for cache files.
+     * @param cs The charset of source.
+     * @return The cache.
+     * @throws IOException If encountered.
+     */
+    public static ColumnTable get(Path source, Path cacheDir, Charset cs)
+            throws IOException {
+        Path p = getCachePath(source, cacheDir);
+        long size = Files.size(source);
+        long modified = Files.getLastModifiedTime(source).toMillis();
+        if (Files.exists(p)) {
+            try {
+                ColumnTable t = new ColumnTable(p);
+                if (t.sourceSize == size && t.charset.equals(cs.name())) {
+                    if (t.sourceModified == modified) {
+                        return t;
+                    }
+                    if (t.sourceHash == hash(source)) {
+                        t.setSourceModified(modified);
+                        return t;
+                    }
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(ColumnTable.class.getName()).log(
+                        Level.WARNING, "Rebuilding " + p, ex);
+            }
+        }
+        Files.createDirectories(cacheDir);
+        build(source, p, cs);
+        return new ColumnTable(p);
+    }
+
+    /**
+     * @param source The source CSV file.
+     * @param cacheDir The directory for cache files.
+     * @return The path of the cache file for source, which is named after
+     * source and {@link #getPathKey(Path)} so that sources with the same name
+     * in different directories have different cache files.
+     */
+    public static Path getCachePath(Path source, Path cacheDir) {
+        return cacheDir.resolve(source.getFileName().toString() + "."
+                + getPathKey(source) + ".cols");
+    }
+
+    /**
+     * @param p A file path.
+     * @return The CRC32C of the absolute normalised path of p as 8 hex
+     * digits.
+     */
+    public static String getPathKey(Path p) {
+        CRC32C crc = new CRC32C();
+        crc.update(p.toAbsolutePath().normalize().toString().getBytes(
+                StandardCharsets.UTF_8));
+        return String.format("%08x", crc.getValue());
+    }
+
+    /**
+     * Build a cache file.
+     *
+     * @param source The source CSV file.
+     * @param p The cache file to write.
+     * @param cs The charset of source.
+     * @throws IOException If encountered.
+     */
+    public static void build(Path source, Path p, Charset cs)
+            throws IOException {
+        long size = Files.size(source);
+        long modified = Files.getLastModifiedTime(source).toMillis();
+        int hash = hash(source);
+        // Pass 1: names, row count and column types.
+        String[] names;
+        int rows = 0;
+        boolean[] ints;
+        boolean[] times;
+        try (CSVScanner r = new CSVScanner(source, cs)) {
+            if (!r.next()) {
+                throw new IOException(source + " has no header");
+            }
+            int columns = r.getFieldCount();
+            names = new String[columns];
+            for (int c = 0; c < columns; c++) {
+                names[c] = r.getUnquoted(c);
+            }
+            ints = new boolean[columns];
+            Arrays.fill(ints, true);
+            times = new boolean[columns];
+            Arrays.fill(times, true);
+            StringBuilder sb = new StringBuilder();
+            while (r.next()) {
+                if (r.isBlankRecord()) {
+                    continue;
+                }
+                rows++;
+                for (int c = 0; c < columns; c++) {
+                    if (r.length(c) == 0) {
+                        continue;
+                    }
+                    CharSequence v = r.getCharSequence(c);
+                    if (ints[c] && !isCanonicalInt(v)) {
+                        ints[c] = false;
+                    }
+                    if (times[c] && !isTime(v, sb)) {
+                        times[c] = false;
+                    }
+                }
+            }
+        }
+        int columns = names.length;
+        byte[] types = new byte[columns];
+        for (int c = 0; c < columns; c++) {
+            types[c] = ints[c] ? INT : times[c] ? TIME : STRING;
+        }
+        // Layout. Int and timestamp columns have a known length so their
+        // data goes first; dictionary encoded columns follow once their
+        // dictionaries are known.
+        byte[] csName = cs.name().getBytes(StandardCharsets.UTF_8);
+        byte[][] nameBytes = new byte[columns][];
+        int headerLength = FIXED_HEADER + 4 + csName.length;
+        for (int c = 0; c < columns; c++) {
+            nameBytes[c] = names[c].getBytes(StandardCharsets.UTF_8);
+            headerLength += 4 + nameBytes[c].length + 2 + 16;
+        }
+        byte[] widths = new byte[columns];
+        long[] offsets = new long[columns];
+        long[] lens = new long[columns];
+        long offset = headerLength + (long) rows * (Long.BYTES + Integer.BYTES);
+        for (int c = 0; c < columns; c++) {
+            if (types[c] != STRING) {
+                offsets[c] = offset;
+                lens[c] = (long) rows * (types[c] == INT ? Integer.BYTES
+                        : Long.BYTES);
+                offset += lens[c];
+            }
+        }
+        // Pass 2: encode, writing each int and timestamp column in place as
+        // rows are read and spilling the codes of dictionary encoded columns
+        // as ints, so no column is held in memory.
+        Path tmp = p.resolveSibling(p.getFileName().toString() + ".tmp");
+        Path spill = p.resolveSibling(p.getFileName().toString()
+                + ".codes.tmp");
+        List<HashMap<String, Integer>> dicts = new ArrayList<>();
+        try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                FileChannel sc = FileChannel.open(spill,
+                        StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.DELETE_ON_CLOSE)) {
+            Writer pw = new Writer(fc, headerLength, BUFFER);
+            Writer lw = new Writer(fc, headerLength + (long) rows * Long.BYTES,
+                    BUFFER);
+            Writer[] cws = new Writer[columns];
+            long spilled = 0;
+            for (int c = 0; c < columns; c++) {
+                dicts.add(null);
+                if (types[c] == STRING) {
+                    dicts.set(c, new HashMap<>());
+                    cws[c] = new Writer(sc, spilled, COLUMN_BUFFER);
+                    spilled += (long) rows * Integer.BYTES;
+                } else {
+                    cws[c] = new Writer(fc, offsets[c], COLUMN_BUFFER);
+                }
+            }
+            try (CSVScanner r = new CSVScanner(source,
+                    CSVChunker.nextBoundary(source, 0), -1, cs)) {
+                int row = 0;
+                while (r.next() && row < rows) {
+                    if (r.isBlankRecord()) {
+                        continue;
+                    }
+                    pw.putLong(r.getRecordPosition());
+                    lw.putInt(r.getRecordLength());
+                    for (int c = 0; c < columns; c++) {
+                        boolean blank = r.length(c) == 0;
+                        switch (types[c]) {
+                            case INT ->
+                                cws[c].putInt(blank ? BLANK_INT
+                                        : r.parseInt(c));
+                            case STRING -> {
+                                HashMap<String, Integer> d = dicts.get(c);
+                                cws[c].putInt(d.computeIfAbsent(
+                                        r.getString(c), k -> d.size()));
+                            }
+                            default -> {
+                                CharSequence v = r.getCharSequence(c);
+                                cws[c].putLong(blank ? BLANK_TIME
+                                        : IRSTime.parseLocal(v) << 1
+                                        | (hasSeconds(v) ? 1 : 0));
+                            }
+                        }
+                    }
+                    row++;
+                }
+            }
+            pw.flush();
+            lw.flush();
+            for (Writer cw : cws) {
+                cw.flush();
+            }
+            // Dictionary encoded columns, copying the spilled codes at their
+            // width.
+            Writer w = new Writer(fc, offset, BUFFER);
+            ByteBuffer b = ByteBuffer.allocate(BUFFER)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            spilled = 0;
+            for (int c = 0; c < columns; c++) {
+                if (types[c] != STRING) {
+                    continue;
+                }
+                HashMap<String, Integer> d = dicts.get(c);
+                byte[][] db = new byte[d.size()][];
+                d.forEach((k, v) -> db[v] = k.getBytes(StandardCharsets.UTF_8));
+                dicts.set(c, null);
+                widths[c] = (byte) (db.length <= 256 ? 1
+                        : db.length <= 65536 ? 2 : 4);
+                long len = 4;
+                for (byte[] v : db) {
+                    len += 4 + v.length;
+                }
+                offsets[c] = offset;
+                lens[c] = len + (long) rows * widths[c];
+                offset += lens[c];
+                w.putInt(db.length);
+                for (byte[] v : db) {
+                    w.putBytes(v);
+                }
+                long end = spilled + (long) rows * Integer.BYTES;
+                while (spilled < end) {
+                    b.clear().limit((int) Math.min(b.capacity(),
+                            end - spilled));
+                    while (b.hasRemaining()) {
+                        if (sc.read(b, spilled + b.position()) < 0) {
+                            throw new IOException(spill + " is truncated");
+                        }
+                    }
+                    spilled += b.position();
+                    b.flip();
+                    while (b.hasRemaining()) {
+                        int v = b.getInt();
+                        switch (widths[c]) {
+                            case 1 ->
+                                w.put((byte) v);
+                            case 2 ->
+                                w.putShort((short) v);
+                            default ->
+                                w.putInt(v);
+                        }
+                    }
+                }
+            }
+            w.flush();
+            // Header.
+            w = new Writer(fc);
+            w.putLong(MAGIC);
+            w.putInt(VERSION);
+            w.putInt(headerLength);
+            w.putLong(size);
+            w.putLong(modified);
+            w.putInt(hash);
+            w.putInt(rows);
+            w.putInt(columns);
+            w.putBytes(csName);
+            for (int c = 0; c < columns; c++) {
+                w.putBytes(nameBytes[c]);
+                w.put(types[c]);
+                w.put(widths[c]);
+                w.putLong(offsets[c]);
+                w.putLong(lens[c]);
+            }
+            w.flush();
+        }
+        Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * For writing little endian values to a channel through a buffer from a
+     * position.
+     */
+    static class Writer {
+
+        final FileChannel fc;
+        final ByteBuffer buf;
+
+        /**
+         * The position in {@link #fc} the buffer is next written to.
+         */
+        long pos;
+
+        Writer(FileChannel fc) {
+            this(fc, 0, BUFFER);
+        }
+
+        Writer(FileChannel fc, long pos, int capacity) {
+            this.fc = fc;
+            this.pos = pos;
+            buf = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        void ensure(int n) throws IOException {
+            if (buf.remaining() < n) {
+                flush();
+            }
+        }
+
+        void put(byte v) throws IOException {
+            ensure(1);
+            buf.put(v);
+        }
+
+        void putShort(short v) throws IOException {
+            ensure(2);
+            buf.putShort(v);
+        }
+
+        void putInt(int v) throws IOException {
+            ensure(4);
+            buf.putInt(v);
+        }
+
+        void putLong(long v) throws IOException {
+            ensure(8);
+            buf.putLong(v);
+        }
+
+        void putBytes(byte[] b) throws IOException {
+            putInt(b.length);
+            flush();
+            ByteBuffer w = ByteBuffer.wrap(b);
+            while (w.hasRemaining()) {
+                pos += fc.write(w, pos);
+            }
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                pos += fc.write(buf, pos);
+            }
+            buf.clear();
+        }
+    }
+
+    /**
+     * @param v A value.
+     * @return {@code true} if v is an int in the form given by
+     * {@link Integer#toString(int)} other than {@link #BLANK_INT}.
+     */
+    static boolean isCanonicalInt(CharSequence v) {
+        int len = v.length();
+        int i = v.charAt(0) == '-' ? 1 : 0;
+        if (len == i || len - i > 10 || (v.charAt(i) == '0' && len > 1)) {
+            return false;
+        }
+        long x = 0;
+        for (; i < len; i++) {
+            char ch = v.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return false;
+            }
+            x = x * 10 + (ch - '0');
+        }
+        return x <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * @param v A non-empty value.
+     * @param sb A builder for formatting.
+     * @return {@code true} if v is an IRS timestamp that formats back to v.
+     */
+    static boolean isTime(CharSequence v, StringBuilder sb) {
+        try {
+            long s = IRSTime.parseLocal(v);
+            sb.setLength(0);
+            IRSTime.formatLocal(s, hasSeconds(v), sb);
+            return sb.toString().contentEquals(v);
+        } catch (RuntimeException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @param v An IRS timestamp.
+     * @return {@code true} if v has seconds.
+     */
+    static boolean hasSeconds(CharSequence v) {
+        int colons = 0;
+        for (int i = 0; i < v.length(); i++) {
+            if (v.charAt(i) == ':') {
+                colons++;
+            }
+        }
+        return colons == 2;
+    }
+
+    /**
+     * @param v A value.
+     * @return {@code true} if v has no characters above space.
+     */
+    static boolean isBlank(String v) {
+        for (int i = 0; i < v.length(); i++) {
+            if (v.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param source The source file.
+     * @return The CRC32C of source.
+     * @throws IOException If encountered.
+     */
+    public static int hash(Path source) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel fc = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = fc.size();
+            for (long pos = 0; pos < size; pos += CSVScanner.WINDOW) {
+                crc.update(fc.map(FileChannel.MapMode.READ_ONLY, pos,
+                        Math.min(CSVScanner.WINDOW, size - pos)));
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Record a new source last modified time for a source with unchanged
+     * content.
+     *
+     * @param modified The last modified time in milliseconds.
+     * @throws IOException If encountered.
+     */
+    void setSourceModified(long modified) throws IOException {
+        try (FileChannel fc = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            fc.write(b.putLong(modified).flip(), 24);
+        }
+        sourceModified = modified;
+    }
+
+    static ByteBuffer read(FileChannel fc, long pos, int len)
+            throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(len).order(ByteOrder.LITTLE_ENDIAN);
+        while (b.hasRemaining()) {
+            if (fc.read(b, pos + b.position()) < 0) {
+                throw new IOException("Unexpected end of cache file");
+            }
+        }
+        return b.flip();
+    }
+
+    static MappedByteBuffer map(FileChannel fc, long pos, long len)
+            throws IOException {
+        if (pos + len > fc.size()) {
+            throw new IOException("Unexpected end of cache file");
+        }
+        MappedByteBuffer b = fc.map(FileChannel.MapMode.READ_ONLY, pos, len);
+        b.order(ByteOrder.LITTLE_ENDIAN);
+        return b;
+    }
+
+    static String getUTF8(ByteBuffer b) {
+        byte[] a = new byte[b.getInt()];
+        b.get(a);
+        return new String(a, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The number of rows.
+     */
+    public int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * @param position A source file position.
+     * @return The first row with a source position at or after position, or
+     * the number of rows if there is none.
+     */
+    public int getRow(long position) {
+        int lo = 0;
+        int hi = rows;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (positions.getLong(mid * Long.BYTES) < position) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return The number of columns.
+     */
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    /**
+     * @param c The column index.
+     * @return The column name.
+     */
+    public String getName(int c) {
+        return names[c];
+    }
+
+    /**
+     * @param c The column index.
+     * @return The column type.
+     */
+    public byte getType(int c) {
+        return types[c];
+    }
+
+    /**
+     * @param code A short field code such as "3.2", as used for the keys of
+     * the field lookup built from the header.
+     * @return The index of the column with that code, or -1.
+     */
+    public int getColumnIndex(String code) {
+        for (int c = 0; c < names.length; c++) {
+            String n = names[c];
+            int sp = n.indexOf(' ');
+            if ((sp < 0 ? n : n.substring(0, sp)).equals(code)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param from The first row (inclusive).
+     * @param to The last row (exclusive).
+     * @return A cursor over the rows from {@code from} to {@code to}.
+     */
+    public Cursor cursor(int from, int to) {
+        return new Cursor(from, to);
+    }
+
+    /**
+     * A cursor over a range of rows. Values are read from the mapped column
+     * data; dictionary values are Strings created when the cache is opened.
+     */
+    public class Cursor implements RecordCursor {
+
+        /**
+         * The current row.
+         */
+        int row;
+
+        /**
+         * The end row (exclusive).
+         */
+        final int to;
+
+        Cursor(int from, int to) {
+            this.row = from - 1;
+            this.to = Math.min(to, rows);
+        }
+
+        @Override
+        public boolean next() {
+            if (row + 1 >= to) {
+                return false;
+            }
+            row++;
+            return true;
+        }
+
+        /**
+         * @return The current row.
+         */
+        public int getRow() {
+            return row;
+        }
+
+        @Override
+        public long getRecordPosition() {
+            return positions.getLong(row * Long.BYTES);
+        }
+
+        @Override
+        public int getRecordLength() {
+            return lengths.getInt(row * Integer.BYTES);
+        }
+
+        /**
+         * @return {@code false} as blank records are not stored.
+         */
+        @Override
+        public boolean isBlankRecord() {
+            return false;
+        }
+
+        /**
+         * The dictionaries last used with {@link #getCode(int, FieldDictionary)}
+         * for each column.
+         */
+        final FieldDictionary[] codeDictionaries
+                = new FieldDictionary[types.length];
+
+        /**
+         * For each column a map from column code, or int value, to the code
+         * in the dictionary last used, with -1 for not yet known.
+         */
+        final int[][] codeMaps = new int[types.length][];
+
+        /**
+         * @param i The column index.
+         * @return The column dictionary code of column i which must be
+         * dictionary encoded.
+         */
+        public int getColumnCode(int i) {
+            ByteBuffer b = data[i];
+            return switch (widths[i]) {
+                case 1 ->
+                    b.get(row) & 0xFF;
+                case 2 ->
+                    b.getShort(row * 2) & 0xFFFF;
+                default ->
+                    b.getInt(row * 4);
+            };
+        }
+
+        int getInt(int i) {
+            return data[i].getInt(row * Integer.BYTES);
+        }
+
+        long getTime(int i) {
+            return data[i].getLong(row * Long.BYTES);
+        }
+
+        @Override
+        public boolean isBlank(int i) {
+            if (i >= types.length) {
+                return true;
+            }
+            return switch (types[i]) {
+                case INT ->
+                    getInt(i) == BLANK_INT;
+                case STRING ->
+                    blanks[i][getColumnCode(i)];
+                default ->
+                    getTime(i) == BLANK_TIME;
+            };
+        }
+
+        @Override
+        public boolean equalsIgnoreCase(int i, String s) {
+            return getString(i).equalsIgnoreCase(s);
+        }
+
+        @Override
+        public boolean unquotedStartsWith(int i, String prefix) {
+            return getUnquoted(i).startsWith(prefix);
+        }
+
+        @Override
+        public int parseInt(int i) {
+            if (i < types.length && types[i] == INT) {
+                int v = getInt(i);
+                if (v == BLANK_INT) {
+                    throw new NumberFormatException("For input string: \"\"");
+                }
+                return v;
+            }
+            return Integer.parseInt(getString(i));
+        }
+
+        @Override
+        public long parseLong(int i) {
+            if (i < types.length && types[i] == INT) {
+                return parseInt(i);
+            }
+            return Long.parseLong(getString(i));
+        }
+
+        @Override
+        public long parseTime(int i) {
+            if (i < types.length && types[i] == TIME) {
+                long v = getTime(i);
+                if (v != BLANK_TIME) {
+                    return IRSTime.fromLocal(v >> 1);
+                }
+            }
+            return IRSTime.parse(getString(i));
+        }
+
+        /**
+         * For dictionary encoded columns and small int values the code in d
+         * is looked up once for each column code or value.
+         */
+        @Override
+        public int getCode(int i, FieldDictionary d) {
+            if (i >= types.length || types[i] == TIME) {
+                return d.code(getString(i));
+            }
+            int k;
+            if (types[i] == STRING) {
+                k = getColumnCode(i);
+            } else {
+                k = getInt(i);
+                if (k < 0 || k >= 1 << 16) {
+                    return d.code(getString(i));
+                }
+            }
+            int[] m = codeMaps[i];
+            if (codeDictionaries[i] != d || m == null) {
+                codeDictionaries[i] = d;
+                m = new int[types[i] == STRING ? dictionaries[i].length : 64];
+                Arrays.fill(m, -1);
+                codeMaps[i] = m;
+            }
+            if (k >= m.length) {
+                int n = m.length;
+                m = Arrays.copyOf(m, Math.max(k + 1, n * 2));
+                Arrays.fill(m, n, m.length, -1);
+                codeMaps[i] = m;
+            }
+            if (m[k] < 0) {
+                m[k] = d.code(getString(i));
+            }
+            return m[k];
+        }
+
+        @Override
+        public String getString(int i) {
+            if (i >= types.length) {
+                return "";
+            }
+            switch (types[i]) {
+                case INT -> {
+                    int v = getInt(i);
+                    return v == BLANK_INT ? "" : Integer.toString(v);
+                }
+                case STRING -> {
+                    return dictionaries[i][getColumnCode(i)];
+                }
+                default -> {
+                    long v = getTime(i);
+                    return v == BLANK_TIME ? ""
+                            : IRSTime.formatLocal(v >> 1, (v & 1) == 1,
+                                    new StringBuilder(19)).toString();
+                }
+            }
+        }
+
+        /**
+         * For each dictionary encoded column, the hash of each value,
+         * computed when first needed.
+         */
+        final long[][] hashes = new long[types.length][];
+
+        /**
+         * For each dictionary encoded column, whether each value is an
+         * integer, computed when first needed.
+         */
+        final boolean[][] longs = new boolean[types.length][];
+
+        /**
+         * For formatting timestamps to hash.
+         */
+        final StringBuilder time = new StringBuilder(19);
+
+        /**
+         * Values are hashed without creating a String.
+         */
+        @Override
+        public long hash(int i) {
+            if (i >= types.length) {
+                return RecordCursor.hash("");
+            }
+            if (types[i] == TIME) {
+                long v = getTime(i);
+                time.setLength(0);
+                return RecordCursor.hash(v == BLANK_TIME ? time
+                        : IRSTime.formatLocal(v >> 1, (v & 1) == 1, time));
+            }
+            if (types[i] == INT) {
+                int v = getInt(i);
+                return v == BLANK_INT ? RecordCursor.hash("") : hashInt(v);
+            }
+            long[] h = hashes[i];
+            if (h == null) {
+                String[] d = dictionaries[i];
+                h = new long[d.length];
+                for (int k = 0; k < d.length; k++) {
+                    h[k] = RecordCursor.hash(d[k]);
+                }
+                hashes[i] = h;
+            }
+            return h[getColumnCode(i)];
+        }
+
+        /**
+         * @param v A value.
+         * @return {@link RecordCursor#hash(CharSequence)} of
+         * {@link Integer#toString(int)} of v.
+         */
+        static long hashInt(int v) {
+            long h = 0xcbf29ce484222325L;
+            long u = v;
+            if (u < 0) {
+                h = (h ^ '-') * 0x100000001b3L;
+                u = -u;
+            }
+            long p = 1;
+            while (p * 10 <= u) {
+                p *= 10;
+            }
+            for (; p > 0; p /= 10) {
+                h = (h ^ ('0' + u / p % 10)) * 0x100000001b3L;
+            }
+            return RecordCursor.mix(h);
+        }
+
+        @Override
+        public boolean isLong(int i) {
+            if (i >= types.length || types[i] == TIME) {
+                return false;
+            }
+            if (types[i] == INT) {
+                return getInt(i) != BLANK_INT;
+            }
+            boolean[] l = longs[i];
+            if (l == null) {
+                String[] d = dictionaries[i];
+                l = new boolean[d.length];
+                for (int k = 0; k < d.length; k++) {
+                    l[k] = RecordCursor.isLong(d[k]);
+                }
+                longs[i] = l;
+            }
+            return l[getColumnCode(i)];
+        }
+
+        @Override
+        public String getUnquoted(int i) {
+            if (i < types.length && types[i] == STRING) {
+                return unquoted[i][getColumnCode(i)];
+            }
+            return getString(i);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Predicate;
+import uk.ac.leeds.ccg.projects.wildfire.stats.Aggregator;
+
+/**
+ * A dictionary of the distinct values of a field that gives each value a
+ * small int code in the order values are first added. Values can be looked
+ * up from bytes in a buffer without creating a String, so a String is only
+ * created once for each distinct value. {@link Test}s evaluate a predicate
+ * once for each distinct value so that testing a row is a bit lookup.
+ *
+ * As an {@link Aggregator} a dictionary is the set of distinct values of a
+ * field. A new instance from {@link #newInstance()} has no tests.
+ *
+ * @author Andy Turner
+ */
+public class FieldDictionary implements Aggregator<FieldDictionary> {
+
+    /**
+     * The charset of value bytes.
+     */
+    final Charset cs;
+
+    /**
+     * Values indexed by code.
+     */
+    final List<String> values = new ArrayList<>();
+
+    /**
+     * Codes of values.
+     */
+    final HashMap<String, Integer> codes = new HashMap<>();
+
+    /**
+     * Value bytes indexed by code.
+     */
+    byte[][] keys = new byte[16][];
+
+    /**
+     * Hashes of value bytes indexed by code.
+     */
+    int[] hashes = new int[16];
+
+    /**
+     * Open addressing table of code + 1, or 0 for an empty slot.
+     */
+    int[] table = new int[64];
+
+    /**
+     * Tests of values.
+     */
+    final List<Test> tests = new ArrayList<>();
+
+    /**
+     * Create a new instance.
+     *
+     * @param cs The charset of value bytes.
+     */
+    public FieldDictionary(Charset cs) {
+        this.cs = cs;
+    }
+
+    /**
+     * Get the code of the value in bytes {@code s} (inclusive) to {@code e}
+     * (exclusive) of {@code b}, adding it if it is new.
+     *
+     * @param b The buffer.
+     * @param s The start.
+     * @param e The end.
+     * @return The code.
+     */
+    public int code(ByteBuffer b, int s, int e) {
+        int h = 1;
+        for (int i = s; i < e; i++) {
+            h = 31 * h + b.get(i);
+        }
+        int mask = table.length - 1;
+        for (int slot = mix(h) & mask;; slot = (slot + 1) & mask) {
+            int c = table[slot] - 1;
+            if (c < 0) {
+                byte[] k = new byte[e - s];
+                b.get(s, k);
+                return add(k, new String(k, cs), h);
+            }
+            if (hashes[c] == h && equals(keys[c], b, s, e)) {
+                return c;
+            }
+        }
+    }
+
+    /**
+     * Get the code of a value, adding it if it is new.
+     *
+     * @param v The value.
+     * @return The code.
+     */
+    public int code(String v) {
+        Integer c = codes.get(v);
+        if (c != null) {
+            return c;
+        }
+        byte[] k = v.getBytes(cs);
+        int h = 1;
+        for (byte x : k) {
+            h = 31 * h + x;
+        }
+        return add(k, v, h);
+    }
+
+    /**
+     * Add a new value.
+     *
+     * @param k The value bytes.
+     * @param v The value.
+     * @param h The hash of k.
+     * @return The code.
+     */
+    int add(byte[] k, String v, int h) {
+        int c = values.size();
+        values.add(v);
+        codes.putIfAbsent(v, c);
+        if (c == keys.length) {
+            keys = Arrays.copyOf(keys, c * 2);
+            hashes = Arrays.copyOf(hashes, c * 2);
+        }
+        keys[c] = k;
+        hashes[c] = h;
+        if ((c + 1) * 2 > table.length) {
+            table = new int[table.length * 2];
+            for (int i = 0; i < c; i++) {
+                put(i);
+            }
+        }
+        put(c);
+        for (Test t : tests) {
+            t.evaluate(c);
+        }
+        return c;
+    }
+
+    /**
+     * Put code c in {@link #table}.
+     *
+     * @param c The code.
+     */
+    void put(int c) {
+        int mask = table.length - 1;
+        int slot = mix(hashes[c]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = c + 1;
+    }
+
+    static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    static boolean equals(byte[] k, ByteBuffer b, int s, int e) {
+        if (k.length != e - s) {
+            return false;
+        }
+        for (int i = 0; i < k.length; i++) {
+            if (k[i] != b.get(s + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add all the values of another dictionary in code order.
+     *
+     * @param o The other dictionary.
+     * @return For each code of o the code in this.
+     */
+    public int[] addAll(FieldDictionary o) {
+        int[] r = new int[o.size()];
+        for (int c = 0; c < r.length; c++) {
+            r[c] = code(o.get(c));
+        }
+        return r;
+    }
+
+    @Override
+    public FieldDictionary newInstance() {
+        return new FieldDictionary(cs);
+    }
+
+    @Override
+    public void merge(FieldDictionary o) {
+        addAll(o);
+    }
+
+    /**
+     * Write the values in code order.
+     *
+     * @param out The output.
+     * @throws IOException If encountered.
+     */
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(values.size());
+        for (int c = 0; c < values.size(); c++) {
+            out.writeInt(keys[c].length);
+            out.write(keys[c]);
+        }
+    }
+
+    /**
+     * Add values written by {@link #write(DataOutput)}. If this is empty the
+     * values have the same codes as when written.
+     *
+     * @param in The input.
+     * @return For each code written the code in this.
+     * @throws IOException If encountered.
+     */
+    public int[] readAll(DataInput in) throws IOException {
+        int[] r = new int[in.readInt()];
+        for (int c = 0; c < r.length; c++) {
+            byte[] k = new byte[in.readInt()];
+            in.readFully(k);
+            r[c] = code(new String(k, cs));
+        }
+        return r;
+    }
+
+    @Override
+    public void read(DataInput in) throws IOException {
+        readAll(in);
+    }
+
+    /**
+     * @return The number of values.
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * @param c The code.
+     * @return The value.
+     */
+    public String get(int c) {
+        return values.get(c);
+    }
+
+    /**
+     * @return The values in code order.
+     */
+    public List<String> getValues() {
+        return values;
+    }
+
+    /**
+     * Create a test of values that is evaluated for each value now in the
+     * dictionary and for each value added later.
+     *
+     * @param p The predicate.
+     * @return The test.
+     */
+    public Test newTest(Predicate<String> p) {
+        Test t = new Test(p);
+        for (int c = 0; c < values.size(); c++) {
+            t.evaluate(c);
+        }
+        tests.add(t);
+        return t;
+    }
+
+    /**
+     * A predicate evaluated once for each value.
+     */
+    public class Test {
+
+        /**
+         * The predicate.
+         */
+        final Predicate<String> p;
+
+        /**
+         * The codes of values that pass.
+         */
+        final BitSet passes = new BitSet();
+
+        Test(Predicate<String> p) {
+            this.p = p;
+        }
+
+        void evaluate(int c) {
+            if (p.test(values.get(c))) {
+                passes.set(c);
+            }
+        }
+
+        /**
+         * @param c The code.
+         * @return {@code true} if the value with code c passes.
+         */
+        public boolean test(int c) {
+            return passes.get(c);
+        }
+    }
+}
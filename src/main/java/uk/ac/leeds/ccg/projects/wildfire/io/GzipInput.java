@@ -0,0 +1,463 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.io;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * For reading gzip compressed inputs. {@link RecordCursor}s, checkpoints and
+ * selected records address records by byte position in a file, so a
+ * compressed input is inflated once to a file next to its cache and that
+ * file is read in place of it. The inflated file is given the last modified
+ * time of the compressed one and is reused while the times are the same.
+ *
+ * Inputs in the block gzip format (BGZF) of htslib {@code bgzip} and
+ * {@link #compress(Path, Path, int)} are inflated in parallel. BGZF is a
+ * series of gzip members of at most 64 KiB each recording its compressed
+ * size in a header extra field and its inflated size in its trailer, so the
+ * position of every block in the output is known before any is inflated and
+ * each can be written there directly. A BGZF file is also a valid gzip file.
+ * Other gzip files are inflated with a single {@link GZIPInputStream}.
+ *
+ * @author Andy Turner
+ */
+public class GzipInput {
+
+    /**
+     * The gzip magic bytes as a little endian short.
+     */
+    static final int MAGIC = 0x8b1f;
+
+    /**
+     * The length of a BGZF block header.
+     */
+    static final int HEADER = 18;
+
+    /**
+     * The length of a gzip member trailer.
+     */
+    static final int TRAILER = 8;
+
+    /**
+     * The largest number of bytes compressed into a block, as in htslib.
+     */
+    static final int BLOCK_INPUT = 0xff00;
+
+    /**
+     * The largest block length.
+     */
+    static final int MAX_BLOCK = 1 << 16;
+
+    /**
+     * The empty block that ends a BGZF file.
+     */
+    static final byte[] EOF = {31, -117, 8, 4, 0, 0, 0, 0, 0, -1, 6, 0, 66, 67,
+        2, 0, 27, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    /**
+     * The number of blocks compressed at once in
+     * {@link #compress(Path, Path, int)}, which bounds the memory used.
+     */
+    static final int BATCH = 256;
+
+    /**
+     * The temporary directory for inflating to when no directory is given,
+     * created when first needed so that every input of a run is inflated to
+     * the same place.
+     */
+    static Path tempDir;
+
+    /**
+     * Create a new instance.
+     */
+    public GzipInput() {
+    }
+
+    /**
+     * @param p A file path.
+     * @return {@code true} if p starts with the gzip magic bytes.
+     * @throws IOException If encountered.
+     */
+    public static boolean isGzip(Path p) throws IOException {
+        try (FileChannel fc = FileChannel.open(p, StandardOpenOption.READ)) {
+            ByteBuffer b = read(fc, 0, 2);
+            return b.limit() == 2 && (b.getShort(0) & 0xffff) == MAGIC;
+        }
+    }
+
+    /**
+     * @param p A file path.
+     * @return {@code true} if p starts with a BGZF block header.
+     * @throws IOException If encountered.
+     */
+    public static boolean isBlockGzip(Path p) throws IOException {
+        try (FileChannel fc = FileChannel.open(p, StandardOpenOption.READ)) {
+            return blockLength(read(fc, 0, HEADER)) > 0;
+        }
+    }
+
+    /**
+     * @return {@link #tempDir}, creating it if it does not yet exist.
+     * @throws IOException If encountered.
+     */
+    static synchronized Path getTempDir() throws IOException {
+        if (tempDir == null) {
+            tempDir = Files.createTempDirectory("wildfire");
+            tempDir.toFile().deleteOnExit();
+        }
+        return tempDir;
+    }
+
+    /**
+     * Get the path to read for an input, inflating it first if it is gzip
+     * compressed.
+     *
+     * @param p The input file path.
+     * @param dir The directory to inflate to, or null for a temporary
+     * directory that is deleted on exit.
+     * @param threads The number of threads for inflating BGZF blocks.
+     * @return p if it is not compressed, otherwise the inflated file, which
+     * is named as p without any ".gz" suffix and with
+     * {@link ColumnTable#getPathKey(Path)} of p appended, so inputs of the
+     * same name in different directories are inflated to different files.
+     * @throws IOException If encountered.
+     */
+    public static Path resolve(Path p, Path dir, int threads)
+            throws IOException {
+        if (!isGzip(p)) {
+            return p;
+        }
+        String name = p.getFileName().toString();
+        if (name.toLowerCase().endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        name += "." + ColumnTable.getPathKey(p);
+        boolean temporary = dir == null;
+        if (temporary) {
+            dir = getTempDir();
+        } else {
+            Files.createDirectories(dir);
+        }
+        Path out = dir.resolve(name);
+        FileTime modified = Files.getLastModifiedTime(p);
+        if (Files.exists(out)
+                && Files.getLastModifiedTime(out).equals(modified)) {
+            return out;
+        }
+        Path tmp = dir.resolve(name + ".tmp");
+        if (isBlockGzip(p)) {
+            inflateBlocks(p, tmp, threads);
+        } else {
+            try (InputStream is = new GZIPInputStream(Files.newInputStream(p),
+                    MAX_BLOCK)) {
+                Files.copy(is, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.setLastModifiedTime(tmp, modified);
+        Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        if (temporary) {
+            out.toFile().deleteOnExit();
+        }
+        return out;
+    }
+
+    /**
+     * @param p A file path.
+     * @return A buffered stream of the content of p, inflated if p is gzip
+     * compressed.
+     * @throws IOException If encountered.
+     */
+    public static InputStream newInputStream(Path p) throws IOException {
+        if (isGzip(p)) {
+            return new GZIPInputStream(Files.newInputStream(p), MAX_BLOCK);
+        }
+        return new BufferedInputStream(Files.newInputStream(p), MAX_BLOCK);
+    }
+
+    /**
+     * Inflate a BGZF file.
+     *
+     * @param p The BGZF file path.
+     * @param out The output file path.
+     * @param threads The number of threads.
+     * @throws IOException If encountered or if p is not BGZF.
+     */
+    static void inflateBlocks(Path p, Path out, int threads)
+            throws IOException {
+        // Block positions in p and in out.
+        List<long[]> blocks = new ArrayList<>();
+        try (FileChannel fc = FileChannel.open(p, StandardOpenOption.READ)) {
+            long size = fc.size();
+            long pos = 0;
+            long outPos = 0;
+            while (pos < size) {
+                int len = blockLength(read(fc, pos, HEADER));
+                if (len <= 0 || pos + len > size) {
+                    throw new IOException(p + " has no BGZF block at " + pos);
+                }
+                ByteBuffer t = read(fc, pos + len - 4, 4);
+                int isize = t.getInt(0);
+                if (isize < 0 || isize > MAX_BLOCK) {
+                    throw new IOException("Corrupt BGZF block at " + pos);
+                }
+                blocks.add(new long[]{pos, len, outPos, isize});
+                pos += len;
+                outPos += isize;
+            }
+        }
+        int n = (int) Math.max(1, Math.min(blocks.size(), threads * 4L));
+        try (FileChannel in = FileChannel.open(p, StandardOpenOption.READ);
+                FileChannel o = FileChannel.open(out, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE)) {
+            if (threads <= 1 || n == 1) {
+                inflate(in, o, blocks);
+                return;
+            }
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+                for (int k = 0; k < n; k++) {
+                    List<long[]> part = blocks.subList(
+                            blocks.size() * k / n, blocks.size() * (k + 1) / n);
+                    tasks.add(pool.submit(() -> {
+                        inflate(in, o, part);
+                        return null;
+                    }));
+                }
+                for (ForkJoinTask<Void> task : tasks) {
+                    try {
+                        task.join();
+                    } catch (RuntimeException ex) {
+                        // join may wrap the wrapped IOException again.
+                        for (Throwable t = ex; t != null; t = t.getCause()) {
+                            if (t instanceof IOException ioe) {
+                                throw ioe;
+                            }
+                        }
+                        throw ex;
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Inflate consecutive BGZF blocks, checking the CRC of each, and write
+     * them at their output positions. Blocks are read and inflated one at a
+     * time into buffers of {@link #MAX_BLOCK} bytes, so the memory used does
+     * not depend on the number of blocks.
+     *
+     * @param in The BGZF file channel.
+     * @param out The output file channel.
+     * @param blocks For each block its position and length in in, and its
+     * position and length in out.
+     * @throws IOException If encountered or if a block is corrupt.
+     */
+    static void inflate(FileChannel in, FileChannel out, List<long[]> blocks)
+            throws IOException {
+        ByteBuffer src = ByteBuffer.allocate(MAX_BLOCK)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        byte[] a = src.array();
+        byte[] b = new byte[MAX_BLOCK];
+        Inflater inf = new Inflater(true);
+        CRC32 crc = new CRC32();
+        try {
+            for (long[] block : blocks) {
+                int len = (int) block[1];
+                int isize = (int) block[3];
+                src.clear().limit(len);
+                while (src.hasRemaining()) {
+                    if (in.read(src, block[0] + src.position()) < 0) {
+                        throw new IOException("Truncated BGZF block at "
+                                + block[0]);
+                    }
+                }
+                inf.reset();
+                inf.setInput(a, HEADER, len - HEADER - TRAILER);
+                int m = 0;
+                while (m < isize && !inf.finished()) {
+                    int k = inf.inflate(b, m, isize - m);
+                    if (k == 0 && (inf.needsInput() || inf.needsDictionary())) {
+                        break;
+                    }
+                    m += k;
+                }
+                crc.reset();
+                crc.update(b, 0, m);
+                if (m != isize || (int) crc.getValue()
+                        != src.getInt(len - TRAILER)) {
+                    throw new IOException("Corrupt BGZF block at " + block[0]);
+                }
+                ByteBuffer w = ByteBuffer.wrap(b, 0, m);
+                long pos = block[2];
+                while (w.hasRemaining()) {
+                    pos += out.write(w, pos);
+                }
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Corrupt BGZF block", ex);
+        } finally {
+            inf.end();
+        }
+    }
+
+    /**
+     * @param h The first {@link #HEADER} bytes of a gzip member.
+     * @return The length of the member if it is a BGZF block, otherwise -1.
+     */
+    static int blockLength(ByteBuffer h) {
+        if (h.limit() < HEADER || (h.getShort(0) & 0xffff) != MAGIC
+                || h.get(2) != 8 || (h.get(3) & 4) == 0
+                || h.getShort(10) != 6 || h.get(12) != 'B'
+                || h.get(13) != 'C' || h.getShort(14) != 2) {
+            return -1;
+        }
+        return (h.getShort(16) & 0xffff) + 1;
+    }
+
+    /**
+     * Compress a file to BGZF, compressing blocks in parallel.
+     *
+     * @param p The file path.
+     * @param out The BGZF file path.
+     * @param threads The number of threads.
+     * @throws IOException If encountered.
+     */
+    public static void compress(Path p, Path out, int threads)
+            throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try (InputStream is = Files.newInputStream(p);
+                OutputStream os = Files.newOutputStream(out)) {
+            boolean more = true;
+            while (more) {
+                List<ForkJoinTask<byte[]>> tasks = new ArrayList<>();
+                while (tasks.size() < BATCH) {
+                    byte[] b = is.readNBytes(BLOCK_INPUT);
+                    if (b.length == 0) {
+                        more = false;
+                        break;
+                    }
+                    tasks.add(pool.submit(() -> deflate(b)));
+                }
+                for (ForkJoinTask<byte[]> task : tasks) {
+                    os.write(task.join());
+                }
+            }
+            os.write(EOF);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @param b The bytes of a block.
+     * @return The BGZF block.
+     */
+    static byte[] deflate(byte[] b) {
+        Deflater d = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        byte[] c = new byte[MAX_BLOCK];
+        int n;
+        try {
+            d.setInput(b);
+            d.finish();
+            n = d.deflate(c, HEADER, MAX_BLOCK - HEADER - TRAILER);
+            if (!d.finished()) {
+                // Incompressible, so store it.
+                d.reset();
+                d.setLevel(Deflater.NO_COMPRESSION);
+                d.setInput(b);
+                d.finish();
+                n = d.deflate(c, HEADER, MAX_BLOCK - HEADER - TRAILER);
+            }
+        } finally {
+            d.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(b);
+        ByteBuffer h = ByteBuffer.wrap(c).order(ByteOrder.LITTLE_ENDIAN);
+        h.putShort((short) MAGIC).put((byte) 8).put((byte) 4).putInt(0)
+                .put((byte) 0).put((byte) -1).putShort((short) 6)
+                .put((byte) 'B').put((byte) 'C').putShort((short) 2)
+                .putShort((short) (HEADER + n + TRAILER - 1));
+        h.position(HEADER + n);
+        h.putInt((int) crc.getValue()).putInt(b.length);
+        byte[] r = new byte[HEADER + n + TRAILER];
+        System.arraycopy(c, 0, r, 0, r.length);
+        return r;
+    }
+
+    /**
+     * Read bytes into a little endian heap buffer.
+     *
+     * @param fc The channel.
+     * @param pos The position.
+     * @param len The number of bytes.
+     * @return A buffer with limit the number of bytes read, which is fewer
+     * than len at the end of the channel.
+     * @throws IOException If encountered.
+     */
+    static ByteBuffer read(FileChannel fc, long pos, int len)
+            throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(len).order(ByteOrder.LITTLE_ENDIAN);
+        while (b.hasRemaining()) {
+            if (fc.read(b, pos + b.position()) < 0) {
+                break;
+            }
+        }
+        return b.flip();
+    }
+
+    /**
+     * Compress a file to BGZF.
+     *
+     * @param args The input file path, the output file path and optionally
+     * the number of threads.
+     * @throws IOException If encountered.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: GzipInput <input> <output.gz> [threads]");
+            return;
+        }
+        compress(Path.of(args[0]), Path.of(args[1]), args.length > 2
+                ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors());
+    }
+}
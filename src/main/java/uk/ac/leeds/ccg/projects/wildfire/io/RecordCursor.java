@@ -0,0 +1,265 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * For moving through the records of an IRS export one at a time and reading
+ * the fields of the current record. Field values are the raw text of a CSV
+ * field, so any double quotes are retained. Implementations are
+ * {@link CSVScanner} over the CSV itself and {@link ColumnTable.Cursor} over
+ * a columnar cache of it.
+ *
+ * @author Andy Turner
+ */
+public interface RecordCursor extends Closeable {
+
+    /**
+     * Open cursors over consecutive parts of the records of an input file.
+     * If cacheDir is not null the cursors are over the rows of a
+     * {@link ColumnTable} cache of the file, otherwise they are
+     * {@link CSVScanner}s over record aligned byte ranges of it.
+     *
+     * @param pIn The input file path.
+     * @param n The number of parts. If this is 1 there is one cursor over all
+     * the records.
+     * @param pool The pool for splitting the file if n is greater than 1.
+     * @param cacheDir The directory for columnar caches, or null.
+     * @param cs The charset of the input file.
+     * @return The cursors in input order.
+     * @throws IOException If encountered.
+     */
+    static List<RecordCursor> open(Path pIn, int n, ForkJoinPool pool,
+            Path cacheDir, Charset cs) throws IOException {
+        return open(pIn, -1, n, pool, cacheDir, cs);
+    }
+
+    /**
+     * Open cursors over consecutive parts of the records of an input file
+     * from a position, for example to process only records appended since
+     * the file was last processed.
+     *
+     * @param pIn The input file path.
+     * @param start A record boundary after the header, or -1 to start from
+     * the first record.
+     * @param n The number of parts.
+     * @param pool The pool for splitting the file if n is greater than 1.
+     * @param cacheDir The directory for columnar caches, or null.
+     * @param cs The charset of the input file.
+     * @return The cursors in input order.
+     * @throws IOException If encountered.
+     */
+    static List<RecordCursor> open(Path pIn, long start, int n,
+            ForkJoinPool pool, Path cacheDir, Charset cs) throws IOException {
+        List<RecordCursor> r = new ArrayList<>();
+        if (cacheDir != null) {
+            ColumnTable t = ColumnTable.get(pIn, cacheDir, cs);
+            long first = start < 0 ? 0 : t.getRow(start);
+            long rows = t.getRowCount() - first;
+            for (int k = 0; k < n; k++) {
+                int from = (int) (first + rows * k / n);
+                int to = (int) (first + rows * (k + 1) / n);
+                if (to > from || n == 1) {
+                    r.add(t.cursor(from, to));
+                }
+            }
+        } else {
+            if (start < 0) {
+                start = CSVChunker.nextBoundary(pIn, 0);
+            }
+            long[] bounds = n == 1 ? new long[]{start, -1}
+                    : CSVChunker.split(pIn, start, n, pool);
+            for (int k = 0; k + 1 < bounds.length; k++) {
+                r.add(new CSVScanner(pIn, bounds[k], bounds[k + 1], cs));
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Advance to the next record.
+     *
+     * @return {@code true} if there is a next record.
+     * @throws IOException If encountered.
+     */
+    boolean next() throws IOException;
+
+    /**
+     * @return The source file position of the start of the current record.
+     */
+    long getRecordPosition();
+
+    /**
+     * @return The length in bytes of the current record in the source file
+     * excluding the line terminator.
+     */
+    int getRecordLength();
+
+    /**
+     * @return {@code true} if the current record has nothing but commas and
+     * whitespace.
+     */
+    boolean isBlankRecord();
+
+    /**
+     * Read only the fields before a limit, so fields after the last one an
+     * analysis reads need not be tokenised. Fields from the limit on are then
+     * treated as missing. This is a hint that the default ignores.
+     *
+     * @param limit The number of fields to read.
+     */
+    default void setFieldLimit(int limit) {
+    }
+
+    /**
+     * @param i The field index.
+     * @return {@code true} if field i is missing or only whitespace.
+     */
+    boolean isBlank(int i);
+
+    /**
+     * @param i The field index.
+     * @param s An ASCII string.
+     * @return {@code true} if field i equals s ignoring case.
+     */
+    boolean equalsIgnoreCase(int i, String s);
+
+    /**
+     * @param i The field index.
+     * @param prefix An ASCII prefix.
+     * @return {@code true} if the value of field i with all double quotes
+     * removed starts with prefix.
+     */
+    boolean unquotedStartsWith(int i, String prefix);
+
+    /**
+     * Parse field i in the same way as {@link Integer#parseInt(String)}.
+     *
+     * @param i The field index.
+     * @return The value.
+     * @throws NumberFormatException If field i is not an int.
+     */
+    int parseInt(int i);
+
+    /**
+     * Parse field i in the same way as {@link Long#parseLong(String)}.
+     *
+     * @param i The field index.
+     * @return The value.
+     * @throws NumberFormatException If field i is not a long.
+     */
+    default long parseLong(int i) {
+        return Long.parseLong(getString(i));
+    }
+
+    /**
+     * Parse field i in the same way as
+     * {@link uk.ac.leeds.ccg.projects.wildfire.time.IRSTime#parse(CharSequence)}.
+     *
+     * @param i The field index.
+     * @return The epoch second.
+     */
+    long parseTime(int i);
+
+    /**
+     * @param i The field index.
+     * @param d The dictionary for field i.
+     * @return The code in d of the value of field i, which is added to d if
+     * it is new.
+     */
+    int getCode(int i, FieldDictionary d);
+
+    /**
+     * @param i The field index.
+     * @return Field i as a String, or the empty String if there is no field i.
+     */
+    String getString(int i);
+
+    /**
+     * @param i The field index.
+     * @return Field i as a String with all double quotes removed.
+     */
+    String getUnquoted(int i);
+
+    /**
+     * @param i The field index.
+     * @return {@link #hash(CharSequence)} of {@link #getString(int)}.
+     */
+    default long hash(int i) {
+        return hash(getString(i));
+    }
+
+    /**
+     * @param i The field index.
+     * @return {@link #isLong(CharSequence)} of {@link #getString(int)}.
+     */
+    default boolean isLong(int i) {
+        return isLong(getString(i));
+    }
+
+    /**
+     * @param s The characters.
+     * @return A well mixed 64 bit hash of s: the FNV-1a hash of its chars
+     * with the MurmurHash3 finaliser applied.
+     */
+    static long hash(CharSequence s) {
+        long h = 0xcbf29ce484222325L;
+        for (int j = 0; j < s.length(); j++) {
+            h = (h ^ s.charAt(j)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * @param h A hash.
+     * @return h with the MurmurHash3 finaliser applied.
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @param s The characters.
+     * @return {@code true} if s is an optional sign and 1 to 18 digits, so
+     * it is an integer that {@link Long#parseLong(String)} can parse.
+     */
+    static boolean isLong(CharSequence s) {
+        int len = s.length();
+        int j = len > 1 && (s.charAt(0) == '-' || s.charAt(0) == '+') ? 1 : 0;
+        if (len == j || len - j > 18) {
+            return false;
+        }
+        for (; j < len; j++) {
+            char c = s.charAt(j);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.io;
+
+import java.util.Arrays;
+import org.apache.poi.ss.usermodel.CellType;
+
+/**
+ * A row of cell values read by {@link XLSXStreamReader}. A single instance is
+ * reused for every row of a sheet, so values should be copied out if they are
+ * needed after {@link XLSXStreamReader.RowHandler#handleRow(XLSXRow)} returns.
+ *
+ * @author Andy Turner
+ */
+public class XLSXRow {
+
+    /**
+     * The zero based row number in the sheet.
+     */
+    int rowNum;
+
+    /**
+     * One more than the index of the last cell with a value.
+     */
+    int lastCellNum;
+
+    /**
+     * Cell types, {@code null} for cells that are not in the row.
+     */
+    CellType[] types;
+
+    /**
+     * String values for non numeric cells.
+     */
+    String[] strings;
+
+    /**
+     * Numeric values for numeric and boolean cells.
+     */
+    double[] numbers;
+
+    /**
+     * For flagging numeric cells that are formatted as dates.
+     */
+    boolean[] dates;
+
+    /**
+     * The number format of each cell, or {@code null} for the General
+     * format.
+     */
+    String[] formats;
+
+    /**
+     * Create a new instance.
+     */
+    public XLSXRow() {
+        int n = 64;
+        types = new CellType[n];
+        strings = new String[n];
+        numbers = new double[n];
+        dates = new boolean[n];
+        formats = new String[n];
+    }
+
+    /**
+     * Clear values for reuse.
+     *
+     * @param rowNum The zero based row number.
+     */
+    void clear(int rowNum) {
+        this.rowNum = rowNum;
+        Arrays.fill(types, 0, lastCellNum, null);
+        Arrays.fill(strings, 0, lastCellNum, null);
+        Arrays.fill(dates, 0, lastCellNum, false);
+        Arrays.fill(formats, 0, lastCellNum, null);
+        lastCellNum = 0;
+    }
+
+    /**
+     * Ensure there is capacity for a cell at index {@code i}.
+     *
+     * @param i The cell index.
+     */
+    void ensureCapacity(int i) {
+        if (i >= types.length) {
+            int n = Math.max(i + 1, types.length * 2);
+            types = Arrays.copyOf(types, n);
+            strings = Arrays.copyOf(strings, n);
+            numbers = Arrays.copyOf(numbers, n);
+            dates = Arrays.copyOf(dates, n);
+            formats = Arrays.copyOf(formats, n);
+        }
+    }
+
+    /**
+     * Set a numeric value.
+     *
+     * @param i The cell index.
+     * @param v The value.
+     * @param date Whether the cell is formatted as a date.
+     */
+    void setNumber(int i, double v, boolean date) {
+        ensureCapacity(i);
+        types[i] = CellType.NUMERIC;
+        numbers[i] = v;
+        dates[i] = date;
+        lastCellNum = Math.max(lastCellNum, i + 1);
+    }
+
+    /**
+     * Set the number format of a cell.
+     *
+     * @param i The cell index.
+     * @param format The number format, or {@code null} for General.
+     */
+    void setFormat(int i, String format) {
+        ensureCapacity(i);
+        formats[i] = format;
+    }
+
+    /**
+     * Set a boolean value.
+     *
+     * @param i The cell index.
+     * @param v The value.
+     */
+    void setBoolean(int i, boolean v) {
+        ensureCapacity(i);
+        types[i] = CellType.BOOLEAN;
+        numbers[i] = v ? 1 : 0;
+        lastCellNum = Math.max(lastCellNum, i + 1);
+    }
+
+    /**
+     * Set a string or error value.
+     *
+     * @param i The cell index.
+     * @param v The value.
+     * @param t The type ({@link CellType#STRING} or {@link CellType#ERROR}).
+     */
+    void setString(int i, String v, CellType t) {
+        ensureCapacity(i);
+        types[i] = t;
+        strings[i] = v;
+        lastCellNum = Math.max(lastCellNum, i + 1);
+    }
+
+    /**
+     * @return The zero based row number in the sheet.
+     */
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    /**
+     * @return One more than the index of the last cell with a value.
+     */
+    public int getLastCellNum() {
+        return lastCellNum;
+    }
+
+    /**
+     * @return {@code true} if no cell has a value other than blank text, as
+     * for rows after the end of the data in a sheet.
+     */
+    public boolean isEmpty() {
+        for (int i = 0; i < lastCellNum; i++) {
+            if (types[i] != null && (types[i] != CellType.STRING
+                    || !strings[i].isBlank())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param i The cell index.
+     * @return The cell type or {@link CellType#BLANK} if there is no cell.
+     */
+    public CellType getCellType(int i) {
+        if (i >= lastCellNum || types[i] == null) {
+            return CellType.BLANK;
+        }
+        return types[i];
+    }
+
+    /**
+     * @param i The cell index.
+     * @return {@code true} if there is a numeric value for cell {@code i}.
+     */
+    public boolean isNumeric(int i) {
+        return getCellType(i) == CellType.NUMERIC;
+    }
+
+    /**
+     * @param i The cell index.
+     * @return {@code true} if cell {@code i} is numeric and date formatted.
+     */
+    public boolean isDate(int i) {
+        return isNumeric(i) && dates[i];
+    }
+
+    /**
+     * @param i The cell index.
+     * @return The numeric value of cell {@code i}. For dates this is the Excel
+     * serial value.
+     */
+    public double getNumber(int i) {
+        return numbers[i];
+    }
+
+    /**
+     * @param i The cell index.
+     * @return The number format of cell {@code i}, or {@code null} for the
+     * General format.
+     */
+    public String getFormat(int i) {
+        if (i >= lastCellNum) {
+            return null;
+        }
+        return formats[i];
+    }
+
+    /**
+     * @param i The cell index.
+     * @return The string value of cell {@code i} or {@code null}.
+     */
+    public String getString(int i) {
+        if (i >= lastCellNum) {
+            return null;
+        }
+        return strings[i];
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * For reading XLSX sheets a row at a time using the Apache POI event API
+ * ({@link XSSFReader}) rather than building an
+ * {@link org.apache.poi.xssf.usermodel.XSSFWorkbook} in memory. Only the
+ * shared strings table and the current row are held in memory, so heap use
+ * does not grow with the number of rows in a sheet.
+ *
+ * @author Andy Turner
+ */
+public class XLSXStreamReader {
+
+    /**
+     * For handling each row as it is read.
+     */
+    public interface RowHandler {
+
+        /**
+         * Handle a row. The row instance is reused for the next row.
+         *
+         * @param row The row.
+         * @throws IOException If encountered.
+         */
+        void handleRow(XLSXRow row) throws IOException;
+    }
+
+    /**
+     * Create a new instance.
+     */
+    public XLSXStreamReader() {
+    }
+
+    /**
+     * @param p The path of the XLSX file.
+     * @return The names of the sheets in workbook order.
+     * @throws IOException If encountered.
+     */
+    public List<String> getSheetNames(Path p) throws IOException {
+        List<String> r = new ArrayList<>();
+        try (OPCPackage pkg = OPCPackage.open(p.toFile(), PackageAccess.READ)) {
+            XSSFReader xr = new XSSFReader(pkg);
+            XSSFReader.SheetIterator it
+                    = (XSSFReader.SheetIterator) xr.getSheetsData();
+            while (it.hasNext()) {
+                it.next().close();
+                r.add(it.getSheetName());
+            }
+        } catch (OpenXML4JException ex) {
+            throw new IOException(ex);
+        }
+        return r;
+    }
+
+    /**
+     * Read a sheet passing each row to {@code h}.
+     *
+     * @param p The path of the XLSX file.
+     * @param sheetIndex The zero based index of the sheet to read.
+     * @param h The row handler.
+     * @throws IOException If encountered or if there is no such sheet.
+     */
+    public void read(Path p, int sheetIndex, RowHandler h) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(p.toFile(), PackageAccess.READ)) {
+            ReadOnlySharedStringsTable sst = new ReadOnlySharedStringsTable(pkg);
+            XSSFReader xr = new XSSFReader(pkg);
+            StylesTable styles = xr.getStylesTable();
+            boolean[] dateStyles = getDateStyles(styles);
+            String[] formats = getFormats(styles);
+            XSSFReader.SheetIterator it
+                    = (XSSFReader.SheetIterator) xr.getSheetsData();
+            int i = 0;
+            while (it.hasNext()) {
+                try (InputStream is = it.next()) {
+                    if (i == sheetIndex) {
+                        parse(is, new SheetHandler(sst, dateStyles, formats,
+                                h));
+                        return;
+                    }
+                }
+                i++;
+            }
+            throw new IOException("No sheet " + sheetIndex + " in " + p);
+        } catch (OpenXML4JException | SAXException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * @param styles The styles table.
+     * @return For each cell style index, whether it is a date format.
+     */
+    static boolean[] getDateStyles(StylesTable styles) {
+        if (styles == null) {
+            return new boolean[0];
+        }
+        int n = styles.getNumCellStyles();
+        boolean[] r = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            XSSFCellStyle s = styles.getStyleAt(i);
+            if (s != null) {
+                r[i] = DateUtil.isADateFormat(s.getDataFormat(),
+                        s.getDataFormatString());
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @param styles The styles table.
+     * @return For each cell style index, the number format, or {@code null}
+     * for the General format.
+     */
+    static String[] getFormats(StylesTable styles) {
+        if (styles == null) {
+            return new String[0];
+        }
+        int n = styles.getNumCellStyles();
+        String[] r = new String[n];
+        for (int i = 0; i < n; i++) {
+            XSSFCellStyle s = styles.getStyleAt(i);
+            if (s != null && s.getDataFormat() != 0) {
+                r[i] = s.getDataFormatString();
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Parse sheet XML.
+     *
+     * @param is The sheet input stream.
+     * @param sh The handler.
+     * @throws IOException If encountered.
+     */
+    static void parse(InputStream is, SheetHandler sh) throws IOException {
+        try {
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(sh);
+            parser.parse(new InputSource(is));
+        } catch (SAXException ex) {
+            if (ex.getCause() instanceof IOException ioe) {
+                throw ioe;
+            }
+            throw new IOException(ex);
+        } catch (ParserConfigurationException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * @param ref A cell reference such as "AB12".
+     * @return The zero based column index of ref.
+     */
+    static int getColumnIndex(String ref) {
+        int c = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char ch = ref.charAt(i);
+            if (ch < 'A' || ch > 'Z') {
+                break;
+            }
+            c = c * 26 + (ch - 'A' + 1);
+        }
+        return c - 1;
+    }
+
+    /**
+     * SAX handler for sheet XML which fills in an {@link XLSXRow} and passes
+     * it on at the end of each row.
+     */
+    static class SheetHandler extends DefaultHandler {
+
+        final ReadOnlySharedStringsTable sst;
+        final boolean[] dateStyles;
+        final String[] formats;
+        final RowHandler h;
+        final XLSXRow row = new XLSXRow();
+        final StringBuilder value = new StringBuilder();
+        boolean inValue;
+        int rowNum = -1;
+        int col;
+        String type;
+        int style;
+
+        SheetHandler(ReadOnlySharedStringsTable sst, boolean[] dateStyles,
+                String[] formats, RowHandler h) {
+            this.sst = sst;
+            this.dateStyles = dateStyles;
+            this.formats = formats;
+            this.h = h;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                Attributes atts) {
+            switch (localName) {
+                case "row" -> {
+                    String r = atts.getValue("r");
+                    rowNum = r == null ? rowNum + 1 : Integer.parseInt(r) - 1;
+                    row.clear(rowNum);
+                    col = -1;
+                }
+                case "c" -> {
+                    String r = atts.getValue("r");
+                    col = r == null ? col + 1 : getColumnIndex(r);
+                    type = atts.getValue("t");
+                    String s = atts.getValue("s");
+                    style = s == null ? 0 : Integer.parseInt(s);
+                }
+                case "v" -> {
+                    inValue = true;
+                    value.setLength(0);
+                }
+                case "is" -> value.setLength(0);
+                case "t" -> inValue = true;
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                value.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+                throws SAXException {
+            switch (localName) {
+                case "v" -> {
+                    inValue = false;
+                    setValue();
+                }
+                case "t" -> inValue = false;
+                case "is" -> {
+                    row.setString(col, value.toString(), CellType.STRING);
+                    setFormat();
+                }
+                case "row" -> {
+                    try {
+                        h.handleRow(row);
+                    } catch (IOException ex) {
+                        throw new SAXException(ex);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        /**
+         * Set the value of the current cell from the value buffer.
+         */
+        void setValue() {
+            if (type == null || type.equals("n")) {
+                boolean date = style < dateStyles.length && dateStyles[style];
+                row.setNumber(col, Double.parseDouble(value.toString()), date);
+            } else {
+                switch (type) {
+                    case "s" -> row.setString(col, sst.getItemAt(
+                            Integer.parseInt(value.toString())).getString(),
+                            CellType.STRING);
+                    case "b" -> row.setBoolean(col, value.length() > 0
+                            && value.charAt(0) == '1');
+                    case "e" -> row.setString(col, value.toString(),
+                            CellType.ERROR);
+                    default -> row.setString(col, value.toString(),
+                            CellType.STRING);
+                }
+            }
+            setFormat();
+        }
+
+        /**
+         * Set the number format of the current cell from its style.
+         */
+        void setFormat() {
+            if (style < formats.length && formats[style] != null) {
+                row.setFormat(col, formats[style]);
+            }
+        }
+    }
+}
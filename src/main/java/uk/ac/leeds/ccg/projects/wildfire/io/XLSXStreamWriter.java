@@ -0,0 +1,153 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * For writing an XLSX sheet a row at a time using a sliding window
+ * {@link SXSSFWorkbook}. Rows that fall out of the window are flushed to a
+ * temporary file, so only {@code window} rows are held in memory however many
+ * rows are written.
+ *
+ * @author Andy Turner
+ */
+public class XLSXStreamWriter implements Closeable {
+
+    /**
+     * The default number of rows kept in memory.
+     */
+    public static final int DEFAULT_WINDOW = 100;
+
+    /**
+     * The path of the file to write to on {@link #close()}.
+     */
+    final Path p;
+
+    /**
+     * The workbook.
+     */
+    final SXSSFWorkbook wb;
+
+    /**
+     * The sheet.
+     */
+    final SXSSFSheet sheet;
+
+    /**
+     * For creating the styles of cells.
+     */
+    final DataFormat dataFormat;
+
+    /**
+     * A style for each number format written.
+     */
+    final HashMap<String, CellStyle> styles = new HashMap<>();
+
+    /**
+     * Create a new instance.
+     *
+     * @param p The path of the file to write.
+     * @param sheetName The name of the sheet.
+     * @param window The number of rows to keep in memory.
+     * @param compressTempFiles Whether to gzip the temporary files that rows
+     * are flushed to.
+     */
+    public XLSXStreamWriter(Path p, String sheetName, int window,
+            boolean compressTempFiles) {
+        this.p = p;
+        wb = new SXSSFWorkbook(null, window, compressTempFiles);
+        sheet = wb.createSheet(sheetName);
+        dataFormat = wb.createDataFormat();
+    }
+
+    /**
+     * @param format A number format.
+     * @return The style for format, created if it is the first use.
+     */
+    CellStyle getStyle(String format) {
+        CellStyle s = styles.get(format);
+        if (s == null) {
+            s = wb.createCellStyle();
+            s.setDataFormat(dataFormat.getFormat(format));
+            styles.put(format, s);
+        }
+        return s;
+    }
+
+    /**
+     * Create a row and copy the cell values and number formats of
+     * {@code src} into it. Further
+     * cells can be added to the returned row before the next row is created.
+     *
+     * @param src The row to copy.
+     * @return The row created.
+     */
+    public Row writeRow(XLSXRow src) {
+        Row r = sheet.createRow(src.getRowNum());
+        for (int i = 0; i < src.getLastCellNum(); i++) {
+            Cell c;
+            switch (src.getCellType(i)) {
+                case NUMERIC -> {
+                    c = r.createCell(i);
+                    c.setCellValue(src.getNumber(i));
+                }
+                case BOOLEAN -> {
+                    c = r.createCell(i);
+                    c.setCellValue(src.getNumber(i) != 0);
+                }
+                case BLANK -> {
+                    continue;
+                }
+                default -> {
+                    c = r.createCell(i);
+                    c.setCellValue(src.getString(i));
+                }
+            }
+            String format = src.getFormat(i);
+            if (format != null) {
+                c.setCellStyle(getStyle(format));
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Write the workbook to the file and delete the temporary files.
+     *
+     * @throws IOException If encountered.
+     */
+    @Override
+    public void close() throws IOException {
+        try (OutputStream out = Files.newOutputStream(p)) {
+            wb.write(out);
+        } finally {
+            wb.dispose();
+            wb.close();
+        }
+    }
+}
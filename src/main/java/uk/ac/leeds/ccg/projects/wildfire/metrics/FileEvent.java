@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for processing an input file.
+ *
+ * @author Andy Turner
+ */
+@Name("uk.ac.leeds.ccg.projects.wildfire.File")
+@Label("Input File")
+@Category({"Wildfire", "Ingest"})
+@Description("Processing of an input file by all analyses")
+public class FileEvent extends Event {
+
+    /**
+     * The input file path.
+     */
+    @Label("Path")
+    public String path;
+
+    /**
+     * The number of records passed to the analyses.
+     */
+    @Label("Rows")
+    public long rows;
+
+    /**
+     * The size of the file.
+     */
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    /**
+     * The number of duplicate records dropped.
+     */
+    @Label("Duplicates")
+    public long duplicates;
+
+    /**
+     * The number of records that could not be parsed.
+     */
+    @Label("Parse Errors")
+    public long parseErrors;
+}
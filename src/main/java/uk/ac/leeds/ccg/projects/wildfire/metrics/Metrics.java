@@ -0,0 +1,186 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A registry of named counts such as rows and bytes read, parse errors,
+ * selected records and nanoseconds spent in each stage of a run. Counts are
+ * {@link LongAdder}s so they can be added to from several threads; hot loops
+ * should keep the adder from {@link #counter(String)} rather than looking it
+ * up for each row. The counts can be written as a JSON summary.
+ *
+ * Names are dotted paths such as "stage.read.processNanos" and are kept in
+ * the order they were first used.
+ *
+ * @author Andy Turner
+ */
+public class Metrics {
+
+    /**
+     * The name of the count of rows read.
+     */
+    public static final String ROWS = "rows";
+
+    /**
+     * The name of the count of bytes read.
+     */
+    public static final String BYTES = "bytes";
+
+    /**
+     * The name of the count of records that could not be parsed.
+     */
+    public static final String PARSE_ERRORS = "parseErrors";
+
+    /**
+     * The counts by name.
+     */
+    final Map<String, LongAdder> counters = new LinkedHashMap<>();
+
+    /**
+     * The value of {@link System#nanoTime()} when this was created.
+     */
+    final long start;
+
+    /**
+     * The elapsed nanoseconds of the run if set, otherwise -1.
+     */
+    long elapsed = -1;
+
+    /**
+     * Create a new instance.
+     */
+    public Metrics() {
+        start = System.nanoTime();
+    }
+
+    /**
+     * @param name The name.
+     * @return The count for name, which is created if it does not exist.
+     */
+    public synchronized LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    /**
+     * @param name The name.
+     * @param n The amount to add to the count for name.
+     */
+    public void add(String name, long n) {
+        counter(name).add(n);
+    }
+
+    /**
+     * @param name The name.
+     * @param v The value to set the count for name to.
+     */
+    public synchronized void set(String name, long v) {
+        LongAdder a = counter(name);
+        a.reset();
+        a.add(v);
+    }
+
+    /**
+     * @param name The name.
+     * @return The count for name or 0 if there is none.
+     */
+    public synchronized long get(String name) {
+        LongAdder a = counters.get(name);
+        return a == null ? 0 : a.sum();
+    }
+
+    /**
+     * @param nanos The elapsed nanoseconds of the run to report rather than
+     * the time since this was created.
+     */
+    public void setElapsedNanos(long nanos) {
+        elapsed = nanos;
+    }
+
+    /**
+     * @return The elapsed nanoseconds set, or otherwise the nanoseconds
+     * since this was created.
+     */
+    public long getElapsedNanos() {
+        return elapsed >= 0 ? elapsed : System.nanoTime() - start;
+    }
+
+    /**
+     * @return A JSON object with the elapsed seconds, rows per second and
+     * the counts.
+     */
+    public String toJson() {
+        double s = getElapsedNanos() / 1e9;
+        List<String> names;
+        synchronized (this) {
+            names = new ArrayList<>(counters.keySet());
+        }
+        StringBuilder sb = new StringBuilder("{\n");
+        sb.append("  \"elapsedSeconds\": ").append(String.format("%.3f", s));
+        sb.append(",\n  \"rowsPerSecond\": ").append(String.format("%.0f",
+                s > 0 ? get(ROWS) / s : 0));
+        sb.append(",\n  \"counters\": {");
+        for (int i = 0; i < names.size(); i++) {
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("    ").append(quote(names.get(i))).append(": ")
+                    .append(get(names.get(i)));
+        }
+        sb.append("\n  }\n}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Write {@link #toJson()} to a file.
+     *
+     * @param p The file path.
+     * @throws IOException If encountered.
+     */
+    public void writeJson(Path p) throws IOException {
+        Path dir = p.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Files.writeString(p, toJson(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param s The text.
+     * @return s as a JSON string.
+     */
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for a whole run of a program.
+ *
+ * @author Andy Turner
+ */
+@Name("uk.ac.leeds.ccg.projects.wildfire.Run")
+@Label("Run")
+@Category({"Wildfire"})
+@Description("A run of a program")
+public class RunEvent extends Event {
+
+    /**
+     * The program.
+     */
+    @Label("Program")
+    public String program;
+
+    /**
+     * The number of rows processed.
+     */
+    @Label("Rows")
+    public long rows;
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A JDK Flight Recorder event for a stage such as reading records or an
+ * analysis processing, merging or finishing. For processing, an event is
+ * committed for each part of an input file with the time spent in the stage
+ * in that part, as the stages are interleaved record by record.
+ *
+ * @author Andy Turner
+ */
+@Name("uk.ac.leeds.ccg.projects.wildfire.Stage")
+@Label("Stage")
+@Category({"Wildfire", "Ingest"})
+@Description("Time spent in a stage of processing")
+public class StageEvent extends Event {
+
+    /**
+     * The input file path, or null.
+     */
+    @Label("Path")
+    public String path;
+
+    /**
+     * The stage, "read" or an analysis name.
+     */
+    @Label("Stage")
+    public String stage;
+
+    /**
+     * The phase, "process", "merge", "finish" or "output".
+     */
+    @Label("Phase")
+    public String phase;
+
+    /**
+     * The time spent in the stage.
+     */
+    @Label("Stage Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long nanos;
+
+    /**
+     * The number of records.
+     */
+    @Label("Rows")
+    public long rows;
+
+    /**
+     * Commit an event if stage events are enabled.
+     *
+     * @param path The input or output file path, or null.
+     * @param stage The stage.
+     * @param phase The phase.
+     * @param nanos The time spent in the stage.
+     * @param rows The number of records.
+     */
+    public static void commit(String path, String stage, String phase,
+            long nanos, long rows) {
+        StageEvent e = new StageEvent();
+        if (e.isEnabled()) {
+            e.path = path;
+            e.stage = stage;
+            e.phase = phase;
+            e.nanos = nanos;
+            e.rows = rows;
+            e.commit();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.pipeline;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import uk.ac.leeds.ccg.projects.wildfire.io.RecordCursor;
+import uk.ac.leeds.ccg.projects.wildfire.metrics.Metrics;
+
+/**
+ * An analysis run by a {@link Pipeline} as a consumer of the records of the
+ * input files. The pipeline reads and tokenises each input file once and
+ * passes each record to every analysis.
+ *
+ * When an input file is processed in parts in parallel, each part is
+ * processed by a worker from {@link #newWorker()} that is merged back in
+ * input order, so an analysis gives the same result whatever the number of
+ * parts.
+ *
+ * @author Andy Turner
+ */
+public interface Analysis {
+
+    /**
+     * @return A name for reporting.
+     */
+    String getName();
+
+    /**
+     * Called before an input file is processed, and for a worker before it
+     * processes its part.
+     *
+     * @param pIn The input file path.
+     * @param header The header line.
+     * @param fields The header field names.
+     * @throws IOException If encountered.
+     */
+    void start(Path pIn, String header, List<String> fields)
+            throws IOException;
+
+    /**
+     * Called after {@link #start(Path, String, List)} so the pipeline can
+     * tokenise only the fields that are read.
+     *
+     * @return The indexes of the fields that
+     * {@link #process(RecordCursor, int)} reads, or null for all fields.
+     */
+    default int[] getFields() {
+        return null;
+    }
+
+    /**
+     * Process a record. Blank records are skipped. Every value needed from
+     * the record is parsed before any state is changed, so a record that
+     * cannot be parsed leaves the analysis as it was.
+     *
+     * @param r The cursor positioned at the record.
+     * @param id The row id of the record. Row ids count the records that are
+     * not blank from 0 for the first input file.
+     * @throws IOException If encountered.
+     * @throws IllegalArgumentException If a number cannot be parsed.
+     * @throws java.time.DateTimeException If a time cannot be parsed.
+     */
+    void process(RecordCursor r, int id) throws IOException;
+
+    /**
+     * @return A new analysis with the same settings and its own state for
+     * processing part of the current input file, with row ids from 0.
+     */
+    Analysis newWorker();
+
+    /**
+     * Merge a worker into this.
+     *
+     * @param w A worker from {@link #newWorker()}.
+     * @param offset The row id in this of the worker's row id 0.
+     */
+    void merge(Analysis w, int offset);
+
+    /**
+     * Write the state for a {@link Checkpoint}.
+     *
+     * @param out The output.
+     * @throws IOException If encountered.
+     * @throws UnsupportedOperationException If checkpoints are not
+     * supported.
+     */
+    default void write(DataOutput out) throws IOException {
+        throw new UnsupportedOperationException(getName()
+                + " does not support checkpoints");
+    }
+
+    /**
+     * Add the state written by {@link #write(DataOutput)} to this.
+     *
+     * @param in The input.
+     * @throws IOException If encountered or if the state was written with
+     * different settings.
+     * @throws UnsupportedOperationException If checkpoints are not
+     * supported.
+     */
+    default void read(DataInput in) throws IOException {
+        throw new UnsupportedOperationException(getName()
+                + " does not support checkpoints");
+    }
+
+    /**
+     * Set counts such as the number of records selected in the metrics of a
+     * run.
+     *
+     * @param m The metrics.
+     */
+    default void addMetrics(Metrics m) {
+    }
+
+    /**
+     * Called after all the input files have been processed to produce any
+     * outputs.
+     *
+     * @param pOutput The output directory.
+     * @throws IOException If encountered.
+     */
+    void finish(Path pOutput) throws IOException;
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.pipeline;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32C;
+import uk.ac.leeds.ccg.projects.wildfire.util.LongHashSet;
+
+/**
+ * The state of the {@link Analysis}s of a {@link Pipeline} together with a
+ * high-water {@link Mark} for each input file processed, so that a later run
+ * can continue from where this one stopped and process only new records.
+ * Marks are by input file path; for a compressed input the offsets and
+ * hashes are of the inflated file.
+ *
+ * If an input file has only been appended to since it was processed, which
+ * is checked by hashing all its bytes up to its mark, then
+ * processing continues from the byte offset of the mark. Otherwise the file
+ * is processed again skipping records with an incident number (column 0) no
+ * larger than the largest processed. If the pipeline is de-duplicating
+ * records the incident numbers read are saved too.
+ *
+ * A checkpoint is written to a temporary file that is then moved into place
+ * so an interrupted write does not replace a good checkpoint.
+ *
+ * @author Andy Turner
+ */
+public class Checkpoint {
+
+    /**
+     * Identifies a checkpoint file ("IRSCHKP1").
+     */
+    static final long MAGIC = 0x49525343_484B5031L;
+
+    /**
+     * The format version.
+     */
+    static final int VERSION = 8;
+
+    /**
+     * The maximum number of bytes mapped at once when hashing.
+     */
+    static final int WINDOW = 1 << 28;
+
+    /**
+     * A high-water mark for an input file.
+     */
+    public static class Mark {
+
+        /**
+         * The position after the last record processed.
+         */
+        public final long offset;
+
+        /**
+         * The largest incident number processed, or {@link Long#MIN_VALUE}.
+         */
+        public final long incident;
+
+        /**
+         * The hash of the bytes of the file before offset.
+         */
+        final int hash;
+
+        Mark(long offset, long incident, int hash) {
+            this.offset = offset;
+            this.incident = incident;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Marks by input file path.
+     */
+    final LinkedHashMap<String, Mark> marks = new LinkedHashMap<>();
+
+    /**
+     * The row id for the next record.
+     */
+    int rows;
+
+    /**
+     * The incident numbers read if de-duplicating, otherwise null.
+     */
+    LongHashSet incidents;
+
+    /**
+     * Create a new empty instance.
+     */
+    public Checkpoint() {
+    }
+
+    /**
+     * @param p An input file path.
+     * @return The mark for p or null.
+     */
+    public synchronized Mark get(Path p) {
+        return marks.get(key(p));
+    }
+
+    /**
+     * Set the mark for an input file.
+     *
+     * @param p The input file path.
+     * @param src The path of the file read for p, which is p inflated if it
+     * is compressed. Offsets are positions in src.
+     * @param offset The position after the last record processed.
+     * @param incident The largest incident number processed, or
+     * {@link Long#MIN_VALUE}.
+     * @throws IOException If encountered.
+     */
+    public synchronized void set(Path p, Path src, long offset, long incident)
+            throws IOException {
+        marks.put(key(p), new Mark(offset, incident, hash(src, offset)));
+    }
+
+    /**
+     * @param src The path of the file read for an input file.
+     * @param m The mark for the input file.
+     * @return {@code true} if src has the same bytes up to the mark as when
+     * the mark was set, so it has at most been appended to.
+     * @throws IOException If encountered.
+     */
+    public static boolean isAppended(Path src, Mark m) throws IOException {
+        return Files.size(src) >= m.offset && hash(src, m.offset) == m.hash;
+    }
+
+    static String key(Path p) {
+        return p.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * @param p The file path.
+     * @param offset The end of the bytes to hash.
+     * @return The CRC32C of the bytes of p before offset. All of them are
+     * hashed, so a change anywhere before offset is detected even if the size
+     * of p is the same.
+     * @throws IOException If encountered or if p is shorter than offset.
+     */
+    public static int hash(Path p, long offset) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel fc = FileChannel.open(p, StandardOpenOption.READ)) {
+            if (fc.size() < offset) {
+                throw new IOException("Unexpected end of file");
+            }
+            for (long pos = 0; pos < offset; pos += WINDOW) {
+                crc.update(fc.map(FileChannel.MapMode.READ_ONLY, pos,
+                        Math.min(WINDOW, offset - pos)));
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Write this and the state of analyses.
+     *
+     * @param p The checkpoint file path.
+     * @param analyses The analyses.
+     * @throws IOException If encountered.
+     */
+    public void write(Path p, List<Analysis> analyses) throws IOException {
+        Path tmp = p.resolveSibling(p.getFileName().toString() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rows);
+            out.writeInt(marks.size());
+            for (var e : marks.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().offset);
+                out.writeLong(e.getValue().incident);
+                out.writeInt(e.getValue().hash);
+            }
+            out.writeBoolean(incidents != null);
+            if (incidents != null) {
+                incidents.write(out);
+            }
+            out.writeInt(analyses.size());
+            for (Analysis a : analyses) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (DataOutputStream s = new DataOutputStream(bytes)) {
+                    a.write(s);
+                }
+                out.writeUTF(a.getName());
+                out.writeInt(bytes.size());
+                bytes.writeTo(out);
+            }
+        }
+        Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a checkpoint and add the state of each analysis to analyses.
+     *
+     * @param p The checkpoint file path.
+     * @param analyses The analyses in the order they were written.
+     * @return The checkpoint.
+     * @throws IOException If encountered, if p is not a checkpoint or if the
+     * analyses differ from those written.
+     */
+    public static Checkpoint read(Path p, List<Analysis> analyses)
+            throws IOException {
+        Checkpoint c = new Checkpoint();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(p)))) {
+            if (in.readLong() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(p + " is not a version " + VERSION
+                        + " checkpoint");
+            }
+            c.rows = in.readInt();
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                c.marks.put(in.readUTF(), new Mark(in.readLong(),
+                        in.readLong(), in.readInt()));
+            }
+            if (in.readBoolean()) {
+                c.incidents = new LongHashSet(1 << 20);
+                c.incidents.read(in);
+            }
+            n = in.readInt();
+            if (n != analyses.size()) {
+                throw new IOException("Checkpoint has " + n
+                        + " analyses not " + analyses.size());
+            }
+            for (Analysis a : analyses) {
+                String name = in.readUTF();
+                if (!name.equals(a.getName())) {
+                    throw new IOException("Checkpoint has analysis " + name
+                            + " not " + a.getName());
+                }
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                a.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+            }
+        }
+        return c;
+    }
+}
@@ -0,0 +1,1146 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.pipeline;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import uk.ac.leeds.ccg.projects.wildfire.io.CSVChunker;
+import uk.ac.leeds.ccg.projects.wildfire.io.CSVScanner;
+import uk.ac.leeds.ccg.projects.wildfire.io.GzipInput;
+import uk.ac.leeds.ccg.projects.wildfire.io.RecordCursor;
+import uk.ac.leeds.ccg.projects.wildfire.metrics.FileEvent;
+import uk.ac.leeds.ccg.projects.wildfire.metrics.Metrics;
+import uk.ac.leeds.ccg.projects.wildfire.metrics.StageEvent;
+import uk.ac.leeds.ccg.projects.wildfire.util.LongHashSet;
+
+/**
+ * Runs {@link Analysis}s over input files reading and tokenising each file
+ * once whatever the number of analyses. Each record that is not blank is
+ * passed to each analysis in the order they were added. With more than one
+ * thread each file is processed in parts in parallel by workers of the
+ * analyses that are merged in input order. With
+ * {@link #runBatch(List, long)} input files are also processed concurrently
+ * within a memory budget.
+ *
+ * The time spent and bytes allocated reading records and in each analysis
+ * are recorded and can be printed with {@link #printReport()} or written as
+ * JSON with {@link #writeMetrics(Path)}. JDK Flight Recorder events are
+ * committed for each input file ({@link FileEvent}) and for the time in each
+ * stage of each part of a file ({@link StageEvent}).
+ *
+ * A record that an analysis cannot parse is counted as a parse error and
+ * is still passed to the remaining analyses, each of which handles it on its
+ * own, so a record one analysis rejects can be counted or profiled by
+ * another. The first parse error in each part of an input file is logged.
+ *
+ * Records can be de-duplicated on the incident number in column 0 so that
+ * an incident in more than one input file, or more than once in a file, is
+ * passed to the analyses only the first time it is read.
+ *
+ * Fields after the last one that any analysis reads, as given by
+ * {@link Analysis#getFields()}, are not tokenised.
+ *
+ * The state of the analyses can be saved as a {@link Checkpoint} and loaded
+ * in a later run which then processes only records added to the input files
+ * since.
+ *
+ * @author Andy Turner
+ */
+public class Pipeline {
+
+    /**
+     * For measuring allocation, or null if not supported.
+     */
+    static final com.sun.management.ThreadMXBean ALLOCATION = allocation();
+
+    /**
+     * The number of times its size a gzip compressed input file is assumed
+     * to inflate to when it is counted against the memory budget of
+     * {@link #runBatch(List, long)}. CSV exports typically compress to
+     * between a fifth and a tenth of their size.
+     */
+    static final int GZIP_RATIO = 8;
+
+    /**
+     * The analyses.
+     */
+    final List<Analysis> analyses = new ArrayList<>();
+
+    /**
+     * The number of threads to process each input file with.
+     */
+    final int threads;
+
+    /**
+     * The charset of the input files.
+     */
+    final Charset cs;
+
+    /**
+     * The directory for columnar caches of the input files, or null.
+     */
+    final Path cacheDir;
+
+    /**
+     * The number of records processed.
+     */
+    int rows;
+
+    /**
+     * The number of bytes in the input files.
+     */
+    long bytes;
+
+    /**
+     * Nanoseconds elapsed running.
+     */
+    long elapsed;
+
+    /**
+     * Nanoseconds reading records at index 0 and processing records in each
+     * analysis at index 1 onwards.
+     */
+    long[] processNanos = new long[1];
+
+    /**
+     * Nanoseconds merging workers in each analysis at index 1 onwards.
+     */
+    long[] mergeNanos = new long[1];
+
+    /**
+     * Nanoseconds finishing each analysis at index 1 onwards.
+     */
+    long[] finishNanos = new long[1];
+
+    /**
+     * Bytes allocated reading records at index 0 and in each analysis at
+     * index 1 onwards.
+     */
+    long[] allocated = new long[1];
+
+    /**
+     * The directory to inflate compressed input files to, or null for a
+     * temporary directory.
+     */
+    Path inflateDir;
+
+    /**
+     * The checkpoint loaded and updated, or null.
+     */
+    Checkpoint checkpoint;
+
+    /**
+     * The incident numbers read if de-duplicating, otherwise null.
+     */
+    LongHashSet incidents;
+
+    /**
+     * The number of duplicate records dropped.
+     */
+    int duplicates;
+
+    /**
+     * The number of records that could not be parsed.
+     */
+    int parseErrors;
+
+    /**
+     * The input files skipped by {@link #runBatch(List, long)} as they could
+     * not be read.
+     */
+    final List<Path> skipped = new ArrayList<>();
+
+    /**
+     * The metrics of the run.
+     */
+    final Metrics metrics = new Metrics();
+
+    /**
+     * Create a new instance.
+     *
+     * @param threads The number of threads to process each input file with.
+     * @param cs The charset of the input files.
+     * @param cacheDir The directory for columnar caches of the input files,
+     * or null to parse the input files.
+     */
+    public Pipeline(int threads, Charset cs, Path cacheDir) {
+        this.threads = threads;
+        this.cs = cs;
+        this.cacheDir = cacheDir;
+        this.inflateDir = cacheDir;
+    }
+
+    /**
+     * Set the directory to inflate compressed input files to, which is the
+     * cache directory by default. Checkpoint marks and the files of records
+     * are by input file path, so a later run continuing from a checkpoint
+     * finds the inflated files again if they are kept.
+     *
+     * @param dir The directory, or null for a temporary directory.
+     */
+    public void setInflateDir(Path dir) {
+        inflateDir = dir;
+    }
+
+    /**
+     * Add an analysis.
+     *
+     * @param a The analysis.
+     */
+    public void add(Analysis a) {
+        analyses.add(a);
+        int n = analyses.size() + 1;
+        processNanos = Arrays.copyOf(processNanos, n);
+        mergeNanos = Arrays.copyOf(mergeNanos, n);
+        finishNanos = Arrays.copyOf(finishNanos, n);
+        allocated = Arrays.copyOf(allocated, n);
+    }
+
+    /**
+     * Set whether to de-duplicate records on the incident number in column
+     * 0. This should be set before any input is processed or a checkpoint is
+     * loaded.
+     *
+     * @param deduplicate Whether to pass only the first record read with
+     * each incident number to the analyses. Records with a blank or non
+     * numeric incident number are always passed.
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        incidents = deduplicate ? new LongHashSet(1 << 20) : null;
+    }
+
+    /**
+     * Load a checkpoint into the analyses, which should all have been added.
+     * Input files are then processed from their marks in the checkpoint.
+     *
+     * @param p The checkpoint file path.
+     * @return {@code true} if p exists and was loaded, {@code false} if p
+     * does not exist in which case all records are processed.
+     * @throws IOException If encountered or if p was saved with different
+     * analyses.
+     */
+    public boolean loadCheckpoint(Path p) throws IOException {
+        if (!Files.exists(p)) {
+            checkpoint = new Checkpoint();
+            return false;
+        }
+        checkpoint = Checkpoint.read(p, analyses);
+        if ((checkpoint.incidents == null) != (incidents == null)) {
+            throw new IOException("Checkpoint " + p + " was saved "
+                    + (incidents == null ? "with" : "without")
+                    + " de-duplication");
+        }
+        rows = checkpoint.rows;
+        incidents = checkpoint.incidents;
+        return true;
+    }
+
+    /**
+     * Save a checkpoint of the analyses and the marks of the input files
+     * processed.
+     *
+     * @param p The checkpoint file path.
+     * @throws IOException If encountered.
+     */
+    public void saveCheckpoint(Path p) throws IOException {
+        if (checkpoint == null) {
+            throw new IOException("No checkpoint loaded");
+        }
+        checkpoint.rows = rows;
+        checkpoint.incidents = incidents;
+        checkpoint.write(p, analyses);
+    }
+
+    /**
+     * Process input files. A gzip compressed input is first inflated to
+     * {@link #inflateDir} with {@link GzipInput#resolve(Path, Path, int)}.
+     *
+     * @param inputs The input file paths.
+     * @return The row id for the next record, which is the number of records
+     * processed.
+     * @throws IOException If encountered.
+     */
+    public int run(List<Path> inputs) throws IOException {
+        long t0 = System.nanoTime();
+        for (Path pIn : inputs) {
+            int id = rows;
+            int d = duplicates;
+            int pe = parseErrors;
+            FileRun f = new FileRun(pIn);
+            rows = process(f, rows);
+            report(f, id, d, pe);
+        }
+        elapsed += System.nanoTime() - t0;
+        return rows;
+    }
+
+    /**
+     * Process input files concurrently, for example all the exports in a
+     * directory. Each file is inflated if compressed, read and split into
+     * parts by a task on an I/O executor. The parts of every file are parsed
+     * by {@link #threads} threads. The parts are merged into the analyses
+     * in input order, so the results, row ids, de-duplication and
+     * checkpoint are the same as for {@link #run(List)}.
+     *
+     * The workers of a file hold its state until it is merged, so files are
+     * only started while the total size of the files in flight is within a
+     * memory budget. When it is not, the oldest file is merged first. A file
+     * larger than the budget is processed on its own.
+     *
+     * An input file that cannot be inflated, opened or split into parts is
+     * logged, added to {@link #getSkipped()} and otherwise ignored, so the
+     * results are those for the other files and the file is read again by a
+     * run continuing from a checkpoint.
+     *
+     * @param inputs The input file paths.
+     * @param budget The memory budget in bytes of input.
+     * @return The row id for the next record, which is the number of records
+     * processed.
+     * @throws IOException If encountered merging an input file.
+     */
+    public int runBatch(List<Path> inputs, long budget) throws IOException {
+        long t0 = System.nanoTime();
+        // Java 17 has no virtual threads, so I/O tasks run on a cached pool.
+        ExecutorService io = Executors.newCachedThreadPool();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        ArrayDeque<Future<FileRun>> running = new ArrayDeque<>();
+        ArrayDeque<Long> sizes = new ArrayDeque<>();
+        ArrayDeque<Path> paths = new ArrayDeque<>();
+        long inFlight = 0;
+        int maxInFlight = 0;
+        try {
+            CompletableFuture<Void> resolved
+                    = CompletableFuture.completedFuture(null);
+            for (Path pIn : inputs) {
+                long size = Files.exists(pIn) ? Math.min(budget, Files.size(pIn)
+                        * (GzipInput.isGzip(pIn) ? GZIP_RATIO : 1)) : 0;
+                while (!running.isEmpty() && inFlight + size > budget) {
+                    merge(paths.poll(), running.poll());
+                    inFlight -= sizes.poll();
+                }
+                Analysis[] protos = newWorkers();
+                CompletableFuture<Void> previous = resolved;
+                CompletableFuture<Void> next = new CompletableFuture<>();
+                resolved = next;
+                running.add(io.submit(() -> {
+                    FileRun f;
+                    try {
+                        f = new FileRun(pIn);
+                    } catch (IOException | RuntimeException ex) {
+                        // The file is skipped so is not waited for.
+                        previous.thenRun(() -> next.complete(null));
+                        throw ex;
+                    }
+                    f.submit(pool, protos, previous, next);
+                    return f;
+                }));
+                sizes.add(size);
+                paths.add(pIn);
+                inFlight += size;
+                maxInFlight = Math.max(maxInFlight, running.size());
+            }
+            while (!running.isEmpty()) {
+                merge(paths.poll(), running.poll());
+            }
+        } finally {
+            io.shutdownNow();
+            pool.shutdownNow();
+        }
+        metrics.set("batch.files", inputs.size());
+        metrics.set("batch.maxFilesInFlight", maxInFlight);
+        metrics.set("batch.skippedFiles", skipped.size());
+        elapsed += System.nanoTime() - t0;
+        return rows;
+    }
+
+    /**
+     * Wait for an input file submitted by {@link #runBatch(List, long)} and
+     * merge it, or skip it if it could not be submitted.
+     *
+     * @param pIn The input file path.
+     * @param task The task submitting the file.
+     * @throws IOException If encountered.
+     */
+    void merge(Path pIn, Future<FileRun> task) throws IOException {
+        FileRun f;
+        try {
+            f = task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Error e) {
+                throw e;
+            }
+            Logger.getLogger(Pipeline.class.getName()).log(Level.SEVERE,
+                    "Skipping \"" + pIn + "\"", ex.getCause());
+            skipped.add(pIn);
+            System.out.println("Skipped \"" + pIn.getFileName().toString()
+                    + "\" as it could not be read");
+            return;
+        }
+        int id = rows;
+        int d = duplicates;
+        int pe = parseErrors;
+        rows = merge(f, rows);
+        report(f, id, d, pe);
+    }
+
+    /**
+     * @return A worker of each analysis from which to create the workers for
+     * the parts of an input file, so that they are not created from the
+     * analyses while these are being started or merged into.
+     */
+    Analysis[] newWorkers() {
+        Analysis[] r = new Analysis[analyses.size()];
+        for (int k = 0; k < r.length; k++) {
+            r[k] = analyses.get(k).newWorker();
+        }
+        return r;
+    }
+
+    /**
+     * Add the size of a processed input file to the metrics, commit its
+     * {@link FileEvent} and print its counts.
+     *
+     * @param f The input file.
+     * @param id The row id before it was processed.
+     * @param d The number of duplicates before it was processed.
+     * @param pe The number of parse errors before it was processed.
+     * @throws IOException If encountered.
+     */
+    void report(FileRun f, int id, int d, int pe) throws IOException {
+        Path pIn = f.pIn;
+        long size = Files.size(pIn);
+        bytes += size;
+        metrics.add(Metrics.ROWS, rows - id);
+        metrics.add(Metrics.BYTES, size);
+        FileEvent e = f.event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.path = pIn.toString();
+            e.rows = rows - id;
+            e.bytes = size;
+            e.duplicates = duplicates - d;
+            e.parseErrors = parseErrors - pe;
+            e.commit();
+        }
+        if (parseErrors > pe) {
+            System.out.println("" + (parseErrors - pe)
+                    + " records could not be parsed in \""
+                    + pIn.getFileName().toString() + "\"");
+        }
+        System.out.println("" + (rows - id) + " records in \""
+                + pIn.getFileName().toString() + "\"");
+        if (incidents != null) {
+            System.out.println("" + (duplicates - d)
+                    + " duplicate incidents dropped from \""
+                    + pIn.getFileName().toString() + "\"");
+        }
+    }
+
+    /**
+     * An input file with its header and checkpoint mark and, when it is
+     * processed in parts, the tasks processing them.
+     */
+    class FileRun {
+
+        /**
+         * The input file path.
+         */
+        final Path pIn;
+
+        /**
+         * The path of the file processed, which is pIn inflated if it is
+         * gzip compressed.
+         */
+        final Path src;
+
+        /**
+         * The event for the file.
+         */
+        final FileEvent event = new FileEvent();
+
+        /**
+         * The header line.
+         */
+        final String header;
+
+        /**
+         * The header field names.
+         */
+        final List<String> fields = new ArrayList<>();
+
+        /**
+         * The checkpoint mark for the file, or null.
+         */
+        final Checkpoint.Mark m;
+
+        /**
+         * The position of the first record to process, or -1.
+         */
+        final long start;
+
+        /**
+         * Records with an incident number no larger than this are skipped.
+         */
+        final long after;
+
+        /**
+         * For the statistics and marks of the whole file.
+         */
+        final Part all;
+
+        /**
+         * The tasks processing the parts of the file in input order.
+         */
+        final List<ForkJoinTask<Part>> tasks = new ArrayList<>();
+
+        /**
+         * Inflate pIn if it is compressed and read its header and mark.
+         *
+         * @param pIn The input file path.
+         * @throws IOException If encountered.
+         */
+        FileRun(Path pIn) throws IOException {
+            this.pIn = pIn;
+            event.begin();
+            long t = System.nanoTime();
+            src = GzipInput.resolve(pIn, inflateDir, threads);
+            if (src != pIn) {
+                t = System.nanoTime() - t;
+                metrics.add("stage.inflate.nanos", t);
+                StageEvent.commit(pIn.toString(), "inflate", "process", t, 0);
+            }
+            try (CSVScanner s = new CSVScanner(src, cs)) {
+                s.next();
+                header = s.getLine();
+                for (int i = 0; i < s.getFieldCount(); i++) {
+                    fields.add(s.getUnquoted(i));
+                }
+            }
+            m = checkpoint == null ? null : checkpoint.get(pIn);
+            boolean appended = m != null && Checkpoint.isAppended(src, m);
+            start = appended ? m.offset : -1;
+            after = m == null || appended ? Long.MIN_VALUE : m.incident;
+            if (m != null && !appended) {
+                System.out.println("\"" + pIn.getFileName().toString()
+                        + "\" has changed, skipping incident numbers up to "
+                        + after);
+            }
+            all = new Part(analyses.size(), checkpoint != null, after);
+        }
+
+        /**
+         * Submit tasks to process the parts of the file, each with workers
+         * from protos. If de-duplicating, the records to drop are found once
+         * the files before this have been.
+         *
+         * @param pool The pool.
+         * @param protos A worker of each analysis from
+         * {@link #newWorkers()}.
+         * @param previous Completed when the records to drop from the files
+         * before this have been found.
+         * @param resolved Completed when the records to drop from this file
+         * have been found.
+         * @throws IOException If encountered.
+         */
+        void submit(ForkJoinPool pool, Analysis[] protos,
+                CompletableFuture<Void> previous,
+                CompletableFuture<Void> resolved) throws IOException {
+            int n = threads * 4;
+            List<Part> parts = new ArrayList<>();
+            List<RecordCursor> rs;
+            try {
+                if (incidents != null) {
+                    parts = readIncidents(src, start, n, pool);
+                }
+                rs = RecordCursor.open(src, start, n, pool, cacheDir, cs);
+                if (!parts.isEmpty() && parts.size() != rs.size()) {
+                    for (RecordCursor r : rs) {
+                        r.close();
+                    }
+                    throw new IOException("\"" + src + "\" changed while "
+                            + "being processed");
+                }
+                // Nothing shared is changed before this, so a file that
+                // fails can be skipped.
+                if (incidents != null) {
+                    previous.join();
+                    drop(parts, after);
+                }
+            } finally {
+                previous.thenRun(() -> resolved.complete(null));
+            }
+            for (int j = 0; j < rs.size(); j++) {
+                RecordCursor r = rs.get(j);
+                Part p = parts.isEmpty() ? new Part(protos.length, all.marks,
+                        after) : parts.get(j);
+                tasks.add(pool.submit(() -> {
+                    for (int k = 0; k < protos.length; k++) {
+                        p.workers[k] = protos[k].newWorker();
+                        p.workers[k].start(pIn, header, fields);
+                    }
+                    try (r) {
+                        r.setFieldLimit(getFieldLimit(p.workers));
+                        p.rows = process(r, p.workers, 0, p);
+                    }
+                    return p;
+                }));
+            }
+        }
+    }
+
+    /**
+     * Process an input file.
+     *
+     * @param f The input file.
+     * @param id The row id for the first record.
+     * @return The row id for the next record.
+     * @throws IOException If encountered.
+     */
+    int process(FileRun f, int id) throws IOException {
+        if (threads > 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                f.submit(pool, newWorkers(),
+                        CompletableFuture.completedFuture(null),
+                        new CompletableFuture<>());
+                return merge(f, id);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        Analysis[] as = analyses.toArray(Analysis[]::new);
+        for (Analysis a : as) {
+            a.start(f.pIn, f.header, f.fields);
+        }
+        f.all.seen = incidents;
+        try (RecordCursor r = RecordCursor.open(f.src, f.start, 1, null,
+                cacheDir, cs).get(0)) {
+            r.setFieldLimit(getFieldLimit(as));
+            id = process(r, as, id, f.all);
+        }
+        commit(f.src, f.all, as);
+        return end(f, id);
+    }
+
+    /**
+     * Merge the workers of the parts of an input file into the analyses in
+     * input order as each part is processed.
+     *
+     * @param f The input file with its tasks submitted.
+     * @param id The row id for the first record.
+     * @return The row id for the next record.
+     * @throws IOException If encountered.
+     */
+    int merge(FileRun f, int id) throws IOException {
+        Analysis[] as = analyses.toArray(Analysis[]::new);
+        for (Analysis a : as) {
+            a.start(f.pIn, f.header, f.fields);
+        }
+        for (var task : f.tasks) {
+            Part p = task.join();
+            f.all.add(p);
+            commit(f.src, p, as);
+            for (int k = 0; k < as.length; k++) {
+                long a0 = allocated();
+                long t0 = System.nanoTime();
+                as[k].merge(p.workers[k], id);
+                long t = System.nanoTime() - t0;
+                mergeNanos[k + 1] += t;
+                allocated[k + 1] += allocated() - a0;
+                StageEvent.commit(f.src.toString(), as[k].getName(),
+                        "merge", t, p.rows);
+            }
+            id += p.rows;
+        }
+        return end(f, id);
+    }
+
+    /**
+     * Add the statistics of a processed input file and set its mark.
+     *
+     * @param f The input file.
+     * @param id The row id for the next record.
+     * @return id.
+     * @throws IOException If encountered.
+     */
+    int end(FileRun f, int id) throws IOException {
+        Part all = f.all;
+        for (int k = 0; k < all.nanos.length; k++) {
+            processNanos[k] += all.nanos[k];
+            allocated[k] += all.allocated[k];
+        }
+        if (all.marks) {
+            long offset;
+            if (all.last >= 0) {
+                offset = CSVChunker.nextBoundary(f.src, all.last);
+            } else if (f.start >= 0) {
+                offset = f.start;
+            } else {
+                offset = CSVChunker.nextBoundary(f.src, 0);
+            }
+            checkpoint.set(f.pIn, f.src, offset, Math.max(all.incident,
+                    f.m == null ? Long.MIN_VALUE : f.m.incident));
+        }
+        duplicates += all.duplicates;
+        parseErrors += all.parseErrors;
+        return id;
+    }
+
+    /**
+     * @param as The started analyses.
+     * @return The number of fields to read from each record: at least 1 for
+     * the incident number, and after the last field that any analysis reads.
+     */
+    static int getFieldLimit(Analysis[] as) {
+        int limit = 1;
+        for (Analysis a : as) {
+            int[] fs = a.getFields();
+            if (fs == null) {
+                return Integer.MAX_VALUE;
+            }
+            for (int f : fs) {
+                limit = Math.max(limit, f + 1);
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Commit a {@link StageEvent} for the time spent reading and in each
+     * analysis processing a part of an input file.
+     *
+     * @param pIn The input file path.
+     * @param p The part.
+     * @param as The analyses.
+     */
+    static void commit(Path pIn, Part p, Analysis[] as) {
+        for (int k = 0; k <= as.length; k++) {
+            StageEvent.commit(pIn.toString(), k == 0 ? "read"
+                    : as[k - 1].getName(), "process", p.nanos[k], p.rows);
+        }
+    }
+
+    /**
+     * Read the incident numbers of each part of an input file in parallel
+     * for de-duplicating with {@link #drop(List, long)}.
+     *
+     * @param pIn The input file path.
+     * @param start The position of the first record, or -1.
+     * @param n The number of parts.
+     * @param pool The pool.
+     * @return For each part, a part with the incident numbers of its records
+     * that are not blank.
+     * @throws IOException If encountered.
+     */
+    List<Part> readIncidents(Path pIn, long start, int n, ForkJoinPool pool)
+            throws IOException {
+        int na = analyses.size();
+        List<ForkJoinTask<Part>> tasks = new ArrayList<>();
+        for (RecordCursor r : RecordCursor.open(pIn, start, n, pool, cacheDir,
+                cs)) {
+            tasks.add(pool.submit(() -> {
+                Part p = new Part(na, false, Long.MIN_VALUE);
+                p.drop = new BitSet();
+                try (r) {
+                    r.setFieldLimit(1);
+                    long t = System.nanoTime();
+                    long a = allocated();
+                    p.keys = new long[1024];
+                    int i = 0;
+                    while (r.next()) {
+                        if (!r.isBlankRecord()) {
+                            p.last = Math.max(p.last, r.getRecordPosition());
+                            if (i == p.keys.length) {
+                                p.keys = Arrays.copyOf(p.keys, i * 2);
+                            }
+                            p.keys[i++] = incident(r);
+                        }
+                    }
+                    p.rows = i;
+                    p.nanos[0] += System.nanoTime() - t;
+                    p.allocated[0] += allocated() - a;
+                }
+                return p;
+            }));
+        }
+        List<Part> parts = new ArrayList<>();
+        for (var task : tasks) {
+            parts.add(task.join());
+        }
+        return parts;
+    }
+
+    /**
+     * Find the records to drop from each part of an input file when
+     * de-duplicating in parallel. The incident numbers read by
+     * {@link #readIncidents(Path, long, int, ForkJoinPool)} are added to
+     * {@link #incidents} in input order, so the first record read with an
+     * incident number is kept as when processing sequentially. This must be
+     * called for input files in input order.
+     *
+     * @param parts The parts with the incident numbers of their records.
+     * @param after Records with an incident number no larger than this are
+     * dropped.
+     */
+    void drop(List<Part> parts, long after) {
+        for (Part p : parts) {
+            for (int i = 0; i < p.rows; i++) {
+                long incident = p.keys[i];
+                if (incident != Long.MIN_VALUE) {
+                    if (incident <= after) {
+                        p.drop.set(i);
+                    } else if (!incidents.add(incident)) {
+                        p.drop.set(i);
+                        p.duplicates++;
+                    } else {
+                        p.incident = Math.max(p.incident, incident);
+                    }
+                }
+            }
+            p.keys = null;
+            p.rows = 0;
+        }
+    }
+
+    /**
+     * Pass each record of a cursor that is not blank to each analysis.
+     *
+     * @param r The cursor.
+     * @param as The analyses.
+     * @param id The row id for the first record.
+     * @param p For the statistics and marks to add to. Records set in
+     * {@code p.drop} are skipped. If marks are kept, records with an incident
+     * number no larger than {@code p.after} are skipped, and if
+     * {@code p.seen} is not null records with an incident number already in
+     * it are skipped. The row id is still used for a record that an
+     * analysis cannot parse, as earlier analyses may have processed it.
+     * @return The row id for the next record.
+     * @throws IOException If encountered.
+     */
+    static int process(RecordCursor r, Analysis[] as, int id, Part p)
+            throws IOException {
+        long[] nanos = p.nanos;
+        long[] alloc = p.allocated;
+        long t = System.nanoTime();
+        long a = allocated();
+        boolean keys = p.marks || p.seen != null;
+        int i = 0;
+        while (r.next()) {
+            if (!r.isBlankRecord()) {
+                if (p.drop != null && p.drop.get(i++)) {
+                    continue;
+                }
+                if (p.marks) {
+                    p.last = Math.max(p.last, r.getRecordPosition());
+                }
+                if (keys) {
+                    long incident = incident(r);
+                    if (incident != Long.MIN_VALUE) {
+                        if (incident <= p.after) {
+                            continue;
+                        }
+                        if (p.seen != null && !p.seen.add(incident)) {
+                            p.duplicates++;
+                            continue;
+                        }
+                        p.incident = Math.max(p.incident, incident);
+                    }
+                }
+                long t1 = System.nanoTime();
+                long a1 = allocated();
+                nanos[0] += t1 - t;
+                alloc[0] += a1 - a;
+                t = t1;
+                a = a1;
+                boolean parsed = true;
+                for (int k = 0; k < as.length; k++) {
+                    try {
+                        as[k].process(r, id);
+                    } catch (IllegalArgumentException | DateTimeException ex) {
+                        p.parseError(r, as[k], ex, parsed);
+                        parsed = false;
+                    }
+                    t1 = System.nanoTime();
+                    a1 = allocated();
+                    nanos[k + 1] += t1 - t;
+                    alloc[k + 1] += a1 - a;
+                    t = t1;
+                    a = a1;
+                }
+                id++;
+            }
+        }
+        nanos[0] += System.nanoTime() - t;
+        alloc[0] += allocated() - a;
+        return id;
+    }
+
+    /**
+     * @param r The cursor.
+     * @return The incident number in column 0 of the current record, or
+     * {@link Long#MIN_VALUE} if it is blank or not a number.
+     */
+    static long incident(RecordCursor r) {
+        if (r.isBlank(0)) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return r.parseLong(0);
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Finish each analysis.
+     *
+     * @param pOutput The output directory.
+     * @throws IOException If encountered.
+     */
+    public void finish(Path pOutput) throws IOException {
+        long t0 = System.nanoTime();
+        for (int k = 0; k < analyses.size(); k++) {
+            long a0 = allocated();
+            long t = System.nanoTime();
+            analyses.get(k).finish(pOutput);
+            t = System.nanoTime() - t;
+            finishNanos[k + 1] += t;
+            allocated[k + 1] += allocated() - a0;
+            StageEvent.commit(pOutput.toString(), analyses.get(k).getName(),
+                    "finish", t, rows);
+        }
+        elapsed += System.nanoTime() - t0;
+    }
+
+    /**
+     * @return The input files skipped by {@link #runBatch(List, long)} as
+     * they could not be read, in input order.
+     */
+    public List<Path> getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return The metrics of the run with the counts of duplicates and parse
+     * errors, the time and memory allocated in each stage, and the counts
+     * set by each analysis.
+     */
+    public Metrics getMetrics() {
+        metrics.setElapsedNanos(elapsed);
+        metrics.set(Metrics.PARSE_ERRORS, parseErrors);
+        if (incidents != null) {
+            metrics.set("duplicates", duplicates);
+        }
+        for (int k = 0; k <= analyses.size(); k++) {
+            String name = "stage." + (k == 0 ? "read"
+                    : analyses.get(k - 1).getName());
+            metrics.set(name + ".processNanos", processNanos[k]);
+            metrics.set(name + ".mergeNanos", mergeNanos[k]);
+            metrics.set(name + ".finishNanos", finishNanos[k]);
+            metrics.set(name + ".allocatedBytes", allocated[k]);
+        }
+        for (Analysis a : analyses) {
+            a.addMetrics(metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * Write {@link #getMetrics()} as JSON.
+     *
+     * @param p The file path.
+     * @throws IOException If encountered.
+     */
+    public void writeMetrics(Path p) throws IOException {
+        getMetrics().writeJson(p);
+    }
+
+    /**
+     * Print the number of records and bytes processed, the number of
+     * duplicates dropped if de-duplicating, and a table of the
+     * time spent and memory allocated reading records and in each analysis.
+     */
+    public void printReport() {
+        double s = elapsed / 1e9;
+        System.out.println("" + rows + " records, " + bytes + " bytes in "
+                + String.format("%.3f", s) + " s ("
+                + String.format("%.0f", s > 0 ? rows / s : 0) + " records/s)");
+        if (incidents != null) {
+            System.out.println("" + duplicates + " duplicate incidents dropped, "
+                    + incidents.size() + " distinct incidents");
+        }
+        if (parseErrors > 0) {
+            System.out.println("" + parseErrors + " records could not be parsed");
+        }
+        if (!skipped.isEmpty()) {
+            System.out.println("" + skipped.size()
+                    + " input files could not be read and were skipped");
+        }
+        System.out.println("Stage,Process ms,Merge ms,Finish ms,Allocated MB");
+        for (int k = 0; k <= analyses.size(); k++) {
+            String name = k == 0 ? "read" : analyses.get(k - 1).getName();
+            System.out.println(name
+                    + "," + processNanos[k] / 1000000
+                    + "," + mergeNanos[k] / 1000000
+                    + "," + finishNanos[k] / 1000000
+                    + "," + String.format("%.1f", allocated[k] / 1048576d));
+        }
+        Runtime rt = Runtime.getRuntime();
+        System.out.println("Heap used " + (rt.totalMemory() - rt.freeMemory())
+                / 1048576 + " MB of " + rt.maxMemory() / 1048576 + " MB");
+    }
+
+    /**
+     * @return Bytes allocated by the current thread, or 0 if this is not
+     * supported.
+     */
+    static long allocated() {
+        return ALLOCATION == null ? 0
+                : ALLOCATION.getCurrentThreadAllocatedBytes();
+    }
+
+    static com.sun.management.ThreadMXBean allocation() {
+        ThreadMXBean b = ManagementFactory.getThreadMXBean();
+        if (b instanceof com.sun.management.ThreadMXBean sb
+                && sb.isThreadAllocatedMemorySupported()
+                && sb.isThreadAllocatedMemoryEnabled()) {
+            return sb;
+        }
+        return null;
+    }
+
+    /**
+     * The workers, statistics and marks for a part of an input file.
+     */
+    static class Part {
+
+        final Analysis[] workers;
+        final long[] nanos;
+        final long[] allocated;
+        int rows;
+
+        /**
+         * Whether to keep marks.
+         */
+        final boolean marks;
+
+        /**
+         * Records with an incident number no larger than this are skipped.
+         */
+        final long after;
+
+        /**
+         * The largest position of a record that is not blank or -1.
+         */
+        long last = -1;
+
+        /**
+         * The largest incident number processed.
+         */
+        long incident = Long.MIN_VALUE;
+
+        /**
+         * The incident numbers read to check for duplicates, or null.
+         */
+        LongHashSet seen;
+
+        /**
+         * The incident numbers of the records, or null.
+         */
+        long[] keys;
+
+        /**
+         * The indexes of the records that are not blank to skip, or null.
+         */
+        BitSet drop;
+
+        /**
+         * The number of duplicate records dropped.
+         */
+        int duplicates;
+
+        /**
+         * The number of records that could not be parsed.
+         */
+        int parseErrors;
+
+        /**
+         * Count a record that could not be parsed once however many analyses
+         * could not parse it, and log the first in the part.
+         *
+         * @param r The cursor positioned at the record.
+         * @param a The analysis that could not parse it.
+         * @param ex The exception.
+         * @param first Whether a is the first analysis that could not parse
+         * the record.
+         */
+        void parseError(RecordCursor r, Analysis a, RuntimeException ex,
+                boolean first) {
+            if (first && parseErrors++ == 0) {
+                Logger.getLogger(Pipeline.class.getName()).log(Level.WARNING,
+                        a.getName() + " could not parse the record at "
+                        + r.getRecordPosition() + ": " + ex.getMessage());
+            }
+        }
+
+        Part(int n, boolean marks, long after) {
+            workers = new Analysis[n];
+            nanos = new long[n + 1];
+            allocated = new long[n + 1];
+            this.marks = marks;
+            this.after = after;
+        }
+
+        /**
+         * Add the statistics and marks of p.
+         *
+         * @param p The part to add.
+         */
+        void add(Part p) {
+            for (int k = 0; k < nanos.length; k++) {
+                nanos[k] += p.nanos[k];
+                allocated[k] += p.allocated[k];
+            }
+            last = Math.max(last, p.last);
+            incident = Math.max(incident, p.incident);
+            duplicates += p.duplicates;
+            parseErrors += p.parseErrors;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.pipeline;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import uk.ac.leeds.ccg.projects.wildfire.io.CSVWriter;
+import uk.ac.leeds.ccg.projects.wildfire.io.RecordCursor;
+import uk.ac.leeds.ccg.projects.wildfire.metrics.Metrics;
+import uk.ac.leeds.ccg.projects.wildfire.stats.ColumnProfile;
+import uk.ac.leeds.ccg.projects.wildfire.stats.TopK;
+
+/**
+ * An {@link Analysis} that profiles every field of the input files in the
+ * same pass as other analyses, with a fixed memory {@link ColumnProfile} for
+ * each field name. Fields with the same name in different input files are
+ * profiled together.
+ *
+ * The profiles are written to "profile.csv" and the most frequent values of
+ * each field to "profileTop.csv".
+ *
+ * @author Andy Turner
+ */
+public class Profiler implements Analysis {
+
+    /**
+     * The charset of the outputs.
+     */
+    final Charset charset;
+
+    /**
+     * The number of most frequent values kept for each field.
+     */
+    final int k;
+
+    /**
+     * The field names in the order first read.
+     */
+    final ArrayList<String> names = new ArrayList<>();
+
+    /**
+     * The profiles in the order of {@link #names}.
+     */
+    final ArrayList<ColumnProfile> profiles = new ArrayList<>();
+
+    /**
+     * The index in {@link #names} of each field name.
+     */
+    final HashMap<String, Integer> indexes = new HashMap<>();
+
+    /**
+     * The profile of each field of the current input file.
+     */
+    ColumnProfile[] fieldProfiles = new ColumnProfile[0];
+
+    /**
+     * Create a new instance keeping {@link ColumnProfile#K} most frequent
+     * values for each field.
+     *
+     * @param charset The charset of the outputs.
+     */
+    public Profiler(Charset charset) {
+        this(charset, ColumnProfile.K);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param charset The charset of the outputs.
+     * @param k The number of most frequent values kept for each field.
+     */
+    public Profiler(Charset charset, int k) {
+        this.charset = charset;
+        this.k = k;
+    }
+
+    @Override
+    public String getName() {
+        return "Profile";
+    }
+
+    /**
+     * @param name A field name.
+     * @return The profile for name, added if there is none.
+     */
+    ColumnProfile get(String name) {
+        Integer i = indexes.get(name);
+        if (i == null) {
+            i = names.size();
+            indexes.put(name, i);
+            names.add(name);
+            profiles.add(new ColumnProfile(k));
+        }
+        return profiles.get(i);
+    }
+
+    /**
+     * @return The field names in the order first read.
+     */
+    public List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * @param name A field name.
+     * @return The profile for name or null.
+     */
+    public ColumnProfile getProfile(String name) {
+        Integer i = indexes.get(name);
+        return i == null ? null : profiles.get(i);
+    }
+
+    @Override
+    public void start(Path pIn, String header, List<String> fields) {
+        fieldProfiles = new ColumnProfile[fields.size()];
+        for (int i = 0; i < fieldProfiles.length; i++) {
+            fieldProfiles[i] = get(fields.get(i));
+        }
+    }
+
+    @Override
+    public void process(RecordCursor r, int id) {
+        for (int i = 0; i < fieldProfiles.length; i++) {
+            fieldProfiles[i].add(r, i);
+        }
+    }
+
+    @Override
+    public Analysis newWorker() {
+        return new Profiler(charset, k);
+    }
+
+    @Override
+    public void merge(Analysis w, int offset) {
+        Profiler p = (Profiler) w;
+        for (int i = 0; i < p.names.size(); i++) {
+            get(p.names.get(i)).merge(p.profiles.get(i));
+        }
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(k);
+        out.writeInt(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            out.writeUTF(names.get(i));
+            profiles.get(i).write(out);
+        }
+    }
+
+    @Override
+    public void read(DataInput in) throws IOException {
+        if (in.readInt() != k) {
+            throw new IOException("Profile written with a different k");
+        }
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            get(in.readUTF()).read(in);
+        }
+    }
+
+    @Override
+    public void addMetrics(Metrics m) {
+        m.set("profile.columns", names.size());
+    }
+
+    @Override
+    public void finish(Path pOutput) throws IOException {
+        try (CSVWriter w = new CSVWriter(Paths.get(pOutput.toString(),
+                "profile.csv"), charset)) {
+            w.field("Column");
+            w.field("Count");
+            w.field("Blank");
+            w.field("Distinct");
+            w.field("Integers");
+            w.field("Min");
+            w.field("Max");
+            w.endRow();
+            for (int i = 0; i < names.size(); i++) {
+                ColumnProfile p = profiles.get(i);
+                w.field(names.get(i));
+                w.field(p.getCount());
+                w.field(p.getBlanks());
+                w.field(p.getDistinct());
+                w.field(p.getIntegers());
+                if (p.getIntegers() == 0) {
+                    w.field();
+                    w.field();
+                } else {
+                    w.field(p.getMin());
+                    w.field(p.getMax());
+                }
+                w.endRow();
+            }
+        }
+        try (CSVWriter w = new CSVWriter(Paths.get(pOutput.toString(),
+                "profileTop.csv"), charset)) {
+            w.field("Column");
+            w.field("Rank");
+            w.field("Value");
+            w.field("Count");
+            w.field("Error");
+            w.endRow();
+            for (int i = 0; i < names.size(); i++) {
+                TopK top = profiles.get(i).getTop();
+                int[] order = top.getOrder();
+                for (int j = 0; j < order.length; j++) {
+                    w.field(names.get(i));
+                    w.field(j + 1);
+                    w.field(top.getValue(order[j]));
+                    w.field(top.getCount(order[j]));
+                    w.field(top.getError(order[j]));
+                    w.endRow();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,576 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.rules;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import uk.ac.leeds.ccg.projects.wildfire.io.FieldDictionary;
+import uk.ac.leeds.ccg.projects.wildfire.io.RecordCursor;
+import uk.ac.leeds.ccg.projects.wildfire.rules.SelectionRules.Condition;
+import uk.ac.leeds.ccg.projects.wildfire.rules.SelectionRules.Kind;
+import uk.ac.leeds.ccg.projects.wildfire.rules.SelectionRules.Op;
+import uk.ac.leeds.ccg.projects.wildfire.rules.SelectionRules.Rule;
+import uk.ac.leeds.ccg.projects.wildfire.rules.SelectionRules.RuleSet;
+import uk.ac.leeds.ccg.projects.wildfire.time.IRSTime;
+
+/**
+ * {@link SelectionRules} compiled for evaluation against every record in a
+ * single scan. The distinct conditions of all the rule sets are held in flat
+ * arrays over column indexes and each is evaluated once per record; rules
+ * and rule sets are then ORs of condition results. Field values are looked
+ * up, parsed as ints or parsed as timestamps at most once per record, and
+ * text conditions are {@link FieldDictionary.Test}s so they are evaluated
+ * once per distinct value.
+ *
+ * For each condition, rule and rule set a count of the records that meet it
+ * is kept, and for each rule and rule set a {@link BitSet} of the row ids.
+ *
+ * @author Andy Turner
+ */
+public class RuleEvaluator {
+
+    /**
+     * The rules.
+     */
+    final SelectionRules rules;
+
+    /**
+     * The charset of the input.
+     */
+    final Charset cs;
+
+    /**
+     * The distinct conditions.
+     */
+    final Condition[] conditions;
+
+    /**
+     * For each rule set and rule, the indexes of its conditions.
+     */
+    final int[][][] ruleConditions;
+
+    /**
+     * Condition kinds.
+     */
+    final Kind[] kinds;
+
+    /**
+     * Condition operators.
+     */
+    final Op[] ops;
+
+    /**
+     * Condition values.
+     */
+    final long[] values;
+
+    /**
+     * Condition column indexes, one per field, set by {@link #bind(Map)}.
+     */
+    final int[][] columns;
+
+    /**
+     * For each condition, the dictionary of its first field.
+     */
+    final FieldDictionary[] dictionaries;
+
+    /**
+     * Text condition tests.
+     */
+    final FieldDictionary.Test[] tests;
+
+    /**
+     * Condition results for the current record.
+     */
+    final boolean[] passes;
+
+    /**
+     * The row id of the current record.
+     */
+    int row = -1;
+
+    /**
+     * For each column the row id for which {@link #codes} is set.
+     */
+    int[] codeRows = new int[0];
+
+    /**
+     * For each column the dictionary code of the current record.
+     */
+    int[] codes = new int[0];
+
+    /**
+     * For each column the row id for which {@link #ints} is set.
+     */
+    int[] intRows = new int[0];
+
+    /**
+     * For each column the int value of the current record, or
+     * {@link Long#MIN_VALUE} if blank.
+     */
+    long[] ints = new long[0];
+
+    /**
+     * For each column the row id for which {@link #times} is set.
+     */
+    int[] timeRows = new int[0];
+
+    /**
+     * For each column the epoch second of the current record, or
+     * {@link Long#MIN_VALUE} if blank.
+     */
+    long[] times = new long[0];
+
+    /**
+     * Condition counts.
+     */
+    final long[] conditionCounts;
+
+    /**
+     * Rule counts by rule set.
+     */
+    final long[][] ruleCounts;
+
+    /**
+     * Rule set counts.
+     */
+    final long[] setCounts;
+
+    /**
+     * Row ids of records meeting each rule by rule set.
+     */
+    final BitSet[][] ruleFlags;
+
+    /**
+     * Row ids of records meeting each rule set.
+     */
+    final BitSet[] setFlags;
+
+    /**
+     * Compile rules.
+     *
+     * @param rules The rules.
+     * @param cs The charset of the input.
+     */
+    public RuleEvaluator(SelectionRules rules, Charset cs) {
+        this.rules = rules;
+        this.cs = cs;
+        Map<String, Integer> index = new LinkedHashMap<>();
+        List<Condition> distinct = new ArrayList<>();
+        int ns = rules.sets.size();
+        ruleConditions = new int[ns][][];
+        ruleCounts = new long[ns][];
+        ruleFlags = new BitSet[ns][];
+        setCounts = new long[ns];
+        setFlags = new BitSet[ns];
+        for (int s = 0; s < ns; s++) {
+            RuleSet set = rules.sets.get(s);
+            int nr = set.rules.size();
+            ruleConditions[s] = new int[nr][];
+            ruleCounts[s] = new long[nr];
+            ruleFlags[s] = new BitSet[nr];
+            setFlags[s] = new BitSet();
+            for (int r = 0; r < nr; r++) {
+                Rule rule = set.rules.get(r);
+                ruleFlags[s][r] = new BitSet();
+                int[] ci = new int[rule.conditions.size()];
+                for (int k = 0; k < ci.length; k++) {
+                    Condition c = rule.conditions.get(k);
+                    ci[k] = index.computeIfAbsent(c.toString(), x -> {
+                        distinct.add(c);
+                        return distinct.size() - 1;
+                    });
+                }
+                ruleConditions[s][r] = ci;
+            }
+        }
+        int n = distinct.size();
+        conditions = distinct.toArray(Condition[]::new);
+        kinds = new Kind[n];
+        ops = new Op[n];
+        values = new long[n];
+        columns = new int[n][];
+        dictionaries = new FieldDictionary[n];
+        tests = new FieldDictionary.Test[n];
+        passes = new boolean[n];
+        conditionCounts = new long[n];
+        HashMap<String, FieldDictionary> dicts = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Condition c = conditions[i];
+            kinds[i] = c.kind;
+            ops[i] = c.op;
+            values[i] = c.value;
+            columns[i] = new int[c.fields.length];
+            if (c.kind == Kind.EQUALS || c.kind == Kind.STARTS) {
+                FieldDictionary d = dicts.computeIfAbsent(c.fields[0],
+                        k -> new FieldDictionary(cs));
+                dictionaries[i] = d;
+                String text = c.text;
+                tests[i] = d.newTest(c.kind == Kind.EQUALS
+                        ? v -> v.equalsIgnoreCase(text)
+                        : v -> v.replace("\"", "").startsWith(text));
+            }
+        }
+    }
+
+    /**
+     * @return A new evaluator of the same rules with its own state, for
+     * example for a worker processing part of the input.
+     */
+    public RuleEvaluator newInstance() {
+        return new RuleEvaluator(rules, cs);
+    }
+
+    /**
+     * Set the column indexes of the fields for an input.
+     *
+     * @param fieldIndexes Column indexes by field code.
+     * @throws IllegalArgumentException If a field is not in fieldIndexes.
+     */
+    public void bind(Map<String, Integer> fieldIndexes) {
+        int max = -1;
+        for (int i = 0; i < conditions.length; i++) {
+            String[] fields = conditions[i].fields;
+            for (int f = 0; f < fields.length; f++) {
+                Integer c = fieldIndexes.get(fields[f]);
+                if (c == null) {
+                    throw new IllegalArgumentException("Unknown field "
+                            + fields[f] + " in " + conditions[i]);
+                }
+                columns[i][f] = c;
+                max = Math.max(max, c);
+            }
+        }
+        codeRows = filled(max + 1);
+        codes = new int[max + 1];
+        intRows = filled(max + 1);
+        ints = new long[max + 1];
+        timeRows = filled(max + 1);
+        times = new long[max + 1];
+    }
+
+    /**
+     * @return The column indexes of the fields of the conditions set by
+     * {@link #bind(Map)}.
+     */
+    public int[] getColumns() {
+        return Arrays.stream(columns).flatMapToInt(Arrays::stream).distinct()
+                .toArray();
+    }
+
+    static int[] filled(int n) {
+        int[] r = new int[n];
+        Arrays.fill(r, Integer.MIN_VALUE);
+        return r;
+    }
+
+    /**
+     * Evaluate the current record of a cursor. Every condition is tested
+     * before any count is changed, so a record that cannot be parsed is not
+     * counted.
+     *
+     * @param r The cursor.
+     * @param id The row id of the record.
+     * @return {@code true} if any rule set selects the record.
+     * @throws IllegalArgumentException If a number cannot be parsed.
+     * @throws java.time.DateTimeException If a time cannot be parsed.
+     */
+    public boolean evaluate(RecordCursor r, int id) {
+        row = id;
+        for (int i = 0; i < conditions.length; i++) {
+            passes[i] = test(r, i);
+        }
+        for (int i = 0; i < conditions.length; i++) {
+            if (passes[i]) {
+                conditionCounts[i]++;
+            }
+        }
+        boolean any = false;
+        for (int s = 0; s < ruleConditions.length; s++) {
+            boolean set = false;
+            int[][] rcs = ruleConditions[s];
+            for (int k = 0; k < rcs.length; k++) {
+                for (int ci : rcs[k]) {
+                    if (passes[ci]) {
+                        ruleCounts[s][k]++;
+                        ruleFlags[s][k].set(id);
+                        set = true;
+                        break;
+                    }
+                }
+            }
+            if (set) {
+                setCounts[s]++;
+                setFlags[s].set(id);
+                any = true;
+            }
+        }
+        return any;
+    }
+
+    /**
+     * @param r The cursor.
+     * @param i The condition index.
+     * @return {@code true} if the current record meets condition i.
+     */
+    boolean test(RecordCursor r, int i) {
+        int[] cols = columns[i];
+        switch (kinds[i]) {
+            case EQUALS, STARTS -> {
+                int c = cols[0];
+                if (codeRows[c] != row) {
+                    codeRows[c] = row;
+                    codes[c] = r.getCode(c, dictionaries[i]);
+                }
+                return tests[i].test(codes[c]);
+            }
+            case COMPARE -> {
+                long v = getInt(r, cols[0]);
+                return v != Long.MIN_VALUE && ops[i].test(v, values[i]);
+            }
+            case MINUTES -> {
+                long from = getTime(r, cols[0]);
+                long to = getTime(r, cols[1]);
+                return from != Long.MIN_VALUE && to != Long.MIN_VALUE
+                        && ops[i].test(IRSTime.minutesBetween(from, to),
+                        values[i]);
+            }
+            default -> {
+                boolean[] indicators = conditions[i].indicators;
+                long sum = 0;
+                for (int f = 0; f < cols.length; f++) {
+                    long v = getInt(r, cols[f]);
+                    if (indicators[f]) {
+                        sum += v != Long.MIN_VALUE && v > 0 ? 1 : 0;
+                    } else if (v == Long.MIN_VALUE) {
+                        return false;
+                    } else {
+                        sum += v;
+                    }
+                }
+                return ops[i].test(sum, values[i]);
+            }
+        }
+    }
+
+    long getInt(RecordCursor r, int c) {
+        if (intRows[c] != row) {
+            intRows[c] = row;
+            ints[c] = r.isBlank(c) ? Long.MIN_VALUE : r.parseInt(c);
+        }
+        return ints[c];
+    }
+
+    long getTime(RecordCursor r, int c) {
+        if (timeRows[c] != row) {
+            timeRows[c] = row;
+            times[c] = r.isBlank(c) ? Long.MIN_VALUE : r.parseTime(c);
+        }
+        return times[c];
+    }
+
+    /**
+     * Add the counts and flags of another evaluator of the same rules.
+     *
+     * @param o The other evaluator.
+     * @param offset The row id in this of row id 0 in o.
+     */
+    public void add(RuleEvaluator o, int offset) {
+        for (int i = 0; i < conditionCounts.length; i++) {
+            conditionCounts[i] += o.conditionCounts[i];
+        }
+        for (int s = 0; s < setCounts.length; s++) {
+            setCounts[s] += o.setCounts[s];
+            or(setFlags[s], o.setFlags[s], offset);
+            for (int k = 0; k < ruleCounts[s].length; k++) {
+                ruleCounts[s][k] += o.ruleCounts[s][k];
+                or(ruleFlags[s][k], o.ruleFlags[s][k], offset);
+            }
+        }
+    }
+
+    static void or(BitSet a, BitSet b, int offset) {
+        for (int i = b.nextSetBit(0); i >= 0; i = b.nextSetBit(i + 1)) {
+            a.set(offset + i);
+        }
+    }
+
+    /**
+     * Write the rules and the counts and flags.
+     *
+     * @param out The output.
+     * @throws IOException If encountered.
+     */
+    public void write(DataOutput out) throws IOException {
+        writeStructure(out);
+        for (long c : conditionCounts) {
+            out.writeLong(c);
+        }
+        for (int s = 0; s < setCounts.length; s++) {
+            out.writeLong(setCounts[s]);
+            write(out, setFlags[s]);
+            for (int k = 0; k < ruleCounts[s].length; k++) {
+                out.writeLong(ruleCounts[s][k]);
+                write(out, ruleFlags[s][k]);
+            }
+        }
+    }
+
+    /**
+     * Add the counts and flags written by {@link #write(DataOutput)} by an
+     * evaluator of the same rules.
+     *
+     * @param in The input.
+     * @throws IOException If encountered or if the rules differ.
+     */
+    public void read(DataInput in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeStructure(new DataOutputStream(bytes));
+        byte[] expected = bytes.toByteArray();
+        byte[] actual = new byte[expected.length];
+        in.readFully(actual);
+        if (!Arrays.equals(expected, actual)) {
+            throw new IOException("The rules differ");
+        }
+        for (int i = 0; i < conditionCounts.length; i++) {
+            conditionCounts[i] += in.readLong();
+        }
+        for (int s = 0; s < setCounts.length; s++) {
+            setCounts[s] += in.readLong();
+            setFlags[s].or(readBitSet(in));
+            for (int k = 0; k < ruleCounts[s].length; k++) {
+                ruleCounts[s][k] += in.readLong();
+                ruleFlags[s][k].or(readBitSet(in));
+            }
+        }
+    }
+
+    /**
+     * Write the rule set and rule names and the conditions.
+     *
+     * @param out The output.
+     * @throws IOException If encountered.
+     */
+    void writeStructure(DataOutput out) throws IOException {
+        out.writeInt(conditions.length);
+        for (Condition c : conditions) {
+            out.writeUTF(c.toString());
+        }
+        out.writeInt(ruleConditions.length);
+        for (int s = 0; s < ruleConditions.length; s++) {
+            RuleSet set = rules.sets.get(s);
+            out.writeUTF(set.name);
+            out.writeInt(ruleConditions[s].length);
+            for (int k = 0; k < ruleConditions[s].length; k++) {
+                out.writeUTF(set.rules.get(k).name);
+                out.writeInt(ruleConditions[s][k].length);
+                for (int ci : ruleConditions[s][k]) {
+                    out.writeInt(ci);
+                }
+            }
+        }
+    }
+
+    static void write(DataOutput out, BitSet b) throws IOException {
+        long[] words = b.toLongArray();
+        out.writeInt(words.length);
+        for (long w : words) {
+            out.writeLong(w);
+        }
+    }
+
+    static BitSet readBitSet(DataInput in) throws IOException {
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * @param set The rule set name.
+     * @return The row ids of records selected by the rule set, or null if
+     * there is no rule set with that name.
+     */
+    public BitSet getSelected(String set) {
+        for (int s = 0; s < setFlags.length; s++) {
+            if (rules.sets.get(s).name.equals(set)) {
+                return setFlags[s];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param set The rule set name.
+     * @param rule The rule name.
+     * @return The row ids of records meeting the rule, or null if there is
+     * no such rule.
+     */
+    public BitSet getSelected(String set, String rule) {
+        for (int s = 0; s < setFlags.length; s++) {
+            RuleSet rs = rules.sets.get(s);
+            if (rs.name.equals(set)) {
+                for (int k = 0; k < rs.rules.size(); k++) {
+                    if (rs.rules.get(k).name.equals(rule)) {
+                        return ruleFlags[s][k];
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Write counts in CSV form with a line for each rule set, rule and
+     * condition.
+     *
+     * @param w The writer.
+     * @throws IOException If encountered.
+     */
+    public void write(BufferedWriter w) throws IOException {
+        w.write("set,rule,condition,count");
+        w.newLine();
+        for (int s = 0; s < setCounts.length; s++) {
+            RuleSet set = rules.sets.get(s);
+            w.write(set.name + ",,," + setCounts[s]);
+            w.newLine();
+            for (int k = 0; k < set.rules.size(); k++) {
+                Rule rule = set.rules.get(k);
+                w.write(set.name + "," + rule.name + ",," + ruleCounts[s][k]);
+                w.newLine();
+                for (int ci : ruleConditions[s][k]) {
+                    w.write(set.name + "," + rule.name + ",\""
+                            + conditions[ci].toString().replace("\"", "\"\"")
+                            + "\"," + conditionCounts[ci]);
+                    w.newLine();
+                }
+            }
+        }
+    }
+}
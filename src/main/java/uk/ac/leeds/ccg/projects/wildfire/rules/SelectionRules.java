@@ -0,0 +1,351 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.rules;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Named sets of record selection rules loaded from a text file. A record is
+ * selected by a rule if it meets any of the rule's conditions, and by a rule
+ * set if it is selected by any of the set's rules. The file has one item per
+ * line; blank lines and lines starting with # are ignored:
+ * <pre>
+ * set &lt;name&gt;                       start a rule set
+ * rule &lt;name&gt;                      start a rule in the set
+ * &lt;field&gt; = &lt;text&gt;                 raw value equals text ignoring case
+ * &lt;field&gt; ^= &lt;text&gt;                value without quotes starts with text
+ * &lt;field&gt; &lt;op&gt; &lt;int&gt;               int value compared with int
+ * minutes &lt;from&gt; &lt;to&gt; &lt;op&gt; &lt;int&gt;   minutes between timestamps compared
+ * sum &lt;term&gt;... &lt;op&gt; &lt;int&gt;         sum of terms compared with int
+ * </pre>
+ * Fields are given by their short code, for example 5.16a, and op is one of
+ * &gt;=, &gt;, &lt;=, &lt;, == or !=. A sum term is a field, for its int
+ * value, or a field followed by &gt;0, for 1 if its int value is positive
+ * and 0 otherwise. A condition on a blank value is not met, except that a
+ * blank &gt;0 term counts as 0. The text of = and ^= conditions is the rest
+ * of the line after a single space, so it may contain spaces and quotes.
+ *
+ * @author Andy Turner
+ */
+public class SelectionRules {
+
+    /**
+     * Comparison operators.
+     */
+    public enum Op {
+        GE(">="), GT(">"), LE("<="), LT("<"), EQ("=="), NE("!=");
+
+        /**
+         * The symbol.
+         */
+        final String symbol;
+
+        Op(String symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * @param a The left value.
+         * @param b The right value.
+         * @return The result of comparing a with b.
+         */
+        public boolean test(long a, long b) {
+            return switch (this) {
+                case GE -> a >= b;
+                case GT -> a > b;
+                case LE -> a <= b;
+                case LT -> a < b;
+                case EQ -> a == b;
+                default -> a != b;
+            };
+        }
+
+        /**
+         * @param s A symbol.
+         * @return The operator with symbol s, or null.
+         */
+        static Op of(String s) {
+            for (Op op : values()) {
+                if (op.symbol.equals(s)) {
+                    return op;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Kinds of condition.
+     */
+    public enum Kind {
+        EQUALS, STARTS, COMPARE, MINUTES, SUM
+    }
+
+    /**
+     * A condition on the fields of a record.
+     */
+    public static class Condition {
+
+        /**
+         * The kind.
+         */
+        public final Kind kind;
+
+        /**
+         * The field codes. For {@link Kind#MINUTES} these are the from and to
+         * fields and for {@link Kind#SUM} the term fields.
+         */
+        public final String[] fields;
+
+        /**
+         * For {@link Kind#SUM}, whether each term is an indicator of a
+         * positive value.
+         */
+        public final boolean[] indicators;
+
+        /**
+         * The operator for numeric conditions.
+         */
+        public final Op op;
+
+        /**
+         * The value compared with for numeric conditions.
+         */
+        public final long value;
+
+        /**
+         * The text for {@link Kind#EQUALS} and {@link Kind#STARTS}.
+         */
+        public final String text;
+
+        Condition(Kind kind, String[] fields, boolean[] indicators, Op op,
+                long value, String text) {
+            this.kind = kind;
+            this.fields = fields;
+            this.indicators = indicators;
+            this.op = op;
+            this.value = value;
+            this.text = text;
+        }
+
+        /**
+         * @return The condition as written in a rules file.
+         */
+        @Override
+        public String toString() {
+            return switch (kind) {
+                case EQUALS ->
+                    fields[0] + " = " + text;
+                case STARTS ->
+                    fields[0] + " ^= " + text;
+                case COMPARE ->
+                    fields[0] + " " + op.symbol + " " + value;
+                case MINUTES ->
+                    "minutes " + fields[0] + " " + fields[1] + " " + op.symbol
+                    + " " + value;
+                default -> {
+                    StringBuilder sb = new StringBuilder("sum");
+                    for (int i = 0; i < fields.length; i++) {
+                        sb.append(' ').append(fields[i]);
+                        if (indicators[i]) {
+                            sb.append(">0");
+                        }
+                    }
+                    yield sb.append(' ').append(op.symbol).append(' ')
+                            .append(value).toString();
+                }
+            };
+        }
+    }
+
+    /**
+     * A named rule met if any of its conditions are.
+     */
+    public static class Rule {
+
+        /**
+         * The name.
+         */
+        public final String name;
+
+        /**
+         * The conditions.
+         */
+        public final List<Condition> conditions = new ArrayList<>();
+
+        Rule(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * A named set of rules.
+     */
+    public static class RuleSet {
+
+        /**
+         * The name.
+         */
+        public final String name;
+
+        /**
+         * The rules.
+         */
+        public final List<Rule> rules = new ArrayList<>();
+
+        RuleSet(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * The rule sets.
+     */
+    public final List<RuleSet> sets = new ArrayList<>();
+
+    /**
+     * Create a new instance.
+     */
+    public SelectionRules() {
+    }
+
+    /**
+     * Load rules from a file.
+     *
+     * @param p The file path.
+     * @return The rules.
+     * @throws IOException If encountered or if the file is not valid.
+     */
+    public static SelectionRules load(Path p) throws IOException {
+        return parse(Files.readAllLines(p, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parse rules.
+     *
+     * @param lines The lines of a rules file.
+     * @return The rules.
+     * @throws IOException If the lines are not valid.
+     */
+    public static SelectionRules parse(List<String> lines) throws IOException {
+        SelectionRules r = new SelectionRules();
+        RuleSet set = null;
+        Rule rule = null;
+        int n = 0;
+        for (String line : lines) {
+            n++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] t = line.split("\\s+");
+            try {
+                switch (t[0]) {
+                    case "set" -> {
+                        set = new RuleSet(name(t));
+                        r.sets.add(set);
+                        rule = null;
+                    }
+                    case "rule" -> {
+                        if (set == null) {
+                            throw new IOException("rule before set");
+                        }
+                        rule = new Rule(name(t));
+                        set.rules.add(rule);
+                    }
+                    default -> {
+                        if (rule == null) {
+                            throw new IOException("condition before rule");
+                        }
+                        rule.conditions.add(parseCondition(line, t));
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                throw new IOException("Line " + n + " \"" + line + "\": "
+                        + ex.getMessage(), ex);
+            }
+        }
+        return r;
+    }
+
+    static String name(String[] t) throws IOException {
+        if (t.length != 2) {
+            throw new IOException("expected " + t[0] + " <name>");
+        }
+        return t[1];
+    }
+
+    static Condition parseCondition(String line, String[] t)
+            throws IOException {
+        if (t.length < 3) {
+            throw new IOException("incomplete condition");
+        }
+        switch (t[0]) {
+            case "minutes" -> {
+                if (t.length != 5) {
+                    throw new IOException(
+                            "expected minutes <from> <to> <op> <int>");
+                }
+                return new Condition(Kind.MINUTES, new String[]{t[1], t[2]},
+                        null, op(t[3]), Long.parseLong(t[4]), null);
+            }
+            case "sum" -> {
+                int terms = t.length - 3;
+                String[] fields = new String[terms];
+                boolean[] indicators = new boolean[terms];
+                for (int i = 0; i < terms; i++) {
+                    String f = t[i + 1];
+                    indicators[i] = f.endsWith(">0");
+                    fields[i] = indicators[i]
+                            ? f.substring(0, f.length() - 2) : f;
+                }
+                return new Condition(Kind.SUM, fields, indicators,
+                        op(t[t.length - 2]), Long.parseLong(t[t.length - 1]),
+                        null);
+            }
+            default -> {
+                if (t[1].equals("=") || t[1].equals("^=")) {
+                    // The text is everything after the operator and a space.
+                    int i = line.indexOf(t[1], t[0].length()) + t[1].length()
+                            + 1;
+                    String text = i <= line.length() ? line.substring(i) : "";
+                    return new Condition(t[1].equals("=") ? Kind.EQUALS
+                            : Kind.STARTS, new String[]{t[0]}, null, null, 0,
+                            text);
+                }
+                if (t.length != 3) {
+                    throw new IOException("expected <field> <op> <int>");
+                }
+                return new Condition(Kind.COMPARE, new String[]{t[0]}, null,
+                        op(t[1]), Long.parseLong(t[2]), null);
+            }
+        }
+    }
+
+    static Op op(String s) throws IOException {
+        Op op = Op.of(s);
+        if (op == null) {
+            throw new IOException("unknown operator " + s
+                    + ", expected one of >=, >, <=, <, == or !=");
+        }
+        return op;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A statistic such as a count, counts by bin or a set of distinct values that
+ * is updated by one thread without synchronisation and merged with others of
+ * the same kind. Each worker processing part of an input has its own
+ * instances from {@link #newInstance()}, so there is no contention, and
+ * these are merged in input order so the result is the same as if one
+ * instance had been updated with all the input.
+ *
+ * @author Andy Turner
+ * @param <A> The type of aggregator.
+ */
+public interface Aggregator<A extends Aggregator<A>> {
+
+    /**
+     * @return A new empty instance with the same settings.
+     */
+    A newInstance();
+
+    /**
+     * Merge another instance into this.
+     *
+     * @param o The other instance.
+     */
+    void merge(A o);
+
+    /**
+     * Write the state.
+     *
+     * @param out The output.
+     * @throws IOException If encountered.
+     */
+    void write(DataOutput out) throws IOException;
+
+    /**
+     * Merge the state written by {@link #write(DataOutput)} into this.
+     *
+     * @param in The input.
+     * @throws IOException If encountered or if the state was written with
+     * different settings.
+     */
+    void read(DataInput in) throws IOException;
+}
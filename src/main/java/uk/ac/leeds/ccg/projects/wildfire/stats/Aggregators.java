@@ -0,0 +1,133 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A list of named {@link Aggregator}s that are merged, written and read
+ * together in the order they were added. A worker adds new instances in the
+ * same order, so merging workers is a loop rather than code for each
+ * statistic.
+ *
+ * @author Andy Turner
+ */
+public class Aggregators {
+
+    /**
+     * The names.
+     */
+    final List<String> names = new ArrayList<>();
+
+    /**
+     * The aggregators.
+     */
+    final List<Aggregator<?>> aggregators = new ArrayList<>();
+
+    /**
+     * Create a new instance.
+     */
+    public Aggregators() {
+    }
+
+    /**
+     * Add an aggregator.
+     *
+     * @param <A> The type of aggregator.
+     * @param name The name.
+     * @param a The aggregator.
+     * @return a
+     */
+    public <A extends Aggregator<A>> A add(String name, A a) {
+        names.add(name);
+        aggregators.add(a);
+        return a;
+    }
+
+    /**
+     * @return The number of aggregators.
+     */
+    public int size() {
+        return aggregators.size();
+    }
+
+    /**
+     * Merge each aggregator of o into the aggregator in this at the same
+     * index.
+     *
+     * @param o Aggregators with the same names in the same order.
+     * @throws IllegalArgumentException If the names differ.
+     */
+    public void merge(Aggregators o) {
+        if (!names.equals(o.names)) {
+            throw new IllegalArgumentException("Aggregators " + o.names
+                    + " not " + names);
+        }
+        for (int i = 0; i < aggregators.size(); i++) {
+            merge(aggregators.get(i), o.aggregators.get(i));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <A extends Aggregator<A>> void merge(Aggregator<A> a,
+            Aggregator<?> o) {
+        if (a.getClass() != o.getClass()) {
+            throw new IllegalArgumentException("Cannot merge a "
+                    + o.getClass().getSimpleName() + " into a "
+                    + a.getClass().getSimpleName());
+        }
+        a.merge((A) o);
+    }
+
+    /**
+     * Write the names and the state of each aggregator.
+     *
+     * @param out The output.
+     * @throws IOException If encountered.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            out.writeUTF(names.get(i));
+            aggregators.get(i).write(out);
+        }
+    }
+
+    /**
+     * Merge the state written by {@link #write(DataOutput)} into this.
+     *
+     * @param in The input.
+     * @throws IOException If encountered or if the names differ.
+     */
+    public void read(DataInput in) throws IOException {
+        int n = in.readInt();
+        if (n != names.size()) {
+            throw new IOException("" + n + " aggregators not " + names.size());
+        }
+        for (int i = 0; i < n; i++) {
+            String name = in.readUTF();
+            if (!name.equals(names.get(i))) {
+                throw new IOException("Aggregator " + name + " not "
+                        + names.get(i));
+            }
+            aggregators.get(i).read(in);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import uk.ac.leeds.ccg.projects.wildfire.io.FieldDictionary;
+
+/**
+ * Counts of the values of a field by {@link FieldDictionary} code. When
+ * merging, the values of the other dictionary are added to this one and the
+ * counts are added by value.
+ *
+ * @author Andy Turner
+ */
+public class CodeCounts implements Aggregator<CodeCounts> {
+
+    /**
+     * The dictionary of values.
+     */
+    final FieldDictionary dictionary;
+
+    /**
+     * Counts indexed by code.
+     */
+    long[] counts = new long[16];
+
+    /**
+     * Create a new instance.
+     *
+     * @param dictionary The dictionary of values.
+     */
+    public CodeCounts(FieldDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @return The dictionary of values.
+     */
+    public FieldDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Add 1 to the count of a value.
+     *
+     * @param code The code of the value.
+     */
+    public void add(int code) {
+        if (code >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(code + 1,
+                    counts.length * 2));
+        }
+        counts[code]++;
+    }
+
+    /**
+     * @param code The code of a value.
+     * @return The count of the value.
+     */
+    public long get(int code) {
+        return code < counts.length ? counts[code] : 0;
+    }
+
+    @Override
+    public CodeCounts newInstance() {
+        return new CodeCounts(dictionary.newInstance());
+    }
+
+    @Override
+    public void merge(CodeCounts o) {
+        add(dictionary.addAll(o.dictionary), o.counts);
+    }
+
+    /**
+     * @param codes For each code of the counts to add, the code in this.
+     * @param oCounts The counts to add.
+     */
+    void add(int[] codes, long[] oCounts) {
+        if (counts.length < dictionary.size()) {
+            counts = Arrays.copyOf(counts, dictionary.size() * 2);
+        }
+        for (int c = 0; c < codes.length; c++) {
+            counts[codes[c]] += oCounts[c];
+        }
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        dictionary.write(out);
+        for (int c = 0; c < dictionary.size(); c++) {
+            out.writeLong(get(c));
+        }
+    }
+
+    @Override
+    public void read(DataInput in) throws IOException {
+        int[] codes = dictionary.readAll(in);
+        long[] oCounts = new long[codes.length];
+        for (int c = 0; c < codes.length; c++) {
+            oCounts[c] = in.readLong();
+        }
+        add(codes, oCounts);
+    }
+}
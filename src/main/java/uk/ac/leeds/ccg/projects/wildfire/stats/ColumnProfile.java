@@ -0,0 +1,202 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import uk.ac.leeds.ccg.projects.wildfire.io.RecordCursor;
+
+/**
+ * A fixed memory profile of the values of a field: the number of values,
+ * the number that are blank, a {@link HyperLogLog} estimate of the number
+ * of distinct values that are not blank, the most frequent of these in a
+ * {@link TopK}, and the number, minimum and maximum of those that are
+ * integers.
+ *
+ * @author Andy Turner
+ */
+public class ColumnProfile implements Aggregator<ColumnProfile> {
+
+    /**
+     * The default number of {@link TopK} counters.
+     */
+    public static final int K = 32;
+
+    /**
+     * The number of values.
+     */
+    long count;
+
+    /**
+     * The number of values that are missing or only whitespace.
+     */
+    long blanks;
+
+    /**
+     * The number of values that are integers.
+     */
+    long integers;
+
+    /**
+     * The smallest integer.
+     */
+    long min = Long.MAX_VALUE;
+
+    /**
+     * The largest integer.
+     */
+    long max = Long.MIN_VALUE;
+
+    /**
+     * Distinct values that are not blank.
+     */
+    final HyperLogLog distinct = new HyperLogLog();
+
+    /**
+     * The most frequent values that are not blank.
+     */
+    final TopK top;
+
+    /**
+     * Create a new instance with {@link #K} counters.
+     */
+    public ColumnProfile() {
+        this(K);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param k The number of counters for the most frequent values.
+     */
+    public ColumnProfile(int k) {
+        top = new TopK(k);
+    }
+
+    /**
+     * Add the value of a field.
+     *
+     * @param r The cursor positioned at a record.
+     * @param i The field index.
+     */
+    public void add(RecordCursor r, int i) {
+        count++;
+        if (r.isBlank(i)) {
+            blanks++;
+            return;
+        }
+        long h = r.hash(i);
+        distinct.add(h);
+        int c = top.add(h);
+        if (c >= 0) {
+            top.setValue(c, r.getString(i));
+        }
+        if (r.isLong(i)) {
+            long v = r.parseLong(i);
+            integers++;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+    }
+
+    /**
+     * @return The number of values.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The number of values that are missing or only whitespace.
+     */
+    public long getBlanks() {
+        return blanks;
+    }
+
+    /**
+     * @return The estimated number of distinct values that are not blank.
+     */
+    public long getDistinct() {
+        return distinct.getEstimate();
+    }
+
+    /**
+     * @return The number of values that are integers.
+     */
+    public long getIntegers() {
+        return integers;
+    }
+
+    /**
+     * @return The smallest integer, or 0 if there are none.
+     */
+    public long getMin() {
+        return integers == 0 ? 0 : min;
+    }
+
+    /**
+     * @return The largest integer, or 0 if there are none.
+     */
+    public long getMax() {
+        return integers == 0 ? 0 : max;
+    }
+
+    /**
+     * @return The most frequent values that are not blank.
+     */
+    public TopK getTop() {
+        return top;
+    }
+
+    @Override
+    public ColumnProfile newInstance() {
+        return new ColumnProfile(top.getK());
+    }
+
+    @Override
+    public void merge(ColumnProfile o) {
+        count += o.count;
+        blanks += o.blanks;
+        integers += o.integers;
+        min = Math.min(min, o.min);
+        max = Math.max(max, o.max);
+        distinct.merge(o.distinct);
+        top.merge(o.top);
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(count);
+        out.writeLong(blanks);
+        out.writeLong(integers);
+        out.writeLong(min);
+        out.writeLong(max);
+        distinct.write(out);
+        top.write(out);
+    }
+
+    @Override
+    public void read(DataInput in) throws IOException {
+        count += in.readLong();
+        blanks += in.readLong();
+        integers += in.readLong();
+        min = Math.min(min, in.readLong());
+        max = Math.max(max, in.readLong());
+        distinct.read(in);
+        top.read(in);
+    }
+}
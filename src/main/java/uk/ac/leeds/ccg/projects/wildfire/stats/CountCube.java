@@ -0,0 +1,253 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Dense counts by year and a bin within the year such as month of year, week
+ * of year or day of year. Counts are held in a single {@code long[]} indexed
+ * by year offset and bin, so adding to a count involves no boxing or tree
+ * lookups. The year range grows to cover whatever years are added.
+ *
+ * @author Andy Turner
+ */
+public class CountCube implements Aggregator<CountCube> {
+
+    /**
+     * The smallest bin.
+     */
+    final int minBin;
+
+    /**
+     * The number of bins per year.
+     */
+    final int bins;
+
+    /**
+     * The first year covered by {@link #counts}.
+     */
+    int minYear;
+
+    /**
+     * The number of years covered by {@link #counts}.
+     */
+    int years;
+
+    /**
+     * Counts indexed by {@code (year - minYear) * bins + bin - minBin}.
+     */
+    long[] counts;
+
+    /**
+     * Create a new instance.
+     *
+     * @param minBin The smallest bin, for example 1 for month of year.
+     * @param maxBin The largest bin, for example 12 for month of year.
+     */
+    public CountCube(int minBin, int maxBin) {
+        this.minBin = minBin;
+        this.bins = maxBin - minBin + 1;
+        counts = new long[0];
+    }
+
+    /**
+     * Add to a count.
+     *
+     * @param year The year.
+     * @param bin The bin.
+     * @param n The amount to add.
+     */
+    public void add(int year, int bin, long n) {
+        if (bin < minBin || bin >= minBin + bins) {
+            throw new IllegalArgumentException("Bin " + bin + " not in range "
+                    + minBin + " to " + (minBin + bins - 1));
+        }
+        if (years == 0 || year < minYear || year >= minYear + years) {
+            grow(year);
+        }
+        counts[(year - minYear) * bins + bin - minBin] += n;
+    }
+
+    /**
+     * Increment a count.
+     *
+     * @param year The year.
+     * @param bin The bin.
+     */
+    public void add(int year, int bin) {
+        add(year, bin, 1);
+    }
+
+    /**
+     * Extend the year range to include year.
+     *
+     * @param year The year.
+     */
+    void grow(int year) {
+        if (years == 0) {
+            minYear = year;
+            years = 1;
+            counts = new long[bins];
+            return;
+        }
+        int newMin = Math.min(minYear, year);
+        int newYears = Math.max(minYear + years, year + 1) - newMin;
+        long[] c = new long[newYears * bins];
+        System.arraycopy(counts, 0, c, (minYear - newMin) * bins, counts.length);
+        counts = c;
+        minYear = newMin;
+        years = newYears;
+    }
+
+    /**
+     * Add all the counts of another cube with the same bins to this.
+     *
+     * @param o The other cube.
+     */
+    public void add(CountCube o) {
+        if (o.minBin != minBin || o.bins != bins) {
+            throw new IllegalArgumentException("Bins differ");
+        }
+        if (o.years == 0) {
+            return;
+        }
+        grow(o.minYear);
+        grow(o.minYear + o.years - 1);
+        int offset = (o.minYear - minYear) * bins;
+        for (int i = 0; i < o.counts.length; i++) {
+            counts[offset + i] += o.counts[i];
+        }
+    }
+
+    @Override
+    public CountCube newInstance() {
+        return new CountCube(minBin, minBin + bins - 1);
+    }
+
+    @Override
+    public void merge(CountCube o) {
+        add(o);
+    }
+
+    /**
+     * Write the counts.
+     *
+     * @param out The output.
+     * @throws IOException If encountered.
+     */
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(minBin);
+        out.writeInt(bins);
+        out.writeInt(minYear);
+        out.writeInt(years);
+        for (long c : counts) {
+            out.writeLong(c);
+        }
+    }
+
+    /**
+     * Add counts written by {@link #write(DataOutput)}.
+     *
+     * @param in The input.
+     * @throws IOException If encountered or if the bins differ.
+     */
+    @Override
+    public void read(DataInput in) throws IOException {
+        int oMinBin = in.readInt();
+        int oBins = in.readInt();
+        if (oMinBin != minBin || oBins != bins) {
+            throw new IOException("Bins differ");
+        }
+        int oMinYear = in.readInt();
+        int oYears = in.readInt();
+        for (int y = 0; y < oYears; y++) {
+            for (int b = 0; b < bins; b++) {
+                long c = in.readLong();
+                if (c != 0) {
+                    add(oMinYear + y, minBin + b, c);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if no counts have been added.
+     */
+    public boolean isEmpty() {
+        return years == 0;
+    }
+
+    /**
+     * @return The smallest year.
+     */
+    public int getMinYear() {
+        return minYear;
+    }
+
+    /**
+     * @return The largest year.
+     */
+    public int getMaxYear() {
+        return minYear + years - 1;
+    }
+
+    /**
+     * @return The smallest bin.
+     */
+    public int getMinBin() {
+        return minBin;
+    }
+
+    /**
+     * @return The largest bin.
+     */
+    public int getMaxBin() {
+        return minBin + bins - 1;
+    }
+
+    /**
+     * @param year The year.
+     * @param bin The bin.
+     * @return The count for year and bin.
+     */
+    public long get(int year, int bin) {
+        if (year < minYear || year >= minYear + years || bin < minBin
+                || bin >= minBin + bins) {
+            return 0;
+        }
+        return counts[(year - minYear) * bins + bin - minBin];
+    }
+
+    /**
+     * @param year The year.
+     * @return The total count for year.
+     */
+    public long getTotal(int year) {
+        if (year < minYear || year >= minYear + years) {
+            return 0;
+        }
+        long t = 0;
+        int o = (year - minYear) * bins;
+        for (int i = 0; i < bins; i++) {
+            t += counts[o + i];
+        }
+        return t;
+    }
+}
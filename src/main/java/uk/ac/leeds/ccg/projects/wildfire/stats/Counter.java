@@ -0,0 +1,85 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A count.
+ *
+ * @author Andy Turner
+ */
+public class Counter implements Aggregator<Counter> {
+
+    /**
+     * The count.
+     */
+    long n;
+
+    /**
+     * Create a new instance.
+     */
+    public Counter() {
+    }
+
+    /**
+     * Add 1.
+     */
+    public void add() {
+        n++;
+    }
+
+    /**
+     * @param d The amount to add.
+     */
+    public void add(long d) {
+        n += d;
+    }
+
+    /**
+     * @return The count.
+     */
+    public long get() {
+        return n;
+    }
+
+    @Override
+    public Counter newInstance() {
+        return new Counter();
+    }
+
+    @Override
+    public void merge(Counter o) {
+        n += o.n;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(n);
+    }
+
+    @Override
+    public void read(DataInput in) throws IOException {
+        n += in.readLong();
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(n);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A HyperLogLog estimate of the number of distinct values, given as 64 bit
+ * hashes, in {@code 2^14} one byte registers, so it takes 16 KiB however
+ * many values are added and has a standard error of about 0.8%. Merging
+ * takes the maximum of each register, so the result is the same whatever
+ * the order and grouping of the values added.
+ *
+ * @author Andy Turner
+ */
+public class HyperLogLog implements Aggregator<HyperLogLog> {
+
+    /**
+     * The number of hash bits used to choose a register.
+     */
+    static final int P = 14;
+
+    /**
+     * The number of registers.
+     */
+    static final int M = 1 << P;
+
+    /**
+     * The bias correction constant for {@link #M} registers.
+     */
+    static final double ALPHA = 0.7213 / (1 + 1.079 / M);
+
+    /**
+     * For each register the largest number of leading zeros plus one of the
+     * remaining hash bits of the values in it.
+     */
+    final byte[] registers = new byte[M];
+
+    /**
+     * Create a new instance.
+     */
+    public HyperLogLog() {
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param hash A well mixed 64 bit hash of the value.
+     */
+    public void add(long hash) {
+        int i = (int) (hash >>> (64 - P));
+        int rank = Long.numberOfLeadingZeros((hash << P) | (1L << (P - 1)))
+                + 1;
+        if (rank > registers[i]) {
+            registers[i] = (byte) rank;
+        }
+    }
+
+    /**
+     * @return The estimated number of distinct values.
+     */
+    public long getEstimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += Math.scalb(1.0, -r);
+            if (r == 0) {
+                zeros++;
+            }
+        }
+        double e = ALPHA * M * M / sum;
+        if (e <= 2.5 * M && zeros > 0) {
+            // Linear counting is more accurate for small counts.
+            e = M * Math.log((double) M / zeros);
+        }
+        return Math.round(e);
+    }
+
+    @Override
+    public HyperLogLog newInstance() {
+        return new HyperLogLog();
+    }
+
+    @Override
+    public void merge(HyperLogLog o) {
+        for (int i = 0; i < M; i++) {
+            if (o.registers[i] > registers[i]) {
+                registers[i] = o.registers[i];
+            }
+        }
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.write(registers);
+    }
+
+    @Override
+    public void read(DataInput in) throws IOException {
+        byte[] r = new byte[M];
+        in.readFully(r);
+        for (int i = 0; i < M; i++) {
+            if (r[i] > registers[i]) {
+                registers[i] = r[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A fixed relative accuracy quantile sketch of {@code long} values such as
+ * durations in minutes. Values from 0 to 127 are counted exactly and larger
+ * values in log-linear buckets, 64 for each power of 2, so a quantile is
+ * estimated to within 1/128 of its value. Negative values are counted in the
+ * same way by magnitude. The counts are held in {@code long[]}s that grow
+ * to cover the largest bucket used, so a sketch of values up to a year in
+ * minutes takes under 8 KiB.
+ *
+ * Unlike sketches that compact samples such as KLL or t-digest, merging
+ * adds bucket counts, so the result is the same whatever the order and
+ * grouping of the values added, as an {@link Aggregator} requires.
+ *
+ * @author Andy Turner
+ */
+public class QuantileSketch implements Aggregator<QuantileSketch> {
+
+    /**
+     * The number of bits of a value kept in a bucket index.
+     */
+    static final int BITS = 6;
+
+    /**
+     * The number of buckets for each power of 2.
+     */
+    static final int SUB = 1 << BITS;
+
+    /**
+     * Counts of values that are not negative indexed by bucket.
+     */
+    long[] counts = new long[0];
+
+    /**
+     * Counts of negative values indexed by the bucket of their magnitude.
+     */
+    long[] negatives = new long[0];
+
+    /**
+     * The number of values.
+     */
+    long n;
+
+    /**
+     * The sum of the values.
+     */
+    long sum;
+
+    /**
+     * The smallest value.
+     */
+    long min = Long.MAX_VALUE;
+
+    /**
+     * The largest value.
+     */
+    long max = Long.MIN_VALUE;
+
+    /**
+     * Create a new instance.
+     */
+    public QuantileSketch() {
+    }
+
+    /**
+     * @param v A value that is not negative.
+     * @return The bucket of v.
+     */
+    static int bucket(long v) {
+        if (v < 2 * SUB) {
+            return (int) v;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - BITS;
+        return shift * SUB + (int) (v >>> shift);
+    }
+
+    /**
+     * @param b A bucket.
+     * @return The smallest value in bucket b.
+     */
+    static long lower(int b) {
+        if (b < 2 * SUB) {
+            return b;
+        }
+        int shift = b / SUB - 1;
+        return (long) (b - shift * SUB) << shift;
+    }
+
+    /**
+     * @param b A bucket.
+     * @return The middle of bucket b rounded down.
+     */
+    static long middle(int b) {
+        long l = lower(b);
+        long u = lower(b + 1) - 1;
+        // The last bucket ends at Long.MAX_VALUE.
+        return l + ((u < l ? Long.MAX_VALUE : u) - l) / 2;
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param v The value.
+     */
+    public void add(long v) {
+        if (v >= 0) {
+            counts = add(counts, bucket(v), 1);
+        } else {
+            negatives = add(negatives, bucket(v == Long.MIN_VALUE
+                    ? Long.MAX_VALUE : -v), 1);
+        }
+        n++;
+        sum += v;
+        min = Math.min(min, v);
+        max = Math.max(max, v);
+    }
+
+    /**
+     * @param c Counts.
+     * @param b A bucket.
+     * @param k The number to add.
+     * @return c or a longer copy with k added to the count of b.
+     */
+    static long[] add(long[] c, int b, long k) {
+        if (b >= c.length) {
+            c = Arrays.copyOf(c, Math.max(b + 1, c.length + SUB));
+        }
+        c[b] += k;
+        return c;
+    }
+
+    /**
+     * @return The number of values.
+     */
+    public long getCount() {
+        return n;
+    }
+
+    /**
+     * @return The smallest value, or 0 if there are none.
+     */
+    public long getMin() {
+        return n == 0 ? 0 : min;
+    }
+
+    /**
+     * @return The largest value, or 0 if there are none.
+     */
+    public long getMax() {
+        return n == 0 ? 0 : max;
+    }
+
+    /**
+     * @return The mean value, or {@link Double#NaN} if there are none.
+     */
+    public double getMean() {
+        return n == 0 ? Double.NaN : (double) sum / n;
+    }
+
+    /**
+     * Estimate a quantile as the value of nearest rank.
+     *
+     * @param q The quantile from 0 to 1, for example 0.5 for the median.
+     * @return An estimate within 1/128 of the value of rank
+     * {@code ceil(q * n)}, or 0 if there are no values.
+     */
+    public long getQuantile(double q) {
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, Math.min(n, (long) Math.ceil(q * n)));
+        long v = 0;
+        long seen = 0;
+        boolean found = false;
+        for (int b = negatives.length - 1; b >= 0 && !found; b--) {
+            seen += negatives[b];
+            if (seen >= rank) {
+                v = -middle(b);
+                found = true;
+            }
+        }
+        for (int b = 0; b < counts.length && !found; b++) {
+            seen += counts[b];
+            if (seen >= rank) {
+                v = middle(b);
+                found = true;
+            }
+        }
+        return Math.max(min, Math.min(max, v));
+    }
+
+    @Override
+    public QuantileSketch newInstance() {
+        return new QuantileSketch();
+    }
+
+    @Override
+    public void merge(QuantileSketch o) {
+        counts = add(counts, o.counts);
+        negatives = add(negatives, o.negatives);
+        n += o.n;
+        sum += o.sum;
+        min = Math.min(min, o.min);
+        max = Math.max(max, o.max);
+    }
+
+    /**
+     * @param c Counts.
+     * @param o Counts to add.
+     * @return c or a longer copy with o added.
+     */
+    static long[] add(long[] c, long[] o) {
+        if (o.length > c.length) {
+            c = Arrays.copyOf(c, o.length);
+        }
+        for (int b = 0; b < o.length; b++) {
+            c[b] += o[b];
+        }
+        return c;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(n);
+        out.writeLong(sum);
+        out.writeLong(min);
+        out.writeLong(max);
+        write(out, counts);
+        write(out, negatives);
+    }
+
+    /**
+     * Write the buckets with non zero counts.
+     *
+     * @param out The output.
+     * @param c The counts.
+     * @throws IOException If encountered.
+     */
+    static void write(DataOutput out, long[] c) throws IOException {
+        int m = 0;
+        for (long k : c) {
+            if (k != 0) {
+                m++;
+            }
+        }
+        out.writeInt(m);
+        for (int b = 0; b < c.length; b++) {
+            if (c[b] != 0) {
+                out.writeInt(b);
+                out.writeLong(c[b]);
+            }
+        }
+    }
+
+    @Override
+    public void read(DataInput in) throws IOException {
+        n += in.readLong();
+        sum += in.readLong();
+        min = Math.min(min, in.readLong());
+        max = Math.max(max, in.readLong());
+        counts = read(in, counts);
+        negatives = read(in, negatives);
+    }
+
+    /**
+     * Add the counts written by {@link #write(DataOutput, long[])}.
+     *
+     * @param in The input.
+     * @param c The counts.
+     * @return c or a longer copy with the counts added.
+     * @throws IOException If encountered.
+     */
+    static long[] read(DataInput in, long[] c) throws IOException {
+        int m = in.readInt();
+        for (int i = 0; i < m; i++) {
+            int b = in.readInt();
+            c = add(c, b, in.readLong());
+        }
+        return c;
+    }
+}
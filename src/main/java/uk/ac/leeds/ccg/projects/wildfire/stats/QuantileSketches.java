@@ -0,0 +1,185 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import uk.ac.leeds.ccg.projects.wildfire.io.FieldDictionary;
+
+/**
+ * {@link QuantileSketch}es by an int key such as a year, a month or the
+ * {@link FieldDictionary} code of a field value. Sketches are held in an
+ * array indexed by key offset that grows to cover whatever keys are added
+ * and are created when a key is first added. If there is a dictionary then
+ * when merging, its values are added to this one and sketches are merged by
+ * value.
+ *
+ * @author Andy Turner
+ */
+public class QuantileSketches implements Aggregator<QuantileSketches> {
+
+    /**
+     * The dictionary of the values of coded keys, or null.
+     */
+    final FieldDictionary dictionary;
+
+    /**
+     * The smallest key covered by {@link #sketches}.
+     */
+    int minKey;
+
+    /**
+     * Sketches indexed by {@code key - minKey}, with null for keys not added.
+     */
+    QuantileSketch[] sketches = new QuantileSketch[0];
+
+    /**
+     * Create a new instance for keys that are not coded.
+     */
+    public QuantileSketches() {
+        this(null);
+    }
+
+    /**
+     * Create a new instance for keys that are codes of a dictionary.
+     *
+     * @param dictionary The dictionary of values, or null.
+     */
+    public QuantileSketches(FieldDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @return The dictionary of values, or null.
+     */
+    public FieldDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param key The key.
+     * @param v The value.
+     */
+    public void add(int key, long v) {
+        sketch(key).add(v);
+    }
+
+    /**
+     * @param key The key.
+     * @return The sketch for key, creating it if need be.
+     */
+    QuantileSketch sketch(int key) {
+        if (sketches.length == 0) {
+            minKey = key;
+        } else if (key < minKey) {
+            QuantileSketch[] s = new QuantileSketch[sketches.length + minKey
+                    - key];
+            System.arraycopy(sketches, 0, s, minKey - key, sketches.length);
+            sketches = s;
+            minKey = key;
+        }
+        int i = key - minKey;
+        if (i >= sketches.length) {
+            sketches = Arrays.copyOf(sketches, i + 1);
+        }
+        if (sketches[i] == null) {
+            sketches[i] = new QuantileSketch();
+        }
+        return sketches[i];
+    }
+
+    /**
+     * @param key The key.
+     * @return The sketch for key or null if no value has been added for it.
+     */
+    public QuantileSketch get(int key) {
+        int i = key - minKey;
+        return i < 0 || i >= sketches.length ? null : sketches[i];
+    }
+
+    /**
+     * @return The smallest key.
+     */
+    public int getMinKey() {
+        return minKey;
+    }
+
+    /**
+     * @return The largest key, or {@link #getMinKey()} - 1 if there are no
+     * sketches.
+     */
+    public int getMaxKey() {
+        return minKey + sketches.length - 1;
+    }
+
+    @Override
+    public QuantileSketches newInstance() {
+        return new QuantileSketches(dictionary == null ? null
+                : dictionary.newInstance());
+    }
+
+    @Override
+    public void merge(QuantileSketches o) {
+        int[] codes = dictionary == null ? null
+                : dictionary.addAll(o.dictionary);
+        for (int i = 0; i < o.sketches.length; i++) {
+            if (o.sketches[i] != null) {
+                int key = o.minKey + i;
+                sketch(codes == null ? key : codes[key]).merge(o.sketches[i]);
+            }
+        }
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeBoolean(dictionary != null);
+        if (dictionary != null) {
+            dictionary.write(out);
+        }
+        int m = 0;
+        for (QuantileSketch s : sketches) {
+            if (s != null) {
+                m++;
+            }
+        }
+        out.writeInt(m);
+        for (int i = 0; i < sketches.length; i++) {
+            if (sketches[i] != null) {
+                out.writeInt(minKey + i);
+                sketches[i].write(out);
+            }
+        }
+    }
+
+    @Override
+    public void read(DataInput in) throws IOException {
+        if (in.readBoolean() != (dictionary != null)) {
+            throw new IOException("Quantile sketches written "
+                    + (dictionary == null ? "with" : "without")
+                    + " a dictionary");
+        }
+        int[] codes = dictionary == null ? null : dictionary.readAll(in);
+        int m = in.readInt();
+        for (int j = 0; j < m; j++) {
+            int key = in.readInt();
+            sketch(codes == null ? key : codes[key]).read(in);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The most frequent values of a field, estimated with the space saving
+ * algorithm in a fixed number of counters. Values are identified by a 64
+ * bit hash and the text of a value is only kept while it has a counter, up
+ * to {@link #MAX_LENGTH} chars. When a value without a counter is added and
+ * all the counters are in use, the counter with the smallest count is given
+ * to it and its count is overestimated by at most the count it took over,
+ * which is recorded as its error. Any value occurring more than
+ * {@code n / k} times of {@code n} has a counter.
+ *
+ * Summaries are merged as described by Agarwal et al. (2013) Mergeable
+ * summaries. Unlike the other aggregators, once there are more distinct
+ * values than counters, the counts can depend on how the values were split
+ * between the summaries merged, though the bounds still hold.
+ *
+ * @author Andy Turner
+ */
+public class TopK implements Aggregator<TopK> {
+
+    /**
+     * The longest value text kept.
+     */
+    public static final int MAX_LENGTH = 256;
+
+    /**
+     * The number of counters.
+     */
+    final int k;
+
+    /**
+     * The hash of the value of each counter.
+     */
+    final long[] keys;
+
+    /**
+     * The count of each counter.
+     */
+    final long[] counts;
+
+    /**
+     * The largest overestimate of each count.
+     */
+    final long[] errors;
+
+    /**
+     * The value text of each counter.
+     */
+    final String[] values;
+
+    /**
+     * The number of counters in use.
+     */
+    int size;
+
+    /**
+     * The number of values added.
+     */
+    long n;
+
+    /**
+     * Open addressing table of counter index + 1 by key, 0 for empty.
+     */
+    final int[] table;
+
+    /**
+     * {@code table.length - 1}.
+     */
+    final int mask;
+
+    /**
+     * Create a new instance.
+     *
+     * @param k The number of counters.
+     */
+    public TopK(int k) {
+        this.k = k;
+        keys = new long[k];
+        counts = new long[k];
+        errors = new long[k];
+        values = new String[k];
+        int c = Integer.highestOneBit(Math.max(4, k * 4 - 1)) << 1;
+        table = new int[c];
+        mask = c - 1;
+    }
+
+    /**
+     * @return The number of counters.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * @return The number of values added.
+     */
+    public long getN() {
+        return n;
+    }
+
+    /**
+     * @return The number of counters in use.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param key A hash.
+     * @return The table index of key or the empty index where it would go.
+     */
+    int probe(long key) {
+        int t = (int) (key ^ (key >>> 32)) & mask;
+        while (table[t] != 0 && keys[table[t] - 1] != key) {
+            t = (t + 1) & mask;
+        }
+        return t;
+    }
+
+    /**
+     * Remove the entry at a table index shifting back entries after it.
+     *
+     * @param t The table index.
+     */
+    void remove(int t) {
+        int i = t;
+        int j = t;
+        while (true) {
+            j = (j + 1) & mask;
+            if (table[j] == 0) {
+                break;
+            }
+            long key = keys[table[j] - 1];
+            int h = (int) (key ^ (key >>> 32)) & mask;
+            boolean stays = i <= j ? i < h && h <= j : i < h || h <= j;
+            if (!stays) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = 0;
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param key A well mixed 64 bit hash of the value.
+     * @return The counter now used for the value if it did not have one, in
+     * which case {@link #setValue(int, String)} should be called with its
+     * text, otherwise -1.
+     */
+    public int add(long key) {
+        n++;
+        int t = probe(key);
+        if (table[t] != 0) {
+            counts[table[t] - 1]++;
+            return -1;
+        }
+        int c;
+        if (size < k) {
+            c = size++;
+            errors[c] = 0;
+            counts[c] = 1;
+        } else {
+            c = min();
+            remove(probe(keys[c]));
+            t = probe(key);
+            errors[c] = counts[c];
+            counts[c]++;
+        }
+        keys[c] = key;
+        values[c] = null;
+        table[t] = c + 1;
+        return c;
+    }
+
+    /**
+     * @return The counter with the smallest count, the first if tied.
+     */
+    int min() {
+        int m = 0;
+        for (int c = 1; c < size; c++) {
+            if (counts[c] < counts[m]) {
+                m = c;
+            }
+        }
+        return m;
+    }
+
+    /**
+     * @param c A counter.
+     * @param v The text of its value.
+     */
+    public void setValue(int c, String v) {
+        values[c] = v.length() > MAX_LENGTH ? v.substring(0, MAX_LENGTH) : v;
+    }
+
+    /**
+     * @return The counters in use in descending order of count.
+     */
+    public int[] getOrder() {
+        Integer[] o = new Integer[size];
+        for (int c = 0; c < size; c++) {
+            o[c] = c;
+        }
+        Arrays.sort(o, (a, b) -> counts[a] != counts[b]
+                ? Long.compare(counts[b], counts[a])
+                : Long.compare(keys[a], keys[b]));
+        int[] r = new int[size];
+        for (int c = 0; c < size; c++) {
+            r[c] = o[c];
+        }
+        return r;
+    }
+
+    /**
+     * @param c A counter.
+     * @return The text of its value.
+     */
+    public String getValue(int c) {
+        return values[c];
+    }
+
+    /**
+     * @param c A counter.
+     * @return Its count, which overestimates the count of its value by at
+     * most {@link #getError(int)}.
+     */
+    public long getCount(int c) {
+        return counts[c];
+    }
+
+    /**
+     * @param c A counter.
+     * @return The largest overestimate of its count.
+     */
+    public long getError(int c) {
+        return errors[c];
+    }
+
+    @Override
+    public TopK newInstance() {
+        return new TopK(k);
+    }
+
+    @Override
+    public void merge(TopK o) {
+        // A value without a counter in a full summary occurred at most its
+        // smallest count times.
+        long min = size < k ? 0 : counts[min()];
+        long oMin = o.size < o.k ? 0 : o.counts[o.min()];
+        int m = size + o.size;
+        long[] mKeys = new long[m];
+        long[] mCounts = new long[m];
+        long[] mErrors = new long[m];
+        String[] mValues = new String[m];
+        int j = 0;
+        for (int c = 0; c < size; c++) {
+            int t = o.probe(keys[c]);
+            int oc = o.table[t] - 1;
+            mKeys[j] = keys[c];
+            mCounts[j] = counts[c] + (oc < 0 ? oMin : o.counts[oc]);
+            mErrors[j] = errors[c] + (oc < 0 ? oMin : o.errors[oc]);
+            mValues[j++] = values[c] != null || oc < 0 ? values[c]
+                    : o.values[oc];
+        }
+        for (int c = 0; c < o.size; c++) {
+            if (table[probe(o.keys[c])] == 0) {
+                mKeys[j] = o.keys[c];
+                mCounts[j] = o.counts[c] + min;
+                mErrors[j] = o.errors[c] + min;
+                mValues[j++] = o.values[c];
+            }
+        }
+        Integer[] order = new Integer[j];
+        for (int c = 0; c < j; c++) {
+            order[c] = c;
+        }
+        Arrays.sort(order, (a, b) -> mCounts[a] != mCounts[b]
+                ? Long.compare(mCounts[b], mCounts[a])
+                : Long.compare(mKeys[a], mKeys[b]));
+        Arrays.fill(table, 0);
+        size = Math.min(k, j);
+        for (int c = 0; c < size; c++) {
+            int x = order[c];
+            keys[c] = mKeys[x];
+            counts[c] = mCounts[x];
+            errors[c] = mErrors[x];
+            values[c] = mValues[x];
+            table[probe(keys[c])] = c + 1;
+        }
+        n += o.n;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(k);
+        out.writeLong(n);
+        out.writeInt(size);
+        for (int c = 0; c < size; c++) {
+            out.writeLong(keys[c]);
+            out.writeLong(counts[c]);
+            out.writeLong(errors[c]);
+            out.writeUTF(values[c] == null ? "" : values[c]);
+        }
+    }
+
+    @Override
+    public void read(DataInput in) throws IOException {
+        int ok = in.readInt();
+        if (ok != k) {
+            throw new IOException("Top " + ok + " not " + k);
+        }
+        TopK o = new TopK(k);
+        o.n = in.readLong();
+        o.size = in.readInt();
+        for (int c = 0; c < o.size; c++) {
+            o.keys[c] = in.readLong();
+            o.counts[c] = in.readLong();
+            o.errors[c] = in.readLong();
+            o.values[c] = in.readUTF();
+            o.table[o.probe(o.keys[c])] = c + 1;
+        }
+        merge(o);
+    }
+}
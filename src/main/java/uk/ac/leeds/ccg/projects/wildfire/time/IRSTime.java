@@ -0,0 +1,550 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.time;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * For converting IRS timestamps to and from primitive epoch seconds in the
+ * Europe/London time zone without creating any objects. Timestamps are in
+ * the form "dd/MM/yyyy HH:mm[:ss]". Daylight saving is handled using a table
+ * of Europe/London offset transitions computed once from {@link ZoneRules}.
+ * Local times in a gap or overlap are resolved in the same way as
+ * {@link ZonedDateTime#of(int, int, int, int, int, int, int, ZoneId)}.
+ *
+ * @author Andy Turner
+ */
+public final class IRSTime {
+
+    /**
+     * The zone.
+     */
+    public static final ZoneId LONDON = ZoneId.of("Europe/London");
+
+    /**
+     * The last year covered by the transition table. Later times use the
+     * offset in force at the end of the table.
+     */
+    static final int LAST_YEAR = 2200;
+
+    /**
+     * Transition instants in epoch seconds.
+     */
+    static final long[] TRANSITIONS;
+
+    /**
+     * For each transition, the local epoch second at or after which the
+     * offset after the transition applies.
+     */
+    static final long[] LOCAL_TRANSITIONS;
+
+    /**
+     * For each transition, the offset in seconds after the transition.
+     */
+    static final int[] OFFSETS_AFTER;
+
+    /**
+     * The offset in seconds before the first transition.
+     */
+    static final int OFFSET_INITIAL;
+
+    static {
+        ZoneRules rules = LONDON.getRules();
+        List<ZoneOffsetTransition> ts = new ArrayList<>(rules.getTransitions());
+        Instant end = ZonedDateTime.of(LAST_YEAR, 12, 31, 0, 0, 0, 0, LONDON)
+                .toInstant();
+        ZoneOffsetTransition t = ts.isEmpty()
+                ? rules.nextTransition(Instant.EPOCH)
+                : rules.nextTransition(ts.get(ts.size() - 1).getInstant());
+        while (t != null && t.getInstant().isBefore(end)) {
+            ts.add(t);
+            t = rules.nextTransition(t.getInstant());
+        }
+        int n = ts.size();
+        TRANSITIONS = new long[n];
+        LOCAL_TRANSITIONS = new long[n];
+        OFFSETS_AFTER = new int[n];
+        for (int i = 0; i < n; i++) {
+            ZoneOffsetTransition zot = ts.get(i);
+            int before = zot.getOffsetBefore().getTotalSeconds();
+            int after = zot.getOffsetAfter().getTotalSeconds();
+            TRANSITIONS[i] = zot.toEpochSecond();
+            LOCAL_TRANSITIONS[i] = TRANSITIONS[i] + Math.max(before, after);
+            OFFSETS_AFTER[i] = after;
+        }
+        OFFSET_INITIAL = n == 0 ? rules.getOffset(Instant.EPOCH)
+                .getTotalSeconds() : ts.get(0).getOffsetBefore()
+                .getTotalSeconds();
+    }
+
+    /**
+     * Seconds per day.
+     */
+    public static final int SECONDS_PER_DAY = 86400;
+
+    /**
+     * The Excel serial day number of 1970-01-01 in the 1900 date system.
+     */
+    static final long EXCEL_EPOCH_DAY = 25569;
+
+    /**
+     * Cumulative days before each month (1 to 12) in a non leap year.
+     */
+    static final int[] DAYS_BEFORE_MONTH = {0, 0, 31, 59, 90, 120, 151, 181,
+        212, 243, 273, 304, 334};
+
+    private IRSTime() {
+    }
+
+    /**
+     * Parse an IRS timestamp.
+     *
+     * @param s The timestamp in the form "dd/MM/yyyy HH:mm[:ss]".
+     * @return The epoch second.
+     * @throws NumberFormatException If s is not in the expected form.
+     * @throws DateTimeException If a field is out of range.
+     */
+    public static long parse(CharSequence s) {
+        return parse(s, 0, s.length());
+    }
+
+    /**
+     * Parse an IRS timestamp in {@code s} from {@code start} (inclusive) to
+     * {@code end} (exclusive).
+     *
+     * @param s The characters.
+     * @param start The start index.
+     * @param end The end index.
+     * @return The epoch second.
+     * @throws NumberFormatException If s is not in the expected form.
+     * @throws DateTimeException If a field is out of range.
+     */
+    public static long parse(CharSequence s, int start, int end) {
+        return fromLocal(parseLocal(s, start, end));
+    }
+
+    /**
+     * Parse an IRS timestamp as a local epoch second.
+     *
+     * @param s The timestamp in the form "dd/MM/yyyy HH:mm[:ss]".
+     * @return The local epoch second (seconds since 1970-01-01T00:00 local
+     * time).
+     * @throws NumberFormatException If s is not in the expected form.
+     * @throws DateTimeException If a field is out of range.
+     */
+    public static long parseLocal(CharSequence s) {
+        return parseLocal(s, 0, s.length());
+    }
+
+    /**
+     * Parse an IRS timestamp in {@code s} from {@code start} (inclusive) to
+     * {@code end} (exclusive) as a local epoch second.
+     *
+     * @param s The characters.
+     * @param start The start index.
+     * @param end The end index.
+     * @return The local epoch second.
+     * @throws NumberFormatException If s is not in the expected form.
+     * @throws DateTimeException If a field is out of range.
+     */
+    public static long parseLocal(CharSequence s, int start, int end) {
+        int i = start;
+        while (i < end && s.charAt(i) == ' ') {
+            i++;
+        }
+        int day = 0, month = 0, year = 0, hour = 0, minute = 0, second = 0;
+        int field = 0;
+        int digits = 0;
+        int v = 0;
+        for (; i <= end; i++) {
+            char c = i < end ? s.charAt(i) : '\0';
+            if (c >= '0' && c <= '9') {
+                v = v * 10 + (c - '0');
+                digits++;
+                if (digits > 9) {
+                    throw new NumberFormatException(s.subSequence(start, end)
+                            .toString());
+                }
+                continue;
+            }
+            if (digits == 0) {
+                throw new NumberFormatException(s.subSequence(start, end)
+                        .toString());
+            }
+            switch (field) {
+                case 0 -> day = v;
+                case 1 -> month = v;
+                case 2 -> year = v;
+                case 3 -> hour = v;
+                case 4 -> minute = v;
+                default -> second = v;
+            }
+            char expected = switch (field) {
+                case 0, 1 -> '/';
+                case 2 -> ' ';
+                case 3, 4 -> ':';
+                default -> '\0';
+            };
+            if (c == '\0' || (c == ' ' && field >= 4)) {
+                if (field < 4) {
+                    throw new NumberFormatException(s.subSequence(start, end)
+                            .toString());
+                }
+                break;
+            }
+            if (c != expected) {
+                throw new NumberFormatException(s.subSequence(start, end)
+                        .toString());
+            }
+            field++;
+            digits = 0;
+            v = 0;
+        }
+        return toLocalEpochSecond(year, month, day, hour, minute, second);
+    }
+
+    /**
+     * @param year The year.
+     * @param month The month of year (1 to 12).
+     * @param day The day of month.
+     * @param hour The hour of day.
+     * @param minute The minute of hour.
+     * @param second The second of minute.
+     * @return The epoch second of the Europe/London local date time.
+     * @throws DateTimeException If a field is out of range.
+     */
+    public static long toEpochSecond(int year, int month, int day, int hour,
+            int minute, int second) {
+        return fromLocal(toLocalEpochSecond(year, month, day, hour, minute,
+                second));
+    }
+
+    /**
+     * @param year The year.
+     * @param month The month of year (1 to 12).
+     * @param day The day of month.
+     * @param hour The hour of day.
+     * @param minute The minute of hour.
+     * @param second The second of minute.
+     * @return The local epoch second of the local date time.
+     * @throws DateTimeException If a field is out of range.
+     */
+    public static long toLocalEpochSecond(int year, int month, int day,
+            int hour, int minute, int second) {
+        if (month < 1 || month > 12 || day < 1
+                || day > lengthOfMonth(year, month) || hour > 23
+                || minute > 59 || second > 59) {
+            throw new DateTimeException("Invalid date time " + day + "/"
+                    + month + "/" + year + " " + hour + ":" + minute + ":"
+                    + second);
+        }
+        return epochDay(year, month, day) * SECONDS_PER_DAY
+                + hour * 3600 + minute * 60 + second;
+    }
+
+    /**
+     * Convert an Excel serial date value (1900 date system) holding a
+     * Europe/London local date time to an epoch second. The fraction of the
+     * day is rounded to the nearest millisecond and then truncated to the
+     * second as {@link org.apache.poi.ss.usermodel.DateUtil#getJavaDate(double)}
+     * and {@link java.util.Date#toString()} do.
+     *
+     * @param serial The Excel serial date value.
+     * @return The epoch second.
+     */
+    public static long fromExcelSerial(double serial) {
+        long days = (long) Math.floor(serial);
+        long millis = (long) ((serial - days) * SECONDS_PER_DAY * 1000L + 0.5);
+        if (days < 61) {
+            // Excel treats 1900 as a leap year.
+            days++;
+        }
+        long local = (days - EXCEL_EPOCH_DAY) * SECONDS_PER_DAY + millis / 1000;
+        return fromLocal(local);
+    }
+
+    /**
+     * @param from The start epoch second.
+     * @param to The end epoch second.
+     * @return The number of whole minutes from from to to, truncated towards
+     * zero as with {@link java.time.temporal.ChronoUnit#MINUTES}.
+     */
+    public static long minutesBetween(long from, long to) {
+        return (to - from) / 60;
+    }
+
+    /**
+     * Convert a local epoch second (seconds since 1970-01-01T00:00 local time)
+     * to an epoch second. Gaps are resolved by moving later by the length of
+     * the gap and overlaps by using the earlier offset.
+     *
+     * @param local The local epoch second.
+     * @return The epoch second.
+     */
+    public static long fromLocal(long local) {
+        int i = Arrays.binarySearch(LOCAL_TRANSITIONS, local);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        // In a gap or overlap of the next transition the offset before that
+        // transition applies, which is the offset after transition i.
+        return local - (i < 0 ? OFFSET_INITIAL : OFFSETS_AFTER[i]);
+    }
+
+    /**
+     * @param epochSecond The epoch second.
+     * @return The Europe/London offset in seconds at epochSecond.
+     */
+    public static int getOffset(long epochSecond) {
+        int i = Arrays.binarySearch(TRANSITIONS, epochSecond);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        return i < 0 ? OFFSET_INITIAL : OFFSETS_AFTER[i];
+    }
+
+    /**
+     * @param epochSecond The epoch second.
+     * @return The Europe/London local epoch second.
+     */
+    public static long toLocal(long epochSecond) {
+        return epochSecond + getOffset(epochSecond);
+    }
+
+    /**
+     * @param epochSecond The epoch second.
+     * @return The Europe/London local epoch day.
+     */
+    public static long getLocalEpochDay(long epochSecond) {
+        return Math.floorDiv(toLocal(epochSecond), SECONDS_PER_DAY);
+    }
+
+    /**
+     * @param epochSecond The epoch second.
+     * @return The Europe/London year.
+     */
+    public static int getYear(long epochSecond) {
+        return yearOfEpochDay(getLocalEpochDay(epochSecond));
+    }
+
+    /**
+     * @param epochSecond The epoch second.
+     * @return The Europe/London month of year (1 to 12).
+     */
+    public static int getMonth(long epochSecond) {
+        long ed = getLocalEpochDay(epochSecond);
+        int y = yearOfEpochDay(ed);
+        return monthOfDayOfYear(y, (int) (ed - epochDay(y, 1, 1)) + 1);
+    }
+
+    /**
+     * @param epochSecond The epoch second.
+     * @return The Europe/London day of year (1 to 366).
+     */
+    public static int getDayOfYear(long epochSecond) {
+        long ed = getLocalEpochDay(epochSecond);
+        return (int) (ed - epochDay(yearOfEpochDay(ed), 1, 1)) + 1;
+    }
+
+    /**
+     * @param epochSecond The epoch second.
+     * @return The Europe/London day of month (1 to 31).
+     */
+    public static int getDayOfMonth(long epochSecond) {
+        long ed = getLocalEpochDay(epochSecond);
+        int y = yearOfEpochDay(ed);
+        int doy = (int) (ed - epochDay(y, 1, 1)) + 1;
+        int m = monthOfDayOfYear(y, doy);
+        return doy - DAYS_BEFORE_MONTH[m] - (m > 2 && isLeap(y) ? 1 : 0);
+    }
+
+    /**
+     * @param epochSecond The epoch second.
+     * @return The Europe/London ISO day of week (1 is Monday, 7 is Sunday).
+     */
+    public static int getDayOfWeek(long epochSecond) {
+        // 1970-01-01 was a Thursday.
+        return Math.floorMod(getLocalEpochDay(epochSecond) + 3, 7) + 1;
+    }
+
+    /**
+     * @param epochSecond The epoch second.
+     * @return The Europe/London second of day.
+     */
+    public static int getSecondOfDay(long epochSecond) {
+        return Math.floorMod(toLocal(epochSecond), SECONDS_PER_DAY);
+    }
+
+    /**
+     * @param epochSecond The epoch second.
+     * @return A ZonedDateTime for epochSecond in Europe/London.
+     */
+    public static ZonedDateTime toZonedDateTime(long epochSecond) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond),
+                LONDON);
+    }
+
+    /**
+     * Append epochSecond in the form "dd/MM/yyyy HH:mm[:ss]", the inverse of
+     * {@link #parse(CharSequence)} for local times not in a gap.
+     *
+     * @param epochSecond The epoch second.
+     * @param seconds If {@code true} seconds are appended.
+     * @param sb The builder to append to.
+     * @return sb
+     */
+    public static StringBuilder format(long epochSecond, boolean seconds,
+            StringBuilder sb) {
+        return formatLocal(toLocal(epochSecond), seconds, sb);
+    }
+
+    /**
+     * Append a local epoch second in the form "dd/MM/yyyy HH:mm[:ss]", the
+     * inverse of {@link #parseLocal(CharSequence)}.
+     *
+     * @param local The local epoch second.
+     * @param seconds If {@code true} seconds are appended.
+     * @param sb The builder to append to.
+     * @return sb
+     */
+    public static StringBuilder formatLocal(long local, boolean seconds,
+            StringBuilder sb) {
+        long ed = Math.floorDiv(local, SECONDS_PER_DAY);
+        int sod = Math.floorMod(local, SECONDS_PER_DAY);
+        int y = yearOfEpochDay(ed);
+        int doy = (int) (ed - epochDay(y, 1, 1)) + 1;
+        int m = monthOfDayOfYear(y, doy);
+        int d = doy - DAYS_BEFORE_MONTH[m] - (m > 2 && isLeap(y) ? 1 : 0);
+        append2(sb, d).append('/');
+        append2(sb, m).append('/');
+        for (int p = 1000; p > 1 && y < p && y >= 0; p /= 10) {
+            sb.append('0');
+        }
+        sb.append(y).append(' ');
+        append2(sb, sod / 3600).append(':');
+        append2(sb, sod / 60 % 60);
+        if (seconds) {
+            append2(sb.append(':'), sod % 60);
+        }
+        return sb;
+    }
+
+    /**
+     * @param epochSecond The epoch second.
+     * @param seconds If {@code true} seconds are included.
+     * @return epochSecond in the form "dd/MM/yyyy HH:mm[:ss]".
+     */
+    public static String format(long epochSecond, boolean seconds) {
+        return format(epochSecond, seconds, new StringBuilder(19)).toString();
+    }
+
+    /**
+     * Append a two digit zero padded number.
+     *
+     * @param sb The builder to append to.
+     * @param v The number (0 to 99).
+     * @return sb
+     */
+    static StringBuilder append2(StringBuilder sb, int v) {
+        return sb.append((char) ('0' + v / 10)).append((char) ('0' + v % 10));
+    }
+
+    /**
+     * @param year The year.
+     * @return {@code true} if year is a leap year.
+     */
+    public static boolean isLeap(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * @param year The year.
+     * @param month The month (1 to 12).
+     * @return The number of days in the month.
+     */
+    public static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> isLeap(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    /**
+     * @param year The year.
+     * @param month The month (1 to 12).
+     * @param day The day of month.
+     * @return The number of days since 1970-01-01.
+     */
+    public static long epochDay(int year, int month, int day) {
+        // See java.time.LocalDate#toEpochDay().
+        long y = year;
+        long total = 365 * y;
+        if (y >= 0) {
+            total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        } else {
+            total -= y / -4 - y / -100 + y / -400;
+        }
+        total += ((367 * month - 362) / 12);
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeap(year)) {
+                total--;
+            }
+        }
+        return total - 719528;
+    }
+
+    /**
+     * @param epochDay The number of days since 1970-01-01.
+     * @return The year.
+     */
+    public static int yearOfEpochDay(long epochDay) {
+        int y = (int) Math.floorDiv(epochDay * 400, 146097) + 1970;
+        // The estimate may be out by one either way.
+        while (epochDay(y, 1, 1) > epochDay) {
+            y--;
+        }
+        while (epochDay(y + 1, 1, 1) <= epochDay) {
+            y++;
+        }
+        return y;
+    }
+
+    /**
+     * @param year The year.
+     * @param dayOfYear The day of year (1 to 366).
+     * @return The month of year (1 to 12).
+     */
+    static int monthOfDayOfYear(int year, int dayOfYear) {
+        int leap = isLeap(year) ? 1 : 0;
+        int m = 12;
+        while (m > 1 && dayOfYear <= DAYS_BEFORE_MONTH[m]
+                + (m > 2 ? leap : 0)) {
+            m--;
+        }
+        return m;
+    }
+}
@@ -0,0 +1,569 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.time;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * An index of incident start times for counting incidents in any time range
+ * without reading the input files again. The start times are held as a
+ * sorted array of epoch minutes with parallel arrays of the row id and the
+ * property type code of each incident. Each property type also has its own
+ * sorted array of start times. A count for a range, and a count for a range
+ * and property type, takes two binary searches. A series of rolling window
+ * counts takes two binary searches per window.
+ *
+ * An index is built with a {@link Builder}, which can be merged and
+ * checkpointed like the other Part 2 state. It is written to and read from
+ * a file with {@link #write(Path)} and {@link #read(Path)}. The file layout
+ * (little endian) is: magic, version, size, the number of property types
+ * and each as a length and UTF-8 bytes, then the minutes, row ids and codes.
+ *
+ * @author Andy Turner
+ */
+public class TimeIndex {
+
+    /**
+     * Identifies an index file ("IRSTIDX1").
+     */
+    static final long MAGIC = 0x49525354_49445831L;
+
+    /**
+     * The format version.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Start times in epoch minutes in ascending order.
+     */
+    final long[] minutes;
+
+    /**
+     * The row id of each incident in {@link #minutes}.
+     */
+    final int[] rows;
+
+    /**
+     * The property type code of each incident in {@link #minutes}.
+     */
+    final int[] codes;
+
+    /**
+     * The property types indexed by code.
+     */
+    final List<String> values;
+
+    /**
+     * Start times grouped by property type code and in ascending order
+     * within each group.
+     */
+    final long[] codeMinutes;
+
+    /**
+     * The start of the group of each code in {@link #codeMinutes}, with the
+     * end of the last group appended.
+     */
+    final int[] codeStarts;
+
+    /**
+     * Create a new instance.
+     *
+     * @param minutes Start times in epoch minutes in ascending order.
+     * @param rows The row ids.
+     * @param codes The property type codes.
+     * @param values The property types indexed by code.
+     */
+    TimeIndex(long[] minutes, int[] rows, int[] codes, List<String> values) {
+        this.minutes = minutes;
+        this.rows = rows;
+        this.codes = codes;
+        this.values = values;
+        // Counting sort by code, which keeps the time order in each group.
+        codeStarts = new int[values.size() + 1];
+        for (int c : codes) {
+            codeStarts[c + 1]++;
+        }
+        for (int c = 0; c < values.size(); c++) {
+            codeStarts[c + 1] += codeStarts[c];
+        }
+        int[] next = Arrays.copyOf(codeStarts, values.size());
+        codeMinutes = new long[minutes.length];
+        for (int i = 0; i < minutes.length; i++) {
+            codeMinutes[next[codes[i]]++] = minutes[i];
+        }
+    }
+
+    /**
+     * @param epochSecond An epoch second.
+     * @return The epoch minute.
+     */
+    public static long toMinute(long epochSecond) {
+        return Math.floorDiv(epochSecond, 60);
+    }
+
+    /**
+     * @param localEpochDay A Europe/London local epoch day.
+     * @return The epoch minute of the start of the day.
+     */
+    public static long dayStart(long localEpochDay) {
+        return toMinute(IRSTime.fromLocal(localEpochDay
+                * IRSTime.SECONDS_PER_DAY));
+    }
+
+    /**
+     * @return The number of incidents.
+     */
+    public int size() {
+        return minutes.length;
+    }
+
+    /**
+     * @return The property types indexed by code.
+     */
+    public List<String> getValues() {
+        return values;
+    }
+
+    /**
+     * @param value A property type.
+     * @return The code of value, or -1 if no incident has it.
+     */
+    public int getCode(String value) {
+        return values.indexOf(value);
+    }
+
+    /**
+     * @param i An index from 0 to {@link #size()} - 1 in time order.
+     * @return The start time in epoch minutes.
+     */
+    public long getMinute(int i) {
+        return minutes[i];
+    }
+
+    /**
+     * @param i An index from 0 to {@link #size()} - 1 in time order.
+     * @return The row id.
+     */
+    public int getRow(int i) {
+        return rows[i];
+    }
+
+    /**
+     * @param i An index from 0 to {@link #size()} - 1 in time order.
+     * @return The property type code.
+     */
+    public int getCode(int i) {
+        return codes[i];
+    }
+
+    /**
+     * @param a Values in ascending order.
+     * @param from The start of the range to search (inclusive).
+     * @param to The end of the range to search (exclusive).
+     * @param v The value.
+     * @return The index of the first value in the range that is not less
+     * than v, or to if there is none.
+     */
+    static int lowerBound(long[] a, int from, int to, long v) {
+        while (from < to) {
+            int m = (from + to) >>> 1;
+            if (a[m] < v) {
+                from = m + 1;
+            } else {
+                to = m;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * @param from The start of the time range in epoch minutes (inclusive).
+     * @return The index in time order of the first incident starting at or
+     * after from.
+     */
+    public int indexOf(long from) {
+        return lowerBound(minutes, 0, minutes.length, from);
+    }
+
+    /**
+     * @param from The start of the time range in epoch minutes (inclusive).
+     * @param to The end of the time range in epoch minutes (exclusive).
+     * @return The number of incidents starting in the range.
+     */
+    public int count(long from, long to) {
+        if (to <= from) {
+            return 0;
+        }
+        return indexOf(to) - indexOf(from);
+    }
+
+    /**
+     * @param from The start of the time range in epoch minutes (inclusive).
+     * @param to The end of the time range in epoch minutes (exclusive).
+     * @param code A property type code.
+     * @return The number of incidents of the property type starting in the
+     * range.
+     */
+    public int count(long from, long to, int code) {
+        if (to <= from || code < 0 || code >= values.size()) {
+            return 0;
+        }
+        int s = codeStarts[code];
+        int e = codeStarts[code + 1];
+        return lowerBound(codeMinutes, s, e, to)
+                - lowerBound(codeMinutes, s, e, from);
+    }
+
+    /**
+     * @param from The start of the time range in epoch minutes (inclusive).
+     * @param to The end of the time range in epoch minutes (exclusive).
+     * @param test A test of property type codes, for example from
+     * {@link #getCodes(IntPredicate)}.
+     * @return The number of incidents with a property type passing the test
+     * starting in the range.
+     */
+    public int count(long from, long to, IntPredicate test) {
+        int n = 0;
+        for (int c = 0; c < values.size(); c++) {
+            if (test.test(c)) {
+                n += count(from, to, c);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @param test A test of property types.
+     * @return A test of property type codes.
+     */
+    public IntPredicate getCodes(Predicate<String> test) {
+        boolean[] pass = new boolean[values.size()];
+        for (int c = 0; c < pass.length; c++) {
+            pass[c] = test.test(values.get(c));
+        }
+        return c -> c >= 0 && c < pass.length && pass[c];
+    }
+
+    /**
+     * @param from The start of the time range in epoch minutes (inclusive).
+     * @param to The end of the time range in epoch minutes (exclusive).
+     * @return The row ids of the incidents starting in the range in time
+     * order.
+     */
+    public int[] getRows(long from, long to) {
+        int s = indexOf(from);
+        return Arrays.copyOfRange(rows, s, Math.max(s, indexOf(to)));
+    }
+
+    /**
+     * Count incidents in a rolling window of days.
+     *
+     * @param fromDay The first Europe/London local epoch day.
+     * @param toDay The last Europe/London local epoch day (inclusive).
+     * @param days The number of days in the window, for example 7 or 28.
+     * @return For each day d from fromDay to toDay, the number of incidents
+     * starting in the window of days ending with d.
+     */
+    public int[] rolling(long fromDay, long toDay, int days) {
+        return rolling(fromDay, toDay, days, null);
+    }
+
+    /**
+     * Count incidents of some property types in a rolling window of days.
+     *
+     * @param fromDay The first Europe/London local epoch day.
+     * @param toDay The last Europe/London local epoch day (inclusive).
+     * @param days The number of days in the window, for example 7 or 28.
+     * @param test A test of property type codes, or null for all.
+     * @return For each day d from fromDay to toDay, the number of incidents
+     * with a property type passing the test starting in the window of days
+     * ending with d.
+     */
+    public int[] rolling(long fromDay, long toDay, int days,
+            IntPredicate test) {
+        int n = (int) Math.max(0, toDay - fromDay + 1);
+        int[] r = new int[n];
+        for (int i = 0; i < n; i++) {
+            long d = fromDay + i;
+            long from = dayStart(d - days + 1);
+            long to = dayStart(d + 1);
+            r[i] = test == null ? count(from, to) : count(from, to, test);
+        }
+        return r;
+    }
+
+    /**
+     * Write this to a file.
+     *
+     * @param p The file path.
+     * @throws IOException If encountered.
+     */
+    public void write(Path p) throws IOException {
+        List<byte[]> vs = new ArrayList<>();
+        long len = 8 + 4 + 4 + 4;
+        for (String v : values) {
+            byte[] b = v.getBytes(StandardCharsets.UTF_8);
+            vs.add(b);
+            len += 4 + b.length;
+        }
+        len += minutes.length * 16L;
+        if (len > Integer.MAX_VALUE) {
+            throw new IOException("Index of " + size()
+                    + " incidents too large to write");
+        }
+        ByteBuffer b = ByteBuffer.allocate((int) len)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        b.putLong(MAGIC).putInt(VERSION).putInt(minutes.length)
+                .putInt(vs.size());
+        for (byte[] v : vs) {
+            b.putInt(v.length).put(v);
+        }
+        b.asLongBuffer().put(minutes);
+        b.position(b.position() + minutes.length * 8);
+        b.asIntBuffer().put(rows);
+        b.position(b.position() + rows.length * 4);
+        b.asIntBuffer().put(codes);
+        b.clear();
+        Path tmp = p.resolveSibling(p.getFileName().toString() + ".tmp");
+        try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            while (b.hasRemaining()) {
+                fc.write(b);
+            }
+        }
+        Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read an index written by {@link #write(Path)}.
+     *
+     * @param p The file path.
+     * @return The index.
+     * @throws IOException If encountered or if p is not an index.
+     */
+    public static TimeIndex read(Path p) throws IOException {
+        ByteBuffer b;
+        try (FileChannel fc = FileChannel.open(p, StandardOpenOption.READ)) {
+            b = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (b.limit() < 20 || b.getLong() != MAGIC || b.getInt() != VERSION) {
+            throw new IOException(p + " is not a version " + VERSION
+                    + " time index");
+        }
+        int n = b.getInt();
+        int m = b.getInt();
+        List<String> values = new ArrayList<>(m);
+        for (int c = 0; c < m; c++) {
+            byte[] v = new byte[b.getInt()];
+            b.get(v);
+            values.add(new String(v, StandardCharsets.UTF_8));
+        }
+        long[] minutes = new long[n];
+        int[] rows = new int[n];
+        int[] codes = new int[n];
+        b.asLongBuffer().get(minutes);
+        b.position(b.position() + n * 8);
+        b.asIntBuffer().get(rows);
+        b.position(b.position() + n * 4);
+        b.asIntBuffer().get(codes);
+        return new TimeIndex(minutes, rows, codes, values);
+    }
+
+    /**
+     * For collecting the start times of incidents in row id order, or in
+     * parts that are merged in row id order, and building a
+     * {@link TimeIndex}.
+     */
+    public static class Builder {
+
+        /**
+         * Start times in epoch minutes.
+         */
+        long[] minutes = new long[1024];
+
+        /**
+         * Row ids.
+         */
+        int[] rows = new int[1024];
+
+        /**
+         * Property type codes.
+         */
+        int[] codes = new int[1024];
+
+        /**
+         * The number of incidents added.
+         */
+        int n;
+
+        /**
+         * Create a new instance.
+         */
+        public Builder() {
+        }
+
+        /**
+         * @return The number of incidents added.
+         */
+        public int size() {
+            return n;
+        }
+
+        private void ensure(int m) {
+            if (m > minutes.length) {
+                int c = Math.max(m, minutes.length * 2);
+                minutes = Arrays.copyOf(minutes, c);
+                rows = Arrays.copyOf(rows, c);
+                codes = Arrays.copyOf(codes, c);
+            }
+        }
+
+        /**
+         * Add an incident.
+         *
+         * @param epochSecond The start time.
+         * @param row The row id.
+         * @param code The property type code.
+         */
+        public void add(long epochSecond, int row, int code) {
+            ensure(n + 1);
+            minutes[n] = toMinute(epochSecond);
+            rows[n] = row;
+            codes[n] = code;
+            n++;
+        }
+
+        /**
+         * Add the incidents of a builder for a later part of the input.
+         *
+         * @param o The other builder.
+         * @param offset The row id in this of row id 0 in o.
+         * @param codeMap For each property type code in o, the code in this.
+         */
+        public void merge(Builder o, int offset, int[] codeMap) {
+            ensure(n + o.n);
+            System.arraycopy(o.minutes, 0, minutes, n, o.n);
+            for (int i = 0; i < o.n; i++) {
+                rows[n + i] = o.rows[i] + offset;
+                codes[n + i] = codeMap[o.codes[i]];
+            }
+            n += o.n;
+        }
+
+        /**
+         * Write the incidents.
+         *
+         * @param out The output.
+         * @throws IOException If encountered.
+         */
+        public void write(DataOutput out) throws IOException {
+            out.writeInt(n);
+            for (int i = 0; i < n; i++) {
+                out.writeLong(minutes[i]);
+                out.writeInt(rows[i]);
+                out.writeInt(codes[i]);
+            }
+        }
+
+        /**
+         * Add the incidents written by {@link #write(DataOutput)}.
+         *
+         * @param in The input.
+         * @param codeMap For each property type code written, the code in
+         * this.
+         * @throws IOException If encountered.
+         */
+        public void read(DataInput in, int[] codeMap) throws IOException {
+            int m = in.readInt();
+            ensure(n + m);
+            for (int i = 0; i < m; i++) {
+                minutes[n] = in.readLong();
+                rows[n] = in.readInt();
+                codes[n] = codeMap[in.readInt()];
+                n++;
+            }
+        }
+
+        /**
+         * Build the index sorting the incidents by start time and then row
+         * id.
+         *
+         * @param values The property types indexed by code.
+         * @return The index.
+         */
+        public TimeIndex build(List<String> values) {
+            // Sort the start times with the position of each in the low bits.
+            long[] keys = new long[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = (minutes[i] << 32) | i;
+            }
+            Arrays.parallelSort(keys);
+            long[] m = new long[n];
+            int[] r = new int[n];
+            int[] c = new int[n];
+            for (int i = 0; i < n; i++) {
+                int j = (int) keys[i];
+                m[i] = minutes[j];
+                r[i] = rows[j];
+                c[i] = codes[j];
+            }
+            return new TimeIndex(m, r, c, List.copyOf(values));
+        }
+    }
+
+    /**
+     * Count incidents in a time range using an index file.
+     *
+     * @param args The index file path, the start and end of the range as
+     * "dd/MM/yyyy HH:mm" and optionally a property type prefix.
+     * @throws IOException If encountered.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: TimeIndex <index> <from> <to> [type]");
+            return;
+        }
+        TimeIndex t = read(Path.of(args[0]));
+        long from = toMinute(IRSTime.parse(args[1]));
+        long to = toMinute(IRSTime.parse(args[2]));
+        System.out.println("" + t.count(from, to) + " of " + t.size()
+                + " incidents from " + args[1] + " to " + args[2]);
+        if (args.length > 3) {
+            String type = args[3];
+            System.out.println("" + t.count(from, to, t.getCodes(
+                    v -> v.replace("\"", "").startsWith(type)))
+                    + " with property type " + type);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import uk.ac.leeds.ccg.projects.wildfire.stats.Aggregator;
+
+/**
+ * A set of {@code long} values held in a single {@code long[]} with open
+ * addressing and linear probing, so adding and testing values involves no
+ * boxing and there are no entry objects. Zero marks an empty slot, so
+ * whether zero is in the set is held separately. Values are spread over the
+ * table with the MurmurHash3 finaliser as consecutive values such as
+ * incident numbers are common.
+ *
+ * A table of 2^n slots holds up to 0.7 * 2^n values, so tens of millions of
+ * values take a few hundred megabytes.
+ *
+ * @author Andy Turner
+ */
+public class LongHashSet implements Aggregator<LongHashSet> {
+
+    /**
+     * The largest fraction of slots used before the table is doubled.
+     */
+    static final double LOAD = 0.7;
+
+    /**
+     * The largest table length.
+     */
+    static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * The values with 0 for an empty slot.
+     */
+    long[] table;
+
+    /**
+     * {@code table.length - 1}.
+     */
+    int mask;
+
+    /**
+     * The number of values in {@link #table}.
+     */
+    int used;
+
+    /**
+     * The number of values at which {@link #table} is doubled.
+     */
+    int limit;
+
+    /**
+     * Whether 0 is in the set.
+     */
+    boolean zero;
+
+    /**
+     * Create a new instance.
+     */
+    public LongHashSet() {
+        this(16);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param expected The number of values expected, to size the table so it
+     * need not grow.
+     */
+    public LongHashSet(int expected) {
+        int capacity = 16;
+        while (capacity < MAX_CAPACITY && capacity * LOAD < expected) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        table = new long[capacity];
+        mask = capacity - 1;
+        limit = (int) (capacity * LOAD);
+    }
+
+    /**
+     * @param v The value.
+     * @return The slot to start probing from for v.
+     */
+    static long mix(long v) {
+        v ^= v >>> 33;
+        v *= 0xff51afd7ed558ccdL;
+        v ^= v >>> 33;
+        v *= 0xc4ceb9fe1a85ec53L;
+        v ^= v >>> 33;
+        return v;
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param v The value.
+     * @return {@code true} if v was added, {@code false} if it was already in
+     * the set.
+     */
+    public boolean add(long v) {
+        if (v == 0) {
+            if (zero) {
+                return false;
+            }
+            zero = true;
+            return true;
+        }
+        int i = (int) mix(v) & mask;
+        long t;
+        while ((t = table[i]) != 0) {
+            if (t == v) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        table[i] = v;
+        if (++used > limit) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * @param v The value.
+     * @return {@code true} if v is in the set.
+     */
+    public boolean contains(long v) {
+        if (v == 0) {
+            return zero;
+        }
+        int i = (int) mix(v) & mask;
+        long t;
+        while ((t = table[i]) != 0) {
+            if (t == v) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of values in the set.
+     */
+    public int size() {
+        return used + (zero ? 1 : 0);
+    }
+
+    @Override
+    public LongHashSet newInstance() {
+        return new LongHashSet();
+    }
+
+    @Override
+    public void merge(LongHashSet o) {
+        if (o.zero) {
+            zero = true;
+        }
+        for (long v : o.table) {
+            if (v != 0) {
+                add(v);
+            }
+        }
+    }
+
+    /**
+     * Double the table and add the values again.
+     */
+    private void grow() {
+        if (table.length == MAX_CAPACITY) {
+            throw new IllegalStateException("More than " + limit + " values");
+        }
+        long[] old = table;
+        allocate(old.length << 1);
+        for (long v : old) {
+            if (v != 0) {
+                int i = (int) mix(v) & mask;
+                while (table[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = v;
+            }
+        }
+    }
+
+    /**
+     * Write the values.
+     *
+     * @param out The output.
+     * @throws IOException If encountered.
+     */
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(size());
+        if (zero) {
+            out.writeLong(0);
+        }
+        for (long v : table) {
+            if (v != 0) {
+                out.writeLong(v);
+            }
+        }
+    }
+
+    /**
+     * Add the values written by {@link #write(DataOutput)}.
+     *
+     * @param in The input.
+     * @throws IOException If encountered.
+     */
+    @Override
+    public void read(DataInput in) throws IOException {
+        int n = in.readInt();
+        for (int j = 0; j < n; j++) {
+            add(in.readLong());
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.leeds.ccg.projects.wildfire.pipeline.Pipeline;
+
+/**
+ * Tests for continuing a {@link Run2} pipeline from a checkpoint when an
+ * input has been appended to, rewritten or is compressed.
+ *
+ * @author Andy Turner
+ */
+public class CheckpointTest {
+
+    /**
+     * The header of an input.
+     */
+    static final String HEADER = "Incident number,2.1 Time of call,"
+            + "2.5 Time of stop,2.6 Time of close,3.2 Property Type,"
+            + "3.7 Resources,5.16 Area,5.16a Area ha,6.1 Other,8.24 Area,"
+            + "8.25 Area,8.35 Area,8.35a Area,9.1 Notes,9.2 Station";
+
+    @TempDir
+    Path dir;
+
+    /**
+     * @param i The row.
+     * @param note The notes, which are quoted.
+     * @return A selected record with incident number and day from i.
+     */
+    static String row(int i, String note) {
+        int day = 1 + i % 28;
+        return (2000000000 + i) + "," + String.format("%02d", day)
+                + "/05/2011 15:48:41," + String.format("%02d", day)
+                + "/05/2011 22:28," + String.format("%02d", day)
+                + "/05/2011 23:28,\"Property/Outdoor/Grassland, woodland "
+                + "and crops/Heathland\",3,\"Over 10,000\",3,0,,"
+                + "\"Over 10,000\",\"5 - 20\",50,\"" + note + "\",C";
+    }
+
+    /**
+     * @param from The first row.
+     * @param to The row after the last.
+     * @param note The notes of each row.
+     * @return The rows from from to to.
+     */
+    static String rows(int from, int to, String note) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            sb.append(row(i, note)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Run a pipeline over inputs continuing from a checkpoint if there is
+     * one, then save the checkpoint and write the outputs.
+     *
+     * @param inputs The inputs.
+     * @param checkpoint The checkpoint, or null for none.
+     * @param out The output directory.
+     * @return The contents of the selected records output.
+     * @throws IOException If encountered.
+     */
+    String run(List<Path> inputs, Path checkpoint, String out)
+            throws IOException {
+        Run2 r = new Run2(1);
+        r.initialise();
+        Path inflate = dir.resolve("inflated");
+        r.records.setInflateDir(inflate);
+        Pipeline p = new Pipeline(1, StandardCharsets.UTF_8, null);
+        p.setInflateDir(inflate);
+        p.add(r.new Part1());
+        p.add(r.new Part2());
+        if (checkpoint != null) {
+            p.loadCheckpoint(checkpoint);
+        }
+        p.run(inputs);
+        if (checkpoint != null) {
+            p.saveCheckpoint(checkpoint);
+        }
+        Path pOut = dir.resolve(out);
+        Files.createDirectories(pOut);
+        p.finish(pOut);
+        return Files.readString(pOut.resolve("abc.csv"));
+    }
+
+    @Test
+    public void testAppended() throws IOException {
+        Path a = dir.resolve("a.csv");
+        Path ck = dir.resolve("ck");
+        Files.writeString(a, HEADER + "\n" + rows(0, 10, "a"));
+        run(List.of(a), ck, "out1");
+        Files.writeString(a, rows(10, 20, "b"), StandardOpenOption.APPEND);
+        String appended = run(List.of(a), ck, "out2");
+        Path all = dir.resolve("all.csv");
+        Files.writeString(all, HEADER + "\n" + rows(0, 10, "a")
+                + rows(10, 20, "b"));
+        assertEquals(run(List.of(all), null, "out3"), appended);
+    }
+
+    @Test
+    public void testRewritten() throws IOException {
+        Path a = dir.resolve("a.csv");
+        Path ck = dir.resolve("ck");
+        Files.writeString(a, HEADER + "\n" + rows(0, 10, "a"));
+        run(List.of(a), ck, "out1");
+        Files.writeString(a, HEADER + "\n" + rows(0, 10, "rewritten")
+                + rows(10, 20, "b"));
+        IOException e = assertThrows(IOException.class,
+                () -> run(List.of(a), ck, "out2"));
+        assertTrue(e.getMessage().contains("has changed"), e.getMessage());
+    }
+
+    @Test
+    public void testRewrittenSameLength() throws IOException {
+        Path a = dir.resolve("a.csv");
+        Path ck = dir.resolve("ck");
+        Files.writeString(a, HEADER + "\n" + rows(0, 2000, "a"));
+        run(List.of(a), ck, "out1");
+        // Far enough from both ends that only hashing it all finds it.
+        Files.writeString(a, HEADER + "\n" + rows(0, 1000, "a")
+                + rows(1000, 1001, "c") + rows(1001, 2000, "a"));
+        assertThrows(IOException.class, () -> run(List.of(a), ck, "out2"));
+    }
+
+    @Test
+    public void testCompressed() throws IOException {
+        Path a = dir.resolve("a.csv.gz");
+        Path ck = dir.resolve("ck");
+        try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(a));
+                Writer w = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
+            w.write(HEADER + "\n" + rows(0, 10, "a"));
+        }
+        String first = run(List.of(a), ck, "out1");
+        assertEquals(first, run(List.of(a), ck, "out2"));
+    }
+}
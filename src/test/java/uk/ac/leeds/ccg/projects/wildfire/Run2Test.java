@@ -0,0 +1,119 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.leeds.ccg.projects.wildfire.pipeline.Pipeline;
+
+/**
+ * Tests for running {@link Run2} with more than one thread.
+ *
+ * @author Andy Turner
+ */
+public class Run2Test {
+
+    /**
+     * The number of records generated, enough for an input of several MiB so
+     * that it is split into several parts.
+     */
+    static final int ROWS = 20000;
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Write an input where every record has a quoted multi-line field longer
+     * than the rest of the record, so that parts are likely to start inside
+     * one.
+     *
+     * @param p The path to write to.
+     * @throws IOException If encountered.
+     */
+    static void write(Path p) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(p,
+                StandardCharsets.UTF_8)) {
+            w.write(CheckpointTest.HEADER);
+            w.write('\n');
+            for (int i = 0; i < ROWS; i++) {
+                int day = 1 + i % 28;
+                String d = String.format("%02d/%02d/%d", day, 1 + i % 12,
+                        2010 + i % 5);
+                w.write((2000000000 + i) + "," + d + " 15:48:41," + d
+                        + " 16:" + String.format("%02d", i % 60) + "," + d
+                        + " 23:28,\"Property/Outdoor/Grassland, woodland and "
+                        + "crops/Heathland\"," + (1 + i % 7) + ","
+                        + (i % 3 == 0 ? "\"Over 10,000\"" : "None") + ","
+                        + i % 40 + ",0,,,\"5 - 20\"," + i % 90 + ",\"");
+                for (int k = 0; k < 1 + i % 5; k++) {
+                    w.write("Line " + k + " of the notes, with \"\"quotes\"\""
+                            + "\nand a newline,\n");
+                }
+                w.write("\",C\n");
+            }
+        }
+    }
+
+    /**
+     * @param input The input.
+     * @param threads The number of threads.
+     * @param out The output directory.
+     * @return The number of records processed.
+     * @throws IOException If encountered.
+     */
+    int run(Path input, int threads, Path out) throws IOException {
+        Run2 r = new Run2(threads);
+        r.initialise();
+        Pipeline p = new Pipeline(threads, StandardCharsets.UTF_8, null);
+        p.add(r.new Part1());
+        p.add(r.new Part2());
+        int n = p.run(List.of(input));
+        Files.createDirectories(out);
+        p.finish(out);
+        return n;
+    }
+
+    @Test
+    public void testThreads() throws IOException {
+        Path input = dir.resolve("in.csv");
+        write(input);
+        assertTrue(Files.size(input) > 4 << 20);
+        Path out1 = dir.resolve("out1");
+        Path out4 = dir.resolve("out4");
+        assertEquals(ROWS, run(input, 1, out1));
+        assertEquals(ROWS, run(input, 4, out4));
+        List<Path> files;
+        try (Stream<Path> s = Files.list(out1)) {
+            files = s.sorted().toList();
+        }
+        assertTrue(files.stream().anyMatch(
+                f -> f.getFileName().toString().equals("abc.csv")));
+        for (Path f : files) {
+            Path f4 = out4.resolve(f.getFileName());
+            assertEquals(-1L, Files.mismatch(f, f4), f.getFileName()
+                    + " differs");
+        }
+    }
+}
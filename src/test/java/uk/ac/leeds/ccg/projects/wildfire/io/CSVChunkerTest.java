@@ -0,0 +1,133 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link CSVChunker}.
+ *
+ * @author Andy Turner
+ */
+public class CSVChunkerTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * @param p A CSV file.
+     * @param start The start of the records.
+     * @param end The end of the records, or -1 for the end of the file.
+     * @return The fields of the records of p from start to end.
+     * @throws IOException If encountered.
+     */
+    static List<List<String>> read(Path p, long start, long end)
+            throws IOException {
+        List<List<String>> r = new ArrayList<>();
+        try (CSVScanner s = new CSVScanner(p, start, end,
+                StandardCharsets.UTF_8)) {
+            while (s.next()) {
+                List<String> fields = new ArrayList<>();
+                for (int i = 0; i < s.getFieldCount(); i++) {
+                    fields.add(s.getString(i));
+                }
+                r.add(fields);
+            }
+        }
+        return r;
+    }
+
+    @Test
+    public void testQuotedNewlines() throws IOException {
+        // Records mostly made of a quoted field of commas, escaped quotes
+        // and newlines, so most block starts are inside quotes.
+        Path p = dir.resolve("q.csv");
+        StringBuilder sb = new StringBuilder("a,b,c\n");
+        int rows = 80000;
+        for (int i = 0; i < rows; i++) {
+            sb.append(i).append(",\"");
+            for (int k = 0; k < 1 + i % 7; k++) {
+                sb.append("x,\"\"y\"\"\n").append(k).append(",\n");
+            }
+            sb.append("\",z\n");
+        }
+        byte[] b = sb.toString().getBytes(StandardCharsets.UTF_8);
+        Files.write(p, b);
+        long start = CSVChunker.nextBoundary(p, 0);
+        assertEquals(6L, start);
+        int n = 4;
+        assertTrue(b.length > n * CSVChunker.BUFFER_SIZE);
+        // Quote parity before each byte.
+        boolean[] quoted = new boolean[b.length + 1];
+        for (int i = 0; i < b.length; i++) {
+            quoted[i + 1] = quoted[i] ^ (b[i] == '"');
+        }
+        long blockSize = (b.length - start + n - 1) / n;
+        int inside = 0;
+        for (int i = 1; i < n; i++) {
+            if (quoted[(int) (start + i * blockSize)]) {
+                inside++;
+            }
+        }
+        assertTrue(inside > 0, "No block starts inside quotes");
+        ForkJoinPool pool = new ForkJoinPool(n);
+        long[] bounds;
+        try {
+            bounds = CSVChunker.split(p, start, n, pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(n + 1, bounds.length);
+        assertEquals(start, bounds[0]);
+        assertEquals((long) b.length, bounds[n]);
+        List<List<String>> parts = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                int k = (int) bounds[i];
+                assertTrue(b[k - 1] == '\n' && !quoted[k],
+                        "Bound " + k + " is not a record boundary");
+            }
+            parts.addAll(read(p, bounds[i], bounds[i + 1]));
+        }
+        List<List<String>> all = read(p, start, -1);
+        assertEquals(rows, all.size());
+        assertEquals(all, parts);
+    }
+
+    @Test
+    public void testSmall() throws IOException {
+        // A file smaller than a buffer is not split.
+        Path p = dir.resolve("s.csv");
+        Files.writeString(p, "a,b\n1,\"x\ny\"\n2,z\n");
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            long start = CSVChunker.nextBoundary(p, 0);
+            assertEquals(2, CSVChunker.split(p, start, 8, pool).length);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link GzipInput}.
+ *
+ * @author Andy Turner
+ */
+public class GzipInputTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Write a file of text with a run of random bytes in the middle, so that
+     * there are both compressed and stored blocks.
+     *
+     * @param p The path to write to.
+     * @return The bytes written.
+     * @throws IOException If encountered.
+     */
+    static byte[] write(Path p) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            sb.append(i).append(",\"Over 10,000\",").append(i % 97)
+                    .append('\n');
+        }
+        byte[] text = sb.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] random = new byte[3 * GzipInput.BLOCK_INPUT];
+        new Random(1).nextBytes(random);
+        byte[] b = new byte[text.length + random.length];
+        int half = text.length / 2;
+        System.arraycopy(text, 0, b, 0, half);
+        System.arraycopy(random, 0, b, half, random.length);
+        System.arraycopy(text, half, b, half + random.length,
+                text.length - half);
+        Files.write(p, b);
+        return b;
+    }
+
+    @Test
+    public void testBlockRoundTrip() throws IOException {
+        Path p = dir.resolve("a.csv");
+        byte[] b = write(p);
+        Path gz = dir.resolve("a.csv.gz");
+        GzipInput.compress(p, gz, 4);
+        assertTrue(GzipInput.isGzip(gz));
+        assertTrue(GzipInput.isBlockGzip(gz));
+        assertFalse(GzipInput.isGzip(p));
+        assertTrue(Files.size(gz) < b.length);
+        for (int threads : new int[]{1, 4}) {
+            Path out = GzipInput.resolve(gz, dir.resolve("t" + threads),
+                    threads);
+            assertTrue(out.getFileName().toString().startsWith("a.csv."));
+            assertArrayEquals(b, Files.readAllBytes(out));
+            assertEquals(Files.getLastModifiedTime(gz),
+                    Files.getLastModifiedTime(out));
+            // Reused while unchanged.
+            assertEquals(out, GzipInput.resolve(gz, dir.resolve(
+                    "t" + threads), threads));
+        }
+        // BGZF is also plain gzip.
+        try (InputStream is = new GZIPInputStream(Files.newInputStream(gz))) {
+            assertArrayEquals(b, is.readAllBytes());
+        }
+        try (InputStream is = GzipInput.newInputStream(gz)) {
+            assertArrayEquals(b, is.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testPlainGzip() throws IOException {
+        Path p = dir.resolve("a.csv");
+        byte[] b = write(p);
+        Path gz = dir.resolve("a.csv.gz");
+        try (OutputStream os = new GZIPOutputStream(
+                Files.newOutputStream(gz))) {
+            os.write(b);
+        }
+        assertTrue(GzipInput.isGzip(gz));
+        assertFalse(GzipInput.isBlockGzip(gz));
+        Path out = GzipInput.resolve(gz, dir.resolve("out"), 4);
+        assertArrayEquals(b, Files.readAllBytes(out));
+        // An input that is not compressed is read as it is.
+        assertEquals(p, GzipInput.resolve(p, dir.resolve("out"), 4));
+    }
+
+    @Test
+    public void testSameName() throws IOException {
+        // Inputs of the same name in different directories are inflated to
+        // different files.
+        Path x = Files.createDirectories(dir.resolve("x"));
+        Path y = Files.createDirectories(dir.resolve("y"));
+        Files.writeString(x.resolve("a.csv"), "x\n");
+        Files.writeString(y.resolve("a.csv"), "y\n");
+        GzipInput.compress(x.resolve("a.csv"), x.resolve("a.csv.gz"), 1);
+        GzipInput.compress(y.resolve("a.csv"), y.resolve("a.csv.gz"), 1);
+        Path out = dir.resolve("out");
+        Path ox = GzipInput.resolve(x.resolve("a.csv.gz"), out, 1);
+        Path oy = GzipInput.resolve(y.resolve("a.csv.gz"), out, 1);
+        assertFalse(ox.equals(oy));
+        assertEquals("x\n", Files.readString(ox));
+        assertEquals("y\n", Files.readString(oy));
+    }
+
+    @Test
+    public void testCorruptBlock() throws IOException {
+        Path p = dir.resolve("a.csv");
+        write(p);
+        Path gz = dir.resolve("a.csv.gz");
+        GzipInput.compress(p, gz, 2);
+        byte[] c = Files.readAllBytes(gz);
+        // The second block starts after the first, whose length less one is
+        // in its header.
+        int second = ((c[16] & 0xff) | (c[17] & 0xff) << 8) + 1;
+        // A byte of the compressed data, then of the CRC of the first block.
+        int[] positions = {second + GzipInput.HEADER + 10,
+            second - GzipInput.TRAILER};
+        for (int i = 0; i < positions.length; i++) {
+            byte[] d = Arrays.copyOf(c, c.length);
+            d[positions[i]] ^= 0x55;
+            Path bad = dir.resolve("bad" + i + ".csv.gz");
+            Files.write(bad, d);
+            for (int threads : new int[]{1, 4}) {
+                Path out = dir.resolve("out" + i + threads);
+                assertThrows(IOException.class,
+                        () -> GzipInput.resolve(bad, out, threads));
+            }
+        }
+        // Truncated part way through a block.
+        Path truncated = dir.resolve("truncated.csv.gz");
+        Files.write(truncated, Arrays.copyOf(c, second + 100));
+        assertThrows(IOException.class,
+                () -> GzipInput.resolve(truncated, dir.resolve("out"), 4));
+    }
+}
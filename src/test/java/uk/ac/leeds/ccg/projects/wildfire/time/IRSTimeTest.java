@@ -0,0 +1,215 @@
+/*
+ * Copyright 2023 Centre for Computational Geography, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.projects.wildfire.time;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link IRSTime} against {@link ZonedDateTime} in
+ * {@link IRSTime#LONDON}.
+ *
+ * @author Andy Turner
+ */
+public class IRSTimeTest {
+
+    /**
+     * The form of IRS timestamps with seconds.
+     */
+    static final DateTimeFormatter SECONDS = DateTimeFormatter.ofPattern(
+            "dd/MM/yyyy HH:mm:ss");
+
+    /**
+     * The form of IRS timestamps without seconds.
+     */
+    static final DateTimeFormatter MINUTES = DateTimeFormatter.ofPattern(
+            "dd/MM/yyyy HH:mm");
+
+    /**
+     * @return The dates of the Europe/London transitions from 1960 to 2040,
+     * which include the last years of British Standard Time.
+     */
+    static List<LocalDate> getTransitionDays() {
+        ZoneRules rules = IRSTime.LONDON.getRules();
+        List<LocalDate> r = new ArrayList<>();
+        Instant end = ZonedDateTime.of(2040, 12, 31, 0, 0, 0, 0,
+                IRSTime.LONDON).toInstant();
+        ZoneOffsetTransition t = rules.nextTransition(ZonedDateTime.of(1960,
+                1, 1, 0, 0, 0, 0, IRSTime.LONDON).toInstant());
+        while (t.getInstant().isBefore(end)) {
+            r.add(t.getDateTimeBefore().toLocalDate());
+            t = rules.nextTransition(t.getInstant());
+        }
+        return r;
+    }
+
+    /**
+     * @param local A local date time.
+     * @return The epoch second of local in Europe/London, resolving gaps and
+     * overlaps as {@link ZonedDateTime#of(LocalDateTime, java.time.ZoneId)}.
+     */
+    static long expected(LocalDateTime local) {
+        return ZonedDateTime.of(local, IRSTime.LONDON).toEpochSecond();
+    }
+
+    @Test
+    public void testParseTransitionDays() {
+        List<LocalDate> days = getTransitionDays();
+        assertTrue(days.size() > 100);
+        for (LocalDate d : days) {
+            // Every 10 minutes over the day, which includes every time in
+            // the gap or overlap, with and without seconds.
+            for (int m = 0; m < 24 * 60; m += 10) {
+                LocalDateTime t = d.atStartOfDay().plusMinutes(m)
+                        .plusSeconds(m % 60);
+                String s = t.format(SECONDS);
+                assertEquals(expected(t), IRSTime.parse(s), s);
+                assertEquals(t.toEpochSecond(ZoneOffset.UTC),
+                        IRSTime.parseLocal(s), s);
+                String sm = t.format(MINUTES);
+                assertEquals(expected(t.withSecond(0)), IRSTime.parse(sm), sm);
+            }
+        }
+    }
+
+    @Test
+    public void testParseGapAndOverlap() {
+        // {timestamp, offset in hours of the epoch second}
+        String[][] table = {
+            // Gap: 01:00 to 02:00 GMT became BST, moved later by an hour.
+            {"27/03/2011 00:59:59", "0"},
+            {"27/03/2011 01:00", "1"},
+            {"27/03/2011 01:30", "1"},
+            {"27/03/2011 02:00", "1"},
+            {"31/03/2024 01:59:59", "1"},
+            // Overlap: 01:00 to 02:00 happens twice, the earlier (BST) is
+            // used.
+            {"30/10/2011 00:59", "1"},
+            {"30/10/2011 01:00", "1"},
+            {"30/10/2011 01:59:59", "1"},
+            {"30/10/2011 02:00", "0"},
+            {"27/10/2024 01:30", "1"},
+            // British Standard Time.
+            {"01/01/1970 00:00", "1"},
+            {"31/10/1971 02:59", "1"},
+            {"31/10/1971 03:00", "0"}};
+        for (String[] row : table) {
+            long s = IRSTime.parse(row[0]);
+            LocalDateTime t = LocalDateTime.parse(row[0], row[0].length() > 16
+                    ? SECONDS : MINUTES);
+            assertEquals(expected(t), s, row[0]);
+            assertEquals(Integer.parseInt(row[1]) * 3600, IRSTime.getOffset(s),
+                    row[0]);
+        }
+        // In the gap the time moves later by the length of the gap.
+        assertEquals(IRSTime.parse("27/03/2011 02:30"),
+                IRSTime.parse("27/03/2011 01:30"));
+        // Across the overlap an hour of local time is two hours.
+        assertEquals(7200, IRSTime.parse("30/10/2011 02:30")
+                - IRSTime.parse("30/10/2011 01:30"));
+    }
+
+    @Test
+    public void testFields() {
+        // Each field of the epoch seconds around each transition.
+        ZoneRules rules = IRSTime.LONDON.getRules();
+        for (LocalDate d : getTransitionDays()) {
+            long t = rules.nextTransition(d.atStartOfDay(ZoneOffset.UTC)
+                    .minusDays(1).toInstant()).getInstant().getEpochSecond();
+            for (long s : new long[]{t - 3601, t - 3600, t - 1, t, t + 1,
+                t + 3599, t + 3600, t + 86399}) {
+                ZonedDateTime z = IRSTime.toZonedDateTime(s);
+                String m = z.toString();
+                assertEquals(z.getOffset().getTotalSeconds(),
+                        IRSTime.getOffset(s), m);
+                assertEquals(z.getYear(), IRSTime.getYear(s), m);
+                assertEquals(z.getMonthValue(), IRSTime.getMonth(s), m);
+                assertEquals(z.getDayOfYear(), IRSTime.getDayOfYear(s), m);
+                assertEquals(z.getDayOfMonth(), IRSTime.getDayOfMonth(s), m);
+                assertEquals(z.getDayOfWeek().getValue(),
+                        IRSTime.getDayOfWeek(s), m);
+                assertEquals(z.toLocalTime().toSecondOfDay(),
+                        IRSTime.getSecondOfDay(s), m);
+                assertEquals(z.format(SECONDS), IRSTime.format(s, true), m);
+                assertEquals(z.format(MINUTES), IRSTime.format(s, false), m);
+            }
+        }
+    }
+
+    @Test
+    public void testFormatLocal() {
+        // formatLocal is the inverse of parseLocal, including in a gap.
+        String[] table = {"27/03/2011 01:30", "27/03/2011 01:30:15",
+            "29/02/2012 23:59:59", "01/01/0999 00:00", "31/12/2199 12:00"};
+        for (String s : table) {
+            assertEquals(s, IRSTime.formatLocal(IRSTime.parseLocal(s),
+                    s.length() > 16, new StringBuilder()).toString());
+        }
+    }
+
+    @Test
+    public void testParseInvalid() {
+        String[] numberFormat = {"", "1/2/2011", "01/02/2011",
+            "01-02-2011 10:00", "01/02/2011 10", "01/02/2011 10:",
+            "a1/02/2011 10:00",
+            "01/02/2011 10:00:00:00", "1234567890/02/2011 10:00"};
+        for (String s : numberFormat) {
+            assertThrows(NumberFormatException.class,
+                    () -> IRSTime.parse(s), s);
+        }
+        String[] dateTime = {"29/02/2011 10:00", "31/04/2011 10:00",
+            "01/13/2011 10:00", "00/01/2011 10:00", "01/01/2011 24:00",
+            "01/01/2011 10:60", "01/01/2011 10:00:60"};
+        for (String s : dateTime) {
+            assertThrows(DateTimeException.class, () -> IRSTime.parse(s), s);
+        }
+    }
+
+    @Test
+    public void testFromExcelSerial() {
+        // {Excel serial, Europe/London local date time}
+        String[][] table = {
+            {"1", "01/01/1900 00:00:00"},
+            {"59.5", "28/02/1900 12:00:00"},
+            {"61", "01/03/1900 00:00:00"},
+            {"25569", "01/01/1970 00:00:00"},
+            {"40629.0625", "27/03/2011 01:30:00"},
+            {"40846.0625", "30/10/2011 01:30:00"},
+            {"43985.10047", "03/06/2020 02:24:40"},
+            // Rounded to the millisecond then truncated to the second.
+            {"43985.0000057870", "03/06/2020 00:00:00"},
+            {"43985.0000115740", "03/06/2020 00:00:01"},
+            {"43985.99999999", "03/06/2020 23:59:59"}};
+        for (String[] row : table) {
+            LocalDateTime t = LocalDateTime.parse(row[1], SECONDS);
+            assertEquals(expected(t), IRSTime.fromExcelSerial(
+                    Double.parseDouble(row[0])), row[0]);
+        }
+    }
+}